@@ -9,5 +9,14 @@ JLINK_VM_OPTIONS="\
 --add-exports jdk.compiler/com.sun.tools.javac.util=ALL-UNNAMED \
 --add-opens jdk.compiler/com.sun.tools.javac.api=ALL-UNNAMED"
 DIR=`dirname $0`
+# Use the class-data-sharing archive created by scripts/train_cds.sh, if there is one.
+# JVM warnings go to stderr, because stdout is reserved for the protocol.
+CDS_ARCHIVE="$DIR/linux/lib/java-language-server.jsa"
+if [ -n "$JAVA_LANGUAGE_SERVER_CDS" ]; then
+  CDS_OPTIONS="$JAVA_LANGUAGE_SERVER_CDS"
+elif [ -e "$CDS_ARCHIVE" ]; then
+  CDS_OPTIONS="-XX:SharedArchiveFile=$CDS_ARCHIVE"
+fi
+CDS_OPTIONS="$CDS_OPTIONS -Xlog:disable -Xlog:all=warning:stderr"
 CLASSPATH_OPTIONS="-classpath $DIR/classpath/gson-2.8.9.jar:$DIR/classpath/protobuf-java-3.19.3.jar:$DIR/classpath/java-language-server.jar"
-$DIR/linux/bin/java $JLINK_VM_OPTIONS $CLASSPATH_OPTIONS $@
+$DIR/linux/bin/java $JLINK_VM_OPTIONS $CDS_OPTIONS $CLASSPATH_OPTIONS $@
@@ -3,7 +3,7 @@
 // Import the module and reference it with the alias vscode in your code below
 import * as Path from "path";
 import * as FS from "fs";
-import {window, workspace, ExtensionContext, commands, tasks, Task, TaskExecution, ShellExecution, Uri, TaskDefinition, languages, IndentAction, Progress, ProgressLocation, debug, DebugConfiguration, Range, Position, TextDocument, TextDocumentContentProvider, CancellationToken, ProviderResult, ConfigurationChangeEvent} from 'vscode';
+import {window, workspace, ExtensionContext, commands, tasks, Task, TaskExecution, ShellExecution, Uri, TaskDefinition, languages, IndentAction, Progress, ProgressLocation, debug, DebugConfiguration, Range, Position, Location, TextDocument, TextDocumentContentProvider, CancellationToken, ProviderResult, ConfigurationChangeEvent} from 'vscode';
 import {LanguageClient, LanguageClientOptions, ServerOptions, NotificationType} from "vscode-languageclient";
 import {loadStyles, decoration} from './textMate';
 import * as AdmZip from 'adm-zip';
@@ -68,6 +68,7 @@ export async function activate(context: ExtensionContext) {
     commands.registerCommand('java.command.test.run', runTest);
     commands.registerCommand('java.command.test.debug', debugTest);
     commands.registerCommand('java.command.findReferences', runFindReferences);
+    commands.registerCommand('java.command.findImplementations', runFindImplementations);
 
 	// When the language client activates, register a progress-listener
     client.onReady().then(() => createProgressListeners(client));
@@ -164,6 +165,20 @@ function runFindReferences(uri: string, lineNumber: number, column: number) {
     return commands.executeCommand('editor.action.findReferences', Uri.parse(uri), {lineNumber: lineNumber+1, column: column+1});
 }
 
+interface LocationLike {
+    uri: string
+    range: {start: {line: number, character: number}, end: {line: number, character: number}}
+}
+
+function runFindImplementations(uri: string, line: number, character: number, locations: LocationLike[]) {
+    function asLocation(l: LocationLike) {
+        const start = new Position(l.range.start.line, l.range.start.character);
+        const end = new Position(l.range.end.line, l.range.end.character);
+        return new Location(Uri.parse(l.uri), new Range(start, end));
+    }
+    return commands.executeCommand('editor.action.showReferences', Uri.parse(uri), new Position(line, character), locations.map(asLocation));
+}
+
 interface JavaTestTask extends TaskDefinition {
     className: string
     methodName: string
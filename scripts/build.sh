@@ -31,6 +31,12 @@ fi
 
 mvn package -DskipTests
 
+# Record a class-data-sharing archive for the platform we're building on
+case "$(uname)" in
+    Linux) ./scripts/train_cds.sh linux ;;
+    Darwin) ./scripts/train_cds.sh mac ;;
+esac
+
 # Build vsix
 npm run-script vscode:build
 
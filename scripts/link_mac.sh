@@ -8,9 +8,11 @@ JAVA_HOME="./jdks/mac/jdk-18"
 
 # Build using jlink
 rm -rf dist/mac
+# java.management is required by MemoryBudget, which watches heap usage after each collection
 jlink \
-  --add-modules java.base,java.compiler,java.logging,java.sql,java.xml,jdk.compiler,jdk.jdi,jdk.unsupported,jdk.zipfs \
+  --add-modules java.base,java.compiler,java.logging,java.management,java.sql,java.xml,jdk.compiler,jdk.jdi,jdk.unsupported,jdk.zipfs \
   --output dist/mac \
   --no-header-files \
   --no-man-pages \
-  --compress 2
\ No newline at end of file
+  --compress 2 \
+  --generate-cds-archive
\ No newline at end of file
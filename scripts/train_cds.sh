@@ -0,0 +1,55 @@
+#!/bin/bash
+# Record the classes the language server loads during a short, representative session into a class-data-sharing
+# archive. dist/launch_*.sh use the archive when it exists, so later launches map these classes from the archive
+# instead of loading and verifying them from scratch.
+# Run after scripts/link_linux.sh (or link_mac.sh) and mvn package, on the platform you are building for.
+
+set -e
+
+PLATFORM=${1:-linux}
+DIST="$(cd "$(dirname "$0")/../dist" && pwd)"
+ARCHIVE="$DIST/$PLATFORM/lib/java-language-server.jsa"
+WORKSPACE="$(cd "$(dirname "$0")/../src/test/examples/simple-project" && pwd)"
+
+# Frame a JSON-RPC message the way the language server protocol expects
+message() {
+    printf 'Content-Length: %d\r\n\r\n%s' "${#1}" "$1"
+}
+
+# initialize, open a file, ask for completions, hover and symbols, then shut down
+session() {
+    local uri="file://$WORKSPACE/Train.java"
+    local text='class Train {\n    void test() {\n        String s = \"\";\n        s.\n    }\n}\n'
+    message '{"jsonrpc":"2.0","id":1,"method":"initialize","params":{"rootUri":"file://'"$WORKSPACE"'","capabilities":{}}}'
+    message '{"jsonrpc":"2.0","method":"initialized","params":{}}'
+    message '{"jsonrpc":"2.0","method":"textDocument/didOpen","params":{"textDocument":{"uri":"'"$uri"'","languageId":"java","version":1,"text":"'"$text"'"}}}'
+    message '{"jsonrpc":"2.0","id":2,"method":"textDocument/completion","params":{"textDocument":{"uri":"'"$uri"'"},"position":{"line":3,"character":10}}}'
+    message '{"jsonrpc":"2.0","id":3,"method":"textDocument/hover","params":{"textDocument":{"uri":"'"$uri"'"},"position":{"line":2,"character":9}}}'
+    message '{"jsonrpc":"2.0","id":4,"method":"textDocument/documentSymbol","params":{"textDocument":{"uri":"'"$uri"'"}}}'
+    message '{"jsonrpc":"2.0","id":5,"method":"shutdown"}'
+    message '{"jsonrpc":"2.0","method":"exit"}'
+}
+
+# Run a session and print how long the server took to answer initialize, as it reports in its log
+startup_ms() {
+    session | JAVA_LANGUAGE_SERVER_CDS="$1" "$DIST/lang_server_$PLATFORM.sh" 2>&1 >/dev/null \
+        | sed -n 's/.*initialized \([0-9,]*\) ms after launch.*/\1/p' | tr -d ,
+}
+
+average() {
+    local total=0
+    for i in 1 2 3 4 5; do
+        total=$((total + $(startup_ms "$1")))
+    done
+    echo $((total / 5))
+}
+
+# Training run
+rm -f "$ARCHIVE"
+session | JAVA_LANGUAGE_SERVER_CDS="-XX:ArchiveClassesAtExit=$ARCHIVE" "$DIST/lang_server_$PLATFORM.sh" > /dev/null 2>&1
+echo "Wrote $ARCHIVE ($(du -h "$ARCHIVE" | cut -f1))"
+
+# Measure. -Xshare:auto still maps the JDK's default archive, so report it separately from no sharing at all
+echo "Startup without CDS:      $(average -Xshare:off) ms"
+echo "Startup with default CDS: $(average -Xshare:auto) ms"
+echo "Startup with archive:     $(average "") ms"
@@ -6,7 +6,10 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 
-/** Cache maps a file + an arbitrary key to a value. When the file is modified, the mapping expires. */
+/**
+ * Cache maps a file + an arbitrary key to a value. When the file is modified, the mapping expires. Caches can be shared
+ * by compilers running on different threads, see Check.
+ */
 class Cache<K, V> {
     private static class Key<K> {
         final Path file;
@@ -41,11 +44,11 @@ class Cache<K, V> {
 
     private final Map<Key, Value> map = new HashMap<>();
 
-    boolean has(Path file, K k) {
+    synchronized boolean has(Path file, K k) {
         return !needs(file, k);
     }
 
-    boolean needs(Path file, K k) {
+    synchronized boolean needs(Path file, K k) {
         // If key is not in map, it needs to be loaded
         var key = new Key<K>(file, k);
         if (!map.containsKey(key)) return true;
@@ -57,14 +60,14 @@ class Cache<K, V> {
         return value.created.isBefore(modified);
     }
 
-    void load(Path file, K k, V v) {
+    synchronized void load(Path file, K k, V v) {
         // TODO limit total size of cache
         var key = new Key<K>(file, k);
         var value = new Value(v);
         map.put(key, value);
     }
 
-    V get(Path file, K k) {
+    synchronized V get(Path file, K k) {
         var key = new Key<K>(file, k);
         if (!map.containsKey(key)) {
             throw new IllegalArgumentException(k + " is not in map " + map);
@@ -0,0 +1,388 @@
+package org.javacs;
+
+import com.google.gson.JsonPrimitive;
+import com.sun.source.tree.*;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.TreePathScanner;
+import com.sun.source.util.Trees;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.*;
+import java.util.logging.Logger;
+import javax.lang.model.element.*;
+import org.javacs.lsp.*;
+
+/**
+ * CallGraphIndex records, for each method in the workspace, the calls it makes. It is built from attributed trees, so
+ * every call site is resolved to the exact overload it calls. Lint indexes the files it compiles for free; requests
+ * compile only the candidate files that have changed since they were last indexed.
+ */
+public class CallGraphIndex {
+
+    /** A method, constructor, or class (for calls in initializers) that calls or is called. */
+    public static class Declaration {
+        public final String key, name, detail;
+        public final int kind;
+        public final Path file;
+        public final Range range, selectionRange;
+
+        Declaration(String key, String name, String detail, int kind, Path file, Range range, Range selectionRange) {
+            this.key = key;
+            this.name = name;
+            this.detail = detail;
+            this.kind = kind;
+            this.file = file;
+            this.range = range;
+            this.selectionRange = selectionRange;
+        }
+
+        public CallHierarchyItem item() {
+            var item = new CallHierarchyItem();
+            item.name = name;
+            item.kind = kind;
+            item.detail = detail;
+            item.uri = file.toUri();
+            item.range = range;
+            item.selectionRange = selectionRange;
+            item.data = new JsonPrimitive(key);
+            return item;
+        }
+
+        boolean sameSignature(Declaration other) {
+            return key.equals(other.key);
+        }
+    }
+
+    private static class CallSite {
+        final Path file;
+        final String caller, callee;
+        /** calleeTopLevel is the top-level class that declares callee, which we use to find its source file */
+        final String calleeTopLevel;
+
+        final Range range;
+
+        CallSite(Path file, String caller, String callee, String calleeTopLevel, Range range) {
+            this.file = file;
+            this.caller = caller;
+            this.callee = callee;
+            this.calleeTopLevel = calleeTopLevel;
+            this.range = range;
+        }
+    }
+
+    private static class FileEntry {
+        final Instant modified;
+        final List<Declaration> declarations;
+        final List<CallSite> calls;
+
+        FileEntry(Instant modified, List<Declaration> declarations, List<CallSite> calls) {
+            this.modified = modified;
+            this.declarations = declarations;
+            this.calls = calls;
+        }
+    }
+
+    public static class Call {
+        public final Declaration declaration;
+        public final List<Range> ranges = new ArrayList<>();
+
+        Call(Declaration declaration) {
+            this.declaration = declaration;
+        }
+    }
+
+    private final Map<Path, FileEntry> files = new HashMap<>();
+    private final Map<String, Declaration> declarations = new HashMap<>();
+    private final Map<String, List<CallSite>> incoming = new HashMap<>(), outgoing = new HashMap<>();
+
+    /** The key that identifies `method` in the index, like `com.example.Foo#bar(int,java.lang.String)`. */
+    public static String key(CompileTask task, ExecutableElement method) {
+        var parent = (TypeElement) method.getEnclosingElement();
+        var erased = FindHelper.erasedParameterTypes(task, method);
+        return parent.getQualifiedName() + "#" + method.getSimpleName() + "(" + String.join(",", erased) + ")";
+    }
+
+    /** The qualified name of the top-level class that encloses `element`. */
+    public static String topLevelClassName(Element element) {
+        while (element.getEnclosingElement() != null
+                && element.getEnclosingElement().getKind() != ElementKind.PACKAGE) {
+            element = element.getEnclosingElement();
+        }
+        if (element instanceof TypeElement) {
+            return ((TypeElement) element).getQualifiedName().toString();
+        }
+        return "";
+    }
+
+    /** Index every file in `task`, replacing what we knew about those files. */
+    public synchronized void index(CompileTask task) {
+        for (var root : task.roots) {
+            var file = Paths.get(root.getSourceFile().toUri());
+            var declarations = new ArrayList<Declaration>();
+            var calls = new ArrayList<CallSite>();
+            new IndexCalls(task, file, declarations, calls).scan(root, null);
+            update(file, new FileEntry(FileStore.modified(file), declarations, calls));
+        }
+    }
+
+    private void update(Path file, FileEntry entry) {
+        var existing = files.get(file);
+        // If the signatures declared in this file changed, calls in other files may now resolve differently
+        if (existing != null && !sameDeclarations(existing, entry)) {
+            var dependents = new HashSet<Path>();
+            for (var d : existing.declarations) {
+                for (var call : incoming.getOrDefault(d.key, List.of())) {
+                    if (!call.file.equals(file)) dependents.add(call.file);
+                }
+            }
+            for (var d : dependents) {
+                remove(d);
+            }
+        }
+        remove(file);
+        files.put(file, entry);
+        for (var d : entry.declarations) {
+            declarations.put(d.key, d);
+        }
+        for (var call : entry.calls) {
+            incoming.computeIfAbsent(call.callee, __ -> new ArrayList<>()).add(call);
+            outgoing.computeIfAbsent(call.caller, __ -> new ArrayList<>()).add(call);
+        }
+    }
+
+    private boolean sameDeclarations(FileEntry a, FileEntry b) {
+        if (a.declarations.size() != b.declarations.size()) return false;
+        for (var i = 0; i < a.declarations.size(); i++) {
+            if (!a.declarations.get(i).sameSignature(b.declarations.get(i))) return false;
+        }
+        return true;
+    }
+
+    private void remove(Path file) {
+        var existing = files.remove(file);
+        if (existing == null) return;
+        for (var d : existing.declarations) {
+            declarations.remove(d.key, d);
+        }
+        for (var call : existing.calls) {
+            removeCall(incoming, call.callee, call);
+            removeCall(outgoing, call.caller, call);
+        }
+    }
+
+    private static void removeCall(Map<String, List<CallSite>> calls, String key, CallSite call) {
+        var list = calls.get(key);
+        if (list == null) return;
+        list.remove(call);
+        if (list.isEmpty()) calls.remove(key);
+    }
+
+    private boolean isFresh(Path file) {
+        var entry = files.get(file);
+        return entry != null && entry.modified.equals(FileStore.modified(file));
+    }
+
+    /**
+     * Compile and index the files in `candidates` that have been modified since they were last indexed, and forget the
+     * ones that have been deleted.
+     */
+    private void refresh(CompilerProvider compiler, Collection<Path> candidates) {
+        var stale = new ArrayList<Path>();
+        for (var f : candidates) {
+            if (!FileStore.contains(f)) remove(f);
+            else if (!isFresh(f)) stale.add(f);
+        }
+        if (stale.isEmpty()) return;
+        LOG.info("...index calls in " + stale.size() + " files");
+        for (var batch : CompilerProvider.batches(stale.toArray(Path[]::new))) {
+            try (var task = compiler.compile(batch)) {
+                index(task);
+            }
+        }
+    }
+
+    /** The declaration of the method identified by `key`, which is declared in the top-level class `className`. */
+    public synchronized Optional<Declaration> declaration(CompilerProvider compiler, String className, String key) {
+        if (!declarations.containsKey(key)) {
+            var file = compiler.findTypeDeclaration(className);
+            if (file == CompilerProvider.NOT_FOUND) return Optional.empty();
+            refresh(compiler, List.of(file));
+        }
+        return Optional.ofNullable(declarations.get(key));
+    }
+
+    /** The methods that call the method identified by `key`, grouped by caller. */
+    public synchronized List<Call> incomingCalls(CompilerProvider compiler, String key) {
+        if (!key.contains("#")) return List.of();
+        var className = key.substring(0, key.indexOf('#'));
+        var memberName = key.substring(key.indexOf('#') + 1, key.indexOf('('));
+        if (memberName.equals("<init>")) {
+            memberName = StringSearch.lastName(className);
+        }
+        var candidates = new HashSet<>(List.of(compiler.findMemberReferences(className, memberName)));
+        // A file that called the method may have been deleted, or edited so it no longer mentions the method, and
+        // then it is not a candidate, so forget its calls instead of waiting for it to be re-indexed
+        var callers = new HashSet<Path>();
+        for (var call : incoming.getOrDefault(key, List.of())) {
+            callers.add(call.file);
+        }
+        for (var f : callers) {
+            if (!candidates.contains(f)) remove(f);
+        }
+        refresh(compiler, candidates);
+        return group(incoming.getOrDefault(key, List.of()), true);
+    }
+
+    /** The methods that the method identified by `key` calls, grouped by callee. */
+    public synchronized List<Call> outgoingCalls(CompilerProvider compiler, String key) {
+        var declaration = declarations.get(key);
+        if (declaration == null) return List.of();
+        refresh(compiler, List.of(declaration.file));
+        // Index the files that declare the callees, so we know where they are
+        var declaringFiles = new HashSet<Path>();
+        for (var call : outgoing.getOrDefault(key, List.of())) {
+            if (declarations.containsKey(call.callee)) continue;
+            var file = compiler.findTypeDeclaration(call.calleeTopLevel);
+            if (file != CompilerProvider.NOT_FOUND) declaringFiles.add(file);
+        }
+        refresh(compiler, declaringFiles);
+        return group(outgoing.getOrDefault(key, List.of()), false);
+    }
+
+    private List<Call> group(List<CallSite> calls, boolean byCaller) {
+        var grouped = new LinkedHashMap<String, Call>();
+        for (var call : calls) {
+            var key = byCaller ? call.caller : call.callee;
+            var declaration = declarations.get(key);
+            // Methods outside the workspace, like library methods, aren't indexed
+            if (declaration == null) continue;
+            grouped.computeIfAbsent(key, __ -> new Call(declaration)).ranges.add(call.range);
+        }
+        return new ArrayList<>(grouped.values());
+    }
+
+    private static class IndexCalls extends TreePathScanner<Void, Void> {
+        private final CompileTask task;
+        private final Trees trees;
+        private final Path file;
+        private final List<Declaration> declarations;
+        private final List<CallSite> calls;
+        private final Deque<String> callers = new ArrayDeque<>();
+
+        IndexCalls(CompileTask task, Path file, List<Declaration> declarations, List<CallSite> calls) {
+            this.task = task;
+            this.trees = Trees.instance(task.task);
+            this.file = file;
+            this.declarations = declarations;
+            this.calls = calls;
+        }
+
+        @Override
+        public Void visitClass(ClassTree t, Void __) {
+            var element = trees.getElement(getCurrentPath());
+            // Calls in anonymous and local classes count as calls from the enclosing method
+            if (!(element instanceof TypeElement) || isLocal(element)) {
+                return super.visitClass(t, null);
+            }
+            var type = (TypeElement) element;
+            var key = type.getQualifiedName().toString();
+            declare(getCurrentPath(), key, t.getSimpleName(), SymbolKind.Class);
+            callers.push(key);
+            super.visitClass(t, null);
+            callers.pop();
+            return null;
+        }
+
+        @Override
+        public Void visitMethod(MethodTree t, Void __) {
+            var element = trees.getElement(getCurrentPath());
+            if (!(element instanceof ExecutableElement) || isLocal(element.getEnclosingElement())) {
+                return super.visitMethod(t, null);
+            }
+            var method = (ExecutableElement) element;
+            var key = key(task, method);
+            var isConstructor = method.getKind() == ElementKind.CONSTRUCTOR;
+            var name = isConstructor ? method.getEnclosingElement().getSimpleName() : method.getSimpleName();
+            // The default constructor has no position of its own, so point to the class instead
+            if (isGenerated(t)) {
+                declare(getCurrentPath().getParentPath(), key, name, SymbolKind.Constructor);
+                return null;
+            }
+            declare(getCurrentPath(), key, name, isConstructor ? SymbolKind.Constructor : SymbolKind.Method);
+            callers.push(key);
+            super.visitMethod(t, null);
+            callers.pop();
+            return null;
+        }
+
+        @Override
+        public Void visitMethodInvocation(MethodInvocationTree t, Void __) {
+            var select = new TreePath(getCurrentPath(), t.getMethodSelect());
+            var element = trees.getElement(select);
+            if (element instanceof ExecutableElement && hasPosition(select)) {
+                CharSequence name = element.getSimpleName();
+                // this(...) and super(...) don't have a name we can find in the source
+                if (element.getKind() == ElementKind.CONSTRUCTOR) name = select.getLeaf().toString();
+                call((ExecutableElement) element, FindHelper.location(task, select, name).range);
+            }
+            return super.visitMethodInvocation(t, null);
+        }
+
+        @Override
+        public Void visitNewClass(NewClassTree t, Void __) {
+            var element = trees.getElement(getCurrentPath());
+            var identifier = new TreePath(getCurrentPath(), t.getIdentifier());
+            if (element instanceof ExecutableElement && t.getClassBody() == null && hasPosition(identifier)) {
+                call((ExecutableElement) element, FindHelper.location(task, identifier).range);
+            }
+            return super.visitNewClass(t, null);
+        }
+
+        private boolean isGenerated(MethodTree t) {
+            var root = getCurrentPath().getCompilationUnit();
+            return trees.getSourcePositions().getEndPosition(root, t) == -1;
+        }
+
+        /** Code that javac generates, like the super() call in a default constructor, has no position. */
+        private boolean hasPosition(TreePath path) {
+            var pos = trees.getSourcePositions();
+            var root = path.getCompilationUnit();
+            return pos.getStartPosition(root, path.getLeaf()) != -1 && pos.getEndPosition(root, path.getLeaf()) != -1;
+        }
+
+        private void declare(TreePath path, String key, CharSequence name, int kind) {
+            var range = FindHelper.location(task, path).range;
+            var selectionRange = FindHelper.location(task, path, name).range;
+            var detail = className(path);
+            declarations.add(new Declaration(key, name.toString(), detail, kind, file, range, selectionRange));
+        }
+
+        private void call(ExecutableElement callee, Range range) {
+            if (callers.isEmpty()) return;
+            var key = key(task, callee);
+            calls.add(new CallSite(file, callers.peek(), key, topLevelClassName(callee), range));
+        }
+
+        private String className(TreePath path) {
+            var packageName = Objects.toString(path.getCompilationUnit().getPackageName(), "");
+            var names = new ArrayList<String>();
+            for (var p = path; p != null; p = p.getParentPath()) {
+                if (p.getLeaf() instanceof ClassTree && p.getLeaf() != path.getLeaf()) {
+                    names.add(0, ((ClassTree) p.getLeaf()).getSimpleName().toString());
+                }
+            }
+            if (names.isEmpty()) return packageName;
+            var className = String.join(".", names);
+            return packageName.isEmpty() ? className : packageName + "." + className;
+        }
+
+        private boolean isLocal(Element type) {
+            if (!(type instanceof TypeElement)) return false;
+            var nesting = ((TypeElement) type).getNestingKind();
+            return nesting == NestingKind.ANONYMOUS || nesting == NestingKind.LOCAL;
+        }
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
@@ -0,0 +1,206 @@
+package org.javacs;
+
+import static org.javacs.JsonHelper.GSON;
+
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.javacs.lsp.DiagnosticSeverity;
+import org.javacs.lsp.PublishDiagnosticsParams;
+import org.javacs.markup.ErrorProvider;
+
+/**
+ * Check the whole workspace, or a list of files, without an editor. Files are compiled one package at a time by several
+ * threads, each with its own compiler, and the diagnostics of each file are printed as one line of JSON.
+ *
+ * <p>Usage: --check [--root dir] [--threads n] [--quiet] [file.java ...]
+ *
+ * <p>--quiet only prints files that have diagnostics.
+ */
+class Check {
+    /** Split packages larger than this, so one huge package doesn't keep one thread busy while the others are idle. */
+    static final int MAX_BATCH_SIZE = 200;
+
+    static final String USAGE = "Usage: --check [--root dir] [--threads n] [--quiet] [file.java ...]";
+
+    private final Path root;
+    private final int threads;
+    private final List<Path> files;
+    private final boolean quiet;
+    private final PrintStream out;
+    private final AtomicInteger checked = new AtomicInteger(), errors = new AtomicInteger();
+
+    Check(Path root, int threads, List<Path> files, boolean quiet, PrintStream out) {
+        this.root = root;
+        this.threads = threads;
+        this.files = files;
+        this.quiet = quiet;
+        this.out = out;
+    }
+
+    /** Run a check from the command line. Returns 0 if there are no errors, 1 if there are, and 2 for bad arguments. */
+    static int main(List<String> args) {
+        var root = Paths.get("").toAbsolutePath();
+        var threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), 4));
+        var quiet = false;
+        var files = new ArrayList<Path>();
+        for (var i = 0; i < args.size(); i++) {
+            var arg = args.get(i);
+            switch (arg) {
+                case "--check":
+                    break;
+                case "--quiet":
+                    quiet = true;
+                    break;
+                case "--root":
+                    if (i + 1 == args.size()) return usage("--root needs a directory");
+                    root = Paths.get(args.get(++i)).toAbsolutePath();
+                    break;
+                case "--threads":
+                    if (i + 1 == args.size()) return usage("--threads needs a number");
+                    try {
+                        threads = Integer.parseInt(args.get(++i));
+                    } catch (NumberFormatException e) {
+                        return usage("--threads needs a number, not " + args.get(i));
+                    }
+                    if (threads < 1) return usage("--threads must be at least 1");
+                    break;
+                default:
+                    if (arg.startsWith("--")) return usage("Unknown option " + arg);
+                    files.add(Paths.get(arg));
+            }
+        }
+        var check = new Check(root.normalize(), threads, files, quiet, System.out);
+        return check.run() ? 0 : 1;
+    }
+
+    private static int usage(String problem) {
+        System.err.println(problem);
+        System.err.println(USAGE);
+        return 2;
+    }
+
+    /** Check every file, and return true if none of them have errors. */
+    boolean run() {
+        var started = Instant.now();
+        FileStore.setWorkspaceRoots(Set.of(root));
+        var batches = batches(sources());
+        var infer = new InferConfig(root);
+        var classPath = infer.classPath();
+        var docPath = infer.buildDocPath();
+        LOG.info(
+                String.format(
+                        "Check %,d files in %,d batches using %d threads", count(batches), batches.size(), threads));
+        var queue = new ConcurrentLinkedQueue<>(batches);
+        var workers = new ArrayList<Thread>();
+        for (var i = 0; i < threads; i++) {
+            // Each thread has its own compiler, because a compiler can only run one task at a time
+            Runnable work = () -> work(new JavaCompilerService(classPath, docPath, Set.of()), queue);
+            var worker = new Thread(work, "check-" + i);
+            worker.setUncaughtExceptionHandler(
+                    (t, e) -> {
+                        LOG.log(Level.SEVERE, t.getName() + " failed", e);
+                        errors.incrementAndGet();
+                    });
+            worker.start();
+            workers.add(worker);
+        }
+        for (var worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        // Save what we learned about the workspace, so the next check starts warm
+        FileStore.saveSnapshots();
+        var elapsed = Duration.between(started, Instant.now()).toMillis();
+        var rate = checked.get() * 1000.0 / Math.max(1, elapsed);
+        System.err.println(
+                String.format(
+                        "Checked %,d files in %,d ms, %,.1f files/sec, %,d errors",
+                        checked.get(), elapsed, rate, errors.get()));
+        return errors.get() == 0;
+    }
+
+    /** The files to check: the files we were given, or every source file in the workspace. */
+    private List<Path> sources() {
+        if (files.isEmpty()) {
+            return new ArrayList<>(FileStore.all());
+        }
+        var sources = new ArrayList<Path>();
+        for (var f : files) {
+            var file = f.toAbsolutePath().normalize();
+            if (!FileStore.isJavaFile(file)) {
+                LOG.warning("Skip " + file + " because it's not a java source");
+                continue;
+            }
+            // Look up the package now, so FileStore isn't modified while the workers are reading it
+            FileStore.packageName(file);
+            sources.add(file);
+        }
+        return sources;
+    }
+
+    /** Group `sources` by package, largest batches first, so the threads finish at about the same time. */
+    static List<List<Path>> batches(List<Path> sources) {
+        var byPackage = new TreeMap<String, List<Path>>();
+        for (var file : sources) {
+            byPackage.computeIfAbsent(FileStore.packageName(file), __ -> new ArrayList<>()).add(file);
+        }
+        var batches = new ArrayList<List<Path>>();
+        for (var list : byPackage.values()) {
+            for (var i = 0; i < list.size(); i += MAX_BATCH_SIZE) {
+                batches.add(list.subList(i, Math.min(i + MAX_BATCH_SIZE, list.size())));
+            }
+        }
+        batches.sort(Comparator.comparing(List<Path>::size).reversed());
+        return batches;
+    }
+
+    private static int count(List<List<Path>> batches) {
+        var count = 0;
+        for (var b : batches) {
+            count += b.size();
+        }
+        return count;
+    }
+
+    private void work(JavaCompilerService compiler, ConcurrentLinkedQueue<List<Path>> queue) {
+        for (var batch = queue.poll(); batch != null; batch = queue.poll()) {
+            try (var task = compiler.compile(batch.toArray(Path[]::new))) {
+                for (var errs : new ErrorProvider(task).errors()) {
+                    report(errs);
+                }
+            } catch (RuntimeException e) {
+                LOG.log(Level.SEVERE, "Failed to check " + batch, e);
+                errors.incrementAndGet();
+            }
+        }
+    }
+
+    private void report(PublishDiagnosticsParams errs) {
+        checked.incrementAndGet();
+        for (var d : errs.diagnostics) {
+            if (d.severity == DiagnosticSeverity.Error) {
+                errors.incrementAndGet();
+            }
+        }
+        if (quiet && errs.diagnostics.isEmpty()) return;
+        // println holds the lock on `out`, so lines from different threads don't interleave
+        out.println(GSON.toJson(errs));
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
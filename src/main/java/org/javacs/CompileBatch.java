@@ -4,9 +4,10 @@ import com.sun.source.tree.*;
 import com.sun.source.util.*;
 import java.io.File;
 import java.io.IOException;
+import java.net.URI;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.*;
+import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import javax.lang.model.util.*;
 import javax.tools.*;
@@ -25,9 +26,24 @@ class CompileBatch implements AutoCloseable {
     final Types types;
     final List<CompilationUnitTree> roots;
 
-    CompileBatch(JavaCompilerService parent, Collection<? extends JavaFileObject> files) {
+    /**
+     * Compile `files`. `dependencies` are compiled alongside them, so javac can find classes it can't look up on the
+     * source path, but they aren't included in `roots`. If `progress` is cancelled part-way through, the borrowed
+     * compiler is returned and CompileBatch throws CancellationException.
+     */
+    CompileBatch(
+            JavaCompilerService parent,
+            Collection<? extends JavaFileObject> files,
+            Collection<? extends JavaFileObject> dependencies,
+            Progress progress) {
         this.parent = parent;
-        this.borrow = batchTask(parent, files);
+        var all = new ArrayList<JavaFileObject>(files);
+        all.addAll(dependencies);
+        var skip = new HashSet<URI>();
+        for (var d : dependencies) {
+            skip.add(d.toUri());
+        }
+        this.borrow = batchTask(parent, all, progress);
         this.task = borrow.task;
         this.trees = Trees.instance(borrow.task);
         this.elements = borrow.task.getElements();
@@ -36,6 +52,9 @@ class CompileBatch implements AutoCloseable {
         // Compile all roots
         try {
             for (var t : borrow.task.parse()) {
+                // module-info.java is only there to put javac in module mode, callers didn't ask for it
+                if (t.getModule() != null) continue;
+                if (skip.contains(t.getSourceFile().toUri())) continue;
                 roots.add(t);
             }
             // The results of borrow.task.analyze() are unreliable when errors are present
@@ -43,66 +62,43 @@ class CompileBatch implements AutoCloseable {
             borrow.task.analyze();
         } catch (IOException e) {
             throw new RuntimeException(e);
+        } catch (RuntimeException e) {
+            var cancelled = ReusableCompiler.cancelled(e);
+            if (cancelled == null) throw e;
+            borrow.close();
+            LOG.info("..." + cancelled.getMessage());
+            throw cancelled;
+        } finally {
+            borrow.releaseProgress();
         }
     }
 
-    /**
-     * If the compilation failed because javac didn't find some package-private files in source files with different
-     * names, list those source files.
-     */
-    Set<Path> needsAdditionalSources() {
-        // Check for "class not found errors" that refer to package private classes
-        var addFiles = new HashSet<Path>();
-        for (var err : parent.diags) {
-            if (!err.getCode().equals("compiler.err.cant.resolve.location")) continue;
-            if (!isValidFileRange(err)) continue;
-            var className = errorText(err);
-            var packageName = packageName(err);
-            var location = findPackagePrivateClass(packageName, className);
-            if (location != FILE_NOT_FOUND) {
-                addFiles.add(location);
-            }
-        }
-        return addFiles;
-    }
-
-    private String errorText(javax.tools.Diagnostic<? extends javax.tools.JavaFileObject> err) {
-        var file = Paths.get(err.getSource().toUri());
-        var contents = FileStore.contents(file);
-        var begin = (int) err.getStartPosition();
-        var end = (int) err.getEndPosition();
-        return contents.substring(begin, end);
-    }
-
-    private String packageName(javax.tools.Diagnostic<? extends javax.tools.JavaFileObject> err) {
-        var file = Paths.get(err.getSource().toUri());
-        return FileStore.packageName(file);
-    }
-
-    private static final Path FILE_NOT_FOUND = Paths.get("");
-
-    private Path findPackagePrivateClass(String packageName, String className) {
-        for (var file : FileStore.list(packageName)) {
-            var parse = Parser.parseFile(file);
-            for (var candidate : parse.packagePrivateClasses()) {
-                if (candidate.contentEquals(className)) {
-                    return file;
-                }
-            }
-        }
-        return FILE_NOT_FOUND;
-    }
-
     @Override
     public void close() {
         closed = true;
     }
 
     private static ReusableCompiler.Borrow batchTask(
-            JavaCompilerService parent, Collection<? extends JavaFileObject> sources) {
+            JavaCompilerService parent, Collection<? extends JavaFileObject> sources, Progress progress) {
         parent.diags.clear();
-        var options = options(parent.classPath, parent.addExports);
-        return parent.compiler.getTask(parent.fileManager, parent.diags::add, options, List.of(), sources);
+        parent.errorsPerFile.clear();
+        var moduleInfo = parent.moduleInfo(sources);
+        var moduleName = moduleInfo.flatMap(StringSearch::moduleName);
+        if (moduleInfo.isPresent() && moduleName.isEmpty()) {
+            LOG.warning("...no module declaration in " + moduleInfo.get() + ", compile in class path mode");
+        }
+        if (moduleName.isEmpty()) {
+            parent.fileManager.moduleRoot = null;
+            var options = options(parent.classPath, parent.addExports, null);
+            return parent.compiler.getTask(parent.fileManager, parent::report, options, List.of(), sources, progress);
+        }
+        // All sources belong to the same module, so compile them together with module-info.java in module mode
+        LOG.info("...compile in module mode for module " + moduleName.get());
+        parent.fileManager.moduleRoot = moduleInfo.get().getParent();
+        var options = options(parent.classPath, parent.addExports, moduleName.get());
+        var moduleSources = new ArrayList<JavaFileObject>(sources);
+        moduleSources.add(parent.fileManager.moduleInfo(moduleInfo.get()));
+        return parent.compiler.getTask(parent.fileManager, parent::report, options, List.of(), moduleSources, progress);
     }
 
     /** Combine source path or class path entries using the system separator, for example ':' in unix */
@@ -110,11 +106,19 @@ class CompileBatch implements AutoCloseable {
         return classOrSourcePath.stream().map(Path::toString).collect(Collectors.joining(File.pathSeparator));
     }
 
-    private static List<String> options(Set<Path> classPath, Set<String> addExports) {
+    /**
+     * javac options for compiling against `classPath`. If moduleName is null, everything goes on a flat class path.
+     * Otherwise, classPath becomes the module path, and javac only resolves the modules that moduleName requires.
+     */
+    private static List<String> options(Set<Path> classPath, Set<String> addExports, String moduleName) {
         var list = new ArrayList<String>();
 
-        Collections.addAll(list, "-classpath", joinPath(classPath));
-        Collections.addAll(list, "--add-modules", "ALL-MODULE-PATH");
+        if (moduleName == null) {
+            Collections.addAll(list, "-classpath", joinPath(classPath));
+            Collections.addAll(list, "--add-modules", "ALL-MODULE-PATH");
+        } else {
+            Collections.addAll(list, "--module-path", joinPath(classPath));
+        }
         // Collections.addAll(list, "-verbose");
         Collections.addAll(list, "-proc:none");
         Collections.addAll(list, "-g");
@@ -131,15 +135,14 @@ class CompileBatch implements AutoCloseable {
                 "-Xlint:unchecked",
                 "-Xlint:varargs",
                 "-Xlint:static");
+        var exportTo = moduleName == null ? "ALL-UNNAMED" : moduleName;
         for (var export : addExports) {
             list.add("--add-exports");
-            list.add(export + "=ALL-UNNAMED");
+            list.add(export + "=" + exportTo);
         }
 
         return list;
     }
 
-    private boolean isValidFileRange(javax.tools.Diagnostic<? extends JavaFileObject> d) {
-        return d.getSource().toUri().getScheme().equals("file") && d.getStartPosition() >= 0 && d.getEndPosition() >= 0;
-    }
+    private static final Logger LOG = Logger.getLogger("main");
 }
@@ -3,7 +3,9 @@ package org.javacs;
 import com.sun.source.tree.CompilationUnitTree;
 import com.sun.source.util.JavacTask;
 import java.nio.file.Path;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import javax.tools.Diagnostic;
 import javax.tools.JavaFileObject;
 
@@ -12,6 +14,7 @@ public class CompileTask implements AutoCloseable {
     public final List<CompilationUnitTree> roots;
     public final List<Diagnostic<? extends JavaFileObject>> diagnostics;
     private final Runnable close;
+    private final Map<CompilationUnitTree, SourceText> texts = new IdentityHashMap<>();
 
     public CompilationUnitTree root() {
         if (roots.size() != 1) {
@@ -38,6 +41,11 @@ public class CompileTask implements AutoCloseable {
         throw new RuntimeException("not found");
     }
 
+    /** The text of `root`, read once per compilation and shared by everything that converts offsets to ranges. */
+    public synchronized SourceText text(CompilationUnitTree root) {
+        return texts.computeIfAbsent(root, SourceText::of);
+    }
+
     public CompileTask(
             JavacTask task,
             List<CompilationUnitTree> roots,
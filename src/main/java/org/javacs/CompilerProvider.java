@@ -2,6 +2,8 @@ package org.javacs;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
@@ -33,5 +35,43 @@ public interface CompilerProvider {
 
     CompileTask compile(Collection<? extends JavaFileObject> sources);
 
+    /**
+     * Compile `files`, checking `progress` between javac phases and compilation units. If the client cancels, the
+     * compilation stops early and throws CancellationException, and the compiler is ready for the next request.
+     */
+    CompileTask compile(Progress progress, Path... files);
+
+    CompileTask compile(Collection<? extends JavaFileObject> sources, Progress progress);
+
+    /**
+     * Compile `file` to answer a question about the position `line`, `column` (1-based). Method bodies that don't
+     * contain the position are erased first, so the compile takes time proportional to one method, not the whole file.
+     * Elements declared in other method bodies of `file` aren't available.
+     */
+    CompileTask compileAt(Path file, int line, int column, Progress progress);
+
     Path NOT_FOUND = Paths.get("");
+
+    /**
+     * MAX_BATCH_SIZE is the largest number of files that whole-workspace operations like find-references and rename
+     * compile at once. Smaller batches use less memory, let us report progress, and let us stop early when cancelled.
+     */
+    int MAX_BATCH_SIZE = 50;
+
+    /**
+     * MAX_ERRORS_PER_FILE is the number of errors after which we stop collecting diagnostics from a file, and skip our
+     * own lint passes over it. javac still attributes the whole file, so this doesn't make the compile itself faster;
+     * it bounds the diagnostics we keep, publish and offer code actions for when a file is badly broken, which it
+     * usually is in the middle of a refactoring.
+     */
+    int MAX_ERRORS_PER_FILE = 50;
+
+    /** Split `files` into batches of at most MAX_BATCH_SIZE files. */
+    static List<Path[]> batches(Path[] files) {
+        var batches = new ArrayList<Path[]>();
+        for (var i = 0; i < files.length; i += MAX_BATCH_SIZE) {
+            batches.add(Arrays.copyOfRange(files, i, Math.min(files.length, i + MAX_BATCH_SIZE)));
+        }
+        return batches;
+    }
 }
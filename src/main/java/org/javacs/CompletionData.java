@@ -1,6 +1,9 @@
 package org.javacs;
 
 public class CompletionData {
+    /** The file completion was requested in, so resolving the item uses the compiler of the same root. */
+    public String uri;
+
     public String className, memberName;
     public String[] erasedParameterTypes;
     public int plusOverloads;
@@ -4,9 +4,11 @@ import java.io.*;
 import java.net.URI;
 import java.nio.file.*;
 import java.nio.file.attribute.*;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 import javax.lang.model.element.TypeElement;
 import org.javacs.lsp.DidChangeTextDocumentParams;
 import org.javacs.lsp.DidCloseTextDocumentParams;
@@ -23,21 +25,63 @@ public class FileStore {
     // TODO organize by package name for speed of list(...)
     private static final TreeMap<Path, Info> javaSources = new TreeMap<>();
 
+    /** moduleInfos is every module-info.java in the workspace. They are not in javaSources, see isJavaFile(_). */
+    private static final Set<Path> moduleInfos = new HashSet<>();
+
+    /** Open module-info.java files, kept apart from activeDocuments so they are never linted as ordinary sources. */
+    private static final Map<Path, VersionedContent> activeModuleInfos = new HashMap<>();
+
     private static class Info {
         final Instant modified;
+        final long size;
         final String packageName;
 
-        Info(Instant modified, String packageName) {
+        Info(Instant modified, long size, String packageName) {
             this.modified = modified;
+            this.size = size;
             this.packageName = packageName;
         }
     }
 
+    /**
+     * directories[dir] is the modified time of a directory in the workspace, and the names of the java sources and
+     * subdirectories it contained at that time. If the modified time hasn't changed, neither have the names.
+     */
+    private static final Map<Path, Directory> directories = new HashMap<>();
+
+    private static class Directory {
+        final FileTime modified;
+        final List<String> children;
+
+        Directory(FileTime modified, List<String> children) {
+            this.modified = modified;
+            this.children = children;
+        }
+    }
+
+    /** sweptAt[root] is when we started looking at the disk for the java sources in root. */
+    private static final Map<Path, Instant> sweptAt = new HashMap<>();
+
+    /**
+     * Where we keep a snapshot of each workspace root between restarts, or null to not keep snapshots. Main sets this
+     * to defaultCacheDirectory(), so tests and other embedders don't share snapshots with the real server.
+     */
+    private static Path cacheDirectory = null;
+
+    /** True if javaSources has changed since we last saved the snapshots. */
+    private static boolean snapshotsChanged;
+
+    private static Instant snapshotsSaved = Instant.now();
+
     static void setWorkspaceRoots(Set<Path> newRoots) {
         newRoots = normalize(newRoots);
         for (var root : workspaceRoots) {
             if (!newRoots.contains(root)) {
-                workspaceRoots.removeIf(f -> f.startsWith(root));
+                saveSnapshot(root);
+                javaSources.keySet().removeIf(f -> f.startsWith(root));
+                moduleInfos.removeIf(f -> f.startsWith(root));
+                directories.keySet().removeIf(f -> f.startsWith(root));
+                sweptAt.remove(root);
             }
         }
         for (var root : newRoots) {
@@ -57,33 +101,264 @@ public class FileStore {
         return normalize;
     }
 
+    /**
+     * Find the java sources in root. If we have a snapshot from the last time the server ran, we only look at the disk
+     * for what changed since: a file is re-read only if its modified time or size changed, and a directory is re-listed
+     * only if its modified time changed.
+     */
     private static void addFiles(Path root) {
+        var started = Instant.now();
+        var snapshot = readSnapshot(root);
+        var sweep = new Sweep(snapshot);
         try {
-            Files.walkFileTree(root, new FindJavaSources());
+            sweep.visit(root);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        var changed = sweep.changed;
+        var infos = new Info[changed.size()];
+        IntStream.range(0, infos.length).parallel().forEach(i -> infos[i] = readInfo(changed.get(i)));
+        javaSources.putAll(sweep.unchanged);
+        for (var i = 0; i < infos.length; i++) {
+            if (infos[i] != null) {
+                javaSources.put(changed.get(i), infos[i]);
+            }
+        }
+        moduleInfos.addAll(sweep.moduleInfos);
+        directories.putAll(sweep.directories);
+        sweptAt.put(root, started);
+        if (!changed.isEmpty() || sweep.listed > 0) {
+            snapshotsChanged = true;
+        }
+        var elapsed = Duration.between(started, Instant.now()).toMillis();
+        LOG.info(
+                String.format(
+                        "...found %,d files in %s in %,d ms, re-read %,d files and %,d directories",
+                        sweep.unchanged.size() + changed.size(),
+                        root,
+                        elapsed,
+                        changed.size(),
+                        sweep.listed));
+    }
+
+    /** Don't trust directories modified this close to a sweep, in case the file system only keeps whole seconds. */
+    private static final Duration RACY = Duration.ofSeconds(2);
+
+    /** Walks a workspace root, comparing what's on disk with a snapshot. */
+    private static class Sweep {
+        final Snapshot snapshot;
+        final Instant trustBefore;
+        final Map<Path, Directory> directories = new HashMap<>();
+        final Map<Path, Info> unchanged = new HashMap<>();
+        final List<Path> changed = new ArrayList<>(), moduleInfos = new ArrayList<>();
+        int listed;
+
+        Sweep(Snapshot snapshot) {
+            this.snapshot = snapshot;
+            this.trustBefore = snapshot.sweptAt.minus(RACY);
+        }
+
+        void visit(Path path) throws IOException {
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            } catch (NoSuchFileException e) {
+                return;
+            }
+            if (attrs.isDirectory()) {
+                visitDirectory(path, attrs.lastModifiedTime());
+            } else if (isModuleInfo(path)) {
+                moduleInfos.add(path);
+            } else if (isJavaFile(path)) {
+                visitFile(path, attrs);
+            }
+        }
+
+        private void visitDirectory(Path dir, FileTime modified) throws IOException {
+            var known = snapshot.directories.get(dir);
+            List<String> children;
+            if (known != null && known.modified.equals(modified) && modified.toInstant().isBefore(trustBefore)) {
+                children = known.children;
+            } else {
+                children = list(dir);
+                listed++;
+            }
+            directories.put(dir, new Directory(modified, children));
+            for (var name : children) {
+                visit(dir.resolve(name));
+            }
+        }
+
+        private void visitFile(Path file, BasicFileAttributes attrs) {
+            var known = snapshot.files.get(file);
+            var same =
+                    known != null
+                            && !attrs.isSymbolicLink()
+                            && known.modified.equals(attrs.lastModifiedTime().toInstant())
+                            && known.size == attrs.size();
+            if (same) {
+                unchanged.put(file, known);
+            } else {
+                changed.add(file);
+            }
+        }
+
+        /** The java sources and subdirectories of dir. Symbolic links to directories are not followed. */
+        private static List<String> list(Path dir) throws IOException {
+            var children = new ArrayList<String>();
+            try (var stream = Files.newDirectoryStream(dir)) {
+                for (var child : stream) {
+                    var name = child.getFileName().toString();
+                    if (name.endsWith(".java") || Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                        children.add(name);
+                    }
+                }
+            } catch (AccessDeniedException | NoSuchFileException e) {
+                LOG.warning("Couldn't list " + dir);
+            }
+            return children;
+        }
+    }
+
+    /** What the workspace looked like under one root the last time the server saved it. */
+    private static class Snapshot {
+        Instant sweptAt = Instant.EPOCH;
+        final Map<Path, Directory> directories = new HashMap<>();
+        final Map<Path, Info> files = new HashMap<>();
     }
 
-    static class FindJavaSources extends SimpleFileVisitor<Path> {
-        @Override
-        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
-            if (attrs.isSymbolicLink()) {
-                LOG.warning("Don't check " + dir + " for java sources");
-                return FileVisitResult.SKIP_SUBTREE;
+    private static final int SNAPSHOT_VERSION = 1;
+
+    /** How often to save the snapshots while the server is running. */
+    private static final Duration SNAPSHOT_INTERVAL = Duration.ofMinutes(1);
+
+    static Path defaultCacheDirectory() {
+        var xdg = System.getenv("XDG_CACHE_HOME");
+        Path cache;
+        if (xdg != null && !xdg.isBlank()) {
+            cache = Paths.get(xdg);
+        } else {
+            cache = Paths.get(System.getProperty("user.home")).resolve(".cache");
+        }
+        return cache.resolve("java-language-server").resolve("workspaces");
+    }
+
+    static void setCacheDirectory(Path dir) {
+        cacheDirectory = dir;
+    }
+
+    private static Path snapshotFile(Path root) {
+        return cacheDirectory.resolve(String.format("%08x.snapshot", root.toString().hashCode()));
+    }
+
+    private static Snapshot readSnapshot(Path root) {
+        var snapshot = new Snapshot();
+        if (cacheDirectory == null) return snapshot;
+        var file = snapshotFile(root);
+        if (!Files.exists(file)) return snapshot;
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != SNAPSHOT_VERSION) return snapshot;
+            // Different roots can have the same hash
+            if (!in.readUTF().equals(root.toString())) return snapshot;
+            var sweptAt = readInstant(in);
+            var nDirectories = in.readInt();
+            for (var i = 0; i < nDirectories; i++) {
+                var dir = root.resolve(in.readUTF());
+                var modified = FileTime.from(readInstant(in));
+                var children = new String[in.readInt()];
+                for (var j = 0; j < children.length; j++) {
+                    children[j] = in.readUTF();
+                }
+                snapshot.directories.put(dir, new Directory(modified, List.of(children)));
+            }
+            var nFiles = in.readInt();
+            for (var i = 0; i < nFiles; i++) {
+                var path = root.resolve(in.readUTF());
+                var modified = readInstant(in);
+                var size = in.readLong();
+                var packageName = in.readUTF();
+                snapshot.files.put(path, new Info(modified, size, packageName));
             }
-            return FileVisitResult.CONTINUE;
+            snapshot.sweptAt = sweptAt;
+            return snapshot;
+        } catch (IOException | RuntimeException e) {
+            LOG.warning("Ignored snapshot " + file + ": " + e);
+            return new Snapshot();
+        }
+    }
+
+    /** Save the snapshots if javaSources has changed and we haven't saved them recently. */
+    static void checkpoint() {
+        if (snapshotsChanged && Instant.now().isAfter(snapshotsSaved.plus(SNAPSHOT_INTERVAL))) {
+            saveSnapshots();
+        }
+    }
+
+    /** Save a snapshot of each workspace root, so the next time the server starts it doesn't re-read every file. */
+    static void saveSnapshots() {
+        if (!snapshotsChanged) return;
+        for (var root : workspaceRoots) {
+            saveSnapshot(root);
         }
+        snapshotsChanged = false;
+        snapshotsSaved = Instant.now();
+    }
 
-        @Override
-        public FileVisitResult visitFile(Path file, BasicFileAttributes _attrs) {
-            if (isJavaFile(file)) {
-                readInfoFromDisk(file);
+    private static void saveSnapshot(Path root) {
+        if (cacheDirectory == null || !sweptAt.containsKey(root)) return;
+        var file = snapshotFile(root);
+        try {
+            Files.createDirectories(cacheDirectory);
+            var temp = Files.createTempFile(cacheDirectory, file.getFileName().toString(), ".tmp");
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(SNAPSHOT_VERSION);
+                out.writeUTF(root.toString());
+                writeInstant(out, sweptAt.get(root));
+                var dirs = new ArrayList<Path>();
+                for (var dir : directories.keySet()) {
+                    if (dir.startsWith(root)) dirs.add(dir);
+                }
+                out.writeInt(dirs.size());
+                for (var dir : dirs) {
+                    var d = directories.get(dir);
+                    out.writeUTF(root.relativize(dir).toString());
+                    writeInstant(out, d.modified.toInstant());
+                    out.writeInt(d.children.size());
+                    for (var name : d.children) {
+                        out.writeUTF(name);
+                    }
+                }
+                var files = new ArrayList<Path>();
+                for (var f : javaSources.keySet()) {
+                    if (f.startsWith(root)) files.add(f);
+                }
+                out.writeInt(files.size());
+                for (var f : files) {
+                    var info = javaSources.get(f);
+                    out.writeUTF(root.relativize(f).toString());
+                    writeInstant(out, info.modified);
+                    out.writeLong(info.size);
+                    out.writeUTF(info.packageName);
+                }
             }
-            return FileVisitResult.CONTINUE;
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOG.info("...saved snapshot of " + root + " to " + file);
+        } catch (IOException e) {
+            LOG.warning("Couldn't save snapshot of " + root + ": " + e);
         }
     }
 
+    private static Instant readInstant(DataInput in) throws IOException {
+        var seconds = in.readLong();
+        var nanos = in.readInt();
+        return Instant.ofEpochSecond(seconds, nanos);
+    }
+
+    private static void writeInstant(DataOutput out, Instant instant) throws IOException {
+        out.writeLong(instant.getEpochSecond());
+        out.writeInt(instant.getNano());
+    }
+
     static Collection<Path> all() {
         return javaSources.keySet();
     }
@@ -124,15 +399,18 @@ public class FileStore {
         return dir;
     }
 
-    static boolean contains(Path file) {
+    public static boolean contains(Path file) {
         return isJavaFile(file) && javaSources.containsKey(file);
     }
 
-    static Instant modified(Path file) {
+    public static Instant modified(Path file) {
         // If file is open, use last in-memory modification time
         if (activeDocuments.containsKey(file)) {
             return activeDocuments.get(file).modified;
         }
+        if (isModuleInfo(file)) {
+            return moduleInfoModified(file);
+        }
         // If we've never checked before, look up modified time on disk
         if (!javaSources.containsKey(file)) {
             readInfoFromDisk(file);
@@ -141,6 +419,19 @@ public class FileStore {
         return javaSources.get(file).modified;
     }
 
+    private static Instant moduleInfoModified(Path file) {
+        if (activeModuleInfos.containsKey(file)) {
+            return activeModuleInfos.get(file).modified;
+        }
+        try {
+            return Files.getLastModifiedTime(file).toInstant();
+        } catch (NoSuchFileException e) {
+            return Instant.EPOCH;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     static String packageName(Path file) {
         // If we've never checked before, look up package name on disk
         if (!javaSources.containsKey(file)) {
@@ -179,43 +470,87 @@ public class FileStore {
         return list;
     }
 
-    static void externalCreate(Path file) {
-        readInfoFromDisk(file);
-    }
-
-    static void externalChange(Path file) {
-        readInfoFromDisk(file);
+    /**
+     * Apply a batch of changes made outside the editor, like a `git checkout` or a code generator. Whether each file
+     * was created, changed or deleted is decided by looking at the disk, because events can arrive out of order. The
+     * disk is read in parallel, and then the index is updated in one pass.
+     */
+    static void externalChanges(Collection<Path> files) {
+        var sources = new ArrayList<Path>();
+        for (var file : files) {
+            if (isModuleInfo(file)) {
+                if (Files.exists(file)) moduleInfos.add(file);
+                else moduleInfos.remove(file);
+            } else {
+                sources.add(file);
+            }
+        }
+        var infos = new Info[sources.size()];
+        IntStream.range(0, infos.length).parallel().forEach(i -> infos[i] = readInfo(sources.get(i)));
+        var deleted = 0;
+        for (var i = 0; i < infos.length; i++) {
+            if (infos[i] == null) {
+                javaSources.remove(sources.get(i));
+                deleted++;
+            } else {
+                javaSources.put(sources.get(i), infos[i]);
+            }
+        }
+        snapshotsChanged = true;
+        LOG.info(String.format("...updated %d files and removed %d files", infos.length - deleted, deleted));
+    }
+
+    /** The module-info.java of the module that contains `file`, if the workspace uses JPMS modules. */
+    static Optional<Path> moduleInfo(Path file) {
+        Path found = null;
+        for (var info : moduleInfos) {
+            var root = info.getParent();
+            if (!file.startsWith(root)) continue;
+            if (found == null || root.getNameCount() > found.getParent().getNameCount()) {
+                found = info;
+            }
+        }
+        return Optional.ofNullable(found);
     }
 
-    static void externalDelete(Path file) {
-        javaSources.remove(file);
+    private static void readInfoFromDisk(Path file) {
+        var info = readInfo(file);
+        if (info == null) {
+            LOG.warning(file + " does not exist");
+            javaSources.remove(file);
+        } else {
+            javaSources.put(file, info);
+        }
+        snapshotsChanged = true;
     }
 
-    private static void readInfoFromDisk(Path file) {
+    /** Read the modified time, size and package name of `file` from disk, or null if it doesn't exist. */
+    private static Info readInfo(Path file) {
         try {
-            var time = Files.getLastModifiedTime(file).toInstant();
+            var attrs = Files.readAttributes(file, BasicFileAttributes.class);
             var packageName = StringSearch.packageName(file);
-            javaSources.put(file, new Info(time, packageName));
+            return new Info(attrs.lastModifiedTime().toInstant(), attrs.size(), packageName);
         } catch (NoSuchFileException e) {
-            LOG.warning(e.getMessage());
-            javaSources.remove(file);
+            return null;
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
     static void open(DidOpenTextDocumentParams params) {
-        if (!isJavaFile(params.textDocument.uri)) return;
+        var documents = documents(params.textDocument.uri);
+        if (documents == null) return;
         var document = params.textDocument;
         var file = Paths.get(document.uri);
-        activeDocuments.put(file, new VersionedContent(document.text, document.version));
+        documents.put(file, new VersionedContent(document.text, document.version));
     }
 
     static void change(DidChangeTextDocumentParams params) {
-        if (!isJavaFile(params.textDocument.uri)) return;
+        var documents = documents(params.textDocument.uri);
+        if (documents == null) return;
         var document = params.textDocument;
         var file = Paths.get(document.uri);
-        var existing = activeDocuments.get(file);
+        var existing = documents.get(file);
         if (document.version <= existing.version) {
             LOG.warning("Ignored change with version " + document.version + " <= " + existing.version);
             return;
@@ -225,13 +560,26 @@ public class FileStore {
             if (change.range == null) newText = change.text;
             else newText = patch(newText, change);
         }
-        activeDocuments.put(file, new VersionedContent(newText, document.version));
+        documents.put(file, new VersionedContent(newText, document.version));
     }
 
     static void close(DidCloseTextDocumentParams params) {
-        if (!isJavaFile(params.textDocument.uri)) return;
+        var documents = documents(params.textDocument.uri);
+        if (documents == null) return;
         var file = Paths.get(params.textDocument.uri);
-        activeDocuments.remove(file);
+        documents.remove(file);
+    }
+
+    /** Where open editor contents of `uri` are kept, or null if we don't track that kind of file. */
+    private static Map<Path, VersionedContent> documents(URI uri) {
+        if (isJavaFile(uri)) return activeDocuments;
+        if (uri.getScheme().equals("file") && isModuleInfo(Paths.get(uri))) return activeModuleInfos;
+        return null;
+    }
+
+    /** Is `file` open in the editor, including module-info.java which is not one of the activeDocuments(). */
+    static boolean isOpen(Path file) {
+        return activeDocuments.containsKey(file) || activeModuleInfos.containsKey(file);
     }
 
     static Set<Path> activeDocuments() {
@@ -239,7 +587,11 @@ public class FileStore {
     }
 
     public static String contents(Path file) {
-        if (!isJavaFile(file)) {
+        if (isModuleInfo(file)) {
+            if (activeModuleInfos.containsKey(file)) {
+                return activeModuleInfos.get(file).content;
+            }
+        } else if (!isJavaFile(file)) {
             throw new RuntimeException(file + " is not a java file");
         }
         if (activeDocuments.containsKey(file)) {
@@ -346,15 +698,17 @@ public class FileStore {
 
     static boolean isJavaFile(Path file) {
         var name = file.getFileName().toString();
-        // We hide module-info.java from javac, because when javac sees module-info.java
+        // We hide module-info.java from the ordinary source path, because when javac sees module-info.java
         // it goes into "module mode" and starts looking for classes on the module class path.
-        // This becomes evident when javac starts recompiling *way too much* on each task,
-        // because it doesn't realize there are already up-to-date .class files.
-        // The better solution would be for java-language server to detect the presence of module-info.java,
-        // and go into its own "module mode" where it infers a module source path and a module class path.
+        // Instead, CompileBatch adds module-info.java explicitly when all the files in a batch belong to one module,
+        // and infers a module path and a module-restricted source path to go with it.
         return name.endsWith(".java") && !Files.isDirectory(file) && !name.equals("module-info.java");
     }
 
+    static boolean isModuleInfo(Path file) {
+        return file.getFileName().toString().equals("module-info.java") && !Files.isDirectory(file);
+    }
+
     static boolean isJavaFile(URI uri) {
         return uri.getScheme().equals("file") && isJavaFile(Paths.get(uri));
     }
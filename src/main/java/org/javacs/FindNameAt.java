@@ -4,17 +4,21 @@ import com.sun.source.tree.*;
 import com.sun.source.util.*;
 
 public class FindNameAt extends TreePathScanner<TreePath, Long> {
+    private final CompileTask compileTask;
     private final JavacTask task;
     private CompilationUnitTree root;
+    private SourceText text;
     private ClassTree surroundingClass;
 
     public FindNameAt(CompileTask task) {
+        this.compileTask = task;
         this.task = task.task;
     }
 
     @Override
     public TreePath visitCompilationUnit(CompilationUnitTree t, Long find) {
         root = t;
+        text = compileTask.text(t);
         return super.visitCompilationUnit(t, find);
     }
 
@@ -96,9 +100,9 @@ public class FindNameAt extends TreePathScanner<TreePath, Long> {
         var start = (int) pos.getStartPosition(root, t);
         var end = (int) pos.getEndPosition(root, t);
         if (start == -1 || end == -1) return false;
-        start = FindHelper.findNameIn(root, name, start, end);
+        start = text.findName(name, start, end);
+        if (start == -1) return false;
         end = start + name.length();
-        if (start == -1 || end == -1) return false;
         return start <= find && find < end;
     }
 }
@@ -0,0 +1,142 @@
+package org.javacs;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.LineMap;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.SourcePositions;
+import com.sun.source.util.TreeScanner;
+import com.sun.source.util.Trees;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * FocusedCompile prepares a file for questions about a single position, like hover, signature help and
+ * go-to-definition. Every method body that doesn't contain the cursor is erased, so javac only attributes the method
+ * the user is looking at. Bodies are replaced with whitespace, so offsets and line numbers don't change.
+ *
+ * <p>The pruned file is cached by version and by the body that contains the cursor, and the same SourceFileObject is
+ * returned each time, so consecutive requests in the same method re-use the compile cached by JavaCompilerService
+ * without even parsing the file. Only the most recently focused files are kept.
+ */
+class FocusedCompile {
+    private static class Focus {
+        final Instant modified;
+        final LineMap lines;
+        /** The range of the body that contains the cursor, or -1 if the cursor isn't in a method body. */
+        final long bodyStart, bodyEnd;
+        /** The ranges of the bodies that were erased. */
+        final List<long[]> erased;
+        final SourceFileObject source;
+
+        Focus(Instant modified, LineMap lines, Prune prune, SourceFileObject source) {
+            this.modified = modified;
+            this.lines = lines;
+            this.bodyStart = prune.bodyStart;
+            this.bodyEnd = prune.bodyEnd;
+            this.erased = prune.erased;
+            this.source = source;
+        }
+
+        /** True if pruning the same version of the file around `cursor` would focus on the same body. */
+        boolean contains(long cursor) {
+            if (bodyStart != -1 && (cursor < bodyStart || cursor >= bodyEnd)) return false;
+            for (var range : erased) {
+                if (range[0] <= cursor && cursor < range[1]) return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A pruned copy of a file. It is only equal to itself, so a compile of the pruned file is never mistaken for a
+     * compile of the whole file.
+     */
+    private static class PrunedSourceFileObject extends SourceFileObject {
+        PrunedSourceFileObject(Path path, String contents, Instant modified) {
+            super(path, contents, modified);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return this == other;
+        }
+
+        @Override
+        public int hashCode() {
+            return super.hashCode();
+        }
+    }
+
+    private final Map<Path, Focus> cache =
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Path, Focus> eldest) {
+                    return size() > MAX_CACHED_FILES;
+                }
+            };
+
+    private static final int MAX_CACHED_FILES = 10;
+
+    /** A copy of `file` where every method body except the one at `line`, `column` (1-based) is erased. */
+    SourceFileObject source(Path file, int line, int column) {
+        var modified = FileStore.modified(file);
+        var existing = cache.get(file);
+        if (existing != null
+                && existing.modified.equals(modified)
+                && existing.contains(existing.lines.getPosition(line, column))) {
+            return existing.source;
+        }
+        var parse = Parser.parseFile(file);
+        var lines = parse.root.getLineMap();
+        var cursor = lines.getPosition(line, column);
+        var contents = new StringBuilder(parse.contents);
+        var prune = new Prune(parse.task, parse.root, contents);
+        prune.scan(parse.root, cursor);
+        var source = new PrunedSourceFileObject(file, contents.toString(), Instant.now());
+        cache.put(file, new Focus(modified, lines, prune, source));
+        LOG.info(String.format("...pruned %s to the body at offset %d", file.getFileName(), prune.bodyStart));
+        return source;
+    }
+
+    /** Find the innermost method body that contains the cursor, and erase the bodies that don't contain the cursor. */
+    private static class Prune extends TreeScanner<Void, Long> {
+        final SourcePositions pos;
+        final CompilationUnitTree root;
+        final StringBuilder contents;
+        long bodyStart = -1, bodyEnd = -1;
+        final List<long[]> erased = new ArrayList<>();
+
+        Prune(JavacTask task, CompilationUnitTree root, StringBuilder contents) {
+            this.pos = Trees.instance(task).getSourcePositions();
+            this.root = root;
+            this.contents = contents;
+        }
+
+        @Override
+        public Void visitMethod(MethodTree t, Long cursor) {
+            if (t.getBody() == null) return null;
+            var start = pos.getStartPosition(root, t.getBody());
+            var end = pos.getEndPosition(root, t.getBody());
+            if (start <= cursor && cursor < end) {
+                bodyStart = start;
+                bodyEnd = end;
+                return super.visitMethod(t, cursor);
+            }
+            erased.add(new long[] {start, end});
+            for (var i = (int) start + 1; i < end - 1; i++) {
+                if (!Character.isWhitespace(contents.charAt(i))) {
+                    contents.setCharAt(i, ' ');
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
@@ -1,12 +1,14 @@
 package org.javacs;
 
 import java.io.IOException;
+import java.net.URI;
 import java.nio.file.*;
+import java.time.Instant;
 import java.util.*;
-import java.util.function.Predicate;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 import javax.tools.*;
+import org.javacs.outline.Outline;
 
 class JavaCompilerService implements CompilerProvider {
     // Not modifiable! If you want to edit these, you need to create a new instance
@@ -17,6 +19,8 @@ class JavaCompilerService implements CompilerProvider {
     final Set<String> jdkClasses = ScanClassPath.jdkTopLevelClasses(), classPathClasses;
     // Diagnostics from the last compilation task
     final List<Diagnostic<? extends JavaFileObject>> diags = new ArrayList<>();
+    // Number of errors reported in each file by the last compilation task
+    final Map<URI, Integer> errorsPerFile = new HashMap<>();
     // Use the same file manager for multiple tasks, so we don't repeatedly re-compile the same files
     // TODO intercept files that aren't in the batch and erase method bodies so compilation is faster
     final SourceFileManager fileManager;
@@ -39,8 +43,28 @@ class JavaCompilerService implements CompilerProvider {
         this.fileManager = new SourceFileManager();
     }
 
+    private final FocusedCompile focus = new FocusedCompile();
     private CompileBatch cachedCompile;
     private Map<JavaFileObject, Long> cachedModified = new HashMap<>();
+    private int memoryGeneration = MemoryBudget.generation();
+
+    /**
+     * When the heap goes over budget, drop the cached compile so its trees can be collected before the next compile
+     * allocates a new context. The compiler itself recycles its context in getTask.
+     */
+    private void checkMemory() {
+        var generation = MemoryBudget.generation();
+        if (memoryGeneration == generation) return;
+        memoryGeneration = generation;
+        if (cachedCompile == null || !cachedCompile.closed) return;
+        LOG.warning(
+                String.format(
+                        "Heap is over budget at %s, dropping cached compile of %,d files",
+                        MemoryBudget.heapUsage(), cachedModified.size()));
+        cachedCompile.borrow.close();
+        cachedCompile = null;
+        cachedModified.clear();
+    }
 
     private boolean needsCompile(Collection<? extends JavaFileObject> sources) {
         if (cachedModified.size() != sources.size()) {
@@ -57,40 +81,165 @@ class JavaCompilerService implements CompilerProvider {
         return false;
     }
 
-    private void loadCompile(Collection<? extends JavaFileObject> sources) {
+    private void loadCompile(Collection<? extends JavaFileObject> sources, Progress progress) {
         if (cachedCompile != null) {
             if (!cachedCompile.closed) {
                 throw new RuntimeException("Compiler is still in-use!");
             }
             cachedCompile.borrow.close();
         }
-        cachedCompile = doCompile(sources);
+        // Forget the old batch first, so a cancelled compile doesn't leave behind a closed batch that looks reusable
+        cachedCompile = null;
         cachedModified.clear();
+        cachedCompile = doCompile(sources, progress);
         for (var f : sources) {
             cachedModified.put(f, f.getLastModified());
         }
     }
 
-    private CompileBatch doCompile(Collection<? extends JavaFileObject> sources) {
+    private CompileBatch doCompile(Collection<? extends JavaFileObject> sources, Progress progress) {
         if (sources.isEmpty()) throw new RuntimeException("empty sources");
-        var firstAttempt = new CompileBatch(this, sources);
-        var addFiles = firstAttempt.needsAdditionalSources();
-        if (addFiles.isEmpty()) return firstAttempt;
-        // If the compiler needs additional source files that contain package-private files
-        LOG.info("...need to recompile with " + addFiles);
-        firstAttempt.close();
-        firstAttempt.borrow.close();
-        var moreSources = new ArrayList<JavaFileObject>();
-        moreSources.addAll(sources);
+        // javac can't find package-private classes in source files with different names, so add those files up front
+        var addFiles = packagePrivateSources(sources);
+        if (!addFiles.isEmpty()) {
+            LOG.info("...compile with package-private classes from " + addFiles);
+        }
+        var dependencies = new ArrayList<JavaFileObject>();
         for (var add : addFiles) {
-            moreSources.add(new SourceFileObject(add));
+            dependencies.add(new SourceFileObject(add));
+        }
+        return new CompileBatch(this, sources, dependencies, progress);
+    }
+
+    /**
+     * Collect a diagnostic reported by javac. Once a file has reported MAX_ERRORS_PER_FILE errors, drop its remaining
+     * errors and warnings.
+     */
+    void report(Diagnostic<? extends JavaFileObject> d) {
+        if (d.getSource() == null) {
+            diags.add(d);
+            return;
+        }
+        var uri = d.getSource().toUri();
+        var errors = errorsPerFile.getOrDefault(uri, 0);
+        if (errors >= MAX_ERRORS_PER_FILE) return;
+        if (d.getKind() == Diagnostic.Kind.ERROR) {
+            errorsPerFile.put(uri, errors + 1);
+            if (errors + 1 == MAX_ERRORS_PER_FILE) {
+                LOG.info(String.format("...%s has %d errors, ignoring the rest", uri, MAX_ERRORS_PER_FILE));
+            }
+        }
+        diags.add(d);
+    }
+
+    /**
+     * The files that declare package-private classes referenced by `sources`, in files with different names. javac
+     * looks up top-level classes on the source path by file name, so it won't find these on its own.
+     */
+    private Set<Path> packagePrivateSources(Collection<? extends JavaFileObject> sources) {
+        var inBatch = new HashSet<Path>();
+        var packages = new HashSet<String>();
+        for (var source : sources) {
+            if (!source.toUri().getScheme().equals("file")) continue;
+            var file = Paths.get(source.toUri());
+            if (!FileStore.contains(file)) continue;
+            inBatch.add(file);
+            packages.add(FileStore.packageName(file));
+        }
+        var found = new HashSet<Path>();
+        for (var packageName : packages) {
+            for (var hidden : hiddenTypes(packageName).entrySet()) {
+                var other = hidden.getValue();
+                if (inBatch.contains(other) || found.contains(other)) continue;
+                if (refersTo(inBatch, packageName, hidden.getKey())) {
+                    found.add(other);
+                }
+            }
+        }
+        return found;
+    }
+
+    private boolean refersTo(Set<Path> files, String packageName, String className) {
+        for (var file : files) {
+            if (FileStore.packageName(file).equals(packageName) && containsWord(file, className)) {
+                return true;
+            }
         }
-        return new CompileBatch(this, moreSources);
+        return false;
     }
 
-    private CompileBatch compileBatch(Collection<? extends JavaFileObject> sources) {
+    private static class PackageScan {
+        /** The files in the package when it was scanned, and when each of them was last modified. */
+        final Map<Path, Instant> modified;
+        /** The top-level classes in the package that aren't named after their file, and the file that declares each. */
+        final Map<String, Path> hiddenTypes;
+
+        PackageScan(Map<Path, Instant> modified, Map<String, Path> hiddenTypes) {
+            this.modified = modified;
+            this.hiddenTypes = hiddenTypes;
+        }
+    }
+
+    private final Map<String, PackageScan> packageScans = new HashMap<>();
+
+    /**
+     * The top-level classes in `packageName` that aren't named after their file. The result is re-used until a file in
+     * the package is created, deleted or modified, and then only the modified files are scanned again.
+     */
+    private Map<String, Path> hiddenTypes(String packageName) {
+        var modified = new HashMap<Path, Instant>();
+        for (var file : FileStore.list(packageName)) {
+            modified.put(file, FileStore.modified(file));
+        }
+        var scan = packageScans.get(packageName);
+        if (scan != null && scan.modified.equals(modified)) {
+            return scan.hiddenTypes;
+        }
+        var hiddenTypes = new HashMap<String, Path>();
+        for (var file : modified.keySet()) {
+            for (var className : hiddenTypes(file)) {
+                hiddenTypes.put(className, file);
+            }
+        }
+        packageScans.put(packageName, new PackageScan(modified, hiddenTypes));
+        return hiddenTypes;
+    }
+
+    private final Cache<Void, List<String>> cacheHiddenTypes = new Cache<>();
+
+    /** The top-level classes in `file` that aren't named after the file. */
+    private List<String> hiddenTypes(Path file) {
+        if (cacheHiddenTypes.needs(file, null)) {
+            var fileName = file.getFileName().toString();
+            var expectedName = fileName.substring(0, fileName.length() - ".java".length());
+            var list = new ArrayList<String>();
+            for (var d : Outline.of(file).declarations) {
+                if (d.isType() && !d.name.equals(expectedName)) {
+                    list.add(d.name);
+                }
+            }
+            cacheHiddenTypes.load(file, null, list);
+        }
+        return cacheHiddenTypes.get(file, null);
+    }
+
+    /** If every file in `sources` belongs to the same JPMS module, the module-info.java of that module. */
+    Optional<Path> moduleInfo(Collection<? extends JavaFileObject> sources) {
+        Optional<Path> found = Optional.empty();
+        for (var source : sources) {
+            if (!source.toUri().getScheme().equals("file")) return Optional.empty();
+            var info = FileStore.moduleInfo(Paths.get(source.toUri()));
+            if (info.isEmpty()) return Optional.empty();
+            if (found.isPresent() && !found.equals(info)) return Optional.empty();
+            found = info;
+        }
+        return found;
+    }
+
+    private CompileBatch compileBatch(Collection<? extends JavaFileObject> sources, Progress progress) {
+        checkMemory();
         if (needsCompile(sources)) {
-            loadCompile(sources);
+            loadCompile(sources, progress);
         } else {
             LOG.info("...using cached compile");
         }
@@ -126,6 +275,23 @@ class JavaCompilerService implements CompilerProvider {
         return cacheContainsWord.get(file, word);
     }
 
+    /** The files in `files` that contain `word`. Files that aren't in the cache are searched in parallel. */
+    private Set<Path> containsWord(Collection<Path> files, String word) {
+        var search = new ArrayList<Path>();
+        for (var f : files) {
+            if (cacheContainsWord.needs(f, word)) search.add(f);
+        }
+        var found = StringSearch.containsWord(search, word);
+        for (var i = 0; i < found.length; i++) {
+            cacheContainsWord.load(search.get(i), word, found[i]);
+        }
+        var result = new HashSet<Path>();
+        for (var f : files) {
+            if (cacheContainsWord.get(f, word)) result.add(f);
+        }
+        return result;
+    }
+
     private static final Cache<Void, List<String>> cacheContainsType = new Cache<>();
 
     private boolean containsType(Path file, String className) {
@@ -139,6 +305,7 @@ class JavaCompilerService implements CompilerProvider {
     }
 
     private Cache<Void, List<String>> cacheFileImports = new Cache<>();
+    private Cache<Void, List<String>> cacheFileStaticImports = new Cache<>();
 
     private List<String> readImports(Path file) {
         if (cacheFileImports.needs(file, null)) {
@@ -147,10 +314,19 @@ class JavaCompilerService implements CompilerProvider {
         return cacheFileImports.get(file, null);
     }
 
+    private List<String> readStaticImports(Path file) {
+        if (cacheFileStaticImports.needs(file, null)) {
+            loadImports(file);
+        }
+        return cacheFileStaticImports.get(file, null);
+    }
+
     private void loadImports(Path file) {
         var list = new ArrayList<String>();
+        var staticList = new ArrayList<String>();
         var importClass = Pattern.compile("^import +([\\w\\.]+\\.\\w+);");
         var importStar = Pattern.compile("^import +([\\w\\.]+\\.\\*);");
+        var importStatic = Pattern.compile("^import +static +([\\w\\.]+\\.[\\w\\*]+);");
         try (var lines = FileStore.lines(file)) {
             for (var line = lines.readLine(); line != null; line = lines.readLine()) {
                 // If we reach a class declaration, stop looking for imports
@@ -166,11 +342,17 @@ class JavaCompilerService implements CompilerProvider {
                 if (matchesStar.matches()) {
                     list.add(matchesStar.group(1));
                 }
+                // import static foo.bar.Doh.member;
+                var matchesStatic = importStatic.matcher(line);
+                if (matchesStatic.matches()) {
+                    staticList.add(matchesStatic.group(1));
+                }
             }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
         cacheFileImports.load(file, null, list);
+        cacheFileStaticImports.load(file, null, staticList);
     }
 
     @Override
@@ -202,7 +384,13 @@ class JavaCompilerService implements CompilerProvider {
 
     @Override
     public List<String> packagePrivateTopLevelTypes(String packageName) {
-        return List.of("TODO");
+        var all = new ArrayList<String>();
+        for (var file : FileStore.list(packageName)) {
+            for (var className : hiddenTypes(file)) {
+                all.add(packageName.isEmpty() ? className : packageName + "." + className);
+            }
+        }
+        return all;
     }
 
     private boolean containsImport(Path file, String className) {
@@ -217,8 +405,11 @@ class JavaCompilerService implements CompilerProvider {
 
     @Override
     public Iterable<Path> search(String query) {
-        Predicate<Path> test = f -> StringSearch.containsWordMatching(f, query);
-        return () -> FileStore.all().stream().filter(test).iterator();
+        var files = new ArrayList<Path>();
+        for (var f : FileStore.all()) {
+            if (fileManager.inRoot.test(f)) files.add(f);
+        }
+        return StringSearch.containsWordMatching(files, query);
     }
 
     @Override
@@ -276,6 +467,7 @@ class JavaCompilerService implements CompilerProvider {
         var packageName = packageName(className);
         var simpleName = simpleName(className);
         for (var f : FileStore.list(packageName)) {
+            if (!fileManager.inRoot.test(f)) continue;
             if (containsWord(f, simpleName) && containsType(f, className)) {
                 return f;
             }
@@ -303,22 +495,46 @@ class JavaCompilerService implements CompilerProvider {
     public Path[] findTypeReferences(String className) {
         var packageName = packageName(className);
         var simpleName = simpleName(className);
+        var mentions = containsWord(FileStore.all(), simpleName);
         var candidates = new ArrayList<Path>();
         for (var f : FileStore.all()) {
-            if (containsWord(f, packageName) && containsImport(f, className) && containsWord(f, simpleName)) {
+            if (mentions.contains(f) && containsWord(f, packageName) && containsImport(f, className)) {
                 candidates.add(f);
             }
         }
         return candidates.toArray(Path[]::new);
     }
 
+    private final PackageGraph packageGraph = new PackageGraph(this::readAllImports);
+
+    private List<String> readAllImports(Path file) {
+        var all = new ArrayList<String>(readImports(file));
+        all.addAll(readStaticImports(file));
+        return all;
+    }
+
     @Override
     public Path[] findMemberReferences(String className, String memberName) {
+        // If className is declared in the workspace, only files in packages that can reach it through imports, or that
+        // mention its package by name, can refer to its members
+        var packageName = packageName(className);
+        Set<String> reachable = null;
+        if (!packageName.isEmpty() && !FileStore.list(packageName).isEmpty()) {
+            reachable = packageGraph.dependents(packageName);
+        }
+        var mentions = containsWord(FileStore.all(), memberName);
         var candidates = new ArrayList<Path>();
+        var pruned = 0;
         for (var f : FileStore.all()) {
-            if (containsWord(f, memberName)) {
-                candidates.add(f);
+            if (!mentions.contains(f)) continue;
+            if (reachable != null && !reachable.contains(FileStore.packageName(f)) && !containsWord(f, packageName)) {
+                pruned++;
+                continue;
             }
+            candidates.add(f);
+        }
+        if (pruned > 0) {
+            LOG.info(String.format("...skipped %d files that can't reach %s", pruned, packageName));
         }
         return candidates.toArray(Path[]::new);
     }
@@ -335,18 +551,38 @@ class JavaCompilerService implements CompilerProvider {
         return new ParseTask(parser.task, parser.root);
     }
 
+    @Override
+    public CompileTask compileAt(Path file, int line, int column, Progress progress) {
+        // If we've already compiled the whole file, that's as good as a focused compile
+        var whole = List.of(new SourceFileObject(file));
+        if (cachedCompile != null && !needsCompile(whole)) {
+            return compile(whole, progress);
+        }
+        return compile(List.of(focus.source(file, line, column)), progress);
+    }
+
     @Override
     public CompileTask compile(Path... files) {
+        return compile(Progress.NONE, files);
+    }
+
+    @Override
+    public CompileTask compile(Progress progress, Path... files) {
         var sources = new ArrayList<JavaFileObject>();
         for (var f : files) {
             sources.add(new SourceFileObject(f));
         }
-        return compile(sources);
+        return compile(sources, progress);
     }
 
     @Override
     public CompileTask compile(Collection<? extends JavaFileObject> sources) {
-        var compile = compileBatch(sources);
+        return compile(sources, Progress.NONE);
+    }
+
+    @Override
+    public CompileTask compile(Collection<? extends JavaFileObject> sources, Progress progress) {
+        var compile = compileBatch(sources, progress);
         return new CompileTask(compile.task, compile.roots, diags, compile::close);
     }
 
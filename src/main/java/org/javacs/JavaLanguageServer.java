@@ -4,11 +4,14 @@ import static org.javacs.JsonHelper.GSON;
 
 import com.google.gson.*;
 import com.sun.source.util.Trees;
+import java.net.URI;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 import javax.lang.model.element.*;
 import org.javacs.action.CodeActionProvider;
@@ -21,44 +24,136 @@ import org.javacs.lens.CodeLensProvider;
 import org.javacs.lsp.*;
 import org.javacs.markup.ColorProvider;
 import org.javacs.markup.ErrorProvider;
+import org.javacs.navigation.CallHierarchyProvider;
 import org.javacs.navigation.DefinitionProvider;
+import org.javacs.navigation.ImplementationProvider;
 import org.javacs.navigation.ReferenceProvider;
 import org.javacs.rewrite.*;
 
 class JavaLanguageServer extends LanguageServer {
-    // TODO allow multiple workspace roots
-    private Path workspaceRoot;
+    // Workspace folders, in the order the client reported them. The first folder is the primary root.
+    private final Set<Path> workspaceRoots = new LinkedHashSet<>();
     private final LanguageClient client;
-    private JavaCompilerService cacheCompiler;
+    // One compiler per root, in least-recently-used order
+    private final Map<Path, JavaCompilerService> cacheCompilers = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Path, Instant> lastUsed = new HashMap<>();
     private JsonObject cacheSettings;
     private JsonObject settings = new JsonObject();
-    private boolean modifiedBuild = true;
+    private final Set<Path> modifiedBuilds = new HashSet<>();
+    private boolean resolveCodeActionEdits;
+    private final TypeHierarchyIndex typeHierarchy = new TypeHierarchyIndex();
+    private final CallGraphIndex callGraph = new CallGraphIndex();
 
+    /** The compiler for the primary workspace root. */
     JavaCompilerService compiler() {
-        if (needsCompiler()) {
-            cacheCompiler = createCompiler();
+        Objects.requireNonNull(primaryRoot(), "Can't create compiler because workspaceRoot has not been initialized");
+        return compilerForRoot(primaryRoot());
+    }
+
+    /** The compiler for the root that owns `file`. */
+    JavaCompilerService compiler(Path file) {
+        return compilerForRoot(ownerRoot(file));
+    }
+
+    private JavaCompilerService compilerForRoot(Path root) {
+        if (!settings.equals(cacheSettings)) {
+            LOG.info("Settings\n\t" + settings + "\nis different than\n\t" + cacheSettings);
+            cacheCompilers.clear();
+            lastUsed.clear();
             cacheSettings = settings;
-            modifiedBuild = false;
         }
-        return cacheCompiler;
+        if (modifiedBuilds.remove(root)) {
+            cacheCompilers.remove(root);
+        }
+        evictIdleCompilers(root);
+        if (!cacheCompilers.containsKey(root)) {
+            var compiler = createCompiler(root);
+            compiler.fileManager.inRoot = file -> ownerRoot(file).equals(root);
+            cacheCompilers.put(root, compiler);
+        }
+        lastUsed.put(root, Instant.now());
+        return cacheCompilers.get(root);
+    }
+
+    private Path primaryRoot() {
+        if (workspaceRoots.isEmpty()) return null;
+        return workspaceRoots.iterator().next();
+    }
+
+    /**
+     * Find the root that owns `file`. Each workspace folder is a root, unless the folder has no build file of its own,
+     * in which case each top-level Maven or Bazel project inside it gets its own root.
+     */
+    Path ownerRoot(Path file) {
+        file = file.toAbsolutePath().normalize();
+        Path folder = null;
+        for (var root : workspaceRoots) {
+            if (!file.startsWith(root)) continue;
+            if (folder == null || root.getNameCount() > folder.getNameCount()) {
+                folder = root;
+            }
+        }
+        if (folder == null) return primaryRoot();
+        if (isProjectRoot(folder)) return folder;
+        for (var i = folder.getNameCount() + 1; i < file.getNameCount(); i++) {
+            var dir = folder.getRoot().resolve(file.subpath(0, i));
+            if (isProjectRoot(dir)) return dir;
+        }
+        return folder;
+    }
+
+    /** projectRoots[dir] is true if dir contains a pom.xml or WORKSPACE file. Cleared when a build file changes. */
+    private final Map<Path, Boolean> projectRoots = new HashMap<>();
+
+    private boolean isProjectRoot(Path dir) {
+        return projectRoots.computeIfAbsent(
+                dir, d -> Files.exists(d.resolve("pom.xml")) || Files.exists(d.resolve("WORKSPACE")));
     }
 
-    private boolean needsCompiler() {
-        if (modifiedBuild) {
-            return true;
+    private static final Duration IDLE = Duration.ofMinutes(5);
+
+    /** The last MemoryBudget generation we evicted compilers for. */
+    private int memoryGeneration = MemoryBudget.generation();
+
+    /**
+     * When the heap has gone over budget after a collection, drop compilers that haven't been used recently, keeping
+     * the one for `keep`. Compilers that were used recently stay, because re-creating them costs more than their
+     * memory.
+     */
+    private void evictIdleCompilers(Path keep) {
+        var generation = MemoryBudget.generation();
+        if (memoryGeneration == generation) return;
+        memoryGeneration = generation;
+        var idleSince = Instant.now().minus(IDLE);
+        var evict = new ArrayList<Path>();
+        for (var root : cacheCompilers.keySet()) {
+            if (root.equals(keep)) continue;
+            if (lastUsed.get(root).isBefore(idleSince)) {
+                evict.add(root);
+            }
         }
-        if (!settings.equals(cacheSettings)) {
-            LOG.info("Settings\n\t" + settings + "\nis different than\n\t" + cacheSettings);
-            return true;
+        for (var root : evict) {
+            LOG.info("Evict compiler for " + root + " because heap is over budget at " + MemoryBudget.heapUsage());
+            cacheCompilers.remove(root);
+            lastUsed.remove(root);
         }
-        return false;
     }
 
     void lint(Collection<Path> files) {
         if (files.isEmpty()) return;
+        var byRoot = new HashMap<Path, List<Path>>();
+        for (var f : files) {
+            byRoot.computeIfAbsent(ownerRoot(f), __ -> new ArrayList<>()).add(f);
+        }
+        for (var root : byRoot.keySet()) {
+            lint(compilerForRoot(root), byRoot.get(root));
+        }
+    }
+
+    private void lint(JavaCompilerService compiler, List<Path> files) {
         LOG.info("Lint " + files.size() + " files...");
         var started = Instant.now();
-        try (var task = compiler().compile(files.toArray(Path[]::new))) {
+        try (var task = compiler.compile(files.toArray(Path[]::new))) {
             var compiled = Instant.now();
             LOG.info("...compiled in " + Duration.between(started, compiled).toMillis() + " ms");
             for (var errs : new ErrorProvider(task).errors()) {
@@ -67,6 +162,7 @@ class JavaLanguageServer extends LanguageServer {
             for (var colors : new ColorProvider(task).colors()) {
                 client.customNotification("java/colors", GSON.toJsonTree(colors));
             }
+            callGraph.index(task);
             var published = Instant.now();
             LOG.info("...published in " + Duration.between(started, published).toMillis() + " ms");
         }
@@ -84,9 +180,8 @@ class JavaLanguageServer extends LanguageServer {
         client.customNotification("java/endProgress", JsonNull.INSTANCE);
     }
 
-    private JavaCompilerService createCompiler() {
-        Objects.requireNonNull(workspaceRoot, "Can't create compiler because workspaceRoot has not been initialized");
-
+    private JavaCompilerService createCompiler(Path workspaceRoot) {
+        LOG.info("Create compiler for " + workspaceRoot);
         javaStartProgress(new JavaStartProgressParams("Configure javac"));
         javaReportProgress(new JavaReportProgressParams("Finding source roots"));
 
@@ -145,8 +240,14 @@ class JavaLanguageServer extends LanguageServer {
 
     @Override
     public InitializeResult initialize(InitializeParams params) {
-        this.workspaceRoot = Paths.get(params.rootUri);
-        FileStore.setWorkspaceRoots(Set.of(Paths.get(params.rootUri)));
+        if (params.workspaceFolders != null && !params.workspaceFolders.isEmpty()) {
+            for (var folder : params.workspaceFolders) {
+                workspaceRoots.add(normalize(folder.uri));
+            }
+        } else {
+            workspaceRoots.add(normalize(params.rootUri));
+        }
+        FileStore.setWorkspaceRoots(workspaceRoots);
 
         var c = new JsonObject();
         c.addProperty("textDocumentSync", 2); // Incremental
@@ -165,22 +266,73 @@ class JavaLanguageServer extends LanguageServer {
         c.add("signatureHelpProvider", signatureHelpOptions);
         c.addProperty("referencesProvider", true);
         c.addProperty("definitionProvider", true);
+        c.addProperty("implementationProvider", true);
+        c.addProperty("typeHierarchyProvider", true);
+        c.addProperty("callHierarchyProvider", true);
         c.addProperty("workspaceSymbolProvider", true);
         c.addProperty("documentSymbolProvider", true);
         c.addProperty("documentFormattingProvider", true);
         var codeLensOptions = new JsonObject();
+        codeLensOptions.addProperty("resolveProvider", true);
         c.add("codeLensProvider", codeLensOptions);
         c.addProperty("foldingRangeProvider", true);
-        c.addProperty("codeActionProvider", true);
+        resolveCodeActionEdits = supportsResolveCodeActionEdits(params.capabilities);
+        var codeActionOptions = new JsonObject();
+        codeActionOptions.addProperty("resolveProvider", true);
+        c.add("codeActionProvider", codeActionOptions);
         var renameOptions = new JsonObject();
         renameOptions.addProperty("prepareProvider", true);
         c.add("renameProvider", renameOptions);
+        var workspaceFolders = new JsonObject();
+        workspaceFolders.addProperty("supported", true);
+        workspaceFolders.addProperty("changeNotifications", true);
+        var workspace = new JsonObject();
+        workspace.add("workspaceFolders", workspaceFolders);
+        c.add("workspace", workspace);
+
+        // Editors restart the server often, so keep an eye on how long it takes to get here
+        var launched = ProcessHandle.current().info().startInstant();
+        if (launched.isPresent()) {
+            var elapsed = Duration.between(launched.get(), Instant.now()).toMillis();
+            LOG.info(String.format("...initialized %,d ms after launch", elapsed));
+        }
 
         return new InitializeResult(c);
     }
 
+    /**
+     * True if the client keeps the `data` of code actions, and can ask for their edits later using codeAction/resolve.
+     * Other clients get code actions with their edits already computed.
+     */
+    private static boolean supportsResolveCodeActionEdits(JsonElement capabilities) {
+        var codeAction = child(child(capabilities, "textDocument"), "codeAction");
+        if (codeAction == null) return false;
+        var dataSupport = codeAction.get("dataSupport");
+        if (dataSupport == null || !dataSupport.isJsonPrimitive() || !dataSupport.getAsJsonPrimitive().isBoolean()) {
+            return false;
+        }
+        var resolveSupport = child(codeAction, "resolveSupport");
+        if (resolveSupport == null || !resolveSupport.has("properties")) return false;
+        var properties = resolveSupport.get("properties");
+        return dataSupport.getAsBoolean()
+                && properties.isJsonArray()
+                && properties.getAsJsonArray().contains(new JsonPrimitive("edit"));
+    }
+
+    /** The object-valued property `name` of `parent`, or null if `parent` isn't an object or doesn't have one. */
+    private static JsonObject child(JsonElement parent, String name) {
+        if (parent == null || !parent.isJsonObject()) return null;
+        var child = parent.getAsJsonObject().get(name);
+        if (child == null || !child.isJsonObject()) return null;
+        return child.getAsJsonObject();
+    }
+
+    private static Path normalize(URI uri) {
+        return Paths.get(uri).toAbsolutePath().normalize();
+    }
+
     private static final String[] watchFiles = {
-        "**/*.java", "**/pom.xml", "**/BUILD",
+        "**/*.java", "**/pom.xml", "**/BUILD", "**/WORKSPACE",
     };
 
     @Override
@@ -201,7 +353,9 @@ class JavaLanguageServer extends LanguageServer {
     }
 
     @Override
-    public void shutdown() {}
+    public void shutdown() {
+        FileStore.saveSnapshots();
+    }
 
     public JavaLanguageServer(LanguageClient client) {
         this.client = client;
@@ -209,7 +363,9 @@ class JavaLanguageServer extends LanguageServer {
 
     @Override
     public List<SymbolInformation> workspaceSymbols(WorkspaceSymbolParams params) {
-        return new SymbolProvider(compiler()).findSymbols(params.query, 50);
+        // Each compiler only searches its own root, so search the files of every root
+        var files = StringSearch.containsWordMatching(new ArrayList<>(FileStore.all()), params.query);
+        return SymbolProvider.findSymbols(files, params.query, 50);
     }
 
     @Override
@@ -219,39 +375,59 @@ class JavaLanguageServer extends LanguageServer {
         settings = java.getAsJsonObject();
     }
 
+    @Override
+    public void didChangeWorkspaceFolders(DidChangeWorkspaceFoldersParams params) {
+        for (var folder : params.event.removed) {
+            var root = normalize(folder.uri);
+            workspaceRoots.remove(root);
+            cacheCompilers.keySet().removeIf(r -> r.startsWith(root));
+            lastUsed.keySet().removeIf(r -> r.startsWith(root));
+        }
+        for (var folder : params.event.added) {
+            workspaceRoots.add(normalize(folder.uri));
+        }
+        LOG.info("Workspace roots are now " + workspaceRoots);
+        FileStore.setWorkspaceRoots(workspaceRoots);
+        typeHierarchy.invalidateAll();
+    }
+
     @Override
     public void didChangeWatchedFiles(DidChangeWatchedFilesParams params) {
+        // Handle the whole batch at once, so a branch switch that touches thousands of files updates FileStore in one
+        // pass and re-creates each compiler at most once
+        var sources = new LinkedHashSet<Path>();
         for (var c : params.changes) {
             var file = Paths.get(c.uri);
-            if (FileStore.isJavaFile(file)) {
-                switch (c.type) {
-                    case FileChangeType.Created:
-                        FileStore.externalCreate(file);
-                        break;
-                    case FileChangeType.Changed:
-                        FileStore.externalChange(file);
-                        break;
-                    case FileChangeType.Deleted:
-                        FileStore.externalDelete(file);
-                        break;
-                }
-                return;
+            if (FileStore.isJavaFile(file) || FileStore.isModuleInfo(file)) {
+                sources.add(file);
+                continue;
             }
             var name = file.getFileName().toString();
             switch (name) {
-                case "BUILD":
+                case "WORKSPACE":
+                    projectRoots.remove(file.getParent());
+                    break;
                 case "pom.xml":
-                    LOG.info("Compiler needs to be re-created because " + file + " has changed");
-                    modifiedBuild = true;
+                    projectRoots.remove(file.getParent());
+                    // fall through
+                case "BUILD":
+                    var root = ownerRoot(file);
+                    if (modifiedBuilds.add(root)) {
+                        LOG.info("Compiler for " + root + " needs to be re-created because " + file + " has changed");
+                    }
             }
         }
+        if (!sources.isEmpty()) {
+            FileStore.externalChanges(sources);
+            typeHierarchy.invalidate(sources);
+        }
     }
 
     @Override
     public Optional<CompletionList> completion(TextDocumentPositionParams params) {
         if (!FileStore.isJavaFile(params.textDocument.uri)) return Optional.empty();
         var file = Paths.get(params.textDocument.uri);
-        var provider = new CompletionProvider(compiler());
+        var provider = new CompletionProvider(compiler(file), cancelToken());
         var list = provider.complete(file, params.position.line + 1, params.position.character + 1);
         if (list == CompletionProvider.NOT_SUPPORTED) return Optional.empty();
         return Optional.of(list);
@@ -259,7 +435,15 @@ class JavaLanguageServer extends LanguageServer {
 
     @Override
     public CompletionItem resolveCompletionItem(CompletionItem unresolved) {
-        new HoverProvider(compiler()).resolveCompletionItem(unresolved);
+        // Resolve docs with the compiler that produced the item, which has that root's class path and doc path
+        var compiler = compiler();
+        if (unresolved.data != null && unresolved.data.isJsonObject()) {
+            var uri = unresolved.data.getAsJsonObject().get("uri");
+            if (uri != null && uri.isJsonPrimitive()) {
+                compiler = compiler(Paths.get(URI.create(uri.getAsString())));
+            }
+        }
+        new HoverProvider(compiler).resolveCompletionItem(unresolved);
         return unresolved;
     }
 
@@ -270,7 +454,7 @@ class JavaLanguageServer extends LanguageServer {
         var column = position.position.character + 1;
         if (!FileStore.isJavaFile(uri)) return Optional.empty();
         var file = Paths.get(uri);
-        var list = new HoverProvider(compiler()).hover(file, line, column);
+        var list = new HoverProvider(compiler(file), cancelToken()).hover(file, line, column);
         if (list == HoverProvider.NOT_SUPPORTED) {
             return Optional.empty();
         }
@@ -284,7 +468,7 @@ class JavaLanguageServer extends LanguageServer {
         var file = Paths.get(params.textDocument.uri);
         var line = params.position.line + 1;
         var column = params.position.character + 1;
-        var help = new SignatureProvider(compiler()).signatureHelp(file, line, column);
+        var help = new SignatureProvider(compiler(file), cancelToken()).signatureHelp(file, line, column);
         if (help == SignatureProvider.NOT_SUPPORTED) return Optional.empty();
         return Optional.of(help);
     }
@@ -295,7 +479,7 @@ class JavaLanguageServer extends LanguageServer {
         var file = Paths.get(position.textDocument.uri);
         var line = position.position.line + 1;
         var column = position.position.character + 1;
-        var found = new DefinitionProvider(compiler(), file, line, column).find();
+        var found = new DefinitionProvider(compiler(file), file, line, column).find();
         if (found == DefinitionProvider.NOT_SUPPORTED) {
             return Optional.empty();
         }
@@ -308,41 +492,182 @@ class JavaLanguageServer extends LanguageServer {
         var file = Paths.get(position.textDocument.uri);
         var line = position.position.line + 1;
         var column = position.position.character + 1;
-        var found = new ReferenceProvider(compiler(), file, line, column).find();
-        if (found == ReferenceProvider.NOT_SUPPORTED) {
+        var progress = workDoneProgress(position.workDoneToken, "Find references");
+        Consumer<List<Location>> partialResults = __ -> {};
+        if (position.partialResultToken != null) {
+            var token = position.partialResultToken;
+            partialResults = batch -> {
+                if (!batch.isEmpty()) progress(token, GSON.toJsonTree(batch));
+            };
+        }
+        try {
+            var found = new ReferenceProvider(compiler(file), file, line, column, partialResults, progress).find();
+            if (found == ReferenceProvider.NOT_SUPPORTED) {
+                return Optional.empty();
+            }
+            // When results are streamed as partial results, the final response must not repeat them
+            if (position.partialResultToken != null) {
+                return Optional.of(List.of());
+            }
+            return Optional.of(found);
+        } finally {
+            endWorkDoneProgress(position.workDoneToken);
+        }
+    }
+
+    /** A Progress that reports nothing, but is cancelled when the client sends `$/cancelRequest` for this request. */
+    private Progress cancelToken() {
+        var cancelled = cancellation();
+        return new Progress() {
+            @Override
+            public void report(int done, int total) {}
+
+            @Override
+            public boolean isCancelled() {
+                return cancelled.getAsBoolean();
+            }
+        };
+    }
+
+    /**
+     * Report progress of a long-running request to the client using `$/progress`, if the client supplied a
+     * `workDoneToken`. The Progress is cancelled when the client sends `$/cancelRequest` for the running request.
+     */
+    private Progress workDoneProgress(JsonElement token, String title) {
+        if (token != null) {
+            progress(token, GSON.toJsonTree(WorkDoneProgress.begin(title)));
+        }
+        var cancelled = cancellation();
+        return new Progress() {
+            int lastPercentage = 0;
+
+            @Override
+            public void report(int done, int total) {
+                if (token == null || total == 0) return;
+                var percentage = done * 100 / total;
+                if (percentage == lastPercentage) return;
+                lastPercentage = percentage;
+                var message = String.format("%d/%d files", done, total);
+                progress(token, GSON.toJsonTree(WorkDoneProgress.report(message, percentage)));
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return cancelled.getAsBoolean();
+            }
+        };
+    }
+
+    private void endWorkDoneProgress(JsonElement token) {
+        if (token == null) return;
+        progress(token, GSON.toJsonTree(WorkDoneProgress.end()));
+    }
+
+    private void progress(JsonElement token, JsonElement value) {
+        client.customNotification("$/progress", GSON.toJsonTree(new ProgressParams(token, value)));
+    }
+
+    @Override
+    public Optional<List<Location>> gotoImplementation(TextDocumentPositionParams position) {
+        if (!FileStore.isJavaFile(position.textDocument.uri)) return Optional.empty();
+        var file = Paths.get(position.textDocument.uri);
+        var line = position.position.line + 1;
+        var column = position.position.character + 1;
+        var found = new ImplementationProvider(compiler(file), typeHierarchy, file, line, column).find();
+        if (found == ImplementationProvider.NOT_SUPPORTED) {
             return Optional.empty();
         }
         return Optional.of(found);
     }
 
+    @Override
+    public List<TypeHierarchyItem> prepareTypeHierarchy(TextDocumentPositionParams position) {
+        if (!FileStore.isJavaFile(position.textDocument.uri)) return List.of();
+        var file = Paths.get(position.textDocument.uri);
+        var line = position.position.line + 1;
+        var column = position.position.character + 1;
+        var className = new ImplementationProvider(compiler(file), typeHierarchy, file, line, column).findType();
+        if (className.isEmpty()) return List.of();
+        var type = typeHierarchy.find(className.get());
+        if (type.isEmpty()) return List.of();
+        return List.of(type.get().item());
+    }
+
+    @Override
+    public List<TypeHierarchyItem> typeHierarchySupertypes(TypeHierarchyParams params) {
+        var items = new ArrayList<TypeHierarchyItem>();
+        for (var t : typeHierarchy.supertypes(params.item.data.getAsString())) {
+            items.add(t.item());
+        }
+        return items;
+    }
+
+    @Override
+    public List<TypeHierarchyItem> typeHierarchySubtypes(TypeHierarchyParams params) {
+        var items = new ArrayList<TypeHierarchyItem>();
+        for (var t : typeHierarchy.subtypes(params.item.data.getAsString())) {
+            items.add(t.item());
+        }
+        return items;
+    }
+
+    @Override
+    public List<CallHierarchyItem> prepareCallHierarchy(TextDocumentPositionParams position) {
+        if (!FileStore.isJavaFile(position.textDocument.uri)) return List.of();
+        var file = Paths.get(position.textDocument.uri);
+        var line = position.position.line + 1;
+        var column = position.position.character + 1;
+        return new CallHierarchyProvider(compiler(file), callGraph, file, line, column).prepare();
+    }
+
+    @Override
+    public List<CallHierarchyIncomingCall> callHierarchyIncomingCalls(CallHierarchyParams params) {
+        var file = Paths.get(params.item.uri);
+        var calls = new ArrayList<CallHierarchyIncomingCall>();
+        for (var call : callGraph.incomingCalls(compiler(file), params.item.data.getAsString())) {
+            calls.add(new CallHierarchyIncomingCall(call.declaration.item(), call.ranges));
+        }
+        return calls;
+    }
+
+    @Override
+    public List<CallHierarchyOutgoingCall> callHierarchyOutgoingCalls(CallHierarchyParams params) {
+        var file = Paths.get(params.item.uri);
+        var calls = new ArrayList<CallHierarchyOutgoingCall>();
+        for (var call : callGraph.outgoingCalls(compiler(file), params.item.data.getAsString())) {
+            calls.add(new CallHierarchyOutgoingCall(call.declaration.item(), call.ranges));
+        }
+        return calls;
+    }
+
     @Override
     public List<SymbolInformation> documentSymbol(DocumentSymbolParams params) {
         if (!FileStore.isJavaFile(params.textDocument.uri)) return List.of();
         var file = Paths.get(params.textDocument.uri);
-        return new SymbolProvider(compiler()).documentSymbols(file);
+        return new SymbolProvider(compiler(file)).documentSymbols(file);
     }
 
     @Override
     public List<CodeLens> codeLens(CodeLensParams params) {
         if (!FileStore.isJavaFile(params.textDocument.uri)) return List.of();
         var file = Paths.get(params.textDocument.uri);
-        var task = compiler().parse(file);
-        return CodeLensProvider.find(task);
+        return CodeLensProvider.find(file);
     }
 
     @Override
     public CodeLens resolveCodeLens(CodeLens unresolved) {
-        return null;
+        return CodeLensProvider.resolve(unresolved, typeHierarchy);
     }
 
     @Override
     public List<TextEdit> formatting(DocumentFormattingParams params) {
         var edits = new ArrayList<TextEdit>();
         var file = Paths.get(params.textDocument.uri);
-        var fixImports = new AutoFixImports(file).rewrite(compiler()).get(file);
-        Collections.addAll(edits, fixImports);
-        var addOverrides = new AutoAddOverrides(file).rewrite(compiler()).get(file);
-        Collections.addAll(edits, addOverrides);
+        var format = new RewritePipeline(new AutoFixImports(file), new AutoAddOverrides(file));
+        var changes = format.rewrite(compiler(file)).get(file);
+        if (changes != null) {
+            Collections.addAll(edits, changes);
+        }
         return edits;
     }
 
@@ -350,7 +675,7 @@ class JavaLanguageServer extends LanguageServer {
     public List<FoldingRange> foldingRange(FoldingRangeParams params) {
         if (!FileStore.isJavaFile(params.textDocument.uri)) return List.of();
         var file = Paths.get(params.textDocument.uri);
-        return new FoldProvider(compiler()).foldingRanges(file);
+        return FoldProvider.foldingRanges(file);
     }
 
     @Override
@@ -358,7 +683,7 @@ class JavaLanguageServer extends LanguageServer {
         if (!FileStore.isJavaFile(params.textDocument.uri)) return Optional.empty();
         LOG.info("Try to rename...");
         var file = Paths.get(params.textDocument.uri);
-        try (var task = compiler().compile(file)) {
+        try (var task = compiler(file).compile(file)) {
             var lines = task.root().getLineMap();
             var cursor = lines.getPosition(params.position.line + 1, params.position.character + 1);
             var path = new FindNameAt(task).scan(task.root(), cursor);
@@ -375,7 +700,7 @@ class JavaLanguageServer extends LanguageServer {
                 LOG.info("...can't rename " + el);
                 return Optional.empty();
             }
-            if (!canFindSource(el)) {
+            if (!canFindSource(compiler(file), el)) {
                 LOG.info("...can't find source for " + el);
                 return Optional.empty();
             }
@@ -400,21 +725,27 @@ class JavaLanguageServer extends LanguageServer {
         }
     }
 
-    private boolean canFindSource(Element rename) {
+    private boolean canFindSource(CompilerProvider compiler, Element rename) {
         if (rename == null) return false;
         if (rename instanceof TypeElement) {
             var type = (TypeElement) rename;
             var name = type.getQualifiedName().toString();
-            return compiler().findTypeDeclaration(name) != CompilerProvider.NOT_FOUND;
+            return compiler.findTypeDeclaration(name) != CompilerProvider.NOT_FOUND;
         }
-        return canFindSource(rename.getEnclosingElement());
+        return canFindSource(compiler, rename.getEnclosingElement());
     }
 
     @Override
     public WorkspaceEdit rename(RenameParams params) {
         var rw = createRewrite(params);
         var response = new WorkspaceEdit();
-        var map = rw.rewrite(compiler());
+        var progress = workDoneProgress(params.workDoneToken, "Rename");
+        Map<Path, TextEdit[]> map;
+        try {
+            map = rw.rewrite(compiler(Paths.get(params.textDocument.uri)), progress);
+        } finally {
+            endWorkDoneProgress(params.workDoneToken);
+        }
         for (var editedFile : map.keySet()) {
             response.changes.put(editedFile.toUri(), List.of(map.get(editedFile)));
         }
@@ -423,7 +754,7 @@ class JavaLanguageServer extends LanguageServer {
 
     private Rewrite createRewrite(RenameParams params) {
         var file = Paths.get(params.textDocument.uri);
-        try (var task = compiler().compile(file)) {
+        try (var task = compiler(file).compile(file)) {
             var lines = task.root().getLineMap();
             var position = lines.getPosition(params.position.line + 1, params.position.character + 1);
             var path = new FindNameAt(task).scan(task.root(), position);
@@ -480,6 +811,7 @@ class JavaLanguageServer extends LanguageServer {
         if (!FileStore.isJavaFile(params.textDocument.uri)) return;
         lastEdited = Paths.get(params.textDocument.uri);
         uncheckedChanges = true;
+        typeHierarchy.invalidate(List.of(lastEdited));
     }
 
     @Override
@@ -487,6 +819,7 @@ class JavaLanguageServer extends LanguageServer {
         FileStore.change(params);
         lastEdited = Paths.get(params.textDocument.uri);
         uncheckedChanges = true;
+        typeHierarchy.invalidate(List.of(lastEdited));
     }
 
     @Override
@@ -494,6 +827,8 @@ class JavaLanguageServer extends LanguageServer {
         FileStore.close(params);
 
         if (FileStore.isJavaFile(params.textDocument.uri)) {
+            // Unsaved edits are discarded, so the file goes back to what's on disk
+            typeHierarchy.invalidate(List.of(Paths.get(params.textDocument.uri)));
             // Clear diagnostics
             client.publishDiagnostics(new PublishDiagnosticsParams(params.textDocument.uri, List.of()));
         }
@@ -501,7 +836,7 @@ class JavaLanguageServer extends LanguageServer {
 
     @Override
     public List<CodeAction> codeAction(CodeActionParams params) {
-        var provider = new CodeActionProvider(compiler());
+        var provider = new CodeActionProvider(compiler(Paths.get(params.textDocument.uri)), resolveCodeActionEdits);
         if (params.context.diagnostics.isEmpty()) {
             return provider.codeActionsForCursor(params);
         } else {
@@ -509,20 +844,31 @@ class JavaLanguageServer extends LanguageServer {
         }
     }
 
+    @Override
+    public CodeAction resolveCodeAction(CodeAction action) {
+        if (action.data == null || action.data.isJsonNull()) return action;
+        var file = Paths.get(URI.create(action.data.getAsJsonObject().get("file").getAsString()));
+        return new CodeActionProvider(compiler(file)).resolve(action);
+    }
+
     @Override
     public void didSaveTextDocument(DidSaveTextDocumentParams params) {
         if (FileStore.isJavaFile(params.textDocument.uri)) {
+            typeHierarchy.invalidate(List.of(Paths.get(params.textDocument.uri)));
             // Re-lint all active documents
             lint(FileStore.activeDocuments());
         }
     }
 
     @Override
-    public void doAsyncWork() {
+    public boolean doAsyncWork() {
         if (uncheckedChanges && FileStore.activeDocuments().contains(lastEdited)) {
             lint(List.of(lastEdited));
             uncheckedChanges = false;
         }
+        FileStore.checkpoint();
+        // Index the workspace a slice at a time while the user isn't waiting, so the first code lens doesn't have to
+        return !typeHierarchy.build();
     }
 
     private static final Logger LOG = Logger.getLogger("main");
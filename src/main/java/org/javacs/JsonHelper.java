@@ -2,7 +2,8 @@ package org.javacs;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import org.javacs.lsp.Adapters;
 
 public class JsonHelper {
-    public static final Gson GSON = new GsonBuilder().create();
+    public static final Gson GSON = Adapters.register(new GsonBuilder()).create();
 }
@@ -26,7 +26,11 @@ public class Main {
         try {
             // Logger.getLogger("").addHandler(new FileHandler("javacs.%u.log", false));
             setRootFormat();
+            FileStore.setCacheDirectory(FileStore.defaultCacheDirectory());
 
+            if (Arrays.asList(args).contains("--check")) {
+                System.exit(Check.main(Arrays.asList(args)));
+            }
             LSP.connect(JavaLanguageServer::new, System.in, System.out);
         } catch (Throwable t) {
             LOG.log(Level.SEVERE, t.getMessage(), t);
@@ -2,27 +2,12 @@ package org.javacs;
 
 import com.sun.source.doctree.DocCommentTree;
 import com.sun.source.doctree.DocTree;
-import java.io.IOException;
-import java.io.StringReader;
-import java.io.StringWriter;
-import java.nio.CharBuffer;
+import java.util.ArrayDeque;
 import java.util.List;
 import java.util.StringJoiner;
-import java.util.function.Function;
 import java.util.logging.Logger;
-import java.util.regex.Pattern;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 import org.javacs.lsp.MarkupContent;
 import org.javacs.lsp.MarkupKind;
-import org.w3c.dom.Document;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
 
 public class MarkdownHelper {
 
@@ -46,154 +31,216 @@ public class MarkdownHelper {
         return asMarkdown(html);
     }
 
-    private static Document parse(String html) {
-        try {
-            var xml = "<wrapper>" + html + "</wrapper>";
-            var factory = DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(false);
-            var builder = factory.newDocumentBuilder();
-            return builder.parse(new InputSource(new StringReader(xml)));
-        } catch (ParserConfigurationException | SAXException | IOException e) {
-            throw new RuntimeException(e);
-        }
+    /**
+     * Convert Javadoc text, which can mix HTML with inline tags like `{@code ...}`, to markdown in a single pass. Tags
+     * that have a markdown equivalent are converted, other HTML is passed through, and entities are decoded. The
+     * contents of `{@code ...}` and `{@literal ...}` are copied as-is.
+     */
+    static String asMarkdown(String commentText) {
+        var converter = new Converter(commentText);
+        converter.convert();
+        return converter.out.toString();
     }
 
-    private static void replaceNodes(Document doc, String tagName, Function<String, String> replace) {
-        var nodes = doc.getElementsByTagName(tagName);
-        while (nodes.getLength() > 0) {
-            var node = nodes.item(0);
-            var parent = node.getParentNode();
-            var text = replace.apply(node.getTextContent().trim());
-            var replacement = doc.createTextNode(text);
-            parent.replaceChild(replacement, node);
-            nodes = doc.getElementsByTagName(tagName);
-        }
-    }
+    private static class Converter {
+        /** A formatting element that hasn't been closed yet, like `<b>`, and where its contents start in `out`. */
+        private static class Span {
+            final String marker;
+            final int start;
 
-    private static String print(Document doc) {
-        try {
-            var tf = TransformerFactory.newInstance();
-            var transformer = tf.newTransformer();
-            transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
-            var writer = new StringWriter();
-            transformer.transform(new DOMSource(doc), new StreamResult(writer));
-            var wrapped = writer.getBuffer().toString();
-            return wrapped.substring("<wrapper>".length(), wrapped.length() - "</wrapper>".length());
-        } catch (TransformerException e) {
-            throw new RuntimeException(e);
+            Span(String marker, int start) {
+                this.marker = marker;
+                this.start = start;
+            }
         }
-    }
 
-    private static void check(CharBuffer in, char expected) {
-        var head = in.get();
-        if (head != expected) {
-            throw new RuntimeException(String.format("want `%s` got `%s`", expected, head));
-        }
-    }
+        final String in;
+        final StringBuilder out;
+        int i = 0;
+        final ArrayDeque<Span> open = new ArrayDeque<>();
 
-    private static boolean empty(CharBuffer in) {
-        return in.position() == in.limit();
-    }
+        Converter(String in) {
+            this.in = in;
+            this.out = new StringBuilder(in.length());
+        }
 
-    private static char peek(CharBuffer in) {
-        return in.get(in.position());
-    }
+        void convert() {
+            while (i < in.length()) {
+                var c = in.charAt(i);
+                if (c == '{' && i + 1 < in.length() && in.charAt(i + 1) == '@') {
+                    inlineTag();
+                } else if (c == '<') {
+                    htmlTag();
+                } else if (c == '&') {
+                    entity();
+                } else {
+                    out.append(c);
+                    i++;
+                }
+            }
+            while (!open.isEmpty()) {
+                closeSpan(open.pop());
+            }
+        }
 
-    private static String parseTag(CharBuffer in) {
-        check(in, '@');
-        var tag = new StringBuilder();
-        while (!empty(in) && Character.isAlphabetic(peek(in))) {
-            tag.append(in.get());
+        private boolean inCode() {
+            for (var s : open) {
+                if (s.marker.equals("`")) return true;
+            }
+            return false;
         }
-        return tag.toString();
-    }
 
-    private static void parseBlock(CharBuffer in, StringBuilder out) {
-        check(in, '{');
-        if (peek(in) == '@') {
-            var tag = parseTag(in);
-            if (peek(in) == ' ') in.get();
+        /** Convert `{@tag contents}`, where contents can contain balanced braces. */
+        private void inlineTag() {
+            var nameStart = i + 2;
+            var nameEnd = nameStart;
+            while (nameEnd < in.length() && Character.isAlphabetic(in.charAt(nameEnd))) nameEnd++;
+            var tag = in.substring(nameStart, nameEnd);
+            var contentStart = nameEnd < in.length() && in.charAt(nameEnd) == ' ' ? nameEnd + 1 : nameEnd;
+            var contentEnd = contentStart;
+            for (var depth = 0; contentEnd < in.length(); contentEnd++) {
+                var c = in.charAt(contentEnd);
+                if (c == '{') depth++;
+                if (c == '}' && depth-- == 0) break;
+            }
+            var contents = in.substring(contentStart, contentEnd);
+            i = Math.min(in.length(), contentEnd + 1);
             switch (tag) {
                 case "code":
                 case "link":
                 case "linkplain":
-                    out.append("`");
-                    parseInner(in, out);
-                    out.append("`");
+                    var backticks = !inCode();
+                    if (backticks) out.append('`');
+                    out.append(contents);
+                    if (backticks) out.append('`');
                     break;
                 case "literal":
-                    parseInner(in, out);
+                    out.append(contents);
                     break;
                 default:
                     LOG.warning(String.format("Unknown tag `@%s`", tag));
-                    parseInner(in, out);
+                    out.append(contents);
             }
-        } else {
-            parseInner(in, out);
         }
-        check(in, '}');
-    }
 
-    private static void parseInner(CharBuffer in, StringBuilder out) {
-        while (!empty(in)) {
-            switch (peek(in)) {
-                case '{':
-                    parseBlock(in, out);
-                    break;
-                case '}':
-                    return;
-                default:
-                    out.append(in.get());
+        /** Convert `<tag ...>` or `</tag>`, or copy it as-is if it isn't a tag we know. */
+        private void htmlTag() {
+            var close = i + 1 < in.length() && in.charAt(i + 1) == '/';
+            var nameStart = close ? i + 2 : i + 1;
+            var nameEnd = nameStart;
+            while (nameEnd < in.length() && Character.isLetterOrDigit(in.charAt(nameEnd))) nameEnd++;
+            var end = in.indexOf('>', nameEnd);
+            if (nameEnd == nameStart || end == -1) {
+                out.append('<');
+                i++;
+                return;
+            }
+            var marker = marker(in.substring(nameStart, nameEnd).toLowerCase());
+            if (marker == null) {
+                out.append(in, i, end + 1);
+            } else if (close) {
+                closeTag(marker);
+            } else if (!marker.isEmpty() && !inCode()) {
+                open.push(new Span(marker, out.length() + marker.length()));
+                out.append(marker);
             }
+            i = end + 1;
         }
-    }
 
-    private static void parse(CharBuffer in, StringBuilder out) {
-        while (!empty(in)) {
-            parseInner(in, out);
+        /** The markdown for an element, "" if the element should be dropped, or null if it should be copied. */
+        private static String marker(String tag) {
+            switch (tag) {
+                case "i":
+                case "em":
+                    return "*";
+                case "b":
+                case "strong":
+                    return "**";
+                case "code":
+                case "tt":
+                case "pre":
+                    return "`";
+                case "a":
+                    return "";
+                default:
+                    return null;
+            }
         }
-    }
-
-    private static String replaceTags(String in) {
-        var out = new StringBuilder();
-        parse(CharBuffer.wrap(in), out);
-        return out.toString();
-    }
 
-    private static String htmlToMarkdown(String html) {
-        html = replaceTags(html);
-
-        var doc = parse(html);
-
-        replaceNodes(doc, "i", contents -> String.format("*%s*", contents));
-        replaceNodes(doc, "b", contents -> String.format("**%s**", contents));
-        replaceNodes(doc, "pre", contents -> String.format("`%s`", contents));
-        replaceNodes(doc, "code", contents -> String.format("`%s`", contents));
-        replaceNodes(doc, "a", contents -> contents);
-
-        return print(doc);
-    }
+        private void closeTag(String marker) {
+            if (marker.isEmpty()) return;
+            var found = false;
+            for (var s : open) {
+                if (s.marker.equals(marker)) found = true;
+            }
+            // Close elements that were left open inside this one, and ignore close tags that don't match anything
+            while (found) {
+                var s = open.pop();
+                closeSpan(s);
+                found = !s.marker.equals(marker);
+            }
+        }
 
-    private static final Pattern HTML_TAG = Pattern.compile("<(\\w+)[^>]*>");
+        /** Close `s`, trimming whitespace around its contents, like `<b> foo </b>` becomes `**foo**`. */
+        private void closeSpan(Span s) {
+            while (out.length() > s.start && Character.isWhitespace(out.charAt(out.length() - 1))) {
+                out.setLength(out.length() - 1);
+            }
+            var start = s.start;
+            while (start < out.length() && Character.isWhitespace(out.charAt(start))) start++;
+            out.delete(s.start, start);
+            if (out.length() == s.start) {
+                out.setLength(s.start - s.marker.length());
+            } else {
+                out.append(s.marker);
+            }
+        }
 
-    private static boolean isHtml(String text) {
-        var tags = HTML_TAG.matcher(text);
-        while (tags.find()) {
-            var tag = tags.group(1);
-            var close = String.format("</%s>", tag);
-            var findClose = text.indexOf(close, tags.end());
-            if (findClose != -1) return true;
+        /** Decode `&name;`, `&#123;` or `&#x7B;`, or copy `&` as-is. */
+        private void entity() {
+            var end = in.indexOf(';', i);
+            if (end == -1 || end - i > 10) {
+                out.append('&');
+                i++;
+                return;
+            }
+            var name = in.substring(i + 1, end);
+            var decoded = decode(name);
+            if (decoded == -1) {
+                out.append('&');
+                i++;
+                return;
+            }
+            out.appendCodePoint(decoded);
+            i = end + 1;
         }
-        return false;
-    }
 
-    /** If `commentText` looks like HTML, convert it to markdown */
-    static String asMarkdown(String commentText) {
-        if (isHtml(commentText)) {
-            commentText = htmlToMarkdown(commentText);
+        private static int decode(String entity) {
+            switch (entity) {
+                case "lt":
+                    return '<';
+                case "gt":
+                    return '>';
+                case "amp":
+                    return '&';
+                case "quot":
+                    return '"';
+                case "apos":
+                    return '\'';
+                case "nbsp":
+                    return ' ';
+            }
+            try {
+                if (entity.startsWith("#x") || entity.startsWith("#X")) {
+                    return Integer.parseInt(entity.substring(2), 16);
+                } else if (entity.startsWith("#")) {
+                    return Integer.parseInt(entity.substring(1));
+                }
+            } catch (NumberFormatException e) {
+                // Not an entity
+            }
+            return -1;
         }
-        commentText = replaceTags(commentText);
-        return commentText;
     }
 
     private static final Logger LOG = Logger.getLogger("main");
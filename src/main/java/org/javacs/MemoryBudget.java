@@ -0,0 +1,70 @@
+package org.javacs;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryType;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import javax.management.NotificationEmitter;
+
+/**
+ * MemoryBudget watches how much of the heap is still in use after each full collection, which is roughly the size of
+ * everything the server retains. A ReusableContext holds every symbol javac has ever completed, so in a long session it
+ * only grows. When the retained size crosses BUDGET of the maximum heap, MemoryBudget counts a new generation of
+ * pressure, and each ReusableCompiler throws away its context the next time it starts a compilation.
+ */
+class MemoryBudget {
+    /** Fraction of the maximum heap that may be retained before we start throwing away compiler state. */
+    static final double BUDGET = 0.7;
+
+    private static final AtomicInteger generation = new AtomicInteger();
+
+    static {
+        watchHeap();
+    }
+
+    private static void watchHeap() {
+        var watching = false;
+        for (var pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            var max = pool.getUsage().getMax();
+            if (pool.getType() != MemoryType.HEAP || !pool.isCollectionUsageThresholdSupported() || max <= 0) continue;
+            pool.setCollectionUsageThreshold((long) (max * BUDGET));
+            watching = true;
+        }
+        if (!watching) {
+            LOG.warning("...no heap pool supports collection usage thresholds, compilers won't be recycled");
+            return;
+        }
+        var emitter = (NotificationEmitter) ManagementFactory.getMemoryMXBean();
+        emitter.addNotificationListener(
+                (notification, __) -> {
+                    if (!notification.getType().equals(MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED)) {
+                        return;
+                    }
+                    LOG.warning(String.format("Heap is over budget after collection, using %s", heapUsage()));
+                    exceeded();
+                },
+                null,
+                null);
+    }
+
+    /** Record that the heap is over budget. Called from the JMX notification thread, and by tests. */
+    static void exceeded() {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * The number of times the heap has gone over budget. Callers remember the last generation they saw, and recycle
+     * their state when it changes.
+     */
+    static int generation() {
+        return generation.get();
+    }
+
+    static String heapUsage() {
+        var heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        return String.format("%,d MB of %,d MB", heap.getUsed() / 1024 / 1024, heap.getMax() / 1024 / 1024);
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
@@ -0,0 +1,114 @@
+package org.javacs;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * PackageGraph records which packages each workspace package imports. A file can only refer to a member of a class if
+ * its package can reach the package of that class, either directly through an import or through the packages it
+ * imports, so the graph lets us rule out files without compiling them. The graph is built from the imports of each
+ * file, and a file is re-read only when it has been modified since it was last added.
+ */
+class PackageGraph {
+
+    private static class FileEntry {
+        final Instant modified;
+        final String packageName;
+        final Set<String> dependencies;
+
+        FileEntry(Instant modified, String packageName, Set<String> dependencies) {
+            this.modified = modified;
+            this.packageName = packageName;
+            this.dependencies = dependencies;
+        }
+    }
+
+    /** readImports(file) is the qualified names imported by file, like `java.util.List` or `java.util.*` */
+    private final Function<Path, List<String>> readImports;
+
+    private final Map<Path, FileEntry> files = new HashMap<>();
+    /** importedBy[p][q] is the number of files in package q that import something from package p */
+    private final Map<String, Map<String, Integer>> importedBy = new HashMap<>();
+
+    PackageGraph(Function<Path, List<String>> readImports) {
+        this.readImports = readImports;
+    }
+
+    /** Re-read files that have been created or modified since the last call, and forget deleted files. */
+    synchronized void refresh() {
+        var all = new HashSet<>(FileStore.all());
+        var count = 0;
+        for (var file : all) {
+            var existing = files.get(file);
+            if (existing != null && existing.modified.equals(FileStore.modified(file))) continue;
+            update(file);
+            count++;
+        }
+        for (var file : new ArrayList<>(files.keySet())) {
+            if (!all.contains(file)) remove(file);
+        }
+        if (count > 0) {
+            LOG.info(String.format("...updated package graph with %d files", count));
+        }
+    }
+
+    private void update(Path file) {
+        remove(file);
+        var packageName = FileStore.packageName(file);
+        var dependencies = new HashSet<String>();
+        for (var i : readImports.apply(file)) {
+            dependencies.add(packageName(i));
+        }
+        dependencies.remove(packageName);
+        files.put(file, new FileEntry(FileStore.modified(file), packageName, dependencies));
+        for (var d : dependencies) {
+            importedBy.computeIfAbsent(d, __ -> new HashMap<>()).merge(packageName, 1, Integer::sum);
+        }
+    }
+
+    private void remove(Path file) {
+        var existing = files.remove(file);
+        if (existing == null) return;
+        for (var d : existing.dependencies) {
+            var from = importedBy.get(d);
+            from.merge(existing.packageName, -1, Integer::sum);
+            from.remove(existing.packageName, 0);
+            if (from.isEmpty()) importedBy.remove(d);
+        }
+    }
+
+    /** The workspace packages that can reach `packageName` through imports, including `packageName` itself. */
+    synchronized Set<String> dependents(String packageName) {
+        refresh();
+        var result = new HashSet<String>();
+        var todo = new ArrayDeque<String>();
+        result.add(packageName);
+        todo.add(packageName);
+        while (!todo.isEmpty()) {
+            for (var from : importedBy.getOrDefault(todo.remove(), Map.of()).keySet()) {
+                if (result.add(from)) todo.add(from);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The package part of an imported name. Like the rest of the server, this relies on the convention that package
+     * names are lower case and class names are capitalized, so `a.b.C.D` and `a.b.C.*` are both in package `a.b`.
+     */
+    private static String packageName(String importedName) {
+        var parts = importedName.split("\\.");
+        var packageName = new StringJoiner(".");
+        for (var i = 0; i < parts.length - 1; i++) {
+            var part = parts[i];
+            if (part.isEmpty() || !Character.isLowerCase(part.charAt(0))) break;
+            packageName.add(part);
+        }
+        return packageName.toString();
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
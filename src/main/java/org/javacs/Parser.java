@@ -8,7 +8,6 @@ import java.nio.file.*;
 import java.time.Instant;
 import java.util.*;
 import java.util.logging.Logger;
-import java.util.regex.Pattern;
 import javax.lang.model.element.*;
 import javax.tools.JavaCompiler;
 import javax.tools.JavaFileObject;
@@ -26,6 +25,7 @@ class Parser {
 
     final JavaFileObject file;
     final String contents;
+    final SourceText text;
     final JavacTask task;
     final CompilationUnitTree root;
     final Trees trees;
@@ -37,6 +37,7 @@ class Parser {
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        this.text = new SourceText(contents);
         this.task = singleFileTask(file);
         try {
             this.root = task.parse().iterator().next();
@@ -74,26 +75,11 @@ class Parser {
         return cachedParse;
     }
 
-    Set<Name> packagePrivateClasses() {
-        var result = new HashSet<Name>();
-        for (var t : root.getTypeDecls()) {
-            if (t instanceof ClassTree) {
-                var c = (ClassTree) t;
-                var isPublic = c.getModifiers().getFlags().contains(Modifier.PUBLIC);
-                if (!isPublic) {
-                    result.add(c.getSimpleName());
-                }
-            }
-        }
-        return result;
-    }
-
-    static Range range(JavacTask task, CharSequence contents, TreePath path) {
+    static Range range(JavacTask task, SourceText text, TreePath path) {
         // Find start position
         var trees = Trees.instance(task);
         var pos = trees.getSourcePositions();
         var root = path.getCompilationUnit();
-        var lines = root.getLineMap();
         var start = (int) pos.getStartPosition(root, path.getLeaf());
         var end = (int) pos.getEndPosition(root, path.getLeaf());
 
@@ -116,7 +102,7 @@ class Parser {
 
             // Find position of class name
             var name = cls.getSimpleName().toString();
-            start = indexOf(contents, name, start);
+            start = text.findName(name, start);
             if (start == -1) {
                 LOG.warning(String.format("Couldn't find identifier `%s` in `%s`", name, path.getLeaf()));
                 return Range.NONE;
@@ -135,7 +121,7 @@ class Parser {
             if (name.equals("<init>")) {
                 name = className(path);
             }
-            start = indexOf(contents, name, start);
+            start = text.findName(name, start);
             if (start == -1) {
                 LOG.warning(String.format("Couldn't find identifier `%s` in `%s`", name, path.getLeaf()));
                 return Range.NONE;
@@ -151,7 +137,7 @@ class Parser {
 
             // Find position of method name
             var name = field.getName().toString();
-            start = indexOf(contents, name, start);
+            start = text.findName(name, start);
             if (start == -1) {
                 LOG.warning(String.format("Couldn't find identifier `%s` in `%s`", name, path.getLeaf()));
                 return Range.NONE;
@@ -161,28 +147,14 @@ class Parser {
         if (path.getLeaf() instanceof MemberSelectTree) {
             var member = (MemberSelectTree) path.getLeaf();
             var name = member.getIdentifier().toString();
-            start = indexOf(contents, name, start);
+            start = text.findName(name, start);
             if (start == -1) {
                 LOG.warning(String.format("Couldn't find identifier `%s` in `%s`", name, path.getLeaf()));
                 return Range.NONE;
             }
             end = start + name.length();
         }
-        var startLine = (int) lines.getLineNumber(start);
-        var startCol = (int) lines.getColumnNumber(start);
-        var endLine = (int) lines.getLineNumber(end);
-        var endCol = (int) lines.getColumnNumber(end);
-        var range = new Range(new Position(startLine - 1, startCol - 1), new Position(endLine - 1, endCol - 1));
-
-        return range;
-    }
-
-    private static int indexOf(CharSequence contents, String name, int start) {
-        var matcher = Pattern.compile("\\b" + name + "\\b").matcher(contents);
-        if (matcher.find(start)) {
-            return matcher.start();
-        }
-        return -1;
+        return text.range(start, end);
     }
 
     private static final DocCommentTree EMPTY_DOC = makeEmptyDoc();
@@ -0,0 +1,21 @@
+package org.javacs;
+
+/** Progress lets long-running operations report how far along they are, and notice when the client gives up. */
+public interface Progress {
+    /** `done` out of `total` units of work are finished. */
+    void report(int done, int total);
+
+    /** True if the client has cancelled the request, so the operation should stop as soon as it can. */
+    boolean isCancelled();
+
+    Progress NONE =
+            new Progress() {
+                @Override
+                public void report(int done, int total) {}
+
+                @Override
+                public boolean isCancelled() {
+                    return false;
+                }
+            };
+}
@@ -30,6 +30,7 @@ import com.sun.source.util.JavacTask;
 import com.sun.source.util.TaskEvent;
 import com.sun.source.util.TaskListener;
 import com.sun.tools.javac.api.*;
+import com.sun.tools.javac.code.Symtab;
 import com.sun.tools.javac.code.Types;
 import com.sun.tools.javac.comp.Annotate;
 import com.sun.tools.javac.comp.Check;
@@ -45,7 +46,10 @@ import com.sun.tools.javac.util.DefinedBy.Api;
 import com.sun.tools.javac.util.Log;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
@@ -80,9 +84,26 @@ class ReusableCompiler {
     private static final Logger LOG = Logger.getLogger("main");
     private static final JavacTool systemProvider = JavacTool.create();
 
-    private List<String> currentOptions = new ArrayList<>();
+    /**
+     * How many contexts to keep. A workspace that uses JPMS modules alternates between module mode, for sources inside
+     * a module, and class path mode, for sources like tests that sit outside it. Each mode has its own options, so
+     * keeping one context per mode avoids starting over with a cold context on every switch. Each context holds on to
+     * the symbols it has compiled, so the heap budget recycles all of them at once.
+     */
+    private static final int MAX_CONTEXTS = 2;
+
+    /** contexts[options] is the context that compiles with options, least recently used first. */
+    private final Map<List<String>, ReusableContext> contexts =
+            new LinkedHashMap<>(MAX_CONTEXTS + 1, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<List<String>, ReusableContext> eldest) {
+                    return size() > MAX_CONTEXTS;
+                }
+            };
+
     private ReusableContext currentContext;
     private boolean checkedOut;
+    private int memoryGeneration = MemoryBudget.generation();
 
     /**
      * Creates a new task as if by {@link javax.tools.JavaCompiler#getTask} and runs the provided worker with it. The
@@ -95,6 +116,8 @@ class ReusableCompiler {
      * @param options compiler options, {@code null} means no options
      * @param classes names of classes to be processed by annotation processing, {@code null} means no class names
      * @param compilationUnits the compilation units to compile, {@code null} means no compilation units
+     * @param progress checked between javac phases and compilation units; when it is cancelled, the task throws
+     *     {@link CancellationException} wrapped in a RuntimeException, see {@link #cancelled}
      * @return an object representing the compilation
      * @throws RuntimeException if an unrecoverable error occurred in a user supplied component. The {@linkplain
      *     Throwable#getCause() cause} will be the error in user code.
@@ -106,34 +129,80 @@ class ReusableCompiler {
             DiagnosticListener<? super JavaFileObject> diagnosticListener,
             Iterable<String> options,
             Iterable<String> classes,
-            Iterable<? extends JavaFileObject> compilationUnits) {
+            Iterable<? extends JavaFileObject> compilationUnits,
+            Progress progress) {
         if (checkedOut) {
             throw new RuntimeException("Compiler is already in-use!");
         }
         checkedOut = true;
+        var generation = MemoryBudget.generation();
         List<String> opts =
                 StreamSupport.stream(options.spliterator(), false).collect(Collectors.toCollection(ArrayList::new));
-        if (!opts.equals(currentOptions)) {
-            LOG.warning(String.format("Options changed from %s to %s, creating new compiler", options, opts));
-            currentOptions = opts;
+        if (memoryGeneration != generation && !contexts.isEmpty()) {
+            // Symbols from every file the contexts have compiled are still reachable, so start over with new contexts
+            var files = contexts.values().stream().mapToInt(c -> c.files).sum();
+            var tasks = contexts.values().stream().mapToInt(c -> c.tasks).sum();
+            LOG.warning(
+                    String.format(
+                            "Heap is over budget, recycling %d compiler contexts that compiled %,d files in %,d tasks",
+                            contexts.size(), files, tasks));
+            contexts.clear();
+        }
+        currentContext = contexts.get(opts);
+        if (currentContext == null) {
+            LOG.warning(String.format("No compiler for options %s, creating new compiler", opts));
             currentContext = new ReusableContext(opts);
+            contexts.put(opts, currentContext);
+        }
+        memoryGeneration = generation;
+        currentContext.tasks++;
+        for (var __ : compilationUnits) {
+            currentContext.files++;
         }
         JavacTaskImpl task =
                 (JavacTaskImpl)
                         systemProvider.getTask(
                                 null, fileManager, diagnosticListener, opts, classes, compilationUnits, currentContext);
 
+        currentContext.progress = progress;
         task.addTaskListener(currentContext);
 
         return new Borrow(task, currentContext);
     }
 
+    /** How many tasks the current context has run. A new context starts at 1. */
+    int contextTasks() {
+        return currentContext == null ? 0 : currentContext.tasks;
+    }
+
+    /**
+     * Find the CancellationException thrown by ReusableContext, if `e` was caused by cancelling the task. javac
+     * wraps exceptions thrown by task listeners, so the cancellation can be a few causes down.
+     */
+    static CancellationException cancelled(Throwable e) {
+        for (var cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CancellationException) return (CancellationException) cause;
+        }
+        return null;
+    }
+
     class Borrow implements AutoCloseable {
         final JavacTask task;
+        private final ReusableContext ctx;
         boolean closed;
 
         Borrow(JavacTask task, ReusableContext ctx) {
             this.task = task;
+            this.ctx = ctx;
+        }
+
+        /**
+         * Stop checking the progress the task was borrowed with. The task can outlive the request that compiled it,
+         * when the compile is cached and re-used, and javac fires more events as later requests complete symbols
+         * lazily. Those events must not be cancelled by the request that is already finished.
+         */
+        void releaseProgress() {
+            ctx.progress = Progress.NONE;
         }
 
         @Override
@@ -154,9 +223,18 @@ class ReusableCompiler {
         }
     }
 
+    /**
+     * ReusableContext listens to the task, so it can stop compiling when `progress` is cancelled. Each javac phase
+     * fires an event per compilation unit, or per class for ANALYZE, so a cancelled compilation stops within one unit
+     * of work. Throwing from the listener unwinds javac back to the caller of parse() or analyze(), and Borrow.close()
+     * resets the context the same way it does after a successful compilation, so the next task can reuse it.
+     */
     static class ReusableContext extends Context implements TaskListener {
 
         List<String> arguments;
+        Progress progress = Progress.NONE;
+        /** How many tasks and files this context has compiled, for logging when it is recycled. */
+        int tasks, files;
 
         ReusableContext(List<String> arguments) {
             super();
@@ -183,22 +261,44 @@ class ReusableCompiler {
                 Types.instance(this).newRound();
                 Check.instance(this).newRound();
                 Modules.instance(this).newRound();
+                forgetSourceModules();
                 Annotate.instance(this).newRound();
                 CompileStates.instance(this).clear();
                 MultiTaskListener.instance(this).clear();
             }
+            progress = Progress.NONE;
+        }
+
+        /**
+         * Modules declared by a module-info.java remember the file object they were entered from, and javac reports a
+         * duplicate module if the next round enters module-info.java from a new file object. Forget the source of each
+         * source module, so module mode can reuse the context and only module-info.java is entered again.
+         */
+        private void forgetSourceModules() {
+            for (var m : Symtab.instance(this).getAllModules()) {
+                var source = m.module_info.sourcefile;
+                if (source == null || source.getKind() != JavaFileObject.Kind.SOURCE) continue;
+                m.module_info.sourcefile = null;
+                m.module_info.classfile = null;
+            }
         }
 
         @Override
         @DefinedBy(Api.COMPILER_TREE)
         public void finished(TaskEvent e) {
-            // do nothing
+            checkCancelled(e);
         }
 
         @Override
         @DefinedBy(Api.COMPILER_TREE)
         public void started(TaskEvent e) {
-            // do nothing
+            checkCancelled(e);
+        }
+
+        private void checkCancelled(TaskEvent e) {
+            if (!progress.isCancelled()) return;
+            var file = e.getSourceFile() == null ? "" : " of " + e.getSourceFile().getName();
+            throw new CancellationException("Compilation was cancelled during " + e.getKind() + file);
         }
 
         <T> void drop(Key<T> k) {
@@ -4,11 +4,22 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.function.Predicate;
 import java.util.logging.Logger;
 import javax.tools.*;
 
 class SourceFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+    /** In module mode, the directory that contains module-info.java; the source path is restricted to this module. */
+    Path moduleRoot;
+
+    /**
+     * The workspace files that belong to the compiler's root. The source path is restricted to these, so two roots that
+     * declare the same class each see their own.
+     */
+    Predicate<Path> inRoot = __ -> true;
+
     SourceFileManager() {
         super(createDelegateFileManager());
     }
@@ -26,13 +37,33 @@ class SourceFileManager extends ForwardingJavaFileManager<StandardJavaFileManage
     public Iterable<JavaFileObject> list(
             Location location, String packageName, Set<JavaFileObject.Kind> kinds, boolean recurse) throws IOException {
         if (location == StandardLocation.SOURCE_PATH) {
-            var stream = FileStore.list(packageName).stream().map(this::asJavaFileObject);
+            var stream = FileStore.list(packageName).stream().filter(this::inModule).map(this::asJavaFileObject);
             return stream::iterator;
         } else {
             return super.list(location, packageName, kinds, recurse);
         }
     }
 
+    private boolean inModule(Path file) {
+        return inRoot.test(file) && (moduleRoot == null || file.startsWith(moduleRoot));
+    }
+
+    private boolean isModuleInfo(FileObject file) {
+        if (moduleRoot == null || !file.toUri().getScheme().equals("file")) return false;
+        return Paths.get(file.toUri()).equals(moduleRoot.resolve("module-info.java"));
+    }
+
+    /**
+     * module-info.java is hidden from the source path, so it is read from disk by the standard file manager, unless it
+     * is open in the editor.
+     */
+    JavaFileObject moduleInfo(Path file) {
+        if (FileStore.isOpen(file)) {
+            return new SourceFileObject(file, FileStore.contents(file), FileStore.modified(file));
+        }
+        return fileManager.getJavaFileObjects(file).iterator().next();
+    }
+
     private JavaFileObject asJavaFileObject(Path file) {
         // TODO erase method bodies of files that are not open
         return new SourceFileObject(file);
@@ -69,6 +100,7 @@ class SourceFileManager extends ForwardingJavaFileManager<StandardJavaFileManage
             var packageName = StringSearch.mostName(className);
             var simpleClassName = StringSearch.lastName(className);
             for (var f : FileStore.list(packageName)) {
+                if (!inModule(f)) continue;
                 if (f.getFileName().toString().equals(simpleClassName + kind.extension)) {
                     return new SourceFileObject(f);
                 }
@@ -89,8 +121,9 @@ class SourceFileManager extends ForwardingJavaFileManager<StandardJavaFileManage
     @Override
     public boolean contains(Location location, FileObject file) throws IOException {
         if (location == StandardLocation.SOURCE_PATH) {
+            if (!(file instanceof SourceFileObject) || isModuleInfo(file)) return isModuleInfo(file);
             var source = (SourceFileObject) file;
-            return FileStore.contains(source.path);
+            return FileStore.contains(source.path) && inModule(source.path);
         } else {
             return super.contains(location, file);
         }
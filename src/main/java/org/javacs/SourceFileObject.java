@@ -21,7 +21,9 @@ public class SourceFileObject implements JavaFileObject {
     }
 
     public SourceFileObject(Path path, String contents, Instant modified) {
-        if (!FileStore.isJavaFile(path)) throw new RuntimeException(path + " is not a java source");
+        if (!FileStore.isJavaFile(path) && !FileStore.isModuleInfo(path)) {
+            throw new RuntimeException(path + " is not a java source");
+        }
         this.path = path;
         this.contents = contents;
         this.modified = modified;
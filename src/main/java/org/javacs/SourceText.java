@@ -0,0 +1,97 @@
+package org.javacs;
+
+import com.sun.source.tree.CompilationUnitTree;
+import java.io.IOException;
+import java.util.Arrays;
+import org.javacs.lsp.Position;
+import org.javacs.lsp.Range;
+
+/**
+ * SourceText is the contents of a source file together with the offset where each line starts. It converts offsets
+ * to LSP positions with a binary search, and finds names inside a region by scanning the contents in place, so callers
+ * that need many ranges in the same file don't copy the file or compile a regex for each one.
+ *
+ * <p>A CompileTask keeps one SourceText for each of its roots, so colors, references and diagnostics for the same
+ * compilation share it.
+ */
+public class SourceText {
+    public final CharSequence contents;
+    private final int[] lineStarts;
+
+    public SourceText(CharSequence contents) {
+        this.contents = contents;
+        this.lineStarts = lineStarts(contents);
+    }
+
+    /** The text javac parsed `root` from. Offsets in `root` are offsets in this text. */
+    public static SourceText of(CompilationUnitTree root) {
+        try {
+            return new SourceText(root.getSourceFile().getCharContent(true));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** Lines end with `\n`, `\r\n` or `\r`, the same as javac's LineMap and the LSP. */
+    private static int[] lineStarts(CharSequence text) {
+        var starts = new int[16];
+        var count = 1;
+        for (var i = 0; i < text.length(); i++) {
+            var c = text.charAt(i);
+            if (c == '\r' && i + 1 < text.length() && text.charAt(i + 1) == '\n') continue;
+            if (c != '\n' && c != '\r') continue;
+            if (count == starts.length) starts = Arrays.copyOf(starts, count * 2);
+            starts[count++] = i + 1;
+        }
+        return Arrays.copyOf(starts, count);
+    }
+
+    /** The 0-based line containing `offset`. Offsets before the start of the file, like javac's NOPOS, are line 0. */
+    public int line(int offset) {
+        var i = Arrays.binarySearch(lineStarts, offset);
+        return i >= 0 ? i : Math.max(-i - 2, 0);
+    }
+
+    /** The 0-based column of `offset`. */
+    public int character(int offset) {
+        return offset - lineStarts[line(offset)];
+    }
+
+    public Position position(int offset) {
+        return new Position(line(offset), character(offset));
+    }
+
+    public Range range(int start, int end) {
+        return new Range(position(start), position(end));
+    }
+
+    /**
+     * The offset of the first occurrence of `name` as a whole word in `[start, end)`, or -1 if there isn't one. The
+     * chars before and after the match must not be part of an identifier, so `foo` isn't found inside `foobar`.
+     */
+    public int findName(CharSequence name, int start, int end) {
+        var length = name.length();
+        if (length == 0 || start < 0) return -1;
+        var last = Math.min(end, contents.length()) - length;
+        for (var i = start; i <= last; i++) {
+            if (!matches(name, i)) continue;
+            if (i > 0 && Character.isJavaIdentifierPart(contents.charAt(i - 1))) continue;
+            var after = i + length;
+            if (after < contents.length() && Character.isJavaIdentifierPart(contents.charAt(after))) continue;
+            return i;
+        }
+        return -1;
+    }
+
+    /** The offset of the first occurrence of `name` as a whole word after `start`, or -1 if there isn't one. */
+    public int findName(CharSequence name, int start) {
+        return findName(name, start, contents.length());
+    }
+
+    private boolean matches(CharSequence name, int offset) {
+        for (var i = 0; i < name.length(); i++) {
+            if (contents.charAt(offset + i) != name.charAt(i)) return false;
+        }
+        return true;
+    }
+}
@@ -6,9 +6,12 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.time.Instant;
 import java.util.*;
+import java.util.function.Predicate;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
+import java.util.stream.IntStream;
 import javax.lang.model.element.TypeElement;
 
 // Translated from https://golang.org/src/strings/search.go
@@ -55,7 +58,7 @@ public class StringSearch {
     private final int[] goodSuffixSkip;
 
     StringSearch(String patternSting) {
-        this.pattern = patternSting.getBytes();
+        this.pattern = patternSting.getBytes(StandardCharsets.UTF_8);
         this.goodSuffixSkip = new int[pattern.length];
 
         // last is the index of the last character in the pattern.
@@ -91,7 +94,7 @@ public class StringSearch {
     }
 
     int next(String text) {
-        return next(text.getBytes());
+        return next(text.getBytes(StandardCharsets.UTF_8));
     }
 
     private int next(byte[] text) {
@@ -119,19 +122,23 @@ public class StringSearch {
         return -1;
     }
 
-    private boolean isWordChar(byte b) {
-        char c = (char) (b + 128);
-        return Character.isAlphabetic(c) || Character.isDigit(c) || c == '$' || c == '_';
+    /**
+     * ASCII letters, digits, `_` and `$`, and every byte of a multi-byte UTF-8 sequence, which we assume is part of a
+     * non-ASCII identifier.
+     */
+    private static boolean isWordByte(byte b) {
+        if (b < 0) return true;
+        return ('a' <= b && b <= 'z') || ('A' <= b && b <= 'Z') || ('0' <= b && b <= '9') || b == '_' || b == '$';
     }
 
     private boolean startsWord(ByteBuffer text, int offset) {
         if (offset == 0) return true;
-        return !isWordChar(text.get(offset - 1));
+        return !isWordByte(text.get(offset - 1));
     }
 
     private boolean endsWord(ByteBuffer text, int offset) {
         if (offset + 1 >= text.limit()) return true;
-        return !isWordChar(text.get(offset + 1));
+        return !isWordByte(text.get(offset + 1));
     }
 
     private boolean isWord(ByteBuffer text, int offset) {
@@ -139,7 +146,7 @@ public class StringSearch {
     }
 
     int nextWord(String text) {
-        return nextWord(text.getBytes());
+        return nextWord(text.getBytes(StandardCharsets.UTF_8));
     }
 
     private int nextWord(byte[] text) {
@@ -196,23 +203,43 @@ public class StringSearch {
         }
     }
 
-    private static final ByteBuffer SEARCH_BUFFER = ByteBuffer.allocateDirect(1024 * 1024);
+    /** Files larger than this are memory-mapped instead of being read into a per-thread buffer. */
+    private static final int MAP_THRESHOLD = 1024 * 1024;
 
-    // TODO cache the progress made by searching shorter queries
-    static boolean containsWordMatching(Path java, String query) {
+    private static final ThreadLocal<ByteBuffer> BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocate(64 * 1024));
+
+    /**
+     * The bytes of `file`, starting at position 0. Small files are read into a buffer owned by the calling thread,
+     * which is only valid until that thread reads another file. Large files are memory-mapped.
+     */
+    private static ByteBuffer read(Path file) throws IOException {
+        try (var channel = FileChannel.open(file)) {
+            var size = channel.size();
+            if (size > MAP_THRESHOLD) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            var buffer = BUFFER.get();
+            if (buffer.capacity() < size) {
+                buffer = ByteBuffer.allocate((int) size);
+                BUFFER.set(buffer);
+            }
+            buffer.clear();
+            buffer.limit((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) != -1) {}
+            buffer.flip();
+            return buffer;
+        }
+    }
+
+    /** Run `test` on the contents of `java`, using the open version if there is one. Thread-safe. */
+    private static boolean search(Path java, Predicate<ByteBuffer> test) {
         if (FileStore.activeDocuments().contains(java)) {
-            var text = FileStore.contents(java);
-            return matchesTitleCase(text, query);
+            var text = FileStore.contents(java).getBytes(StandardCharsets.UTF_8);
+            return test.test(ByteBuffer.wrap(text));
         }
-        try (var channel = FileChannel.open(java)) {
-            // Read up to 1 MB of data from file
-            var limit = Math.min((int) channel.size(), SEARCH_BUFFER.capacity());
-            SEARCH_BUFFER.position(0);
-            SEARCH_BUFFER.limit(limit);
-            channel.read(SEARCH_BUFFER);
-            SEARCH_BUFFER.position(0);
-            var chars = StandardCharsets.UTF_8.decode(SEARCH_BUFFER);
-            return matchesTitleCase(chars, query);
+        try {
+            return test.test(read(java));
         } catch (NoSuchFileException e) {
             LOG.warning(e.getMessage());
             return false;
@@ -221,48 +248,118 @@ public class StringSearch {
         }
     }
 
+    // TODO cache the progress made by searching shorter queries
+    static boolean containsWordMatching(Path java, String query) {
+        return search(java, titleCaseMatcher(query));
+    }
+
+    /**
+     * Match `query` against the raw bytes of a file. ASCII queries, which are nearly all of them, are matched directly
+     * over the UTF-8 bytes. Other queries need Character.toLowerCase, so we decode the file first.
+     */
+    private static Predicate<ByteBuffer> titleCaseMatcher(String query) {
+        for (var i = 0; i < query.length(); i++) {
+            if (query.charAt(i) >= 0x80) {
+                return text -> matchesTitleCase(StandardCharsets.UTF_8.decode(text), query);
+            }
+        }
+        var find = query.getBytes(StandardCharsets.US_ASCII);
+        return text -> matchesTitleCase(text, find);
+    }
+
     static boolean containsWord(Path java, String query) {
         var search = new StringSearch(query);
-        if (FileStore.activeDocuments().contains(java)) {
-            var text = FileStore.contents(java).getBytes();
-            return search.nextWord(text) != -1;
-        }
-        try (var channel = FileChannel.open(java)) {
-            // Read up to 1 MB of data from file
-            var limit = Math.min((int) channel.size(), SEARCH_BUFFER.capacity());
-            SEARCH_BUFFER.position(0);
-            SEARCH_BUFFER.limit(limit);
-            channel.read(SEARCH_BUFFER);
-            SEARCH_BUFFER.position(0);
-            return search.nextWord(SEARCH_BUFFER) != -1;
-        } catch (NoSuchFileException e) {
-            LOG.warning(e.getMessage());
-            return false;
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        return search(java, text -> search.nextWord(text) != -1);
     }
 
     private static boolean containsString(Path java, String query) {
         var search = new StringSearch(query);
-        if (FileStore.activeDocuments().contains(java)) {
-            var text = FileStore.contents(java).getBytes();
-            return search.next(text) != -1;
-        }
-        try (var channel = FileChannel.open(java)) {
-            // Read up to 1 MB of data from file
-            var limit = Math.min((int) channel.size(), SEARCH_BUFFER.capacity());
-            SEARCH_BUFFER.position(0);
-            SEARCH_BUFFER.limit(limit);
-            channel.read(SEARCH_BUFFER);
-            SEARCH_BUFFER.position(0);
-            return search.next(SEARCH_BUFFER) != -1;
-        } catch (NoSuchFileException e) {
-            LOG.warning(e.getMessage());
-            return false;
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        return search(java, text -> search.next(text) != -1);
+    }
+
+    /** found[i] is true if files[i] contains the word `query`. Files are searched in parallel on the fork/join pool. */
+    static boolean[] containsWord(List<Path> files, String query) {
+        var search = new StringSearch(query);
+        var found = new boolean[files.size()];
+        IntStream.range(0, found.length)
+                .parallel()
+                .forEach(i -> found[i] = search(files.get(i), text -> search.nextWord(text) != -1));
+        return found;
+    }
+
+    private static final int BATCH_SIZE = 256;
+
+    /**
+     * The files that contain words matching `query`, in order. Files are searched BATCH_SIZE at a time in parallel on
+     * the fork/join pool, so a caller that stops after the first few results doesn't search the whole workspace.
+     */
+    static Iterable<Path> containsWordMatching(List<Path> files, String query) {
+        var test = titleCaseMatcher(query);
+        return () ->
+                new Iterator<Path>() {
+                    int searched = 0;
+                    final ArrayDeque<Path> found = new ArrayDeque<>();
+
+                    @Override
+                    public boolean hasNext() {
+                        while (found.isEmpty() && searched < files.size()) {
+                            var batch = files.subList(searched, Math.min(searched + BATCH_SIZE, files.size()));
+                            var matches = new boolean[batch.size()];
+                            IntStream.range(0, matches.length)
+                                    .parallel()
+                                    .forEach(i -> matches[i] = search(batch.get(i), test));
+                            for (var i = 0; i < matches.length; i++) {
+                                if (matches[i]) found.add(batch.get(i));
+                            }
+                            searched += batch.size();
+                        }
+                        return !found.isEmpty();
+                    }
+
+                    @Override
+                    public Path next() {
+                        if (!hasNext()) throw new NoSuchElementException();
+                        return found.remove();
+                    }
+                };
+    }
+
+    /** Same as matchesTitleCase(CharSequence, String), over the UTF-8 bytes of `candidate`, for an ASCII `find`. */
+    private static boolean matchesTitleCase(ByteBuffer candidate, byte[] find) {
+        var length = candidate.limit();
+        int i = 0;
+
+        tokenLoop:
+        while (i < length) {
+            while (i < length && !isWordByte(candidate.get(i))) i++;
+
+            for (byte f : find) {
+                // If we have reached the end of candidate without matching all of find, fail
+                if (i >= length) return false;
+                // If the next byte in candidate matches, advance i
+                else if (toLowerCase(f) == toLowerCase(candidate.get(i))) i++;
+                else {
+                    // Find the start of the next word
+                    while (i < length) {
+                        byte c = candidate.get(i);
+                        // If the next byte is not part of a word, try again with the next token
+                        if (!isWordByte(c)) continue tokenLoop;
+                        boolean isStartOfWord = 'A' <= c && c <= 'Z';
+                        boolean isMatch = toLowerCase(f) == toLowerCase(c);
+                        i++;
+                        if (isStartOfWord && isMatch) break;
+                    }
+                    if (i >= length) return false;
+                }
+            }
+            // All of find was matched!
+            return true;
         }
+        return false;
+    }
+
+    private static byte toLowerCase(byte b) {
+        return 'A' <= b && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
     }
 
     /**
@@ -388,6 +485,38 @@ public class StringSearch {
         return "";
     }
 
+    private static class ModuleName {
+        final Instant modified;
+        final Optional<String> name;
+
+        ModuleName(Instant modified, Optional<String> name) {
+            this.modified = modified;
+            this.name = name;
+        }
+    }
+
+    /** moduleNames[moduleInfo] is the module declared in moduleInfo, as of FileStore.modified(moduleInfo). */
+    private static final Map<Path, ModuleName> moduleNames = new HashMap<>();
+
+    private static final Pattern MODULE_PATTERN =
+            Pattern.compile("^\\s*(open +)?module +([\\w\\.]+)", Pattern.MULTILINE);
+
+    /**
+     * The name of the module declared in `moduleInfo`, or empty if we can't find a module declaration. Uses the open
+     * version of the file if there is one, and only reads the file again when it has been modified.
+     */
+    static Optional<String> moduleName(Path moduleInfo) {
+        var modified = FileStore.modified(moduleInfo);
+        var cached = moduleNames.get(moduleInfo);
+        if (cached != null && cached.modified.equals(modified)) {
+            return cached.name;
+        }
+        var matchModule = MODULE_PATTERN.matcher(FileStore.contents(moduleInfo));
+        var name = matchModule.find() ? Optional.of(matchModule.group(2)) : Optional.<String>empty();
+        moduleNames.put(moduleInfo, new ModuleName(modified, name));
+        return name;
+    }
+
     public static boolean matchesPartialName(CharSequence candidate, CharSequence partialName) {
         if (candidate.length() < partialName.length()) return false;
         for (int i = 0; i < partialName.length(); i++) {
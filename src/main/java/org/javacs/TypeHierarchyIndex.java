@@ -0,0 +1,445 @@
+package org.javacs;
+
+import com.google.gson.JsonPrimitive;
+import com.sun.source.tree.*;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.TreePathScanner;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.logging.Logger;
+import javax.lang.model.element.Modifier;
+import org.javacs.lsp.*;
+
+/**
+ * TypeHierarchyIndex maps each type declared in the workspace to the supertypes it names in its `extends` and
+ * `implements` clauses. It is built from parse trees, without attribution, so supertypes are resolved using the
+ * imports and package of the declaring file. The whole workspace is indexed once, a slice at a time by {@link
+ * #build()}; after that, only the files passed to {@link #invalidate(Collection)} are re-parsed.
+ */
+public class TypeHierarchyIndex {
+
+    public static class TypeEntry {
+        public final String qualifiedName, packageName, simpleName;
+        public final int kind;
+        public final boolean isAbstract;
+        public final Path file;
+        public final Range range;
+        /** supertypes are the names of the supertypes as written in the source, without type arguments */
+        final List<String> supertypes;
+
+        final List<MethodEntry> methods;
+
+        TypeEntry(
+                String qualifiedName,
+                String packageName,
+                String simpleName,
+                int kind,
+                boolean isAbstract,
+                Path file,
+                Range range,
+                List<String> supertypes,
+                List<MethodEntry> methods) {
+            this.qualifiedName = qualifiedName;
+            this.packageName = packageName;
+            this.simpleName = simpleName;
+            this.kind = kind;
+            this.isAbstract = isAbstract;
+            this.file = file;
+            this.range = range;
+            this.supertypes = supertypes;
+            this.methods = methods;
+        }
+
+        public Location location() {
+            return new Location(file.toUri(), range);
+        }
+
+        public TypeHierarchyItem item() {
+            var item = new TypeHierarchyItem();
+            item.name = simpleName;
+            item.kind = kind;
+            item.detail = packageName;
+            item.uri = file.toUri();
+            item.range = range;
+            item.selectionRange = range;
+            item.data = new JsonPrimitive(qualifiedName);
+            return item;
+        }
+    }
+
+    static class MethodEntry {
+        final String name;
+        final int arity;
+        final Range range;
+
+        MethodEntry(String name, int arity, Range range) {
+            this.name = name;
+            this.arity = arity;
+            this.range = range;
+        }
+    }
+
+    private static class FileEntry {
+        final Instant modified;
+        final String packageName;
+        final List<String> imports;
+        final List<TypeEntry> types;
+
+        FileEntry(Instant modified, String packageName, List<String> imports, List<TypeEntry> types) {
+            this.modified = modified;
+            this.packageName = packageName;
+            this.imports = imports;
+            this.types = types;
+        }
+    }
+
+    private final Map<Path, FileEntry> files = new HashMap<>();
+    private final Map<String, TypeEntry> types = new HashMap<>();
+    /** subtypes[simpleName] is every type that names a supertype with that simple name */
+    private final Map<String, List<TypeEntry>> subtypes = new HashMap<>();
+
+    /** Files that have changed since they were indexed. */
+    private final Set<Path> stale = new HashSet<>();
+    /** Files that still need to be indexed before the index is built, or null if no build has started. */
+    private ArrayDeque<Path> pending;
+    private int pendingAtStart;
+    private Instant started;
+    /** True if every file in the workspace has been indexed at least once. */
+    private boolean built = false;
+
+    /** How long one call to build() can take, so it never holds up the messages that arrive while it runs. */
+    private static final Duration SLICE = Duration.ofMillis(100);
+
+    /**
+     * Index the files in the workspace that have been created or modified since they were last indexed, and forget
+     * deleted files, for up to {@link #SLICE}. Indexing the whole workspace is slow the first time, so the server calls
+     * this a slice at a time when it's idle, before the first query needs it.
+     *
+     * @return true once every file has been indexed
+     */
+    public synchronized boolean build() {
+        if (built) return true;
+        var deadline = Instant.now().plus(SLICE);
+        if (pending == null) start();
+        while (!pending.isEmpty() && Instant.now().isBefore(deadline)) {
+            index(pending.remove());
+        }
+        if (pending.isEmpty()) finish();
+        return built;
+    }
+
+    /** Re-index `changed` before the next query. Files that are no longer in the workspace will be forgotten. */
+    public synchronized void invalidate(Collection<Path> changed) {
+        stale.addAll(changed);
+    }
+
+    /** Check every file in the workspace before the next query, for example because the workspace roots changed. */
+    public synchronized void invalidateAll() {
+        built = false;
+        pending = null;
+    }
+
+    /** Find the files that need to be indexed, and forget the files that are no longer in the workspace. */
+    private void start() {
+        started = Instant.now();
+        var all = new HashSet<>(FileStore.all());
+        pending = new ArrayDeque<>();
+        for (var file : all) {
+            var existing = files.get(file);
+            if (existing != null && existing.modified.equals(FileStore.modified(file))) continue;
+            pending.add(file);
+        }
+        for (var file : new ArrayList<>(files.keySet())) {
+            if (!all.contains(file)) remove(file);
+        }
+        // Every file is checked against its modified time, so earlier invalidations are covered, but files that
+        // change while the build is in progress stay stale until refresh()
+        stale.clear();
+        pendingAtStart = pending.size();
+    }
+
+    private void finish() {
+        pending = null;
+        built = true;
+        var elapsed = Duration.between(started, Instant.now()).toMillis();
+        LOG.info(String.format("...indexed type hierarchy of %d files in %,d ms", pendingAtStart, elapsed));
+    }
+
+    private void refresh() {
+        if (!built) {
+            // A query can't wait for the idle ticks, so finish the build now
+            if (pending == null) start();
+            while (!pending.isEmpty()) {
+                index(pending.remove());
+            }
+            finish();
+        }
+        if (stale.isEmpty()) return;
+        for (var file : stale) {
+            index(file);
+        }
+        LOG.info(String.format("...re-indexed type hierarchy of %d files", stale.size()));
+        stale.clear();
+    }
+
+    /** Index `file`, or forget it if it has left the workspace. */
+    private void index(Path file) {
+        if (FileStore.contains(file)) {
+            update(file);
+        } else {
+            remove(file);
+        }
+    }
+
+    private void update(Path file) {
+        remove(file);
+        var modified = FileStore.modified(file);
+        var parse = Parser.parseFile(file);
+        var packageName = Objects.toString(parse.root.getPackageName(), "");
+        var imports = new ArrayList<String>();
+        for (var i : parse.root.getImports()) {
+            if (i.isStatic()) continue;
+            imports.add(i.getQualifiedIdentifier().toString());
+        }
+        var found = new ArrayList<TypeEntry>();
+        new IndexTypes(parse, file, packageName, found).scan(parse.root, null);
+        files.put(file, new FileEntry(modified, packageName, imports, found));
+        for (var t : found) {
+            types.put(t.qualifiedName, t);
+            for (var s : t.supertypes) {
+                subtypes.computeIfAbsent(StringSearch.lastName(s), __ -> new ArrayList<>()).add(t);
+            }
+        }
+    }
+
+    private void remove(Path file) {
+        var existing = files.remove(file);
+        if (existing == null) return;
+        for (var t : existing.types) {
+            types.remove(t.qualifiedName, t);
+            for (var s : t.supertypes) {
+                var list = subtypes.get(StringSearch.lastName(s));
+                if (list != null) list.remove(t);
+            }
+        }
+    }
+
+    private static class IndexTypes extends TreePathScanner<Void, Void> {
+        private final Parser parse;
+        private final Path file;
+        private final String packageName;
+        private final List<TypeEntry> found;
+        private final List<String> enclosing = new ArrayList<>();
+
+        IndexTypes(Parser parse, Path file, String packageName, List<TypeEntry> found) {
+            this.parse = parse;
+            this.file = file;
+            this.packageName = packageName;
+            this.found = found;
+        }
+
+        @Override
+        public Void visitClass(ClassTree t, Void __) {
+            var simpleName = t.getSimpleName().toString();
+            // Anonymous and local classes can't be named from other files
+            var parent = getCurrentPath().getParentPath().getLeaf();
+            var isMember = parent instanceof ClassTree || parent instanceof CompilationUnitTree;
+            if (simpleName.isEmpty() || !isMember) {
+                return null;
+            }
+            enclosing.add(simpleName);
+            var qualifiedName = String.join(".", enclosing);
+            if (!packageName.isEmpty()) qualifiedName = packageName + "." + qualifiedName;
+            var supertypes = new ArrayList<String>();
+            if (t.getExtendsClause() != null) {
+                supertypes.add(writtenName(t.getExtendsClause()));
+            }
+            for (var i : t.getImplementsClause()) {
+                supertypes.add(writtenName(i));
+            }
+            var methods = new ArrayList<MethodEntry>();
+            for (var member : t.getMembers()) {
+                if (!(member instanceof MethodTree)) continue;
+                var method = (MethodTree) member;
+                if (method.getReturnType() == null) continue; // constructor
+                var path = new TreePath(getCurrentPath(), method);
+                var range = Parser.range(parse.task, parse.text, path);
+                methods.add(new MethodEntry(method.getName().toString(), method.getParameters().size(), range));
+            }
+            var flags = t.getModifiers().getFlags();
+            var isAbstract = t.getKind() == Tree.Kind.INTERFACE || flags.contains(Modifier.ABSTRACT);
+            var range = Parser.range(parse.task, parse.text, getCurrentPath());
+            found.add(
+                    new TypeEntry(
+                            qualifiedName,
+                            packageName,
+                            simpleName,
+                            kind(t),
+                            isAbstract,
+                            file,
+                            range,
+                            supertypes,
+                            methods));
+            super.visitClass(t, null);
+            enclosing.remove(enclosing.size() - 1);
+            return null;
+        }
+
+        @Override
+        public Void visitMethod(MethodTree t, Void __) {
+            // Local classes are not indexed, so there is no need to look inside method bodies
+            return null;
+        }
+
+        private int kind(ClassTree t) {
+            switch (t.getKind()) {
+                case INTERFACE:
+                case ANNOTATION_TYPE:
+                    return SymbolKind.Interface;
+                case ENUM:
+                    return SymbolKind.Enum;
+                default:
+                    return SymbolKind.Class;
+            }
+        }
+
+        private String writtenName(Tree t) {
+            if (t instanceof ParameterizedTypeTree) {
+                t = ((ParameterizedTypeTree) t).getType();
+            }
+            if (t instanceof AnnotatedTypeTree) {
+                t = ((AnnotatedTypeTree) t).getUnderlyingType();
+            }
+            return t.toString();
+        }
+    }
+
+    /** The indexed type named `qualifiedName`, if it is declared in the workspace. */
+    public synchronized Optional<TypeEntry> find(String qualifiedName) {
+        refresh();
+        return Optional.ofNullable(types.get(qualifiedName));
+    }
+
+    /** The types that directly extend or implement `qualifiedName`. */
+    public synchronized List<TypeEntry> subtypes(String qualifiedName) {
+        refresh();
+        return directSubtypes(qualifiedName);
+    }
+
+    private List<TypeEntry> directSubtypes(String qualifiedName) {
+        var result = new ArrayList<TypeEntry>();
+        for (var t : subtypes.getOrDefault(StringSearch.lastName(qualifiedName), List.of())) {
+            var file = files.get(t.file);
+            for (var s : t.supertypes) {
+                if (refersTo(file, t, s, qualifiedName)) {
+                    result.add(t);
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** The types that extend or implement `qualifiedName`, directly or indirectly. */
+    public synchronized List<TypeEntry> allSubtypes(String qualifiedName) {
+        refresh();
+        var result = new ArrayList<TypeEntry>();
+        var visited = new HashSet<String>();
+        var todo = new ArrayDeque<String>();
+        todo.add(qualifiedName);
+        while (!todo.isEmpty()) {
+            for (var t : directSubtypes(todo.remove())) {
+                if (!visited.add(t.qualifiedName)) continue;
+                result.add(t);
+                todo.add(t.qualifiedName);
+            }
+        }
+        return result;
+    }
+
+    /** The supertypes of `qualifiedName` that are declared in the workspace. */
+    public synchronized List<TypeEntry> supertypes(String qualifiedName) {
+        refresh();
+        var type = types.get(qualifiedName);
+        if (type == null) return List.of();
+        var file = files.get(type.file);
+        var result = new ArrayList<TypeEntry>();
+        for (var s : type.supertypes) {
+            var resolved = resolve(file, type, s);
+            if (resolved.isEmpty()) continue;
+            var found = types.get(resolved.get());
+            if (found != null) result.add(found);
+        }
+        return result;
+    }
+
+    /** Declarations of methods named `methodName` with `arity` parameters in subtypes of `className`. */
+    public synchronized List<Location> implementations(String className, String methodName, int arity) {
+        var result = new ArrayList<Location>();
+        for (var t : allSubtypes(className)) {
+            for (var m : t.methods) {
+                if (m.name.equals(methodName) && m.arity == arity) {
+                    result.add(new Location(t.file.toUri(), m.range));
+                }
+            }
+        }
+        return result;
+    }
+
+    /** True if the supertype `written` in the declaration of `type` could be `qualifiedName`. */
+    private boolean refersTo(FileEntry file, TypeEntry type, String written, String qualifiedName) {
+        var resolved = resolve(file, type, written);
+        if (resolved.isPresent()) {
+            return resolved.get().equals(qualifiedName);
+        }
+        // `written` is a simple name that isn't declared in the workspace, so it must come from a library package
+        // that is imported on-demand, or from java.lang
+        var packageName = StringSearch.mostName(qualifiedName);
+        if (packageName.equals("java.lang")) return true;
+        for (var i : file.imports) {
+            if (i.endsWith(".*") && StringSearch.mostName(i).equals(packageName)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Resolve the supertype `written` in the declaration of `type` to a qualified name, following the same order as
+     * javac: types in the same file, single-type imports, the same package, and on-demand imports. Simple names that
+     * refer to types outside the workspace through an on-demand import can't be resolved without the classpath.
+     */
+    private Optional<String> resolve(FileEntry file, TypeEntry type, String written) {
+        var dot = written.indexOf('.');
+        var first = dot == -1 ? written : written.substring(0, dot);
+        var rest = written.substring(first.length());
+        for (var t : file.types) {
+            if (t.simpleName.equals(first) && t != type) {
+                return Optional.of(t.qualifiedName + rest);
+            }
+        }
+        for (var i : file.imports) {
+            if (StringSearch.lastName(i).equals(first)) {
+                return Optional.of(i + rest);
+            }
+        }
+        var samePackage = file.packageName.isEmpty() ? first : file.packageName + "." + first;
+        if (types.containsKey(samePackage)) {
+            return Optional.of(samePackage + rest);
+        }
+        for (var i : file.imports) {
+            if (!i.endsWith(".*")) continue;
+            var candidate = StringSearch.mostName(i) + "." + first;
+            if (types.containsKey(candidate)) {
+                return Optional.of(candidate + rest);
+            }
+        }
+        // A qualified name like java.util.List
+        if (dot != -1) {
+            return Optional.of(written);
+        }
+        return Optional.empty();
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
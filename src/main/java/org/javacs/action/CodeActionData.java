@@ -0,0 +1,105 @@
+package org.javacs.action;
+
+import com.google.gson.*;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import org.javacs.FileStore;
+import org.javacs.rewrite.*;
+
+/**
+ * CodeActionData is the `data` of a code action whose edit is computed later, in codeAction/resolve. It records which
+ * Rewrite to run and its parameters, and the modified time of the file the action was created for, so we don't apply
+ * offsets from an old version of the file.
+ */
+class CodeActionData {
+    URI file;
+    long modified;
+    String rewrite;
+    JsonElement parameters;
+
+    private static final Class<?>[] REWRITES = {
+        AddException.class,
+        AddImport.class,
+        AddSuppressWarningAnnotation.class,
+        ConvertFieldToBlock.class,
+        ConvertVariableToStatement.class,
+        CreateMissingMethod.class,
+        GenerateRecordConstructor.class,
+        ImplementAbstractMethods.class,
+        OverrideInheritedMethod.class,
+        RemoveClass.class,
+        RemoveException.class,
+        RemoveMethod.class,
+    };
+
+    private static final Map<String, Class<?>> REWRITES_BY_NAME = new HashMap<>();
+
+    static {
+        for (var r : REWRITES) {
+            REWRITES_BY_NAME.put(r.getSimpleName(), r);
+        }
+    }
+
+    /** Rewrites refer to files using Path, which Gson can't serialize by reflection. */
+    private static final Gson GSON =
+            new GsonBuilder()
+                    .registerTypeHierarchyAdapter(
+                            Path.class,
+                            new TypeAdapter<Path>() {
+                                @Override
+                                public void write(JsonWriter out, Path value) throws IOException {
+                                    out.value(value.toUri().toString());
+                                }
+
+                                @Override
+                                public Path read(JsonReader in) throws IOException {
+                                    return Paths.get(URI.create(in.nextString()));
+                                }
+                            }.nullSafe())
+                    .create();
+
+    static JsonElement write(Path file, Rewrite rewrite) {
+        var name = rewrite.getClass().getSimpleName();
+        if (!REWRITES_BY_NAME.containsKey(name)) {
+            throw new RuntimeException("Don't know how to resolve " + name + " later");
+        }
+        var data = new CodeActionData();
+        data.file = file.toUri();
+        data.modified = FileStore.modified(file).toEpochMilli();
+        data.rewrite = name;
+        data.parameters = GSON.toJsonTree(rewrite);
+        return GSON.toJsonTree(data);
+    }
+
+    static Resolved read(JsonElement json) {
+        var data = GSON.fromJson(json, CodeActionData.class);
+        var type = REWRITES_BY_NAME.get(data.rewrite);
+        if (type == null) {
+            throw new RuntimeException("Don't know how to resolve " + data.rewrite);
+        }
+        var rewrite = (Rewrite) GSON.fromJson(data.parameters, type);
+        return new Resolved(Paths.get(data.file), data.modified, rewrite);
+    }
+
+    static class Resolved {
+        final Path file;
+        final long modified;
+        final Rewrite rewrite;
+
+        Resolved(Path file, long modified, Rewrite rewrite) {
+            this.file = file;
+            this.modified = modified;
+            this.rewrite = rewrite;
+        }
+
+        boolean isStale() {
+            return FileStore.modified(file).toEpochMilli() != modified;
+        }
+    }
+}
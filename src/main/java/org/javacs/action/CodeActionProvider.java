@@ -18,9 +18,16 @@ import org.javacs.rewrite.*;
 
 public class CodeActionProvider {
     private final CompilerProvider compiler;
+    /** If true, code actions are returned without edits, and the client asks for the edit using resolve(_). */
+    private final boolean resolveEdits;
 
     public CodeActionProvider(CompilerProvider compiler) {
+        this(compiler, false);
+    }
+
+    public CodeActionProvider(CompilerProvider compiler, boolean resolveEdits) {
         this.compiler = compiler;
+        this.resolveEdits = resolveEdits;
     }
 
     public List<CodeAction> codeActionsForCursor(CodeActionParams params) {
@@ -41,11 +48,12 @@ public class CodeActionProvider {
             var cursor = lines.getPosition(params.range.start.line + 1, params.range.start.character + 1);
             rewrites.putAll(overrideInheritedMethods(task, file, cursor));
         }
-        var actions = new ArrayList<CodeAction>();
+        var fixes = new ArrayList<QuickFix>();
         for (var title : rewrites.keySet()) {
             // TODO are these all quick fixes?
-            actions.addAll(createQuickFix(title, rewrites.get(title)));
+            fixes.addAll(createQuickFix(file, title, rewrites.get(title)));
         }
+        var actions = finish(fixes, null);
         var elapsed = Duration.between(started, Instant.now()).toMillis();
         LOG.info(String.format("...created %d actions in %d ms", actions.size(), elapsed));
         return actions;
@@ -108,35 +116,35 @@ public class CodeActionProvider {
         var started = Instant.now();
         var file = Paths.get(params.textDocument.uri);
         try (var task = compiler.compile(file)) {
-            var actions = new ArrayList<CodeAction>();
+            var fixes = new ArrayList<QuickFix>();
             for (var d : params.context.diagnostics) {
-                var newActions = codeActionForDiagnostic(task, file, d);
-                actions.addAll(newActions);
+                fixes.addAll(codeActionForDiagnostic(task, file, d));
             }
+            var actions = finish(fixes, task);
             var elapsed = Duration.between(started, Instant.now()).toMillis();
             LOG.info(String.format("...created %d quick fixes in %d ms", actions.size(), elapsed));
             return actions;
         }
     }
 
-    private List<CodeAction> codeActionForDiagnostic(CompileTask task, Path file, Diagnostic d) {
+    private List<QuickFix> codeActionForDiagnostic(CompileTask task, Path file, Diagnostic d) {
         // TODO this should be done asynchronously using executeCommand
         switch (d.code) {
             case "unused_local":
                 var toStatement = new ConvertVariableToStatement(file, findPosition(task, d.range.start));
-                return createQuickFix("Convert to statement", toStatement);
+                return createQuickFix(file, "Convert to statement", toStatement);
             case "unused_field":
                 var toBlock = new ConvertFieldToBlock(file, findPosition(task, d.range.start));
-                return createQuickFix("Convert to block", toBlock);
+                return createQuickFix(file, "Convert to block", toBlock);
             case "unused_class":
                 var removeClass = new RemoveClass(file, findPosition(task, d.range.start));
-                return createQuickFix("Remove class", removeClass);
+                return createQuickFix(file, "Remove class", removeClass);
             case "unused_method":
                 var unusedMethod = findMethod(task, d.range);
                 var removeMethod =
                         new RemoveMethod(
                                 unusedMethod.className, unusedMethod.methodName, unusedMethod.erasedParameterTypes);
-                return createQuickFix("Remove method", removeMethod);
+                return createQuickFix(file, "Remove method", removeMethod);
             case "unused_throws":
                 var shortExceptionName = extractRange(task, d.range);
                 var notThrown = extractNotThrownExceptionName(d.message);
@@ -147,13 +155,13 @@ public class CodeActionProvider {
                                 methodWithExtraThrow.methodName,
                                 methodWithExtraThrow.erasedParameterTypes,
                                 notThrown);
-                return createQuickFix("Remove '" + shortExceptionName + "'", removeThrow);
+                return createQuickFix(file, "Remove '" + shortExceptionName + "'", removeThrow);
             case "compiler.warn.unchecked.call.mbr.of.raw.type":
                 var warnedMethod = findMethod(task, d.range);
                 var suppressWarning =
                         new AddSuppressWarningAnnotation(
                                 warnedMethod.className, warnedMethod.methodName, warnedMethod.erasedParameterTypes);
-                return createQuickFix("Suppress 'unchecked' warning", suppressWarning);
+                return createQuickFix(file, "Suppress 'unchecked' warning", suppressWarning);
             case "compiler.err.unreported.exception.need.to.catch.or.throw":
                 var needsThrow = findMethod(task, d.range);
                 var exceptionName = extractExceptionName(d.message);
@@ -163,16 +171,16 @@ public class CodeActionProvider {
                                 needsThrow.methodName,
                                 needsThrow.erasedParameterTypes,
                                 exceptionName);
-                return createQuickFix("Add 'throws'", addThrows);
+                return createQuickFix(file, "Add 'throws'", addThrows);
             case "compiler.err.cant.resolve":
             case "compiler.err.cant.resolve.location":
                 var simpleName = extractRange(task, d.range);
-                var allImports = new ArrayList<CodeAction>();
+                var allImports = new ArrayList<QuickFix>();
                 for (var qualifiedName : compiler.publicTopLevelTypes()) {
                     if (qualifiedName.endsWith("." + simpleName)) {
                         var title = "Import '" + qualifiedName + "'";
                         var addImport = new AddImport(file, qualifiedName);
-                        allImports.addAll(createQuickFix(title, addImport));
+                        allImports.addAll(createQuickFix(file, title, addImport));
                     }
                 }
                 return allImports;
@@ -180,14 +188,14 @@ public class CodeActionProvider {
                 var needsConstructor = findClassNeedingConstructor(task, d.range);
                 if (needsConstructor == null) return List.of();
                 var generateConstructor = new GenerateRecordConstructor(needsConstructor);
-                return createQuickFix("Generate constructor", generateConstructor);
+                return createQuickFix(file, "Generate constructor", generateConstructor);
             case "compiler.err.does.not.override.abstract":
                 var missingAbstracts = findClass(task, d.range);
                 var implementAbstracts = new ImplementAbstractMethods(missingAbstracts);
-                return createQuickFix("Implement abstract methods", implementAbstracts);
+                return createQuickFix(file, "Implement abstract methods", implementAbstracts);
             case "compiler.err.cant.resolve.location.args":
                 var missingMethod = new CreateMissingMethod(file, findPosition(task, d.range.start));
-                return createQuickFix("Create missing method", missingMethod);
+                return createQuickFix(file, "Create missing method", missingMethod);
             default:
                 return List.of();
         }
@@ -304,19 +312,82 @@ public class CodeActionProvider {
         return contents.subSequence(start, end);
     }
 
-    private List<CodeAction> createQuickFix(String title, Rewrite rewrite) {
-        var edits = rewrite.rewrite(compiler);
-        if (edits == Rewrite.CANCELLED) {
-            return List.of();
+    /** A quick fix whose edit hasn't been computed yet. */
+    private static class QuickFix {
+        final CodeAction action;
+        final Rewrite rewrite;
+
+        QuickFix(CodeAction action, Rewrite rewrite) {
+            this.action = action;
+            this.rewrite = rewrite;
         }
+    }
+
+    private List<QuickFix> createQuickFix(Path file, String title, Rewrite rewrite) {
         var a = new CodeAction();
         a.kind = CodeActionKind.QuickFix;
         a.title = title;
-        a.edit = new WorkspaceEdit();
+        if (resolveEdits) {
+            a.data = CodeActionData.write(file, rewrite);
+        }
+        return List.of(new QuickFix(a, rewrite));
+    }
+
+    /**
+     * Compute the edits of `fixes`, unless the client resolves them later. The rewrites share one compilation, which is
+     * `task` if it's open and contains the files they need. Fixes that can't be done are dropped.
+     */
+    private List<CodeAction> finish(List<QuickFix> fixes, CompileTask task) {
+        var actions = new ArrayList<CodeAction>();
+        if (resolveEdits) {
+            for (var f : fixes) {
+                actions.add(f.action);
+            }
+            return actions;
+        }
+        var rewrites = new ArrayList<Rewrite>();
+        for (var f : fixes) {
+            rewrites.add(f.rewrite);
+        }
+        var pipeline = new RewritePipeline(rewrites);
+        var edits = task == null ? pipeline.each(compiler) : pipeline.each(compiler, task);
+        for (var i = 0; i < fixes.size(); i++) {
+            if (edits.get(i) == Rewrite.CANCELLED) continue;
+            var a = fixes.get(i).action;
+            a.edit = asWorkspaceEdit(edits.get(i));
+            actions.add(a);
+        }
+        return actions;
+    }
+
+    /**
+     * Compute the edit of a code action that was created with resolveEdits. If the rewrite can't be done, or the files
+     * it refers to have changed since the action was created, the action is returned without an edit.
+     */
+    public CodeAction resolve(CodeAction action) {
+        if (action.data == null || action.data.isJsonNull()) return action;
+        var data = CodeActionData.read(action.data);
+        if (data.isStale()) {
+            LOG.warning(String.format("...files have changed since `%s` was created", action.title));
+            return action;
+        }
+        var started = Instant.now();
+        var edits = data.rewrite.rewrite(compiler);
+        var elapsed = Duration.between(started, Instant.now()).toMillis();
+        LOG.info(String.format("...resolved `%s` in %d ms", action.title, elapsed));
+        if (edits == Rewrite.CANCELLED) {
+            return action;
+        }
+        action.edit = asWorkspaceEdit(edits);
+        return action;
+    }
+
+    private WorkspaceEdit asWorkspaceEdit(Map<Path, TextEdit[]> edits) {
+        var edit = new WorkspaceEdit();
         for (var file : edits.keySet()) {
-            a.edit.changes.put(file.toUri(), List.of(edits.get(file)));
+            edit.changes.put(file.toUri(), List.of(edits.get(file)));
         }
-        return List.of(a);
+        return edit;
     }
 
     private static final Logger LOG = Logger.getLogger("main");
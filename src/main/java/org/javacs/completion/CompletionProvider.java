@@ -17,6 +17,7 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -38,6 +39,7 @@ import org.javacs.CompletionData;
 import org.javacs.FileStore;
 import org.javacs.JsonHelper;
 import org.javacs.ParseTask;
+import org.javacs.Progress;
 import org.javacs.SourceFileObject;
 import org.javacs.StringSearch;
 import org.javacs.lsp.Command;
@@ -48,6 +50,7 @@ import org.javacs.lsp.InsertTextFormat;
 
 public class CompletionProvider {
     private final CompilerProvider compiler;
+    private final Progress progress;
 
     public static final CompletionList NOT_SUPPORTED = new CompletionList(false, List.of());
     public static final int MAX_COMPLETION_ITEMS = 50;
@@ -117,7 +120,13 @@ public class CompletionProvider {
     };
 
     public CompletionProvider(CompilerProvider compiler) {
+        this(compiler, Progress.NONE);
+    }
+
+    /** `progress` lets the client cancel a completion that is still compiling, when the user keeps typing. */
+    public CompletionProvider(CompilerProvider compiler, Progress progress) {
         this.compiler = compiler;
+        this.progress = progress;
     }
 
     public CompletionList complete(Path file, int line, int column) {
@@ -130,6 +139,11 @@ public class CompletionProvider {
         contents.insert(endOfLine, ';');
         var list = compileAndComplete(file, contents.toString(), cursor);
         addTopLevelSnippets(task, list);
+        for (var i : list.items) {
+            if (i.data != null && i.data.isJsonObject()) {
+                i.data.getAsJsonObject().addProperty("uri", file.toUri().toString());
+            }
+        }
         logCompletionTiming(started, list.items, list.isIncomplete);
         return list;
     }
@@ -148,7 +162,7 @@ public class CompletionProvider {
         var source = new SourceFileObject(file, contents, Instant.now());
         var partial = partialIdentifier(contents, (int) cursor);
         var endsWithParen = endsWithParen(contents, (int) cursor);
-        try (var task = compiler.compile(List.of(source))) {
+        try (var task = compiler.compile(List.of(source), progress)) {
             LOG.info("...compiled in " + Duration.between(started, Instant.now()).toMillis() + "ms");
             var path = new FindCompletionsAt(task.task).scan(task.root(), cursor);
             switch (path.getLeaf().getKind()) {
@@ -337,7 +351,7 @@ public class CompletionProvider {
         var uniques = new HashSet<String>();
         var previousSize = list.items.size();
         for (var className : compiler.packagePrivateTopLevelTypes(packageName)) {
-            if (!StringSearch.matchesPartialName(className, partial)) continue;
+            if (!StringSearch.matchesPartialName(simpleName(className), partial)) continue;
             list.items.add(classItem(className));
             uniques.add(className);
         }
@@ -399,23 +413,21 @@ public class CompletionProvider {
 
     private CompletionList completeDeclaredTypeMemberSelect(
             CompileTask task, Scope scope, DeclaredType type, boolean isStatic, String partial, boolean endsWithParen) {
-        var trees = Trees.instance(task.task);
         var typeElement = (TypeElement) type.asElement();
+        var table = MemberTable.of(compiler, task, typeElement);
+        var access = new MemberAccess(task, scope, type);
         var list = new ArrayList<CompletionItem>();
-        var methods = new HashMap<String, List<ExecutableElement>>();
-        for (var member : task.task.getElements().getAllMembers(typeElement)) {
-            if (member.getKind() == ElementKind.CONSTRUCTOR) continue;
-            if (!StringSearch.matchesPartialName(member.getSimpleName(), partial)) continue;
-            if (!trees.isAccessible(scope, member, type)) continue;
-            if (isStatic != member.getModifiers().contains(Modifier.STATIC)) continue;
-            if (member.getKind() == ElementKind.METHOD) {
-                putMethod((ExecutableElement) member, methods);
-            } else {
-                list.add(item(task, member));
-            }
-        }
-        for (var overloads : methods.values()) {
-            list.add(method(task, overloads, !endsWithParen));
+        for (var member : isStatic ? table.staticOthers : table.instanceOthers) {
+            if (!StringSearch.matchesPartialName(member.name, partial)) continue;
+            if (!access.isAccessible(member)) continue;
+            list.add(item(member));
+        }
+        var methods = isStatic ? table.staticMethods : table.instanceMethods;
+        for (var name : methods.keySet()) {
+            if (!StringSearch.matchesPartialName(name, partial)) continue;
+            var overloads = access.accessible(methods.get(name));
+            if (overloads.isEmpty()) continue;
+            list.add(method(overloads, !endsWithParen));
         }
         if (isStatic) {
             list.add(keyword("class"));
@@ -492,23 +504,22 @@ public class CompletionProvider {
 
     private CompletionList completeDeclaredTypeMemberReference(
             CompileTask task, Scope scope, DeclaredType type, boolean isStatic, String partial) {
-        var trees = Trees.instance(task.task);
         var typeElement = (TypeElement) type.asElement();
+        var table = MemberTable.of(compiler, task, typeElement);
+        var access = new MemberAccess(task, scope, type);
         var list = new ArrayList<CompletionItem>();
-        var methods = new HashMap<String, List<ExecutableElement>>();
-        for (var member : task.task.getElements().getAllMembers(typeElement)) {
-            if (!StringSearch.matchesPartialName(member.getSimpleName(), partial)) continue;
-            if (member.getKind() != ElementKind.METHOD) continue;
-            if (!trees.isAccessible(scope, member, type)) continue;
-            if (!isStatic && member.getModifiers().contains(Modifier.STATIC)) continue;
-            if (member.getKind() == ElementKind.METHOD) {
-                putMethod((ExecutableElement) member, methods);
-            } else {
-                list.add(item(task, member));
-            }
+        var methods = new LinkedHashMap<String, List<MemberTable.Member>>();
+        if (isStatic) {
+            methods.putAll(table.staticMethods);
         }
-        for (var overloads : methods.values()) {
-            list.add(method(task, overloads, false));
+        for (var name : table.instanceMethods.keySet()) {
+            methods.computeIfAbsent(name, __ -> new ArrayList<>()).addAll(table.instanceMethods.get(name));
+        }
+        for (var name : methods.keySet()) {
+            if (!StringSearch.matchesPartialName(name, partial)) continue;
+            var overloads = access.accessible(methods.get(name));
+            if (overloads.isEmpty()) continue;
+            list.add(method(overloads, false));
         }
         if (isStatic) {
             list.add(keyword("new"));
@@ -619,19 +630,135 @@ public class CompletionProvider {
         var data = data(task, first, overloads.size());
         i.data = JsonHelper.GSON.toJsonTree(data);
         if (addParens) {
-            if (overloads.size() == 1 && first.getParameters().isEmpty()) {
-                i.insertText = first.getSimpleName() + "()$0";
+            addParens(i, overloads.size() == 1 && first.getParameters().isEmpty());
+        }
+        return i;
+    }
+
+    private void addParens(CompletionItem i, boolean noParameters) {
+        if (noParameters) {
+            i.insertText = i.label + "()$0";
+        } else {
+            i.insertText = i.label + "($0)";
+            // Activate signatureHelp
+            // Remove this if VSCode ever fixes https://github.com/microsoft/vscode/issues/78806
+            i.command = new Command();
+            i.command.command = "editor.action.triggerParameterHints";
+            i.command.title = "Trigger Parameter Hints";
+        }
+        i.insertTextFormat = 2; // Snippet
+    }
+
+    private CompletionItem item(MemberTable.Member member) {
+        var i = new CompletionItem();
+        i.label = member.name;
+        i.kind = kind(member.kind);
+        i.detail = member.detail;
+        if (member.kind == ElementKind.FIELD) {
+            var data = new CompletionData();
+            data.className = member.className;
+            data.memberName = member.name;
+            i.data = JsonHelper.GSON.toJsonTree(data);
+        } else if (member.kind.isClass() || member.kind.isInterface()) {
+            var data = new CompletionData();
+            data.className = member.className + "." + member.name;
+            i.data = JsonHelper.GSON.toJsonTree(data);
+        } else {
+            i.data = JsonHelper.GSON.toJsonTree(null);
+        }
+        return i;
+    }
+
+    private CompletionItem method(List<MemberTable.Member> overloads, boolean addParens) {
+        var first = overloads.get(0);
+        var i = new CompletionItem();
+        i.label = first.name;
+        i.kind = CompletionItemKind.Method;
+        i.detail = first.detail;
+        var data = new CompletionData();
+        data.className = first.className;
+        data.memberName = first.name;
+        data.erasedParameterTypes = first.erasedParameterTypes;
+        data.plusOverloads = overloads.size() - 1;
+        i.data = JsonHelper.GSON.toJsonTree(data);
+        if (addParens) {
+            addParens(i, overloads.size() == 1 && first.erasedParameterTypes.length == 0);
+        }
+        return i;
+    }
+
+    /**
+     * Decides which members of a member table are accessible from `scope`. Public, private and package-private members
+     * are decided by name. Protected members are rare, so we look up the member in `task` and ask javac.
+     */
+    private static class MemberAccess {
+        private final CompileTask task;
+        private final Scope scope;
+        private final DeclaredType type;
+        private final boolean typeIsAccessible;
+        private final String packageName, topLevelClassName;
+
+        MemberAccess(CompileTask task, Scope scope, DeclaredType type) {
+            this.task = task;
+            this.scope = scope;
+            this.type = type;
+            var trees = Trees.instance(task.task);
+            this.typeIsAccessible = trees.isAccessible(scope, (TypeElement) type.asElement());
+            var here = scope.getEnclosingClass();
+            if (here == null) {
+                this.packageName = null;
+                this.topLevelClassName = null;
             } else {
-                i.insertText = first.getSimpleName() + "($0)";
-                // Activate signatureHelp
-                // Remove this if VSCode ever fixes https://github.com/microsoft/vscode/issues/78806
-                i.command = new Command();
-                i.command.command = "editor.action.triggerParameterHints";
-                i.command.title = "Trigger Parameter Hints";
+                var elements = task.task.getElements();
+                this.packageName = elements.getPackageOf(here).getQualifiedName().toString();
+                this.topLevelClassName = elements.getOutermostTypeElement(here).getQualifiedName().toString();
             }
-            i.insertTextFormat = 2; // Snippet
         }
-        return i;
+
+        boolean isAccessible(MemberTable.Member member) {
+            if (!typeIsAccessible) return false;
+            switch (member.access) {
+                case PUBLIC:
+                    return true;
+                case PRIVATE:
+                    return member.topLevelClassName.equals(topLevelClassName);
+                case PACKAGE:
+                    return member.packageName.equals(packageName);
+                case PROTECTED:
+                    if (member.packageName.equals(packageName)) return true;
+                    var element = find(member);
+                    return element != null && Trees.instance(task.task).isAccessible(scope, element, type);
+                default:
+                    throw new RuntimeException("Unexpected access " + member.access);
+            }
+        }
+
+        List<MemberTable.Member> accessible(List<MemberTable.Member> members) {
+            var accessible = new ArrayList<MemberTable.Member>();
+            for (var m : members) {
+                if (isAccessible(m)) accessible.add(m);
+            }
+            return accessible;
+        }
+
+        private Element find(MemberTable.Member member) {
+            var declaring = task.task.getElements().getTypeElement(member.className);
+            if (declaring == null) return null;
+            var types = task.task.getTypes();
+            for (var e : declaring.getEnclosedElements()) {
+                if (e.getKind() != member.kind || !e.getSimpleName().contentEquals(member.name)) continue;
+                if (member.erasedParameterTypes == null) return e;
+                var method = (ExecutableElement) e;
+                if (method.getParameters().size() != member.erasedParameterTypes.length) continue;
+                var matches = true;
+                for (var i = 0; i < member.erasedParameterTypes.length; i++) {
+                    var p = types.erasure(method.getParameters().get(i).asType()).toString();
+                    if (!p.equals(member.erasedParameterTypes[i])) matches = false;
+                }
+                if (matches) return e;
+            }
+            return null;
+        }
     }
 
     private CompletionData data(CompileTask task, Element element, int overloads) {
@@ -663,7 +790,11 @@ public class CompletionProvider {
     }
 
     private Integer kind(Element e) {
-        switch (e.getKind()) {
+        return kind(e.getKind());
+    }
+
+    private Integer kind(ElementKind kind) {
+        switch (kind) {
             case ANNOTATION_TYPE:
                 return CompletionItemKind.Interface;
             case CLASS:
@@ -0,0 +1,173 @@
+package org.javacs.completion;
+
+import com.sun.source.util.Trees;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.logging.Logger;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import org.javacs.CompileTask;
+import org.javacs.CompilerProvider;
+import org.javacs.FileStore;
+
+/**
+ * The members of a type, as completion needs them: split into static and instance members, with methods grouped into
+ * overloads, and with the labels and details of completion items already printed. Tables are cached per compiler,
+ * since each compiler has its own classpath, and rebuilt when any source file that declares one of the members changes.
+ */
+class MemberTable {
+    enum Access {
+        PUBLIC,
+        PROTECTED,
+        PACKAGE,
+        PRIVATE,
+    }
+
+    static class Member {
+        final String name;
+        final ElementKind kind;
+        final Access access;
+        /** The class that declares this member, and the package and top-level class it's in. */
+        final String className, packageName, topLevelClassName;
+        final String detail;
+        /** The erased parameter types of a method, or null for anything else. */
+        final String[] erasedParameterTypes;
+
+        Member(Element member, CompileTask task) {
+            var declaring = (TypeElement) member.getEnclosingElement();
+            this.name = member.getSimpleName().toString();
+            this.kind = member.getKind();
+            this.access = access(member.getModifiers());
+            var elements = task.task.getElements();
+            this.className = declaring.getQualifiedName().toString();
+            this.packageName = elements.getPackageOf(declaring).getQualifiedName().toString();
+            this.topLevelClassName = elements.getOutermostTypeElement(declaring).getQualifiedName().toString();
+            if (member instanceof ExecutableElement) {
+                var method = (ExecutableElement) member;
+                var types = task.task.getTypes();
+                this.detail = method.getReturnType() + " " + method;
+                this.erasedParameterTypes = new String[method.getParameters().size()];
+                for (var i = 0; i < erasedParameterTypes.length; i++) {
+                    var p = method.getParameters().get(i).asType();
+                    erasedParameterTypes[i] = types.erasure(p).toString();
+                }
+            } else {
+                this.detail = member.toString();
+                this.erasedParameterTypes = null;
+            }
+        }
+    }
+
+    /** Fields, enum constants and member classes that aren't methods, for static and instance selects. */
+    final List<Member> staticOthers = new ArrayList<>(), instanceOthers = new ArrayList<>();
+
+    /** Methods grouped by name, for static and instance selects. */
+    final Map<String, List<Member>> staticMethods = new LinkedHashMap<>(), instanceMethods = new LinkedHashMap<>();
+
+    /** The source files that declare the type or its supertypes, and when they were modified. */
+    private final Map<Path, Instant> sources = new HashMap<>();
+
+    private MemberTable(CompileTask task, TypeElement type) {
+        var trees = Trees.instance(task.task);
+        var elements = task.task.getElements();
+        for (var member : elements.getAllMembers(type)) {
+            if (member.getKind() == ElementKind.CONSTRUCTOR) continue;
+            var m = new Member(member, task);
+            var isStatic = member.getModifiers().contains(Modifier.STATIC);
+            if (member.getKind() == ElementKind.METHOD) {
+                var methods = isStatic ? staticMethods : instanceMethods;
+                methods.computeIfAbsent(m.name, __ -> new ArrayList<>()).add(m);
+            } else {
+                var others = isStatic ? staticOthers : instanceOthers;
+                others.add(m);
+            }
+        }
+        // Every supertype counts, even one that contributes no members now, because adding a member to it changes
+        // this table
+        var declaringTypes = new HashSet<TypeElement>();
+        for (var t : supertypes(type)) {
+            declaringTypes.add(elements.getOutermostTypeElement(t));
+        }
+        for (var t : declaringTypes) {
+            var path = trees.getPath(t);
+            if (path == null) continue;
+            var uri = path.getCompilationUnit().getSourceFile().toUri();
+            if (!uri.getScheme().equals("file")) continue;
+            var file = Paths.get(uri);
+            sources.put(file, FileStore.modified(file));
+        }
+    }
+
+    /** `type` and all its supertypes, direct and indirect. */
+    private static Set<TypeElement> supertypes(TypeElement type) {
+        var found = new HashSet<TypeElement>();
+        var todo = new ArrayDeque<TypeElement>();
+        todo.add(type);
+        while (!todo.isEmpty()) {
+            var next = todo.remove();
+            if (!found.add(next)) continue;
+            var parents = new ArrayList<TypeMirror>(next.getInterfaces());
+            parents.add(next.getSuperclass());
+            for (var p : parents) {
+                if (p.getKind() != TypeKind.DECLARED) continue;
+                todo.add((TypeElement) ((DeclaredType) p).asElement());
+            }
+        }
+        return found;
+    }
+
+    private boolean isStale() {
+        for (var file : sources.keySet()) {
+            // A supertype whose file was deleted or moved has changed too, and FileStore can't tell us when
+            if (!FileStore.contains(file) || !sources.get(file).equals(FileStore.modified(file))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final Map<CompilerProvider, Map<String, MemberTable>> cache = new WeakHashMap<>();
+
+    /** The member table of `type`, which was compiled by `compiler`. */
+    static synchronized MemberTable of(CompilerProvider compiler, CompileTask task, TypeElement type) {
+        // Local and anonymous classes don't have a name we can cache them under
+        if (type.getNestingKind() == NestingKind.LOCAL || type.getNestingKind() == NestingKind.ANONYMOUS) {
+            return new MemberTable(task, type);
+        }
+        var tables = cache.computeIfAbsent(compiler, __ -> new HashMap<>());
+        var className = type.getQualifiedName().toString();
+        var table = tables.get(className);
+        if (table == null || table.isStale()) {
+            LOG.info("...build member table for " + className);
+            table = new MemberTable(task, type);
+            tables.put(className, table);
+        }
+        return table;
+    }
+
+    private static Access access(Set<Modifier> modifiers) {
+        if (modifiers.contains(Modifier.PUBLIC)) return Access.PUBLIC;
+        if (modifiers.contains(Modifier.PROTECTED)) return Access.PROTECTED;
+        if (modifiers.contains(Modifier.PRIVATE)) return Access.PRIVATE;
+        return Access.PACKAGE;
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
@@ -24,6 +24,7 @@ import org.javacs.CompileTask;
 import org.javacs.CompilerProvider;
 import org.javacs.FindHelper;
 import org.javacs.MarkdownHelper;
+import org.javacs.Progress;
 import org.javacs.hover.ShortTypePrinter;
 import org.javacs.lsp.ParameterInformation;
 import org.javacs.lsp.SignatureHelp;
@@ -32,16 +33,21 @@ import org.javacs.lsp.SignatureInformation;
 public class SignatureProvider {
 
     private final CompilerProvider compiler;
+    private final Progress progress;
 
     public static final SignatureHelp NOT_SUPPORTED = new SignatureHelp(List.of(), -1, -1);
 
     public SignatureProvider(CompilerProvider compiler) {
+        this(compiler, Progress.NONE);
+    }
+
+    public SignatureProvider(CompilerProvider compiler, Progress progress) {
         this.compiler = compiler;
+        this.progress = progress;
     }
 
     public SignatureHelp signatureHelp(Path file, int line, int column) {
-        // TODO prune
-        try (var task = compiler.compile(file)) {
+        try (var task = compiler.compileAt(file, line, column, progress)) {
             var cursor = task.root().getLineMap().getPosition(line, column);
             var path = new FindInvocationAt(task.task).scan(task.root(), cursor);
             if (path == null) return NOT_SUPPORTED;
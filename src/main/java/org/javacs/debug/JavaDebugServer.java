@@ -5,6 +5,7 @@ import com.sun.jdi.connect.AttachingConnector;
 import com.sun.jdi.connect.IllegalConnectorArgumentsException;
 import com.sun.jdi.event.*;
 import com.sun.jdi.request.BreakpointRequest;
+import com.sun.jdi.request.ClassPrepareRequest;
 import com.sun.jdi.request.EventRequest;
 import com.sun.jdi.request.StepRequest;
 import java.io.IOException;
@@ -13,10 +14,15 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.*;
 import org.javacs.LogFormat;
 import org.javacs.debug.proto.*;
@@ -46,6 +52,19 @@ public class JavaDebugServer implements DebugServer {
     private VirtualMachine vm;
     private final List<Breakpoint> pendingBreakpoints = new ArrayList<>();
     private static int breakPointCounter = 0;
+    /** loadedTypes[path] is every loaded class whose source is `path`, relative to its source root */
+    private final Map<String, Set<ReferenceType>> loadedTypes = new ConcurrentHashMap<>();
+    /**
+     * loadedClasses[package] is every class the VM has loaded in `package`, from one allClasses() when we attach and
+     * trackAllClasses after that
+     */
+    private final Map<String, Set<ReferenceType>> loadedClasses = new ConcurrentHashMap<>();
+    /** Tells us about every class the VM loads without suspending it, so we never sweep allClasses() again */
+    private ClassPrepareRequest trackAllClasses;
+    /** Source files we have already looked up in the VM; after that, ClassPrepareEvents keep loadedTypes current */
+    private final Set<String> probedSources = ConcurrentHashMap.newKeySet();
+    /** File names, like Foo.java, that we have a ClassPrepareRequest for */
+    private final Set<String> listeningSourceNames = new HashSet<>();
 
     class ReceiveVmEvents implements Runnable {
         @Override
@@ -68,15 +87,22 @@ public class JavaDebugServer implements DebugServer {
         }
 
         private void process(com.sun.jdi.event.Event event) {
+            if (event instanceof ClassPrepareEvent && event.request() == trackAllClasses) {
+                // The VM is still running, and there is one of these for every class, so just remember it
+                trackLoadedClass(((ClassPrepareEvent) event).referenceType());
+                return;
+            }
             LOG.info("Received " + event.toString() + " from VM");
             if (event instanceof ClassPrepareEvent) {
                 var prepare = (ClassPrepareEvent) event;
                 var type = prepare.referenceType();
                 LOG.info("ClassPrepareRequest for class " + type.name() + " in source " + relativePath(type));
+                indexLoadedType(type);
                 enablePendingBreakpointsIn(type);
                 vm.resume();
             } else if (event instanceof com.sun.jdi.event.BreakpointEvent) {
                 var b = (com.sun.jdi.event.BreakpointEvent) event;
+                suspension = new Suspension();
                 var evt = new StoppedEventBody();
                 evt.reason = "breakpoint";
                 evt.threadId = b.thread().uniqueID();
@@ -84,6 +110,7 @@ public class JavaDebugServer implements DebugServer {
                 client.stopped(evt);
             } else if (event instanceof StepEvent) {
                 var b = (StepEvent) event;
+                suspension = new Suspension();
                 var evt = new StoppedEventBody();
                 evt.reason = "step";
                 evt.threadId = b.thread().uniqueID();
@@ -180,16 +207,54 @@ public class JavaDebugServer implements DebugServer {
     }
 
     private List<ReferenceType> loadedTypesMatching(String absolutePath) {
+        // Listen first, so a class that loads while we are looking is not missed
+        listenForClassPrepareEvents(Paths.get(absolutePath).getFileName().toString());
+        if (probedSources.add(absolutePath)) {
+            probeLoadedTypes(absolutePath);
+        }
         var matches = new ArrayList<ReferenceType>();
-        for (var type : vm.allClasses()) {
-            var path = relativePath(type);
-            if (!path.isEmpty() && absolutePath.endsWith(path)) {
-                matches.add(type);
+        for (var path : loadedTypes.keySet()) {
+            if (absolutePath.endsWith(path)) {
+                matches.addAll(loadedTypes.get(path));
             }
         }
         return matches;
     }
 
+    /**
+     * Look up the classes that were loaded from `absolutePath` before we started listening for ClassPrepareEvents. We
+     * don't know the package, so we try each suffix of the directory as a package name, and only ask the VM for the
+     * source name of classes in those packages. This finds nested classes and secondary top-level classes too.
+     */
+    private void probeLoadedTypes(String absolutePath) {
+        var path = Paths.get(absolutePath);
+        var fileName = path.getFileName().toString();
+        if (!fileName.endsWith(".java")) return;
+        var packageName = "";
+        for (var dir = path.getParent(); ; dir = dir.getParent()) {
+            for (var type : loadedClasses.getOrDefault(packageName, Set.of())) {
+                if (fileName.equals(sourceName(type)) && absolutePath.endsWith(relativePath(type))) {
+                    indexLoadedType(type);
+                }
+            }
+            if (dir == null || dir.getFileName() == null) break;
+            packageName = packageName.isEmpty() ? dir.getFileName().toString() : dir.getFileName() + "." + packageName;
+        }
+    }
+
+    private void trackLoadedClass(ReferenceType type) {
+        if (type instanceof ArrayType) return;
+        var name = type.name();
+        var packageName = name.contains(".") ? name.substring(0, name.lastIndexOf('.')) : "";
+        loadedClasses.computeIfAbsent(packageName, __ -> ConcurrentHashMap.newKeySet()).add(type);
+    }
+
+    private void indexLoadedType(ReferenceType type) {
+        var path = relativePath(type);
+        if (path.isEmpty()) return;
+        loadedTypes.computeIfAbsent(path, __ -> ConcurrentHashMap.newKeySet()).add(type);
+    }
+
     private Breakpoint enableDisabledBreakpoint(Source source, BreakpointRequest b) {
         LOG.info(String.format("Enable disabled breakpoint %s:%d", source.path, b.location().lineNumber()));
         b.enable();
@@ -258,29 +323,19 @@ public class JavaDebugServer implements DebugServer {
 
     @Override
     public void configurationDone() {
-        listenForClassPrepareEvents();
         enablePendingBreakpointsInLoadedClasses();
-        vm.resume();
+        resumeVm();
     }
 
-    /* Request to be notified when files with pending breakpoints are loaded */
-    private void listenForClassPrepareEvents() {
+    /* Request to be notified when classes from files named `name` are loaded */
+    private void listenForClassPrepareEvents(String name) {
         Objects.requireNonNull(vm, "vm has not been initialized");
-        // Get all file names
-        var distinctSourceNames = new HashSet<String>();
-        for (var b : pendingBreakpoints) {
-            var path = Paths.get(b.source.path);
-            var name = path.getFileName();
-            distinctSourceNames.add(name.toString());
-        }
-        // Listen for classes with those names
-        for (var name : distinctSourceNames) {
-            LOG.info("Listen for ClassPrepareRequest in " + name);
-            var requestClassEvent = vm.eventRequestManager().createClassPrepareRequest();
-            requestClassEvent.addSourceNameFilter("*" + name);
-            requestClassEvent.setSuspendPolicy(EventRequest.SUSPEND_ALL);
-            requestClassEvent.enable();
-        }
+        if (!listeningSourceNames.add(name)) return;
+        LOG.info("Listen for ClassPrepareRequest in " + name);
+        var requestClassEvent = vm.eventRequestManager().createClassPrepareRequest();
+        requestClassEvent.addSourceNameFilter(name);
+        requestClassEvent.setSuspendPolicy(EventRequest.SUSPEND_ALL);
+        requestClassEvent.enable();
     }
 
     @Override
@@ -320,6 +375,13 @@ public class JavaDebugServer implements DebugServer {
         if (!tryToConnect(req.port)) {
             throw new RuntimeException("Failed to connect after 15 attempts");
         }
+        // Listen before listing, so a class that loads in between is not missed
+        trackAllClasses = vm.eventRequestManager().createClassPrepareRequest();
+        trackAllClasses.setSuspendPolicy(EventRequest.SUSPEND_NONE);
+        trackAllClasses.enable();
+        for (var type : vm.allClasses()) {
+            trackLoadedClass(type);
+        }
         // Create a thread that reads events from the VM
         var reader = new java.lang.Thread(new ReceiveVmEvents(), "receive-vm");
         reader.setDaemon(true);
@@ -356,8 +418,14 @@ public class JavaDebugServer implements DebugServer {
     /* Set breakpoints for already-loaded classes */
     private void enablePendingBreakpointsInLoadedClasses() {
         Objects.requireNonNull(vm, "vm has not been initialized");
-        for (var type : vm.allClasses()) {
-            enablePendingBreakpointsIn(type);
+        var distinctPaths = new HashSet<String>();
+        for (var b : pendingBreakpoints) {
+            distinctPaths.add(b.source.path);
+        }
+        for (var path : distinctPaths) {
+            for (var type : loadedTypesMatching(path)) {
+                enablePendingBreakpointsIn(type);
+            }
         }
     }
 
@@ -412,6 +480,14 @@ public class JavaDebugServer implements DebugServer {
         }
     }
 
+    private String sourceName(ReferenceType type) {
+        try {
+            return type.sourceName();
+        } catch (AbsentInformationException __) {
+            return "";
+        }
+    }
+
     private String relativePath(ReferenceType type) {
         try {
             for (var path : type.sourcePaths(vm.getDefaultStratum())) {
@@ -440,7 +516,7 @@ public class JavaDebugServer implements DebugServer {
 
     @Override
     public void continue_(ContinueArguments req) {
-        vm.resume();
+        resumeVm();
     }
 
     @Override
@@ -454,7 +530,7 @@ public class JavaDebugServer implements DebugServer {
         var step = vm.eventRequestManager().createStepRequest(thread, StepRequest.STEP_LINE, StepRequest.STEP_OVER);
         step.addCountFilter(1);
         step.enable();
-        vm.resume();
+        resumeVm();
     }
 
     @Override
@@ -468,7 +544,7 @@ public class JavaDebugServer implements DebugServer {
         var step = vm.eventRequestManager().createStepRequest(thread, StepRequest.STEP_LINE, StepRequest.STEP_INTO);
         step.addCountFilter(1);
         step.enable();
-        vm.resume();
+        resumeVm();
     }
 
     @Override
@@ -482,22 +558,59 @@ public class JavaDebugServer implements DebugServer {
         var step = vm.eventRequestManager().createStepRequest(thread, StepRequest.STEP_LINE, StepRequest.STEP_OUT);
         step.addCountFilter(1);
         step.enable();
-        vm.resume();
+        resumeVm();
     }
 
+    /**
+     * Threads, frame counts and stack frame ids, which are only valid while the VM stays suspended. A new Suspension is
+     * started whenever the VM stops or we resume it.
+     */
+    private static class Suspension {
+        org.javacs.debug.proto.Thread[] threads;
+        final Map<Long, ThreadReference> threadsById = new HashMap<>();
+        final Map<Long, Integer> frameCounts = new HashMap<>();
+        /** frameIds[threadId][depth] is the id we gave the client for that frame */
+        final Map<Long, Map<Integer, Long>> frameIds = new HashMap<>();
+        final Map<Long, FramePtr> frames = new HashMap<>();
+    }
+
+    /**
+     * A frame, by depth in its thread. We don't hold on to the StackFrame itself, because invoking a method in the
+     * thread, for example to print a variable, invalidates it.
+     */
+    private static class FramePtr {
+        final ThreadReference thread;
+        final int depth;
+
+        FramePtr(ThreadReference thread, int depth) {
+            this.thread = thread;
+            this.depth = depth;
+        }
+    }
+
+    private volatile Suspension suspension = new Suspension();
+
     @Override
     public ThreadsResponseBody threads() {
         var threads = new ThreadsResponseBody();
-        threads.threads = asThreads(vm.allThreads());
+        threads.threads = listThreads(suspension);
         return threads;
     }
 
-    private org.javacs.debug.proto.Thread[] asThreads(List<ThreadReference> ts) {
-        var result = new org.javacs.debug.proto.Thread[ts.size()];
-        for (var i = 0; i < ts.size(); i++) {
-            result[i] = asThread(ts.get(i));
+    /** Convert the threads of the VM once per suspension, and index them by id. */
+    private org.javacs.debug.proto.Thread[] listThreads(Suspension s) {
+        if (s.threads == null) {
+            var ts = vm.allThreads();
+            var result = new org.javacs.debug.proto.Thread[ts.size()];
+            for (var i = 0; i < ts.size(); i++) {
+                var t = ts.get(i);
+                result[i] = asThread(t);
+                s.threadsById.put(result[i].id, t);
+            }
+            LOG.info("Listed " + result.length + " threads");
+            s.threads = result;
         }
-        return result;
+        return s.threads;
     }
 
     private org.javacs.debug.proto.Thread asThread(ThreadReference t) {
@@ -508,188 +621,386 @@ public class JavaDebugServer implements DebugServer {
     }
 
     private ThreadReference findThread(long threadId) {
-        for (var thread : vm.allThreads()) {
-            if (thread.uniqueID() == threadId) {
-                return thread;
-            }
-        }
-        return null;
+        var s = suspension;
+        listThreads(s);
+        return s.threadsById.get(threadId);
     }
 
     @Override
     public StackTraceResponseBody stackTrace(StackTraceArguments req) {
+        var s = suspension;
+        var t = findThread(req.threadId);
+        if (t == null) {
+            throw new RuntimeException("Couldn't find thread " + req.threadId);
+        }
         try {
-            for (var t : vm.allThreads()) {
-                if (t.uniqueID() == req.threadId) {
-                    var length = t.frameCount() - req.startFrame;
-                    if (req.levels != null && req.levels < length) {
-                        length = req.levels;
-                    }
-                    var resp = new StackTraceResponseBody();
-                    resp.stackFrames = asStackFrames(t.frames(req.startFrame, length));
-                    resp.totalFrames = t.frameCount();
-                    return resp;
-                }
+            var total = s.frameCounts.get(req.threadId);
+            if (total == null) {
+                total = t.frameCount();
+                s.frameCounts.put(req.threadId, total);
             }
-            throw new RuntimeException("Couldn't find thread " + req.threadId);
+            var start = Math.min(req.startFrame, total);
+            var length = total - start;
+            // levels = 0 means all frames
+            if (req.levels != null && req.levels > 0 && req.levels < length) {
+                length = req.levels;
+            }
+            var frames = t.frames(start, length);
+            var resp = new StackTraceResponseBody();
+            resp.stackFrames = new org.javacs.debug.proto.StackFrame[frames.size()];
+            for (var i = 0; i < frames.size(); i++) {
+                resp.stackFrames[i] = asStackFrame(s, t, start + i, frames.get(i));
+            }
+            resp.totalFrames = total;
+            return resp;
         } catch (IncompatibleThreadStateException e) {
             throw new RuntimeException(e);
         }
     }
 
-    private org.javacs.debug.proto.StackFrame[] asStackFrames(List<com.sun.jdi.StackFrame> fs) {
-        var result = new org.javacs.debug.proto.StackFrame[fs.size()];
-        for (var i = 0; i < fs.size(); i++) {
-            result[i] = asStackFrame(fs.get(i));
-        }
-        return result;
-    }
-
-    private org.javacs.debug.proto.StackFrame asStackFrame(com.sun.jdi.StackFrame f) {
+    private org.javacs.debug.proto.StackFrame asStackFrame(
+            Suspension s, ThreadReference thread, int depth, com.sun.jdi.StackFrame f) {
+        var location = f.location();
         var frame = new org.javacs.debug.proto.StackFrame();
-        frame.id = uniqueFrameId(f);
-        frame.name = f.location().method().name();
-        frame.source = asSource(f.location());
-        frame.line = f.location().lineNumber();
+        frame.id = frameId(s, thread, depth);
+        frame.name = location.method().name();
+        frame.source = asSource(location.declaringType());
+        frame.line = location.lineNumber();
         return frame;
     }
 
-    private Source asSource(Location l) {
+    /** cachedTypeSources[type] is the source of every location in type */
+    private final Map<ReferenceType, Source> cachedTypeSources = new HashMap<>();
+
+    private Source asSource(ReferenceType type) {
+        var src = cachedTypeSources.get(type);
+        if (src == null) {
+            src = findTypeSource(type);
+            cachedTypeSources.put(type, src);
+        }
+        return src;
+    }
+
+    private Source findTypeSource(ReferenceType type) {
         try {
-            var path = findSource(l);
-            var src = new Source();
-            src.name = l.sourceName();
-            src.path = Objects.toString(path, null);
-            return src;
+            var paths = type.sourcePaths(vm.getDefaultStratum());
+            if (!paths.isEmpty()) {
+                var path = findSource(paths.get(0));
+                var src = new Source();
+                src.name = type.sourceName();
+                src.path = Objects.toString(path, null);
+                return src;
+            }
         } catch (AbsentInformationException __) {
-            var src = new Source();
-            src.path = relativePath(l.declaringType());
-            src.name = l.declaringType().name();
-            src.presentationHint = "deemphasize";
-            return src;
+            // Fall through to a placeholder source
         }
+        var src = new Source();
+        src.path = relativePath(type);
+        src.name = type.name();
+        src.presentationHint = "deemphasize";
+        return src;
     }
 
-    private static final Set<String> warnedCouldNotFind = new HashSet<>();
+    /** cachedSources[relative] is the file in sourceRoots that contains relative, or empty if there isn't one */
+    private final Map<String, Optional<Path>> cachedSources = new HashMap<>();
+
+    private Path findSource(String relative) {
+        if (!cachedSources.containsKey(relative)) {
+            cachedSources.put(relative, findSourceInRoots(relative));
+        }
+        return cachedSources.get(relative).orElse(null);
+    }
 
-    private Path findSource(Location l) throws AbsentInformationException {
-        var relative = l.sourcePath();
+    private Optional<Path> findSourceInRoots(String relative) {
         for (var root : sourceRoots) {
             var absolute = root.resolve(relative);
             if (Files.exists(absolute)) {
-                return absolute;
+                return Optional.of(absolute);
             }
         }
-        if (!warnedCouldNotFind.contains(relative)) {
-            LOG.warning("Could not find " + relative);
-            warnedCouldNotFind.add(relative);
-        }
-        return null;
+        LOG.warning("Could not find " + relative);
+        return Optional.empty();
     }
 
     /** Debug adapter protocol doesn't seem to like frame 0 */
     private static final int FRAME_OFFSET = 100;
 
-    private long uniqueFrameId(com.sun.jdi.StackFrame f) {
-        try {
-            long count = FRAME_OFFSET;
-            for (var thread : f.virtualMachine().allThreads()) {
-                if (thread.equals(f.thread())) {
-                    for (var frame : thread.frames()) {
-                        if (frame.equals(f)) {
-                            return count;
-                        } else {
-                            count++;
-                        }
-                    }
-                } else {
-                    count += thread.frameCount();
-                }
-            }
-            return count;
-        } catch (IncompatibleThreadStateException e) {
-            throw new RuntimeException(e);
+    /** Frame ids keep counting up across suspensions, so a stale id from the client never finds the wrong frame. */
+    private long nextFrameId = FRAME_OFFSET;
+
+    private long frameId(Suspension s, ThreadReference thread, int depth) {
+        var ids = s.frameIds.computeIfAbsent(thread.uniqueID(), __ -> new HashMap<>());
+        var id = ids.get(depth);
+        if (id == null) {
+            id = nextFrameId++;
+            ids.put(depth, id);
+            s.frames.put(id, new FramePtr(thread, depth));
         }
+        return id;
     }
 
     private com.sun.jdi.StackFrame findFrame(long id) {
-        try {
-            long count = FRAME_OFFSET;
-            for (var thread : vm.allThreads()) {
-                if (id < count + thread.frameCount()) {
-                    var offset = (int) (id - count);
-                    return thread.frame(offset);
-                } else {
-                    count += thread.frameCount();
-                }
-            }
+        var ptr = suspension.frames.get(id);
+        if (ptr == null) {
             throw new RuntimeException("Couldn't find frame " + id);
+        }
+        try {
+            return ptr.thread.frame(ptr.depth);
         } catch (IncompatibleThreadStateException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /** A scope of a stack frame, which can be expanded into its local variables or arguments. */
+    private static class FrameScope {
+        final long frameId;
+        final boolean arguments;
+
+        FrameScope(long frameId, boolean arguments) {
+            this.frameId = frameId;
+            this.arguments = arguments;
+        }
+    }
+
+    /** The fields and elements of an object, as seen from a suspended thread that can invoke methods on it. */
+    private static class ObjectMembers {
+        final ObjectReference object;
+        final ThreadReference thread;
+
+        ObjectMembers(ObjectReference object, ThreadReference thread) {
+            this.object = object;
+            this.thread = thread;
+        }
+    }
+
+    // Everything the client can expand, and everything we've fetched from the VM, is only valid while the VM is
+    // suspended. It is cleared by resumeVm().
+    private final Map<Long, Object> expandable = new HashMap<>();
+    private final Map<Long, Variable[]> cachedScopes = new HashMap<>();
+    private final Map<ObjectReference, String> cachedPrints = new HashMap<>();
+    private final Map<ObjectReference, ArrayReference> cachedCollections = new HashMap<>();
+    private long nextVariablesReference = 1;
+
+    private long variablesReference(Object container) {
+        var id = nextVariablesReference++;
+        expandable.put(id, container);
+        return id;
+    }
+
+    private void resumeVm() {
+        suspension = new Suspension();
+        expandable.clear();
+        cachedScopes.clear();
+        cachedPrints.clear();
+        for (var array : cachedCollections.values()) {
+            try {
+                array.enableCollection();
+            } catch (ObjectCollectedException __) {
+                // Nothing to do
+            }
+        }
+        cachedCollections.clear();
+        vm.resume();
+    }
+
     @Override
     public ScopesResponseBody scopes(ScopesArguments req) {
         var resp = new ScopesResponseBody();
         var locals = new Scope();
         locals.name = "Locals";
         locals.presentationHint = "locals";
-        locals.variablesReference = req.frameId * 2;
+        locals.variablesReference = variablesReference(new FrameScope(req.frameId, false));
         var arguments = new Scope();
         arguments.name = "Arguments";
         arguments.presentationHint = "arguments";
-        arguments.variablesReference = req.frameId * 2 + 1;
+        arguments.variablesReference = variablesReference(new FrameScope(req.frameId, true));
         resp.scopes = new Scope[] {locals, arguments};
         return resp;
     }
 
     @Override
     public VariablesResponseBody variables(VariablesArguments req) {
-        var frameId = req.variablesReference / 2;
-        var scopeId = (int) (req.variablesReference % 2);
-        var argumentScope = scopeId == 1;
-        var frame = findFrame(frameId);
+        var container = expandable.get(req.variablesReference);
+        var resp = new VariablesResponseBody();
+        if (container == null) {
+            LOG.warning("No variables with reference " + req.variablesReference + ", maybe the VM has resumed");
+            resp.variables = new Variable[0];
+        } else if (container instanceof FrameScope) {
+            if (!cachedScopes.containsKey(req.variablesReference)) {
+                cachedScopes.put(req.variablesReference, scopeVariables((FrameScope) container));
+            }
+            resp.variables = page(cachedScopes.get(req.variablesReference), req.start, req.count);
+        } else {
+            resp.variables = children((ObjectMembers) container, req.filter, req.start, req.count);
+        }
+        return resp;
+    }
+
+    private Variable[] page(Variable[] all, Integer start, Integer count) {
+        var from = Math.min(start == null ? 0 : start, all.length);
+        var until = count == null || count == 0 ? all.length : Math.min(from + count, all.length);
+        return Arrays.copyOfRange(all, from, until);
+    }
+
+    private Variable[] scopeVariables(FrameScope scope) {
+        var frame = findFrame(scope.frameId);
         List<LocalVariable> visible;
         try {
             visible = frame.visibleVariables();
         } catch (AbsentInformationException __) {
             LOG.warning(String.format("No visible variable information in %s", frame.location()));
-            return new VariablesResponseBody();
+            return new Variable[0];
         }
+        // Fetch all values in one round-trip
         var values = frame.getValues(visible);
         var thread = frame.thread();
         var variables = new ArrayList<Variable>();
         for (var v : visible) {
-            if (v.isArgument() != argumentScope) continue;
-            var w = new Variable();
-            w.name = v.name();
-            w.value = print(values.get(v), thread);
-            w.type = v.typeName();
-            // TODO set variablesReference and allow inspecting structure of collections and POJOs
-            // TODO set variablePresentationHint
-            variables.add(w);
+            if (v.isArgument() != scope.arguments) continue;
+            variables.add(asVariable(v.name(), v.typeName(), values.get(v), thread));
         }
-        var resp = new VariablesResponseBody();
-        resp.variables = variables.toArray(Variable[]::new);
-        return resp;
+        return variables.toArray(Variable[]::new);
+    }
+
+    /** Expand `object` into its fields and, for arrays and collections, a page of its elements. */
+    private Variable[] children(ObjectMembers members, String filter, Integer start, Integer count) {
+        var variables = new ArrayList<Variable>();
+        var object = members.object;
+        var thread = members.thread;
+        if (!"indexed".equals(filter) && !(object instanceof ArrayReference)) {
+            var fields = new ArrayList<Field>();
+            for (var f : object.referenceType().allFields()) {
+                if (!f.isStatic()) fields.add(f);
+            }
+            var values = object.getValues(fields);
+            for (var f : fields) {
+                variables.add(asVariable(f.name(), f.typeName(), values.get(f), thread));
+            }
+        }
+        if (!"named".equals(filter)) {
+            var elements = elements(object, thread);
+            if (elements != null) {
+                var from = Math.min(start == null ? 0 : start, elements.length());
+                var length = count == null || count == 0 ? elements.length() - from : count;
+                length = Math.min(length, elements.length() - from);
+                // Fetch the whole page in one round-trip
+                var values = elements.getValues(from, length);
+                for (var i = 0; i < values.size(); i++) {
+                    var value = values.get(i);
+                    var type = value == null ? "" : value.type().name();
+                    variables.add(asVariable(Integer.toString(from + i), type, value, thread));
+                }
+            }
+        }
+        return variables.toArray(Variable[]::new);
+    }
+
+    private Variable asVariable(String name, String type, Value value, ThreadReference thread) {
+        var v = new Variable();
+        v.name = name;
+        v.type = type;
+        v.value = print(value, thread);
+        if (value instanceof ArrayReference) {
+            v.variablesReference = variablesReference(new ObjectMembers((ArrayReference) value, thread));
+            v.indexedVariables = ((ArrayReference) value).length();
+        } else if (value instanceof ObjectReference && !(value instanceof StringReference)) {
+            var object = (ObjectReference) value;
+            // Collections are copied into an array by toArray() in the target VM, which we only do when the client
+            // expands the variable, so we don't know indexedVariables yet
+            v.variablesReference = variablesReference(new ObjectMembers(object, thread));
+        }
+        // TODO set variablePresentationHint
+        return v;
+    }
+
+    /**
+     * Only resume the thread we call toArray() or toString() on. Otherwise every thread in the VM runs while the client
+     * is looking at a suspended program, and the state it is looking at can change underneath it.
+     */
+    private static final int INVOKE_OPTIONS = ObjectReference.INVOKE_SINGLE_THREADED;
+
+    /** The elements of an array, or a java.util.Collection copied into an array; otherwise null. */
+    private ArrayReference elements(ObjectReference object, ThreadReference t) {
+        if (object instanceof ArrayReference) {
+            return (ArrayReference) object;
+        }
+        if (!isCollection(object.referenceType())) {
+            return null;
+        }
+        if (!cachedCollections.containsKey(object)) {
+            for (var method : object.referenceType().methodsByName("toArray", "()[Ljava/lang/Object;")) {
+                try {
+                    var array = (ArrayReference) object.invokeMethod(t, method, List.of(), INVOKE_OPTIONS);
+                    // A broken collection can return null; don't cache it, so resumeVm() only sees real arrays
+                    if (array == null) return null;
+                    // Don't let the VM collect the copy while we are still paging through it
+                    array.disableCollection();
+                    cachedCollections.put(object, array);
+                } catch (InvocationException e) {
+                    LOG.warning(String.format("toArray() threw %s", e.exception().type().name()));
+                } catch (InvalidTypeException | ClassNotLoadedException | IncompatibleThreadStateException e) {
+                    throw new RuntimeException(e);
+                }
+                break;
+            }
+        }
+        return cachedCollections.get(object);
+    }
+
+    private boolean isCollection(ReferenceType type) {
+        if (!(type instanceof ClassType)) return false;
+        for (var i : ((ClassType) type).allInterfaces()) {
+            if (i.name().equals("java.util.Collection")) return true;
+        }
+        return false;
     }
 
     private String print(Value value, ThreadReference t) {
         if (value == null) {
             return "null";
+        } else if (value instanceof StringReference) {
+            return ((StringReference) value).value();
+        } else if (value instanceof ArrayReference) {
+            var array = (ArrayReference) value;
+            var type = array.type().name();
+            return type.substring(0, type.length() - 1) + array.length() + "]";
+        } else if (value instanceof ObjectReference && isBoxed(((ObjectReference) value).referenceType())) {
+            // Read the primitive inside Integer, Long, ... directly instead of invoking toString()
+            var object = (ObjectReference) value;
+            var field = object.referenceType().fieldByName("value");
+            return print(object.getValue(field), t);
         } else if (value instanceof ObjectReference) {
-            return printObject((ObjectReference) value, t);
+            var object = (ObjectReference) value;
+            if (!cachedPrints.containsKey(object)) {
+                cachedPrints.put(object, printObject(object, t));
+            }
+            return cachedPrints.get(object);
         } else {
             return value.toString();
         }
     }
 
+    private static final Set<String> BOXED_TYPES =
+            Set.of(
+                    "java.lang.Boolean",
+                    "java.lang.Byte",
+                    "java.lang.Character",
+                    "java.lang.Short",
+                    "java.lang.Integer",
+                    "java.lang.Long",
+                    "java.lang.Float",
+                    "java.lang.Double");
+
+    private boolean isBoxed(ReferenceType type) {
+        return BOXED_TYPES.contains(type.name());
+    }
+
     private String printObject(ObjectReference object, ThreadReference t) {
         var type = object.referenceType();
         for (var method : type.methodsByName("toString", "()Ljava/lang/String;")) {
             try {
-                var string = (StringReference) object.invokeMethod(t, method, List.of(), 0);
+                var string = (StringReference) object.invokeMethod(t, method, List.of(), INVOKE_OPTIONS);
+                if (string == null) return "null";
                 return string.value();
             } catch (InvocationException e) {
                 return String.format("toString() threw %s", e.exception().type().name());
@@ -1,57 +1,22 @@
 package org.javacs.fold;
 
-import com.sun.source.tree.*;
-import com.sun.source.util.*;
-import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
-import org.javacs.CompilerProvider;
-import org.javacs.ParseTask;
 import org.javacs.lsp.*;
+import org.javacs.outline.Outline;
 
 public class FoldProvider {
 
-    final CompilerProvider compiler;
-
-    public FoldProvider(CompilerProvider compiler) {
-        this.compiler = compiler;
-    }
-
-    public List<FoldingRange> foldingRanges(Path file) {
-        var task = compiler.parse(file);
-        var imports = new ArrayList<TreePath>();
-        var blocks = new ArrayList<TreePath>();
-        // TODO find comment trees
-        var comments = new ArrayList<TreePath>();
-        class FindFoldingRanges extends TreePathScanner<Void, Void> {
-            @Override
-            public Void visitClass(ClassTree t, Void __) {
-                blocks.add(getCurrentPath());
-                return super.visitClass(t, null);
-            }
-
-            @Override
-            public Void visitBlock(BlockTree t, Void __) {
-                blocks.add(getCurrentPath());
-                return super.visitBlock(t, null);
-            }
-
-            @Override
-            public Void visitImport(ImportTree t, Void __) {
-                imports.add(getCurrentPath());
-                return null;
-            }
-        }
-        new FindFoldingRanges().scan(task.root, null);
-
+    public static List<FoldingRange> foldingRanges(Path file) {
+        var outline = Outline.of(file);
         var all = new ArrayList<FoldingRange>();
 
         // Merge import ranges
-        if (!imports.isEmpty()) {
-            var merged = asFoldingRange(task, imports.get(0), FoldingRangeKind.Imports);
-            for (var i : imports) {
-                var r = asFoldingRange(task, i, FoldingRangeKind.Imports);
+        if (!outline.imports.isEmpty()) {
+            var merged = asFoldingRange(outline, outline.imports.get(0), FoldingRangeKind.Imports);
+            for (var i : outline.imports) {
+                var r = asFoldingRange(outline, i, FoldingRangeKind.Imports);
                 if (r.startLine <= merged.endLine + 1) {
                     merged =
                             new FoldingRange(
@@ -68,51 +33,45 @@ public class FoldProvider {
             all.add(merged);
         }
 
-        // Convert blocks and comments
-        for (var t : blocks) {
-            all.add(asFoldingRange(task, t, FoldingRangeKind.Region));
-        }
-        for (var t : comments) {
-            all.add(asFoldingRange(task, t, FoldingRangeKind.Region));
+        // Convert blocks, but don't fold the line with the closing '}'
+        for (var b : outline.braces) {
+            var startLine = outline.line(b.start);
+            var endOfPreviousLine = outline.text.lastIndexOf('\n', b.end);
+            if (endOfPreviousLine == -1) continue;
+            var endLine = outline.line(endOfPreviousLine);
+            if (endLine <= startLine) continue;
+            var startChar = outline.character(b.start);
+            var endChar = outline.character(endOfPreviousLine);
+            all.add(new FoldingRange(startLine, startChar, endLine, endChar, FoldingRangeKind.Region));
         }
 
-        return all;
-    }
-
-    private FoldingRange asFoldingRange(ParseTask task, TreePath t, String kind) {
-        var trees = Trees.instance(task.task);
-        var pos = trees.getSourcePositions();
-        var lines = t.getCompilationUnit().getLineMap();
-        var start = (int) pos.getStartPosition(t.getCompilationUnit(), t.getLeaf());
-        var end = (int) pos.getEndPosition(t.getCompilationUnit(), t.getLeaf());
-
-        // If this is a class tree, adjust start position to '{'
-        if (t.getLeaf() instanceof ClassTree) {
-            CharSequence content;
-            try {
-                content = t.getCompilationUnit().getSourceFile().getCharContent(true);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-            for (var i = start; i < content.length(); i++) {
-                if (content.charAt(i) == '{') {
-                    start = i;
-                    break;
-                }
+        // Convert block comments, and runs of line comments on consecutive lines
+        Outline.Region run = null;
+        for (var c : outline.comments) {
+            var isLineComment = outline.text.startsWith("//", c.start);
+            if (isLineComment && run != null && outline.line(c.start) == outline.line(run.end) + 1) {
+                run = new Outline.Region(run.start, c.end);
+                continue;
             }
+            addComment(outline, run, all);
+            run = isLineComment ? c : null;
+            if (!isLineComment) addComment(outline, c, all);
         }
+        addComment(outline, run, all);
 
-        // Convert offset to 0-based line and character
-        var startLine = (int) lines.getLineNumber(start) - 1;
-        var startChar = (int) lines.getColumnNumber(start) - 1;
-        var endLine = (int) lines.getLineNumber(end) - 1;
-        var endChar = (int) lines.getColumnNumber(end) - 1;
+        return all;
+    }
 
-        // If this is a block, move end position back one line so we don't fold the '}'
-        if (t.getLeaf() instanceof ClassTree || t.getLeaf() instanceof BlockTree) {
-            endLine--;
-        }
+    private static void addComment(Outline outline, Outline.Region c, List<FoldingRange> all) {
+        if (c == null || outline.line(c.start) == outline.line(c.end)) return;
+        all.add(asFoldingRange(outline, c, FoldingRangeKind.Comment));
+    }
 
+    private static FoldingRange asFoldingRange(Outline outline, Outline.Region r, String kind) {
+        var startLine = outline.line(r.start);
+        var startChar = outline.character(r.start);
+        var endLine = outline.line(r.end);
+        var endChar = outline.character(r.end) + 1;
         return new FoldingRange(startLine, startChar, endLine, endChar, kind);
     }
 }
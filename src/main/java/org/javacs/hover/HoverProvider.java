@@ -16,20 +16,27 @@ import org.javacs.FindHelper;
 import org.javacs.JsonHelper;
 import org.javacs.MarkdownHelper;
 import org.javacs.ParseTask;
+import org.javacs.Progress;
 import org.javacs.lsp.CompletionItem;
 import org.javacs.lsp.MarkedString;
 
 public class HoverProvider {
     final CompilerProvider compiler;
+    final Progress progress;
 
     public static final List<MarkedString> NOT_SUPPORTED = List.of();
 
     public HoverProvider(CompilerProvider compiler) {
+        this(compiler, Progress.NONE);
+    }
+
+    public HoverProvider(CompilerProvider compiler, Progress progress) {
         this.compiler = compiler;
+        this.progress = progress;
     }
 
     public List<MarkedString> hover(Path file, int line, int column) {
-        try (var task = compiler.compile(file)) {
+        try (var task = compiler.compileAt(file, line, column, progress)) {
             var position = task.root().getLineMap().getPosition(line, column);
             var element = new FindHoverElement(task.task).scan(task.root(), position);
             if (element == null) return NOT_SUPPORTED;
@@ -5,8 +5,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Logger;
 import org.javacs.CompilerProvider;
-import org.javacs.ParseTask;
 import org.javacs.lsp.SymbolInformation;
+import org.javacs.outline.Outline;
 
 public class SymbolProvider {
 
@@ -17,16 +17,20 @@ public class SymbolProvider {
     }
 
     public List<SymbolInformation> findSymbols(String query, int limit) {
+        return findSymbols(compiler.search(query), query, limit);
+    }
+
+    /** Find symbols matching `query` in `files`, which contain text matches, for example from every workspace root. */
+    public static List<SymbolInformation> findSymbols(Iterable<Path> files, String query, int limit) {
         LOG.info(String.format("Searching for `%s`...", query));
         var result = new ArrayList<SymbolInformation>();
         var checked = 0;
         var parsed = 0;
-        for (var file : compiler.search(query)) {
+        for (var file : files) {
             checked++;
-            // Parse the file and check class members for matches
+            // Outline the file and check class members for matches
             LOG.info(String.format("...%s contains text matches", file.getFileName()));
-            var task = compiler.parse(file);
-            var symbols = findSymbolsMatching(task, query);
+            var symbols = findSymbolsMatching(file, query);
             parsed++;
             // If we confirm matches, add them to the results
             if (symbols.size() > 0) {
@@ -41,13 +45,13 @@ public class SymbolProvider {
     }
 
     public List<SymbolInformation> documentSymbols(Path file) {
-        var task = compiler.parse(file);
-        return findSymbolsMatching(task, "");
+        return findSymbolsMatching(file, "");
     }
 
-    private List<SymbolInformation> findSymbolsMatching(ParseTask task, String query) {
+    private static List<SymbolInformation> findSymbolsMatching(Path file, String query) {
+        var outline = Outline.of(file);
         var found = new ArrayList<SymbolInformation>();
-        new FindSymbolsMatching(task, query).scan(task.root, found);
+        new FindSymbolsMatching(file, outline, query).scan(outline.declarations, outline.packageName, found);
         return found;
     }
 
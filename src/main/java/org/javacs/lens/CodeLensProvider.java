@@ -1,15 +1,44 @@
 package org.javacs.lens;
 
+import static org.javacs.JsonHelper.GSON;
+
+import com.google.gson.JsonArray;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
-import org.javacs.ParseTask;
+import org.javacs.TypeHierarchyIndex;
 import org.javacs.lsp.CodeLens;
+import org.javacs.lsp.Command;
+import org.javacs.lsp.Location;
+import org.javacs.outline.Outline;
 
 public class CodeLensProvider {
+    static final String IMPLEMENTATIONS = "implementations";
 
-    public static List<CodeLens> find(ParseTask task) {
+    public static List<CodeLens> find(Path file) {
+        var outline = Outline.of(file);
         var list = new ArrayList<CodeLens>();
-        new FindCodeLenses(task.task).scan(task.root, list);
+        new FindCodeLenses(file, outline).scan(outline.declarations, list);
         return list;
     }
+
+    /** Fill in the command of a lens created by find(_), without compiling anything. */
+    public static CodeLens resolve(CodeLens unresolved, TypeHierarchyIndex index) {
+        if (unresolved.data == null || !unresolved.data.isJsonObject()) return unresolved;
+        var data = unresolved.data.getAsJsonObject();
+        if (!data.get("kind").getAsString().equals(IMPLEMENTATIONS)) return unresolved;
+        var className = data.get("className").getAsString();
+        var locations = new ArrayList<Location>();
+        for (var subtype : index.allSubtypes(className)) {
+            locations.add(subtype.location());
+        }
+        var title = locations.size() == 1 ? "1 implementation" : locations.size() + " implementations";
+        var arguments = new JsonArray();
+        arguments.add(data.get("uri"));
+        arguments.add(unresolved.range.start.line);
+        arguments.add(unresolved.range.start.character);
+        arguments.add(GSON.toJsonTree(locations));
+        var command = new Command(title, "java.command.findImplementations", arguments);
+        return new CodeLens(unresolved.range, command, unresolved.data);
+    }
 }
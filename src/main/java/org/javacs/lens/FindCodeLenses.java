@@ -2,104 +2,112 @@ package org.javacs.lens;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonNull;
-import com.sun.source.tree.*;
-import com.sun.source.util.*;
+import com.google.gson.JsonObject;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Objects;
 import org.javacs.FileStore;
 import org.javacs.lsp.CodeLens;
 import org.javacs.lsp.Command;
-import org.javacs.lsp.Position;
 import org.javacs.lsp.Range;
+import org.javacs.outline.Outline;
 
-class FindCodeLenses extends TreeScanner<Void, List<CodeLens>> {
-    private final JavacTask task;
-    private CompilationUnitTree root;
-    private List<CharSequence> qualifiedName = new ArrayList<>();
+class FindCodeLenses {
+    private final Path file;
+    private final Outline outline;
+    private final List<String> qualifiedName = new ArrayList<>();
 
-    FindCodeLenses(JavacTask task) {
-        this.task = task;
+    FindCodeLenses(Path file, Outline outline) {
+        this.file = file;
+        this.outline = outline;
     }
 
-    @Override
-    public Void visitCompilationUnit(CompilationUnitTree t, List<CodeLens> list) {
-        var name = Objects.toString(t.getPackageName(), "");
-        qualifiedName.add(name);
-        root = t;
-        return super.visitCompilationUnit(t, list);
+    void scan(List<Outline.Declaration> declarations, List<CodeLens> list) {
+        for (var d : declarations) {
+            if (d.isType()) {
+                visitClass(d, list);
+            } else if (d.kind == Outline.Kind.METHOD) {
+                visitMethod(d, list);
+            }
+        }
     }
 
-    @Override
-    public Void visitClass(ClassTree t, List<CodeLens> list) {
-        qualifiedName.add(t.getSimpleName());
+    private void visitClass(Outline.Declaration t, List<CodeLens> list) {
+        qualifiedName.add(t.name);
         if (isTestClass(t)) {
             list.add(runAllTests(t));
         }
-        var result = super.visitClass(t, list);
+        if (isAbstract(t)) {
+            list.add(findImplementations(t));
+        }
+        scan(t.members, list);
         qualifiedName.remove(qualifiedName.size() - 1);
-        return result;
     }
 
-    @Override
-    public Void visitMethod(MethodTree t, List<CodeLens> list) {
+    private void visitMethod(Outline.Declaration t, List<CodeLens> list) {
         if (isTestMethod(t)) {
             list.add(runTest(t));
             list.add(debugTest(t));
         }
-        return super.visitMethod(t, list);
     }
 
-    private boolean isTestClass(ClassTree t) {
-        for (var member : t.getMembers()) {
-            if (!(member instanceof MethodTree)) continue;
-            var method = (MethodTree) member;
-            if (isTestMethod(method)) {
+    private boolean isTestClass(Outline.Declaration t) {
+        for (var member : t.members) {
+            if (member.kind == Outline.Kind.METHOD && isTestMethod(member)) {
                 return true;
             }
         }
         return false;
     }
 
-    private boolean isTestMethod(MethodTree t) {
-        for (var ann : t.getModifiers().getAnnotations()) {
-            var type = ann.getAnnotationType();
-            if (type instanceof IdentifierTree) {
-                var id = (IdentifierTree) type;
-                var name = id.getName();
-                if (name.contentEquals("Test") || name.contentEquals("org.junit.Test")) {
-                    return true;
-                }
+    private boolean isAbstract(Outline.Declaration t) {
+        return t.kind == Outline.Kind.INTERFACE || t.modifiers.contains("abstract");
+    }
+
+    private boolean isTestMethod(Outline.Declaration t) {
+        for (var name : t.annotations) {
+            if (name.equals("Test") || name.equals("org.junit.Test")) {
+                return true;
             }
         }
         return false;
     }
 
-    private CodeLens runAllTests(ClassTree t) {
+    private CodeLens runAllTests(Outline.Declaration t) {
         var arguments = new JsonArray();
-        arguments.add(root.getSourceFile().toUri().toString());
-        arguments.add(String.join(".", qualifiedName));
+        arguments.add(file.toUri().toString());
+        arguments.add(className());
         arguments.add(JsonNull.INSTANCE);
         var command = new Command("Run All Tests", "java.command.test.run", arguments);
         var range = range(t);
         return new CodeLens(range, command, null);
     }
 
-    private CodeLens runTest(MethodTree t) {
+    /** An unresolved lens, which CodeLensProvider.resolve(...) fills in from the type hierarchy index. */
+    private CodeLens findImplementations(Outline.Declaration t) {
+        var data = new JsonObject();
+        data.addProperty("kind", CodeLensProvider.IMPLEMENTATIONS);
+        data.addProperty("uri", file.toUri().toString());
+        data.addProperty("className", className());
+        var range = range(t);
+        return new CodeLens(range, null, data);
+    }
+
+    private CodeLens runTest(Outline.Declaration t) {
         var arguments = new JsonArray();
-        arguments.add(root.getSourceFile().toUri().toString());
-        arguments.add(String.join(".", qualifiedName));
-        arguments.add(t.getName().toString());
+        arguments.add(file.toUri().toString());
+        arguments.add(className());
+        arguments.add(t.name);
         var command = new Command("Run Test", "java.command.test.run", arguments);
         var range = range(t);
         return new CodeLens(range, command, null);
     }
 
-    private CodeLens debugTest(MethodTree t) {
+    private CodeLens debugTest(Outline.Declaration t) {
         var arguments = new JsonArray();
-        arguments.add(root.getSourceFile().toUri().toString());
-        arguments.add(String.join(".", qualifiedName));
-        arguments.add(t.getName().toString());
+        arguments.add(file.toUri().toString());
+        arguments.add(className());
+        arguments.add(t.name);
         var sourceRoots = new JsonArray();
         for (var dir : FileStore.sourceRoots()) {
             sourceRoots.add(dir.toString());
@@ -110,15 +118,12 @@ class FindCodeLenses extends TreeScanner<Void, List<CodeLens>> {
         return new CodeLens(range, command, null);
     }
 
-    private Range range(Tree t) {
-        var pos = Trees.instance(task).getSourcePositions();
-        var lines = root.getLineMap();
-        var start = pos.getStartPosition(root, t);
-        var end = pos.getEndPosition(root, t);
-        var startLine = (int) lines.getLineNumber(start);
-        var startColumn = (int) lines.getColumnNumber(start);
-        var endLine = (int) lines.getLineNumber(end);
-        var endColumn = (int) lines.getColumnNumber(end);
-        return new Range(new Position(startLine - 1, startColumn - 1), new Position(endLine - 1, endColumn - 1));
+    private String className() {
+        var className = String.join(".", qualifiedName);
+        return outline.packageName.isEmpty() ? className : outline.packageName + "." + className;
+    }
+
+    private Range range(Outline.Declaration t) {
+        return outline.range(t.start, t.end);
     }
 }
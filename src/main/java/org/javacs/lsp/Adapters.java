@@ -0,0 +1,421 @@
+package org.javacs.lsp;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+
+/**
+ * Hand-written Gson adapters for the messages the client sends most often: every keystroke sends didChange, and is
+ * usually followed by completion, hover or signatureHelp. The adapters read fields straight from the token stream,
+ * without reflection, and skip fields the server doesn't use. They write the same JSON that Gson's reflective adapters
+ * would, so they can be shared by every Gson instance in the server.
+ */
+public class Adapters {
+
+    public static GsonBuilder register(GsonBuilder builder) {
+        return builder.registerTypeAdapter(Position.class, POSITION.nullSafe())
+                .registerTypeAdapter(Range.class, RANGE.nullSafe())
+                .registerTypeAdapter(TextDocumentIdentifier.class, TEXT_DOCUMENT_IDENTIFIER.nullSafe())
+                .registerTypeAdapter(
+                        VersionedTextDocumentIdentifier.class, VERSIONED_TEXT_DOCUMENT_IDENTIFIER.nullSafe())
+                .registerTypeAdapter(TextDocumentItem.class, TEXT_DOCUMENT_ITEM.nullSafe())
+                .registerTypeAdapter(TextDocumentContentChangeEvent.class, CONTENT_CHANGE.nullSafe())
+                .registerTypeAdapter(DidOpenTextDocumentParams.class, DID_OPEN.nullSafe())
+                .registerTypeAdapter(DidChangeTextDocumentParams.class, DID_CHANGE.nullSafe())
+                .registerTypeAdapter(DidCloseTextDocumentParams.class, DID_CLOSE.nullSafe())
+                .registerTypeAdapter(TextDocumentPositionParams.class, TEXT_DOCUMENT_POSITION.nullSafe())
+                .registerTypeAdapter(CancelParams.class, CANCEL.nullSafe());
+    }
+
+    static final TypeAdapter<Position> POSITION =
+            new TypeAdapter<>() {
+                @Override
+                public void write(JsonWriter out, Position value) throws IOException {
+                    out.beginObject();
+                    out.name("line").value(value.line);
+                    out.name("character").value(value.character);
+                    out.endObject();
+                }
+
+                @Override
+                public Position read(JsonReader in) throws IOException {
+                    var value = new Position();
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        switch (in.nextName()) {
+                            case "line":
+                                value.line = in.nextInt();
+                                break;
+                            case "character":
+                                value.character = in.nextInt();
+                                break;
+                            default:
+                                in.skipValue();
+                        }
+                    }
+                    in.endObject();
+                    return value;
+                }
+            };
+
+    static final TypeAdapter<Range> RANGE =
+            new TypeAdapter<>() {
+                @Override
+                public void write(JsonWriter out, Range value) throws IOException {
+                    out.beginObject();
+                    out.name("start");
+                    POSITION.nullSafe().write(out, value.start);
+                    out.name("end");
+                    POSITION.nullSafe().write(out, value.end);
+                    out.endObject();
+                }
+
+                @Override
+                public Range read(JsonReader in) throws IOException {
+                    var value = new Range();
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        switch (in.nextName()) {
+                            case "start":
+                                value.start = POSITION.nullSafe().read(in);
+                                break;
+                            case "end":
+                                value.end = POSITION.nullSafe().read(in);
+                                break;
+                            default:
+                                in.skipValue();
+                        }
+                    }
+                    in.endObject();
+                    return value;
+                }
+            };
+
+    static final TypeAdapter<TextDocumentIdentifier> TEXT_DOCUMENT_IDENTIFIER =
+            new TypeAdapter<>() {
+                @Override
+                public void write(JsonWriter out, TextDocumentIdentifier value) throws IOException {
+                    out.beginObject();
+                    out.name("uri");
+                    writeUri(out, value.uri);
+                    out.endObject();
+                }
+
+                @Override
+                public TextDocumentIdentifier read(JsonReader in) throws IOException {
+                    var value = new TextDocumentIdentifier();
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        switch (in.nextName()) {
+                            case "uri":
+                                value.uri = readUri(in);
+                                break;
+                            default:
+                                in.skipValue();
+                        }
+                    }
+                    in.endObject();
+                    return value;
+                }
+            };
+
+    static final TypeAdapter<VersionedTextDocumentIdentifier> VERSIONED_TEXT_DOCUMENT_IDENTIFIER =
+            new TypeAdapter<>() {
+                @Override
+                public void write(JsonWriter out, VersionedTextDocumentIdentifier value) throws IOException {
+                    out.beginObject();
+                    out.name("uri");
+                    writeUri(out, value.uri);
+                    out.name("version").value(value.version);
+                    out.endObject();
+                }
+
+                @Override
+                public VersionedTextDocumentIdentifier read(JsonReader in) throws IOException {
+                    var value = new VersionedTextDocumentIdentifier();
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        switch (in.nextName()) {
+                            case "uri":
+                                value.uri = readUri(in);
+                                break;
+                            case "version":
+                                value.version = in.nextInt();
+                                break;
+                            default:
+                                in.skipValue();
+                        }
+                    }
+                    in.endObject();
+                    return value;
+                }
+            };
+
+    static final TypeAdapter<TextDocumentItem> TEXT_DOCUMENT_ITEM =
+            new TypeAdapter<>() {
+                @Override
+                public void write(JsonWriter out, TextDocumentItem value) throws IOException {
+                    out.beginObject();
+                    out.name("uri");
+                    writeUri(out, value.uri);
+                    out.name("languageId").value(value.languageId);
+                    out.name("version").value(value.version);
+                    out.name("text").value(value.text);
+                    out.endObject();
+                }
+
+                @Override
+                public TextDocumentItem read(JsonReader in) throws IOException {
+                    var value = new TextDocumentItem();
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        switch (in.nextName()) {
+                            case "uri":
+                                value.uri = readUri(in);
+                                break;
+                            case "languageId":
+                                value.languageId = readString(in);
+                                break;
+                            case "version":
+                                value.version = in.nextInt();
+                                break;
+                            case "text":
+                                value.text = readString(in);
+                                break;
+                            default:
+                                in.skipValue();
+                        }
+                    }
+                    in.endObject();
+                    return value;
+                }
+            };
+
+    static final TypeAdapter<TextDocumentContentChangeEvent> CONTENT_CHANGE =
+            new TypeAdapter<>() {
+                @Override
+                public void write(JsonWriter out, TextDocumentContentChangeEvent value) throws IOException {
+                    out.beginObject();
+                    out.name("range");
+                    RANGE.nullSafe().write(out, value.range);
+                    out.name("rangeLength").value(value.rangeLength);
+                    out.name("text").value(value.text);
+                    out.endObject();
+                }
+
+                @Override
+                public TextDocumentContentChangeEvent read(JsonReader in) throws IOException {
+                    var value = new TextDocumentContentChangeEvent();
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        switch (in.nextName()) {
+                            case "range":
+                                value.range = RANGE.nullSafe().read(in);
+                                break;
+                            case "rangeLength":
+                                if (in.peek() == JsonToken.NULL) {
+                                    in.nextNull();
+                                } else {
+                                    value.rangeLength = in.nextInt();
+                                }
+                                break;
+                            case "text":
+                                value.text = readString(in);
+                                break;
+                            default:
+                                in.skipValue();
+                        }
+                    }
+                    in.endObject();
+                    return value;
+                }
+            };
+
+    static final TypeAdapter<DidOpenTextDocumentParams> DID_OPEN =
+            new TypeAdapter<>() {
+                @Override
+                public void write(JsonWriter out, DidOpenTextDocumentParams value) throws IOException {
+                    out.beginObject();
+                    out.name("textDocument");
+                    TEXT_DOCUMENT_ITEM.nullSafe().write(out, value.textDocument);
+                    out.endObject();
+                }
+
+                @Override
+                public DidOpenTextDocumentParams read(JsonReader in) throws IOException {
+                    var value = new DidOpenTextDocumentParams();
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        switch (in.nextName()) {
+                            case "textDocument":
+                                value.textDocument = TEXT_DOCUMENT_ITEM.nullSafe().read(in);
+                                break;
+                            default:
+                                in.skipValue();
+                        }
+                    }
+                    in.endObject();
+                    return value;
+                }
+            };
+
+    static final TypeAdapter<DidChangeTextDocumentParams> DID_CHANGE =
+            new TypeAdapter<>() {
+                @Override
+                public void write(JsonWriter out, DidChangeTextDocumentParams value) throws IOException {
+                    out.beginObject();
+                    out.name("textDocument");
+                    VERSIONED_TEXT_DOCUMENT_IDENTIFIER.nullSafe().write(out, value.textDocument);
+                    if (value.contentChanges != null) {
+                        out.name("contentChanges");
+                        out.beginArray();
+                        for (var change : value.contentChanges) {
+                            CONTENT_CHANGE.nullSafe().write(out, change);
+                        }
+                        out.endArray();
+                    }
+                    out.endObject();
+                }
+
+                @Override
+                public DidChangeTextDocumentParams read(JsonReader in) throws IOException {
+                    var value = new DidChangeTextDocumentParams();
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        switch (in.nextName()) {
+                            case "textDocument":
+                                value.textDocument = VERSIONED_TEXT_DOCUMENT_IDENTIFIER.nullSafe().read(in);
+                                break;
+                            case "contentChanges":
+                                in.beginArray();
+                                while (in.hasNext()) {
+                                    value.contentChanges.add(CONTENT_CHANGE.read(in));
+                                }
+                                in.endArray();
+                                break;
+                            default:
+                                in.skipValue();
+                        }
+                    }
+                    in.endObject();
+                    return value;
+                }
+            };
+
+    static final TypeAdapter<DidCloseTextDocumentParams> DID_CLOSE =
+            new TypeAdapter<>() {
+                @Override
+                public void write(JsonWriter out, DidCloseTextDocumentParams value) throws IOException {
+                    out.beginObject();
+                    out.name("textDocument");
+                    TEXT_DOCUMENT_IDENTIFIER.nullSafe().write(out, value.textDocument);
+                    out.endObject();
+                }
+
+                @Override
+                public DidCloseTextDocumentParams read(JsonReader in) throws IOException {
+                    var value = new DidCloseTextDocumentParams();
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        switch (in.nextName()) {
+                            case "textDocument":
+                                value.textDocument = TEXT_DOCUMENT_IDENTIFIER.nullSafe().read(in);
+                                break;
+                            default:
+                                in.skipValue();
+                        }
+                    }
+                    in.endObject();
+                    return value;
+                }
+            };
+
+    /** Used for completion, hover, signatureHelp, definition and every other request that targets a position */
+    static final TypeAdapter<TextDocumentPositionParams> TEXT_DOCUMENT_POSITION =
+            new TypeAdapter<>() {
+                @Override
+                public void write(JsonWriter out, TextDocumentPositionParams value) throws IOException {
+                    out.beginObject();
+                    out.name("textDocument");
+                    TEXT_DOCUMENT_IDENTIFIER.nullSafe().write(out, value.textDocument);
+                    out.name("position");
+                    POSITION.nullSafe().write(out, value.position);
+                    out.endObject();
+                }
+
+                @Override
+                public TextDocumentPositionParams read(JsonReader in) throws IOException {
+                    var value = new TextDocumentPositionParams();
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        switch (in.nextName()) {
+                            case "textDocument":
+                                value.textDocument = TEXT_DOCUMENT_IDENTIFIER.nullSafe().read(in);
+                                break;
+                            case "position":
+                                value.position = POSITION.nullSafe().read(in);
+                                break;
+                            default:
+                                in.skipValue();
+                        }
+                    }
+                    in.endObject();
+                    return value;
+                }
+            };
+
+    static final TypeAdapter<CancelParams> CANCEL =
+            new TypeAdapter<>() {
+                @Override
+                public void write(JsonWriter out, CancelParams value) throws IOException {
+                    out.beginObject();
+                    out.name("id").value(value.id);
+                    out.endObject();
+                }
+
+                @Override
+                public CancelParams read(JsonReader in) throws IOException {
+                    var value = new CancelParams();
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        switch (in.nextName()) {
+                            case "id":
+                                value.id = in.nextInt();
+                                break;
+                            default:
+                                in.skipValue();
+                        }
+                    }
+                    in.endObject();
+                    return value;
+                }
+            };
+
+    private static String readString(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+
+    private static URI readUri(JsonReader in) throws IOException {
+        var text = readString(in);
+        if (text == null) return null;
+        try {
+            return new URI(text);
+        } catch (URISyntaxException e) {
+            throw new JsonParseException(e);
+        }
+    }
+
+    private static void writeUri(JsonWriter out, URI uri) throws IOException {
+        out.value(uri == null ? null : uri.toASCIIString());
+    }
+}
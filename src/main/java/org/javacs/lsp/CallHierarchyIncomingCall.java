@@ -0,0 +1,15 @@
+package org.javacs.lsp;
+
+import java.util.List;
+
+public class CallHierarchyIncomingCall {
+    public CallHierarchyItem from;
+    public List<Range> fromRanges;
+
+    public CallHierarchyIncomingCall() {}
+
+    public CallHierarchyIncomingCall(CallHierarchyItem from, List<Range> fromRanges) {
+        this.from = from;
+        this.fromRanges = fromRanges;
+    }
+}
@@ -0,0 +1,13 @@
+package org.javacs.lsp;
+
+import com.google.gson.JsonElement;
+import java.net.URI;
+
+public class CallHierarchyItem {
+    public String name;
+    public int kind;
+    public String detail;
+    public URI uri;
+    public Range range, selectionRange;
+    public JsonElement data;
+}
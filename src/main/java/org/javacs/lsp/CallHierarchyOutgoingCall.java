@@ -0,0 +1,15 @@
+package org.javacs.lsp;
+
+import java.util.List;
+
+public class CallHierarchyOutgoingCall {
+    public CallHierarchyItem to;
+    public List<Range> fromRanges;
+
+    public CallHierarchyOutgoingCall() {}
+
+    public CallHierarchyOutgoingCall(CallHierarchyItem to, List<Range> fromRanges) {
+        this.to = to;
+        this.fromRanges = fromRanges;
+    }
+}
@@ -0,0 +1,5 @@
+package org.javacs.lsp;
+
+public class CallHierarchyParams {
+    public CallHierarchyItem item;
+}
@@ -1,5 +1,6 @@
 package org.javacs.lsp;
 
+import com.google.gson.JsonElement;
 import java.util.List;
 
 public class CodeAction {
@@ -7,5 +8,6 @@ public class CodeAction {
     public List<Diagnostic> diagnostics;
     public WorkspaceEdit edit;
     public Command command;
+    public JsonElement data;
     public static CodeAction NONE;
 }
@@ -1,20 +1,26 @@
 package org.javacs.lsp;
 
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import java.io.*;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class LSP {
-    private static final Gson gson = new Gson();
+    private static final Gson gson = Adapters.register(new GsonBuilder()).create();
 
     private static String readHeader(InputStream client) {
         var line = new StringBuilder();
@@ -41,7 +47,6 @@ public class LSP {
 
     static class EndOfStream extends RuntimeException {}
 
-    // TODO this seems like it's probably really inefficient. Read in bulk?
     private static char read(InputStream client) {
         try {
             var c = client.read();
@@ -63,16 +68,24 @@ public class LSP {
         while (Character.isWhitespace(next)) {
             next = read(client);
         }
-        // Append next
-        var result = new StringBuilder();
-        var i = 0;
-        while (true) {
-            result.append(next);
-            i++;
-            if (i == byteLength) break;
-            next = read(client);
+        // Read the rest of the message in bulk, and decode it all at once so multi-byte characters survive
+        var bytes = new byte[byteLength];
+        bytes[0] = (byte) next;
+        var offset = 1;
+        try {
+            while (offset < byteLength) {
+                var count = client.read(bytes, offset, byteLength - offset);
+                if (count == -1) {
+                    LOG.warning("Stream from client has been closed, throwing kill exception...");
+                    throw new EndOfStream();
+                }
+                offset += count;
+            }
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, e.getMessage(), e);
+            throw new EndOfStream();
         }
-        return result.toString();
+        return new String(bytes, UTF_8);
     }
 
     static String nextToken(InputStream client) {
@@ -87,8 +100,91 @@ public class LSP {
         }
     }
 
+    /** PARAMS[method] is the type of the params of each method the server knows how to handle. */
+    private static final Map<String, Class<?>> PARAMS =
+            Map.ofEntries(
+                    Map.entry("initialize", InitializeParams.class),
+                    Map.entry("workspace/didChangeWorkspaceFolders", DidChangeWorkspaceFoldersParams.class),
+                    Map.entry("workspace/didChangeConfiguration", DidChangeConfigurationParams.class),
+                    Map.entry("workspace/didChangeWatchedFiles", DidChangeWatchedFilesParams.class),
+                    Map.entry("workspace/symbol", WorkspaceSymbolParams.class),
+                    Map.entry("textDocument/documentLink", DocumentLinkParams.class),
+                    Map.entry("textDocument/didOpen", DidOpenTextDocumentParams.class),
+                    Map.entry("textDocument/didChange", DidChangeTextDocumentParams.class),
+                    Map.entry("textDocument/willSave", WillSaveTextDocumentParams.class),
+                    Map.entry("textDocument/willSaveWaitUntil", WillSaveTextDocumentParams.class),
+                    Map.entry("textDocument/didSave", DidSaveTextDocumentParams.class),
+                    Map.entry("textDocument/didClose", DidCloseTextDocumentParams.class),
+                    Map.entry("textDocument/completion", TextDocumentPositionParams.class),
+                    Map.entry("completionItem/resolve", CompletionItem.class),
+                    Map.entry("textDocument/hover", TextDocumentPositionParams.class),
+                    Map.entry("textDocument/signatureHelp", TextDocumentPositionParams.class),
+                    Map.entry("textDocument/definition", TextDocumentPositionParams.class),
+                    Map.entry("textDocument/references", ReferenceParams.class),
+                    Map.entry("textDocument/implementation", TextDocumentPositionParams.class),
+                    Map.entry("textDocument/prepareTypeHierarchy", TextDocumentPositionParams.class),
+                    Map.entry("typeHierarchy/supertypes", TypeHierarchyParams.class),
+                    Map.entry("typeHierarchy/subtypes", TypeHierarchyParams.class),
+                    Map.entry("textDocument/prepareCallHierarchy", TextDocumentPositionParams.class),
+                    Map.entry("callHierarchy/incomingCalls", CallHierarchyParams.class),
+                    Map.entry("callHierarchy/outgoingCalls", CallHierarchyParams.class),
+                    Map.entry("textDocument/documentSymbol", DocumentSymbolParams.class),
+                    Map.entry("textDocument/codeAction", CodeActionParams.class),
+                    Map.entry("codeAction/resolve", CodeAction.class),
+                    Map.entry("textDocument/codeLens", CodeLensParams.class),
+                    Map.entry("codeLens/resolve", CodeLens.class),
+                    Map.entry("textDocument/prepareRename", TextDocumentPositionParams.class),
+                    Map.entry("textDocument/rename", RenameParams.class),
+                    Map.entry("textDocument/formatting", DocumentFormattingParams.class),
+                    Map.entry("textDocument/foldingRange", FoldingRangeParams.class),
+                    Map.entry("$/cancelRequest", CancelParams.class));
+
+    /**
+     * Parse a message in a single pass over the text. When `method` comes before `params`, which is the order every
+     * client we know of uses, params are decoded straight into the type that method expects. Otherwise, params are
+     * parsed into a tree first and converted at the end.
+     */
     static Message parseMessage(String token) {
-        return gson.fromJson(token, Message.class);
+        try (var in = new JsonReader(new StringReader(token))) {
+            var message = new Message();
+            JsonElement tree = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "jsonrpc":
+                        message.jsonrpc = in.nextString();
+                        break;
+                    case "id":
+                        if (in.peek() == JsonToken.NULL) {
+                            in.nextNull();
+                        } else {
+                            message.id = in.nextInt();
+                        }
+                        break;
+                    case "method":
+                        message.method = in.nextString();
+                        break;
+                    case "params":
+                        var type = message.method == null ? null : PARAMS.get(message.method);
+                        if (type != null) {
+                            message.params = gson.getAdapter(type).read(in);
+                        } else {
+                            tree = JsonParser.parseReader(in);
+                        }
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            if (tree != null) {
+                var type = PARAMS.get(message.method);
+                message.params = type == null ? tree : gson.fromJson(tree, type);
+            }
+            return message;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     private static final Charset UTF_8 = StandardCharsets.UTF_8;
@@ -183,10 +279,15 @@ public class LSP {
         class MessageReader implements Runnable {
             void peek(Message message) {
                 if (message.method.equals("$/cancelRequest")) {
-                    var params = gson.fromJson(message.params, CancelParams.class);
+                    var params = (CancelParams) message.params;
                     var removed = pending.removeIf(r -> r.id != null && r.id.equals(params.id));
-                    if (removed) LOG.info(String.format("Cancelled request %d, which had not yet started", params.id));
-                    else LOG.info(String.format("Cannot cancel request %d because it has already started", params.id));
+                    if (removed) {
+                        LOG.info(String.format("Cancelled request %d, which had not yet started", params.id));
+                    } else if (server.cancelRequest(params.id)) {
+                        LOG.info(String.format("Asking request %d, which has already started, to stop", params.id));
+                    } else {
+                        LOG.info(String.format("Cannot cancel request %d because it has already finished", params.id));
+                    }
                 }
             }
 
@@ -226,12 +327,13 @@ public class LSP {
         // Process messages on main thread
         LOG.info("Reading messages from queue...");
         var hasAsyncWork = false;
+        var moreAsyncWork = false;
         processMessages:
         while (true) {
             Message r;
             try {
-                // Take a break periodically
-                r = pending.poll(200, TimeUnit.MILLISECONDS);
+                // Take a break periodically, unless the server is part-way through its async work
+                r = pending.poll(moreAsyncWork ? 0 : 200, TimeUnit.MILLISECONDS);
             } catch (Exception e) {
                 LOG.log(Level.SEVERE, e.getMessage(), e);
                 continue;
@@ -244,18 +346,20 @@ public class LSP {
             // If poll(_) failed, loop again
             if (r == null) {
                 if (hasAsyncWork) {
-                    server.doAsyncWork();
-                    hasAsyncWork = false;
+                    moreAsyncWork = server.doAsyncWork();
+                    hasAsyncWork = moreAsyncWork;
                 }
                 continue;
             }
             // Otherwise, process the new message
             hasAsyncWork = true;
+            moreAsyncWork = false;
+            server.startRequest(r.id);
             try {
                 switch (r.method) {
                     case "initialize":
                         {
-                            var params = gson.fromJson(r.params, InitializeParams.class);
+                            var params = (InitializeParams) r.params;
                             var response = server.initialize(params);
                             respond(send, r.id, response);
                             break;
@@ -268,6 +372,7 @@ public class LSP {
                     case "shutdown":
                         {
                             LOG.warning("Got shutdown message");
+                            server.shutdown();
                             respond(send, r.id, null);
                             break;
                         }
@@ -278,167 +383,223 @@ public class LSP {
                         }
                     case "workspace/didChangeWorkspaceFolders":
                         {
-                            var params = gson.fromJson(r.params, DidChangeWorkspaceFoldersParams.class);
+                            var params = (DidChangeWorkspaceFoldersParams) r.params;
                             server.didChangeWorkspaceFolders(params);
                             break;
                         }
                     case "workspace/didChangeConfiguration":
                         {
-                            var params = gson.fromJson(r.params, DidChangeConfigurationParams.class);
+                            var params = (DidChangeConfigurationParams) r.params;
                             server.didChangeConfiguration(params);
                             break;
                         }
                     case "workspace/didChangeWatchedFiles":
                         {
-                            var params = gson.fromJson(r.params, DidChangeWatchedFilesParams.class);
+                            var params = (DidChangeWatchedFilesParams) r.params;
                             server.didChangeWatchedFiles(params);
                             break;
                         }
                     case "workspace/symbol":
                         {
-                            var params = gson.fromJson(r.params, WorkspaceSymbolParams.class);
+                            var params = (WorkspaceSymbolParams) r.params;
                             var response = server.workspaceSymbols(params);
                             respond(send, r.id, response);
                             break;
                         }
                     case "textDocument/documentLink":
                         {
-                            var params = gson.fromJson(r.params, DocumentLinkParams.class);
+                            var params = (DocumentLinkParams) r.params;
                             var response = server.documentLink(params);
                             respond(send, r.id, response);
                             break;
                         }
                     case "textDocument/didOpen":
                         {
-                            var params = gson.fromJson(r.params, DidOpenTextDocumentParams.class);
+                            var params = (DidOpenTextDocumentParams) r.params;
                             server.didOpenTextDocument(params);
                             break;
                         }
                     case "textDocument/didChange":
                         {
-                            var params = gson.fromJson(r.params, DidChangeTextDocumentParams.class);
+                            var params = (DidChangeTextDocumentParams) r.params;
                             server.didChangeTextDocument(params);
                             break;
                         }
                     case "textDocument/willSave":
                         {
-                            var params = gson.fromJson(r.params, WillSaveTextDocumentParams.class);
+                            var params = (WillSaveTextDocumentParams) r.params;
                             server.willSaveTextDocument(params);
                             break;
                         }
                     case "textDocument/willSaveWaitUntil":
                         {
-                            var params = gson.fromJson(r.params, WillSaveTextDocumentParams.class);
+                            var params = (WillSaveTextDocumentParams) r.params;
                             var response = server.willSaveWaitUntilTextDocument(params);
                             respond(send, r.id, response);
                             break;
                         }
                     case "textDocument/didSave":
                         {
-                            var params = gson.fromJson(r.params, DidSaveTextDocumentParams.class);
+                            var params = (DidSaveTextDocumentParams) r.params;
                             server.didSaveTextDocument(params);
                             break;
                         }
                     case "textDocument/didClose":
                         {
-                            var params = gson.fromJson(r.params, DidCloseTextDocumentParams.class);
+                            var params = (DidCloseTextDocumentParams) r.params;
                             server.didCloseTextDocument(params);
                             break;
                         }
                     case "textDocument/completion":
                         {
-                            var params = gson.fromJson(r.params, TextDocumentPositionParams.class);
+                            var params = (TextDocumentPositionParams) r.params;
                             var response = server.completion(params);
                             respond(send, r.id, response);
                             break;
                         }
                     case "completionItem/resolve":
                         {
-                            var params = gson.fromJson(r.params, CompletionItem.class);
+                            var params = (CompletionItem) r.params;
                             var response = server.resolveCompletionItem(params);
                             respond(send, r.id, response);
                             break;
                         }
                     case "textDocument/hover":
                         {
-                            var params = gson.fromJson(r.params, TextDocumentPositionParams.class);
+                            var params = (TextDocumentPositionParams) r.params;
                             var response = server.hover(params);
                             respond(send, r.id, response);
                             break;
                         }
                     case "textDocument/signatureHelp":
                         {
-                            var params = gson.fromJson(r.params, TextDocumentPositionParams.class);
+                            var params = (TextDocumentPositionParams) r.params;
                             var response = server.signatureHelp(params);
                             respond(send, r.id, response);
                             break;
                         }
                     case "textDocument/definition":
                         {
-                            var params = gson.fromJson(r.params, TextDocumentPositionParams.class);
+                            var params = (TextDocumentPositionParams) r.params;
                             var response = server.gotoDefinition(params);
                             respond(send, r.id, response);
                             break;
                         }
                     case "textDocument/references":
                         {
-                            var params = gson.fromJson(r.params, ReferenceParams.class);
+                            var params = (ReferenceParams) r.params;
                             var response = server.findReferences(params);
                             respond(send, r.id, response);
                             break;
                         }
+                    case "textDocument/implementation":
+                        {
+                            var params = (TextDocumentPositionParams) r.params;
+                            var response = server.gotoImplementation(params);
+                            respond(send, r.id, response);
+                            break;
+                        }
+                    case "textDocument/prepareTypeHierarchy":
+                        {
+                            var params = (TextDocumentPositionParams) r.params;
+                            var response = server.prepareTypeHierarchy(params);
+                            respond(send, r.id, response);
+                            break;
+                        }
+                    case "typeHierarchy/supertypes":
+                        {
+                            var params = (TypeHierarchyParams) r.params;
+                            var response = server.typeHierarchySupertypes(params);
+                            respond(send, r.id, response);
+                            break;
+                        }
+                    case "typeHierarchy/subtypes":
+                        {
+                            var params = (TypeHierarchyParams) r.params;
+                            var response = server.typeHierarchySubtypes(params);
+                            respond(send, r.id, response);
+                            break;
+                        }
+                    case "textDocument/prepareCallHierarchy":
+                        {
+                            var params = (TextDocumentPositionParams) r.params;
+                            var response = server.prepareCallHierarchy(params);
+                            respond(send, r.id, response);
+                            break;
+                        }
+                    case "callHierarchy/incomingCalls":
+                        {
+                            var params = (CallHierarchyParams) r.params;
+                            var response = server.callHierarchyIncomingCalls(params);
+                            respond(send, r.id, response);
+                            break;
+                        }
+                    case "callHierarchy/outgoingCalls":
+                        {
+                            var params = (CallHierarchyParams) r.params;
+                            var response = server.callHierarchyOutgoingCalls(params);
+                            respond(send, r.id, response);
+                            break;
+                        }
                     case "textDocument/documentSymbol":
                         {
-                            var params = gson.fromJson(r.params, DocumentSymbolParams.class);
+                            var params = (DocumentSymbolParams) r.params;
                             var response = server.documentSymbol(params);
                             respond(send, r.id, response);
                             break;
                         }
                     case "textDocument/codeAction":
                         {
-                            var params = gson.fromJson(r.params, CodeActionParams.class);
+                            var params = (CodeActionParams) r.params;
                             var response = server.codeAction(params);
                             respond(send, r.id, response);
                             break;
                         }
+                    case "codeAction/resolve":
+                        {
+                            var params = (CodeAction) r.params;
+                            var response = server.resolveCodeAction(params);
+                            respond(send, r.id, response);
+                            break;
+                        }
                     case "textDocument/codeLens":
                         {
-                            var params = gson.fromJson(r.params, CodeLensParams.class);
+                            var params = (CodeLensParams) r.params;
                             var response = server.codeLens(params);
                             respond(send, r.id, response);
                             break;
                         }
                     case "codeLens/resolve":
                         {
-                            var params = gson.fromJson(r.params, CodeLens.class);
+                            var params = (CodeLens) r.params;
                             var response = server.resolveCodeLens(params);
                             respond(send, r.id, response);
                             break;
                         }
                     case "textDocument/prepareRename":
                         {
-                            var params = gson.fromJson(r.params, TextDocumentPositionParams.class);
+                            var params = (TextDocumentPositionParams) r.params;
                             var response = server.prepareRename(params);
                             respond(send, r.id, response);
                             break;
                         }
                     case "textDocument/rename":
                         {
-                            var params = gson.fromJson(r.params, RenameParams.class);
+                            var params = (RenameParams) r.params;
                             var response = server.rename(params);
                             respond(send, r.id, response);
                             break;
                         }
                     case "textDocument/formatting":
                         {
-                            var params = gson.fromJson(r.params, DocumentFormattingParams.class);
+                            var params = (DocumentFormattingParams) r.params;
                             var response = server.formatting(params);
                             respond(send, r.id, response);
                             break;
                         }
                     case "textDocument/foldingRange":
                         {
-                            var params = gson.fromJson(r.params, FoldingRangeParams.class);
+                            var params = (FoldingRangeParams) r.params;
                             var response = server.foldingRange(params);
                             respond(send, r.id, response);
                             break;
@@ -449,11 +610,18 @@ public class LSP {
                     default:
                         LOG.warning(String.format("Don't know what to do with method `%s`", r.method));
                 }
+            } catch (CancellationException e) {
+                LOG.info(String.format("Request %d was cancelled", r.id));
+                if (r.id != null) {
+                    error(send, r.id, new ResponseError(ErrorCodes.RequestCancelled, "Request cancelled", null));
+                }
             } catch (Exception e) {
                 LOG.log(Level.SEVERE, e.getMessage(), e);
                 if (r.id != null) {
                     error(send, r.id, new ResponseError(ErrorCodes.InternalError, e.getMessage(), null));
                 }
+            } finally {
+                server.finishRequest();
             }
         }
     }
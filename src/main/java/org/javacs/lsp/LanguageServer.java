@@ -2,8 +2,57 @@ package org.javacs.lsp;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.BooleanSupplier;
 
 public class LanguageServer {
+    /** The cancellation state of one request, so cancelling a request can never cancel the one after it. */
+    private static class Request {
+        final Integer id;
+        volatile boolean cancelled;
+
+        Request(Integer id) {
+            this.id = id;
+        }
+    }
+
+    private volatile Request running;
+
+    /**
+     * True if the client has cancelled the request that is currently running. Long-running requests should check this
+     * periodically and stop early by throwing CancellationException.
+     */
+    public boolean isCancelled() {
+        var r = running;
+        return r != null && r.cancelled;
+    }
+
+    /**
+     * Whether the request that is currently running has been cancelled. Unlike isCancelled(), the supplier keeps
+     * answering for this request after it finishes, so work it leaves behind never sees the next request's state.
+     */
+    public BooleanSupplier cancellation() {
+        var r = running;
+        if (r == null) return () -> false;
+        return () -> r.cancelled;
+    }
+
+    void startRequest(Integer id) {
+        running = new Request(id);
+    }
+
+    void finishRequest() {
+        running = null;
+    }
+
+    /** Cancel request `id` if it is running, and return false if it isn't. */
+    boolean cancelRequest(int id) {
+        // Check and cancel the same Request, in case the running request changes in between
+        var r = running;
+        if (r == null || r.id == null || r.id != id) return false;
+        r.cancelled = true;
+        return true;
+    }
+
     public InitializeResult initialize(InitializeParams params) {
         throw new RuntimeException("Unimplemented");
     }
@@ -72,6 +121,34 @@ public class LanguageServer {
         throw new RuntimeException("Unimplemented");
     }
 
+    public Optional<List<Location>> gotoImplementation(TextDocumentPositionParams params) {
+        throw new RuntimeException("Unimplemented");
+    }
+
+    public List<TypeHierarchyItem> prepareTypeHierarchy(TextDocumentPositionParams params) {
+        throw new RuntimeException("Unimplemented");
+    }
+
+    public List<TypeHierarchyItem> typeHierarchySupertypes(TypeHierarchyParams params) {
+        throw new RuntimeException("Unimplemented");
+    }
+
+    public List<TypeHierarchyItem> typeHierarchySubtypes(TypeHierarchyParams params) {
+        throw new RuntimeException("Unimplemented");
+    }
+
+    public List<CallHierarchyItem> prepareCallHierarchy(TextDocumentPositionParams params) {
+        throw new RuntimeException("Unimplemented");
+    }
+
+    public List<CallHierarchyIncomingCall> callHierarchyIncomingCalls(CallHierarchyParams params) {
+        throw new RuntimeException("Unimplemented");
+    }
+
+    public List<CallHierarchyOutgoingCall> callHierarchyOutgoingCalls(CallHierarchyParams params) {
+        throw new RuntimeException("Unimplemented");
+    }
+
     public List<SymbolInformation> documentSymbol(DocumentSymbolParams params) {
         throw new RuntimeException("Unimplemented");
     }
@@ -84,6 +161,10 @@ public class LanguageServer {
         throw new RuntimeException("Unimplemented");
     }
 
+    public CodeAction resolveCodeAction(CodeAction params) {
+        throw new RuntimeException("Unimplemented");
+    }
+
     public List<CodeLens> codeLens(CodeLensParams params) {
         throw new RuntimeException("Unimplemented");
     }
@@ -116,5 +197,11 @@ public class LanguageServer {
         throw new RuntimeException("Unimplemented");
     }
 
-    public void doAsyncWork() {}
+    /**
+     * Called when no messages have arrived for a while. Returns true if there is more work left, in which case it is
+     * called again as soon as the queue is empty, instead of waiting for the next pause.
+     */
+    public boolean doAsyncWork() {
+        return false;
+    }
 }
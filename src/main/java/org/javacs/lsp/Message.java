@@ -1,10 +1,9 @@
 package org.javacs.lsp;
 
-import com.google.gson.JsonElement;
-
 public class Message {
     public String jsonrpc;
     public Integer id;
     public String method;
-    public JsonElement params;
+    /** params, decoded into the type that `method` expects, or a JsonElement if the method is unknown */
+    public Object params;
 }
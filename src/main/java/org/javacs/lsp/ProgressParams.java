@@ -0,0 +1,15 @@
+package org.javacs.lsp;
+
+import com.google.gson.JsonElement;
+
+public class ProgressParams {
+    public JsonElement token;
+    public JsonElement value;
+
+    public ProgressParams() {}
+
+    public ProgressParams(JsonElement token, JsonElement value) {
+        this.token = token;
+        this.value = value;
+    }
+}
@@ -1,5 +1,8 @@
 package org.javacs.lsp;
 
+import com.google.gson.JsonElement;
+
 public class ReferenceParams extends TextDocumentPositionParams {
     public ReferenceContext context;
+    public JsonElement workDoneToken, partialResultToken;
 }
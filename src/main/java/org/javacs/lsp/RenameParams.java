@@ -1,7 +1,10 @@
 package org.javacs.lsp;
 
+import com.google.gson.JsonElement;
+
 public class RenameParams {
     public TextDocumentIdentifier textDocument;
     public Position position;
     public String newName;
+    public JsonElement workDoneToken;
 }
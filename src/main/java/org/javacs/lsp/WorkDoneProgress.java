@@ -0,0 +1,32 @@
+package org.javacs.lsp;
+
+public class WorkDoneProgress {
+    public String kind;
+    public String title;
+    public Boolean cancellable;
+    public String message;
+    public Integer percentage;
+
+    public static WorkDoneProgress begin(String title) {
+        var progress = new WorkDoneProgress();
+        progress.kind = "begin";
+        progress.title = title;
+        progress.cancellable = true;
+        progress.percentage = 0;
+        return progress;
+    }
+
+    public static WorkDoneProgress report(String message, int percentage) {
+        var progress = new WorkDoneProgress();
+        progress.kind = "report";
+        progress.message = message;
+        progress.percentage = percentage;
+        return progress;
+    }
+
+    public static WorkDoneProgress end() {
+        var progress = new WorkDoneProgress();
+        progress.kind = "end";
+        return progress;
+    }
+}
@@ -2,16 +2,17 @@ package org.javacs.markup;
 
 import com.sun.source.tree.*;
 import com.sun.source.util.*;
-import java.nio.file.Paths;
 import javax.lang.model.element.*;
-import org.javacs.FileStore;
+import org.javacs.CompileTask;
 import org.javacs.lsp.Range;
 
 class Colorizer extends TreePathScanner<Void, SemanticColors> {
+    private final CompileTask task;
     private final Trees trees;
 
-    Colorizer(JavacTask task) {
-        trees = Trees.instance(task);
+    Colorizer(CompileTask task) {
+        this.task = task;
+        this.trees = Trees.instance(task.task);
     }
 
     private void maybeField(Name name, SemanticColors colors) {
@@ -56,12 +57,12 @@ class Colorizer extends TreePathScanner<Void, SemanticColors> {
             return Range.NONE;
         }
         // Find name inside expression
-        var file = Paths.get(root.getSourceFile().toUri());
-        var contents = FileStore.contents(file);
-        var region = contents.substring(start, end);
-        start += region.indexOf(name.toString());
-        end = start + name.length();
-        return RangeHelper.range(root, start, end);
+        var text = task.text(root);
+        start = text.findName(name, start, end);
+        if (start == -1) {
+            return Range.NONE;
+        }
+        return text.range(start, start + name.length());
     }
 
     @Override
@@ -2,15 +2,14 @@ package org.javacs.markup;
 
 import com.sun.source.tree.*;
 import com.sun.source.util.*;
-import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.regex.Pattern;
 import javax.lang.model.element.Element;
 import javax.tools.JavaFileObject;
 import org.javacs.CompileTask;
-import org.javacs.FileStore;
+import org.javacs.CompilerProvider;
+import org.javacs.SourceText;
 import org.javacs.lsp.*;
 
 public class ErrorProvider {
@@ -26,7 +25,10 @@ public class ErrorProvider {
             var root = task.roots.get(i);
             result[i] = new PublishDiagnosticsParams();
             result[i].uri = root.getSourceFile().toUri();
-            result[i].diagnostics.addAll(compilerErrors(root));
+            var errors = compilerErrors(root);
+            result[i].diagnostics.addAll(errors);
+            // Don't spend time looking for unused code in files that are badly broken
+            if (countErrors(errors) >= CompilerProvider.MAX_ERRORS_PER_FILE) continue;
             result[i].diagnostics.addAll(unusedWarnings(root));
             result[i].diagnostics.addAll(notThrownWarnings(root));
         }
@@ -40,11 +42,19 @@ public class ErrorProvider {
         for (var d : task.diagnostics) {
             if (d.getSource() == null || !d.getSource().toUri().equals(root.getSourceFile().toUri())) continue;
             if (d.getStartPosition() == -1 || d.getEndPosition() == -1) continue;
-            result.add(lspDiagnostic(d, root.getLineMap()));
+            result.add(lspDiagnostic(d, task.text(root)));
         }
         return result;
     }
 
+    private int countErrors(List<org.javacs.lsp.Diagnostic> diagnostics) {
+        var count = 0;
+        for (var d : diagnostics) {
+            if (d.severity == DiagnosticSeverity.Error) count++;
+        }
+        return count;
+    }
+
     private List<org.javacs.lsp.Diagnostic> unusedWarnings(CompilationUnitTree root) {
         var result = new ArrayList<org.javacs.lsp.Diagnostic>();
         var warnUnused = new WarnUnused(task.task);
@@ -66,16 +76,11 @@ public class ErrorProvider {
     }
 
     /**
-     * lspDiagnostic(d, lines) converts d to LSP format, with its position shifted appropriately for the latest version
+     * lspDiagnostic(d, text) converts d to LSP format, with its position shifted appropriately for the latest version
      * of the file.
      */
-    private org.javacs.lsp.Diagnostic lspDiagnostic(javax.tools.Diagnostic<? extends JavaFileObject> d, LineMap lines) {
-        var start = d.getStartPosition();
-        var end = d.getEndPosition();
-        var startLine = (int) lines.getLineNumber(start);
-        var startColumn = (int) lines.getColumnNumber(start);
-        var endLine = (int) lines.getLineNumber(end);
-        var endColumn = (int) lines.getColumnNumber(end);
+    private org.javacs.lsp.Diagnostic lspDiagnostic(
+            javax.tools.Diagnostic<? extends JavaFileObject> d, SourceText text) {
         var severity = severity(d.getKind());
         var code = d.getCode();
         var message = d.getMessage(null);
@@ -83,8 +88,7 @@ public class ErrorProvider {
         result.severity = severity;
         result.code = code;
         result.message = message;
-        result.range =
-                new Range(new Position(startLine - 1, startColumn - 1), new Position(endLine - 1, endColumn - 1));
+        result.range = text.range((int) d.getStartPosition(), (int) d.getEndPosition());
         return result;
     }
 
@@ -107,11 +111,11 @@ public class ErrorProvider {
         var trees = Trees.instance(task.task);
         var pos = trees.getSourcePositions();
         var root = path.getCompilationUnit();
-        var start = pos.getStartPosition(root, path.getLeaf());
-        var end = pos.getEndPosition(root, path.getLeaf());
+        var start = (int) pos.getStartPosition(root, path.getLeaf());
+        var end = (int) pos.getEndPosition(root, path.getLeaf());
         var d = new org.javacs.lsp.Diagnostic();
         d.message = String.format("'%s' is not thrown in the body of the method", name);
-        d.range = RangeHelper.range(root, start, end);
+        d.range = task.text(root).range(start, end);
         d.code = "unused_throws";
         d.severity = DiagnosticSeverity.Information;
         d.tags = List.of(DiagnosticTag.Unnecessary);
@@ -136,17 +140,15 @@ public class ErrorProvider {
                 start = offset;
             }
         }
-        var file = Paths.get(root.getSourceFile().toUri());
-        var contents = FileStore.contents(file);
+        var text = task.text(root);
         var name = unusedEl.getSimpleName();
         if (name.contentEquals("<init>")) {
             name = unusedEl.getEnclosingElement().getSimpleName();
         }
-        var region = contents.subSequence(start, end);
-        var matcher = Pattern.compile("\\b" + name + "\\b").matcher(region);
-        if (matcher.find()) {
-            start += matcher.start();
-            end = start + name.length();
+        var found = text.findName(name, start, end);
+        if (found != -1) {
+            start = found;
+            end = found + name.length();
         }
         var message = String.format("'%s' is not used", name);
         String code;
@@ -176,17 +178,16 @@ public class ErrorProvider {
             code = "unused_other";
             severity = DiagnosticSeverity.Information;
         }
-        return lspWarnUnused(severity, code, message, start, end, root);
+        return lspWarnUnused(severity, code, message, text.range(start, end));
     }
 
-    private static org.javacs.lsp.Diagnostic lspWarnUnused(
-            int severity, String code, String message, int start, int end, CompilationUnitTree root) {
+    private static org.javacs.lsp.Diagnostic lspWarnUnused(int severity, String code, String message, Range range) {
         var result = new org.javacs.lsp.Diagnostic();
         result.severity = severity;
         result.code = code;
         result.message = message;
         result.tags = List.of(DiagnosticTag.Unnecessary);
-        result.range = RangeHelper.range(root, start, end);
+        result.range = range;
         return result;
     }
 }
@@ -0,0 +1,40 @@
+package org.javacs.navigation;
+
+import java.nio.file.Path;
+import java.util.List;
+import javax.lang.model.element.ExecutableElement;
+import org.javacs.CallGraphIndex;
+import org.javacs.CompilerProvider;
+import org.javacs.lsp.CallHierarchyItem;
+
+public class CallHierarchyProvider {
+    private final CompilerProvider compiler;
+    private final CallGraphIndex index;
+    private final Path file;
+    private final int line, column;
+
+    public CallHierarchyProvider(CompilerProvider compiler, CallGraphIndex index, Path file, int line, int column) {
+        this.compiler = compiler;
+        this.index = index;
+        this.file = file;
+        this.line = line;
+        this.column = column;
+    }
+
+    /** The method or constructor under the cursor, which may be a declaration or a call. */
+    public List<CallHierarchyItem> prepare() {
+        String key, className;
+        try (var task = compiler.compile(file)) {
+            // We just compiled this file, so we might as well index it
+            index.index(task);
+            var element = NavigationHelper.findElement(task, file, line, column);
+            if (!(element instanceof ExecutableElement)) return List.of();
+            var method = (ExecutableElement) element;
+            key = CallGraphIndex.key(task, method);
+            className = CallGraphIndex.topLevelClassName(method);
+        }
+        var declaration = index.declaration(compiler, className, key);
+        if (declaration.isEmpty()) return List.of();
+        return List.of(declaration.get().item());
+    }
+}
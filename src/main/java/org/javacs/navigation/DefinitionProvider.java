@@ -11,6 +11,7 @@ import javax.tools.JavaFileObject;
 import org.javacs.CompileTask;
 import org.javacs.CompilerProvider;
 import org.javacs.FindHelper;
+import org.javacs.Progress;
 import org.javacs.SourceFileObject;
 import org.javacs.lsp.Location;
 
@@ -29,7 +30,7 @@ public class DefinitionProvider {
     }
 
     public List<Location> find() {
-        try (var task = compiler.compile(file)) {
+        try (var task = compiler.compileAt(file, line, column, Progress.NONE)) {
             var element = NavigationHelper.findElement(task, file, line, column);
             if (element == null) return NOT_SUPPORTED;
             if (element.asType().getKind() == TypeKind.ERROR) {
@@ -0,0 +1,63 @@
+package org.javacs.navigation;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import org.javacs.CompilerProvider;
+import org.javacs.TypeHierarchyIndex;
+import org.javacs.lsp.Location;
+
+public class ImplementationProvider {
+    private final CompilerProvider compiler;
+    private final TypeHierarchyIndex index;
+    private final Path file;
+    private final int line, column;
+
+    public static final List<Location> NOT_SUPPORTED = List.of();
+
+    public ImplementationProvider(
+            CompilerProvider compiler, TypeHierarchyIndex index, Path file, int line, int column) {
+        this.compiler = compiler;
+        this.index = index;
+        this.file = file;
+        this.line = line;
+        this.column = column;
+    }
+
+    /** Find the subtypes of the type under the cursor, or the overrides of the method under the cursor. */
+    public List<Location> find() {
+        try (var task = compiler.compile(file)) {
+            var element = NavigationHelper.findElement(task, file, line, column);
+            if (element instanceof TypeElement) {
+                var type = (TypeElement) element;
+                var locations = new ArrayList<Location>();
+                for (var subtype : index.allSubtypes(type.getQualifiedName().toString())) {
+                    locations.add(subtype.location());
+                }
+                return locations;
+            }
+            if (element instanceof ExecutableElement && element.getKind() == ElementKind.METHOD) {
+                var method = (ExecutableElement) element;
+                var parent = (TypeElement) method.getEnclosingElement();
+                var className = parent.getQualifiedName().toString();
+                var methodName = method.getSimpleName().toString();
+                return index.implementations(className, methodName, method.getParameters().size());
+            }
+            return NOT_SUPPORTED;
+        }
+    }
+
+    /** The qualified name of the type under the cursor, if it is declared in the workspace. */
+    public Optional<String> findType() {
+        try (var task = compiler.compile(file)) {
+            var element = NavigationHelper.findElement(task, file, line, column);
+            if (!(element instanceof TypeElement)) return Optional.empty();
+            var type = (TypeElement) element;
+            return Optional.of(type.getQualifiedName().toString());
+        }
+    }
+}
@@ -2,26 +2,49 @@ package org.javacs.navigation;
 
 import com.sun.source.util.TreePath;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
 import javax.lang.model.element.TypeElement;
 import org.javacs.CompileTask;
 import org.javacs.CompilerProvider;
 import org.javacs.FindHelper;
+import org.javacs.Progress;
 import org.javacs.lsp.Location;
 
 public class ReferenceProvider {
     private final CompilerProvider compiler;
     private final Path file;
     private final int line, column;
+    private final Consumer<List<Location>> partialResults;
+    private final Progress progress;
 
     public static final List<Location> NOT_SUPPORTED = List.of();
 
     public ReferenceProvider(CompilerProvider compiler, Path file, int line, int column) {
+        this(compiler, file, line, column, __ -> {}, Progress.NONE);
+    }
+
+    /**
+     * A ReferenceProvider that checks candidate files in batches, passing the references found in each batch to
+     * `partialResults` as soon as they are found, and throwing CancellationException if `progress` is cancelled.
+     */
+    public ReferenceProvider(
+            CompilerProvider compiler,
+            Path file,
+            int line,
+            int column,
+            Consumer<List<Location>> partialResults,
+            Progress progress) {
         this.compiler = compiler;
         this.file = file;
         this.line = line;
         this.column = column;
+        this.partialResults = partialResults;
+        this.progress = progress;
     }
 
     public List<Location> find() {
@@ -29,7 +52,9 @@ public class ReferenceProvider {
             var element = NavigationHelper.findElement(task, file, line, column);
             if (element == null) return NOT_SUPPORTED;
             if (NavigationHelper.isLocal(element)) {
-                return findReferences(task);
+                var locations = findReferences(task, true);
+                partialResults.accept(locations);
+                return locations;
             }
             if (NavigationHelper.isType(element)) {
                 var type = (TypeElement) element;
@@ -53,24 +78,46 @@ public class ReferenceProvider {
 
     private List<Location> findTypeReferences(String className) {
         var files = compiler.findTypeReferences(className);
-        if (files.length == 0) return List.of();
-        try (var task = compiler.compile(files)) {
-            return findReferences(task);
-        }
+        return findReferences(files);
     }
 
     private List<Location> findMemberReferences(String className, String memberName) {
         var files = compiler.findMemberReferences(className, memberName);
+        return findReferences(files);
+    }
+
+    /**
+     * Check `files` for references in batches. Each batch also compiles `file`, so we can find the element under the
+     * cursor, but only the batch that contains `file` as a candidate reports references in `file`.
+     */
+    private List<Location> findReferences(Path[] files) {
         if (files.length == 0) return List.of();
-        try (var task = compiler.compile(files)) {
-            return findReferences(task);
+        LOG.info("...check " + files.length + " files for references");
+        var locations = new ArrayList<Location>();
+        var done = 0;
+        for (var batch : CompilerProvider.batches(files)) {
+            if (progress.isCancelled()) {
+                throw new CancellationException("Find references was cancelled after " + done + " files");
+            }
+            var includeFile = List.of(batch).contains(file);
+            var sources = new ArrayList<>(List.of(batch));
+            if (!includeFile) sources.add(file);
+            try (var task = compiler.compile(progress, sources.toArray(Path[]::new))) {
+                var found = findReferences(task, includeFile);
+                partialResults.accept(found);
+                locations.addAll(found);
+            }
+            done += batch.length;
+            progress.report(done, files.length);
         }
+        return locations;
     }
 
-    private List<Location> findReferences(CompileTask task) {
+    private List<Location> findReferences(CompileTask task, boolean includeFile) {
         var element = NavigationHelper.findElement(task, file, line, column);
         var paths = new ArrayList<TreePath>();
         for (var root : task.roots) {
+            if (!includeFile && Paths.get(root.getSourceFile().toUri()).equals(file)) continue;
             new FindReferences(task.task, element).scan(root, paths);
         }
         var locations = new ArrayList<Location>();
@@ -79,4 +126,6 @@ public class ReferenceProvider {
         }
         return locations;
     }
+
+    private static final Logger LOG = Logger.getLogger("main");
 }
@@ -0,0 +1,539 @@
+package org.javacs.outline;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.javacs.FileStore;
+import org.javacs.SourceText;
+import org.javacs.lsp.Position;
+import org.javacs.lsp.Range;
+
+/**
+ * Outline is the structure of a Java source file: its package, imports, comments, braces, and declarations. It is
+ * recovered from tokens by recognizing declarations between braces, without parsing statements or expressions, so it
+ * is cheap enough to recompute on every edit, and it tolerates code that doesn't compile.
+ */
+public class Outline {
+    public enum Kind {
+        CLASS,
+        INTERFACE,
+        ENUM,
+        RECORD,
+        ANNOTATION_TYPE,
+        METHOD,
+        CONSTRUCTOR,
+        FIELD,
+        ENUM_CONSTANT,
+    }
+
+    public static class Declaration {
+        public final Kind kind;
+        public final String name;
+        public final Set<String> modifiers;
+        /** annotations are the names of annotations as written, like `Test` or `org.junit.Test` */
+        public final List<String> annotations;
+
+        public final int start, nameStart;
+        public int end;
+        public final List<Declaration> members = new ArrayList<>();
+
+        Declaration(Kind kind, String name, Set<String> modifiers, List<String> annotations, int start, int nameStart) {
+            this.kind = kind;
+            this.name = name;
+            this.modifiers = modifiers;
+            this.annotations = annotations;
+            this.start = start;
+            this.nameStart = nameStart;
+            this.end = nameStart + name.length();
+        }
+
+        public boolean isType() {
+            switch (kind) {
+                case CLASS:
+                case INTERFACE:
+                case ENUM:
+                case RECORD:
+                case ANNOTATION_TYPE:
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+
+    /** A region of the source, like a comment or a pair of braces, from the offset of its first to its last char. */
+    public static class Region {
+        public final int start, end;
+
+        public Region(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    public final String text;
+    final Tokens tokens;
+    public String packageName = "";
+    public final List<Region> imports = new ArrayList<>();
+    public final List<Region> comments = new ArrayList<>();
+    /** braces are the `{...}` pairs of class bodies and blocks, including method bodies and array initializers */
+    public final List<Region> braces = new ArrayList<>();
+    /** declarations are the top-level types in the file */
+    public final List<Declaration> declarations = new ArrayList<>();
+
+    private final SourceText source;
+
+    private Outline(String text, Tokens tokens) {
+        this.text = text;
+        this.tokens = tokens;
+        this.source = new SourceText(text);
+    }
+
+    /** Outlines of recently viewed files, which we use to re-lex only the edited region of the next version. */
+    private static final Map<Path, Outline> cache =
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Path, Outline> eldest) {
+                    return size() > MAX_CACHED_FILES;
+                }
+            };
+
+    private static final int MAX_CACHED_FILES = 100;
+
+    /** The outline of the current contents of `file`. */
+    public static synchronized Outline of(Path file) {
+        var text = FileStore.contents(file);
+        var cached = cache.get(file);
+        if (cached != null && cached.text.equals(text)) {
+            return cached;
+        }
+        var tokens = cached == null ? Tokens.lex(text) : Tokens.relex(cached.text, cached.tokens, text);
+        var outline = parse(text, tokens);
+        cache.put(file, outline);
+        return outline;
+    }
+
+    /** The 0-based line containing `offset`. */
+    public int line(int offset) {
+        return source.line(offset);
+    }
+
+    /** The 0-based column of `offset`. */
+    public int character(int offset) {
+        return source.character(offset);
+    }
+
+    public Position position(int offset) {
+        return source.position(offset);
+    }
+
+    public Range range(int start, int end) {
+        return source.range(start, end);
+    }
+
+    /** Recover the outline of `text` from `tokens`. */
+    static Outline parse(String text, Tokens tokens) {
+        var outline = new Outline(text, tokens);
+        new StructureParser(outline, tokens).parseFile();
+        return outline;
+    }
+
+    /** StructureParser walks the non-comment tokens, matching braces and recognizing the declarations between them. */
+    private static class StructureParser {
+        private final Outline outline;
+        private final Tokens tokens;
+        /** significant[i] is the index in tokens of the i'th token that isn't a comment */
+        private final int[] significant;
+
+        private final int size;
+
+        StructureParser(Outline outline, Tokens tokens) {
+            this.outline = outline;
+            this.tokens = tokens;
+            var significant = new int[tokens.size];
+            var size = 0;
+            for (var i = 0; i < tokens.size; i++) {
+                if (tokens.isComment(i)) {
+                    outline.comments.add(new Region(tokens.starts[i], tokens.ends[i] - 1));
+                } else {
+                    significant[size++] = i;
+                }
+            }
+            this.significant = significant;
+            this.size = size;
+        }
+
+        private int start(int i) {
+            return tokens.starts[significant[i]];
+        }
+
+        private int end(int i) {
+            return tokens.ends[significant[i]];
+        }
+
+        private boolean is(int i, char c) {
+            if (i < 0 || i >= size) return false;
+            var t = significant[i];
+            return tokens.kinds[t] == Tokens.PUNCTUATION && outline.text.charAt(tokens.starts[t]) == c;
+        }
+
+        private boolean is(int i, String word) {
+            if (i < 0 || i >= size) return false;
+            var t = significant[i];
+            if (tokens.kinds[t] != Tokens.IDENTIFIER) return false;
+            var length = tokens.ends[t] - tokens.starts[t];
+            if (length != word.length()) return false;
+            for (var j = 0; j < length; j++) {
+                if (outline.text.charAt(tokens.starts[t] + j) != word.charAt(j)) return false;
+            }
+            return true;
+        }
+
+        private boolean isIdentifier(int i) {
+            return i >= 0 && i < size && tokens.kinds[significant[i]] == Tokens.IDENTIFIER;
+        }
+
+        private String text(int i) {
+            return outline.text.subSequence(start(i), end(i)).toString();
+        }
+
+        void parseFile() {
+            var i = 0;
+            // Skip annotations on the package declaration
+            while (is(i, '@') && !is(i + 1, "interface")) {
+                i = skipAnnotation(i, null);
+            }
+            if (!is(i, "package")) {
+                i = 0;
+            } else {
+                var name = new StringBuilder();
+                i++;
+                while (i < size && !is(i, ';')) {
+                    name.append(text(i));
+                    i++;
+                }
+                outline.packageName = name.toString();
+                i++;
+            }
+            while (is(i, "import")) {
+                var start = start(i);
+                while (i < size && !is(i, ';')) i++;
+                if (i < size) {
+                    outline.imports.add(new Region(start, start(i)));
+                }
+                i++;
+            }
+            i = parseMembers(i, outline.declarations, false, null);
+            // Recover from unbalanced braces by parsing the rest of the file as members
+            while (i < size) {
+                i = parseMembers(i + 1, outline.declarations, false, null);
+            }
+        }
+
+        /** Parse class members starting at token i, until the `}` that closes the body. Returns the index of `}`. */
+        private int parseMembers(int i, List<Declaration> members, boolean isEnum, String className) {
+            if (isEnum) {
+                i = parseEnumConstants(i, members);
+            }
+            while (i < size && !is(i, '}')) {
+                if (is(i, ';')) {
+                    i++;
+                    continue;
+                }
+                i = parseMember(i, members, className);
+            }
+            return i;
+        }
+
+        private int parseEnumConstants(int i, List<Declaration> members) {
+            while (i < size && !is(i, ';') && !is(i, '}')) {
+                var annotations = new ArrayList<String>();
+                while (is(i, '@')) i = skipAnnotation(i, annotations);
+                if (!isIdentifier(i)) {
+                    i++;
+                    continue;
+                }
+                var constant = new Declaration(Kind.ENUM_CONSTANT, text(i), Set.of(), annotations, start(i), start(i));
+                members.add(constant);
+                i++;
+                if (is(i, '(')) i = skipParens(i);
+                if (is(i, '{')) {
+                    i = parseBody(i, constant.members, false, null);
+                }
+                constant.end = end(i - 1);
+                if (is(i, ',')) i++;
+            }
+            return is(i, ';') ? i + 1 : i;
+        }
+
+        /** Parse one member declaration starting at token i, and return the index of the token after it. */
+        private int parseMember(int i, List<Declaration> members, String className) {
+            var start = start(i);
+            var modifiers = new HashSet<String>();
+            var annotations = new ArrayList<String>();
+            // Find the declaration that starts at i, by scanning ahead to the first `(`, `{`, `=`, or `;`
+            var j = i;
+            var angles = 0;
+            while (j < size) {
+                if (is(j, '@') && !is(j + 1, "interface")) {
+                    j = skipAnnotation(j, annotations);
+                    continue;
+                }
+                var typeKind = typeKind(j);
+                if (typeKind != null) {
+                    return parseType(j, typeKind, start, modifiers, annotations, members);
+                }
+                if (is(j, '<')) angles++;
+                if (is(j, '>')) angles--;
+                if (angles == 0 && is(j, '(') && isIdentifier(j - 1)) {
+                    var kind = text(j - 1).equals(className) ? Kind.CONSTRUCTOR : Kind.METHOD;
+                    return parseMethod(j - 1, kind, start, modifiers, annotations, members);
+                }
+                if (is(j, '{')) {
+                    // An initializer block
+                    return parseBlock(j) + 1;
+                }
+                if (angles == 0 && (is(j, '=') || is(j, ';') || is(j, ','))) {
+                    return parseField(j, start, modifiers, annotations, members);
+                }
+                if (is(j, '}')) {
+                    return j;
+                }
+                if (isIdentifier(j) && isModifier(j)) {
+                    modifiers.add(text(j));
+                }
+                j++;
+            }
+            return j;
+        }
+
+        private Kind typeKind(int i) {
+            if (is(i - 1, '.')) return null;
+            if (is(i, "class")) return Kind.CLASS;
+            if (is(i, "interface")) return is(i - 1, '@') ? Kind.ANNOTATION_TYPE : Kind.INTERFACE;
+            if (is(i, "enum") && isIdentifier(i + 1)) return Kind.ENUM;
+            if (is(i, "record") && isIdentifier(i + 1) && (is(i + 2, '(') || is(i + 2, '<'))) return Kind.RECORD;
+            return null;
+        }
+
+        private boolean isModifier(int i) {
+            switch (text(i)) {
+                case "public":
+                case "protected":
+                case "private":
+                case "static":
+                case "abstract":
+                case "final":
+                case "native":
+                case "synchronized":
+                case "transient":
+                case "volatile":
+                case "strictfp":
+                case "default":
+                case "sealed":
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        private int parseType(
+                int keyword,
+                Kind kind,
+                int start,
+                Set<String> modifiers,
+                List<String> annotations,
+                List<Declaration> members) {
+            var name = keyword + 1;
+            if (!isIdentifier(name)) return name;
+            var type = new Declaration(kind, text(name), modifiers, annotations, start, start(name));
+            members.add(type);
+            var i = name + 1;
+            while (i < size && !is(i, '{') && !is(i, ';') && !is(i, '}')) {
+                if (is(i, '(')) {
+                    i = skipParens(i);
+                } else {
+                    i++;
+                }
+            }
+            if (is(i, '{')) {
+                i = parseBody(i, type.members, kind == Kind.ENUM, type.name);
+            }
+            type.end = end(Math.min(i, size) - 1);
+            return i;
+        }
+
+        /** Parse a class body starting at `{`, and return the index of the token after `}`. */
+        private int parseBody(int open, List<Declaration> members, boolean isEnum, String className) {
+            var close = parseMembers(open + 1, members, isEnum, className);
+            if (close < size) {
+                outline.braces.add(new Region(start(open), start(close)));
+            }
+            return close + 1;
+        }
+
+        private int parseMethod(
+                int name,
+                Kind kind,
+                int start,
+                Set<String> modifiers,
+                List<String> annotations,
+                List<Declaration> members) {
+            var method = new Declaration(kind, text(name), modifiers, annotations, start, start(name));
+            members.add(method);
+            var i = skipParens(name + 1);
+            while (i < size && !is(i, '{') && !is(i, ';') && !is(i, '}')) {
+                if (is(i, '(')) {
+                    i = skipParens(i);
+                } else {
+                    i++;
+                }
+            }
+            if (is(i, '{')) {
+                i = parseBlock(i);
+            }
+            method.end = end(Math.min(i, size - 1));
+            return i + 1;
+        }
+
+        private int parseField(
+                int j, int start, Set<String> modifiers, List<String> annotations, List<Declaration> members) {
+            // Each declarator `name = initializer` ends with `,` or `;`
+            while (j < size) {
+                Declaration field = null;
+                if (isIdentifier(j - 1)) {
+                    field = new Declaration(Kind.FIELD, text(j - 1), modifiers, annotations, start, start(j - 1));
+                    members.add(field);
+                }
+                if (is(j, '=')) {
+                    j = skipExpression(j + 1);
+                }
+                if (field != null) {
+                    field.end = end(Math.min(j, size - 1));
+                }
+                if (!is(j, ',')) break;
+                // Find the name of the next declarator
+                j++;
+                while (j < size && !is(j, '=') && !is(j, ',') && !is(j, ';') && !is(j, '}')) j++;
+            }
+            return is(j, ';') ? j + 1 : j;
+        }
+
+        /** Skip an initializer expression, and return the index of the `,` or `;` that ends it. */
+        private int skipExpression(int i) {
+            while (i < size && !is(i, ',') && !is(i, ';') && !is(i, '}')) {
+                if (is(i, '(')) {
+                    i = skipParens(i);
+                } else if (is(i, '[')) {
+                    i = skipBrackets(i);
+                } else if (is(i, '{')) {
+                    i = parseBlock(i) + 1;
+                } else {
+                    i++;
+                }
+            }
+            return i;
+        }
+
+        /**
+         * Parse a block starting at `{`, and return the index of the matching `}`. Blocks don't contain declarations
+         * we report, except for the members of local and anonymous classes.
+         */
+        private int parseBlock(int open) {
+            var i = open + 1;
+            var parens = new ArrayList<Integer>();
+            List<Declaration> ignored = new ArrayList<>();
+            while (i < size && !is(i, '}')) {
+                if (is(i, '(')) {
+                    parens.add(i);
+                    i++;
+                } else if (is(i, ')')) {
+                    if (!parens.isEmpty()) parens.remove(parens.size() - 1);
+                    i++;
+                } else if (is(i, '{')) {
+                    if (is(i - 1, ')') && isAnonymousClass(i - 1)) {
+                        i = parseBody(i, ignored, false, null);
+                    } else {
+                        i = parseBlock(i) + 1;
+                    }
+                } else if (typeKind(i) != null && isIdentifier(i + 1)) {
+                    i = parseType(i, typeKind(i), start(i), Set.of(), List.of(), ignored);
+                } else {
+                    i++;
+                }
+            }
+            if (i < size) {
+                outline.braces.add(new Region(start(open), start(i)));
+            }
+            return i;
+        }
+
+        /** Is the `)` at close the end of the arguments of `new Foo(...)`? */
+        private boolean isAnonymousClass(int close) {
+            var depth = 0;
+            var i = close;
+            for (; i >= 0; i--) {
+                if (is(i, ')')) depth++;
+                if (is(i, '(')) depth--;
+                if (depth == 0) break;
+            }
+            i--;
+            while (i >= 0 && (isIdentifier(i) || is(i, '.') || is(i, '<') || is(i, '>') || is(i, ',') || is(i, '?'))) {
+                if (is(i, "new")) return true;
+                i--;
+            }
+            return false;
+        }
+
+        private int skipParens(int open) {
+            var depth = 0;
+            var i = open;
+            for (; i < size; i++) {
+                if (is(i, '(')) depth++;
+                if (is(i, ')')) depth--;
+                if (depth == 0) return i + 1;
+                // Lambdas and anonymous classes in arguments contain blocks
+                if (is(i, '{')) {
+                    if (is(i - 1, ')') && isAnonymousClass(i - 1)) {
+                        i = parseBody(i, new ArrayList<>(), false, null) - 1;
+                    } else {
+                        i = parseBlock(i);
+                    }
+                }
+            }
+            return i;
+        }
+
+        private int skipBrackets(int open) {
+            var depth = 0;
+            var i = open;
+            for (; i < size; i++) {
+                if (is(i, '[')) depth++;
+                if (is(i, ']')) depth--;
+                if (depth == 0) return i + 1;
+            }
+            return i;
+        }
+
+        /** Skip an annotation like `@Foo` or `@foo.Bar(...)`, adding its name to `annotations`. */
+        private int skipAnnotation(int at, List<String> annotations) {
+            var i = at + 1;
+            var name = new StringBuilder();
+            if (isIdentifier(i)) {
+                name.append(text(i));
+                i++;
+            }
+            while (is(i, '.') && isIdentifier(i + 1)) {
+                name.append('.').append(text(i + 1));
+                i += 2;
+            }
+            if (annotations != null) annotations.add(name.toString());
+            if (is(i, '(')) i = skipParens(i);
+            return i;
+        }
+    }
+}
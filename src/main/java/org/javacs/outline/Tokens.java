@@ -0,0 +1,173 @@
+package org.javacs.outline;
+
+import java.util.Arrays;
+
+/**
+ * Tokens is the result of lexing a Java source file, stored as parallel arrays of kinds and offsets. The lexer is much
+ * simpler than javac's: it only needs to find the boundaries of identifiers, literals, comments and punctuation, so
+ * the structural parser can find declarations and braces.
+ */
+class Tokens {
+    static final int IDENTIFIER = 0, NUMBER = 1, STRING = 2, PUNCTUATION = 3, LINE_COMMENT = 4, BLOCK_COMMENT = 5;
+
+    int[] kinds, starts, ends;
+    int size;
+
+    private Tokens(int capacity) {
+        kinds = new int[capacity];
+        starts = new int[capacity];
+        ends = new int[capacity];
+    }
+
+    boolean isComment(int i) {
+        return kinds[i] == LINE_COMMENT || kinds[i] == BLOCK_COMMENT;
+    }
+
+    private void add(int kind, int start, int end) {
+        if (size == kinds.length) {
+            var capacity = Math.max(16, size * 2);
+            kinds = Arrays.copyOf(kinds, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+        }
+        kinds[size] = kind;
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+    }
+
+    static Tokens lex(CharSequence text) {
+        var tokens = new Tokens(text.length() / 4);
+        var offset = 0;
+        while (offset < text.length()) {
+            offset = tokens.next(text, offset);
+        }
+        return tokens;
+    }
+
+    /**
+     * Lex `newText`, which is an edited version of `oldText`, re-using the tokens of `old` outside the edited region.
+     * Every token start is a place where the lexer can restart, so we re-lex from the token that touches the edit,
+     * until we produce a token that lines up with an old token in the unchanged suffix.
+     */
+    static Tokens relex(CharSequence oldText, Tokens old, CharSequence newText) {
+        var prefix = 0;
+        var maxPrefix = Math.min(oldText.length(), newText.length());
+        while (prefix < maxPrefix && oldText.charAt(prefix) == newText.charAt(prefix)) prefix++;
+        var suffix = 0;
+        var maxSuffix = maxPrefix - prefix;
+        while (suffix < maxSuffix
+                && oldText.charAt(oldText.length() - 1 - suffix) == newText.charAt(newText.length() - 1 - suffix)) {
+            suffix++;
+        }
+        var delta = newText.length() - oldText.length();
+        // Keep old tokens that end before the edit, because the lexer never looks past the end of a token
+        var keep = 0;
+        while (keep < old.size && old.ends[keep] < prefix) keep++;
+        var tokens = new Tokens(old.size + 16);
+        System.arraycopy(old.kinds, 0, tokens.kinds, 0, keep);
+        System.arraycopy(old.starts, 0, tokens.starts, 0, keep);
+        System.arraycopy(old.ends, 0, tokens.ends, 0, keep);
+        tokens.size = keep;
+        var offset = keep < old.size ? Math.min(old.starts[keep], prefix) : prefix;
+        var unchanged = newText.length() - suffix;
+        var search = keep;
+        while (offset < newText.length()) {
+            offset = tokens.next(newText, offset);
+            if (tokens.size == 0) continue;
+            var last = tokens.size - 1;
+            if (tokens.starts[last] < unchanged) continue;
+            // Look for an old token at the same position in the unchanged suffix
+            var oldStart = tokens.starts[last] - delta;
+            while (search < old.size && old.starts[search] < oldStart) search++;
+            if (search == old.size) continue;
+            var sameToken =
+                    old.starts[search] == oldStart
+                            && old.ends[search] == tokens.ends[last] - delta
+                            && old.kinds[search] == tokens.kinds[last];
+            if (sameToken) {
+                for (var i = search + 1; i < old.size; i++) {
+                    tokens.add(old.kinds[i], old.starts[i] + delta, old.ends[i] + delta);
+                }
+                return tokens;
+            }
+        }
+        return tokens;
+    }
+
+    /** Lex one token starting at or after `offset`, and return the offset after it. */
+    private int next(CharSequence text, int offset) {
+        var length = text.length();
+        var c = text.charAt(offset);
+        if (Character.isWhitespace(c)) {
+            return offset + 1;
+        }
+        var start = offset;
+        var next = offset + 1 < length ? text.charAt(offset + 1) : 0;
+        if (c == '/' && next == '/') {
+            while (offset < length && text.charAt(offset) != '\n') offset++;
+            add(LINE_COMMENT, start, offset);
+            return offset;
+        }
+        if (c == '/' && next == '*') {
+            offset += 2;
+            while (offset < length
+                    && !(text.charAt(offset) == '*' && offset + 1 < length && text.charAt(offset + 1) == '/')) {
+                offset++;
+            }
+            offset = Math.min(length, offset + 2);
+            add(BLOCK_COMMENT, start, offset);
+            return offset;
+        }
+        if (c == '"' && next == '"' && offset + 2 < length && text.charAt(offset + 2) == '"') {
+            offset += 3;
+            while (offset < length && !startsWith(text, offset, "\"\"\"")) {
+                if (text.charAt(offset) == '\\') offset++;
+                offset++;
+            }
+            offset = Math.min(length, offset + 3);
+            add(STRING, start, offset);
+            return offset;
+        }
+        if (c == '"' || c == '\'') {
+            offset++;
+            while (offset < length && text.charAt(offset) != c && text.charAt(offset) != '\n') {
+                if (text.charAt(offset) == '\\') offset++;
+                offset++;
+            }
+            offset = Math.min(length, offset + 1);
+            add(STRING, start, offset);
+            return offset;
+        }
+        if (Character.isJavaIdentifierStart(c)) {
+            while (offset < length && Character.isJavaIdentifierPart(text.charAt(offset))) offset++;
+            add(IDENTIFIER, start, offset);
+            return offset;
+        }
+        if (Character.isDigit(c)) {
+            while (offset < length) {
+                var d = text.charAt(offset);
+                var isExponent =
+                        (d == '+' || d == '-') && "eEpP".indexOf(text.charAt(offset - 1)) != -1 && !isHex(text, start);
+                if (!Character.isLetterOrDigit(d) && d != '_' && d != '.' && !isExponent) break;
+                offset++;
+            }
+            add(NUMBER, start, offset);
+            return offset;
+        }
+        add(PUNCTUATION, start, offset + 1);
+        return offset + 1;
+    }
+
+    private static boolean isHex(CharSequence text, int start) {
+        return start + 1 < text.length() && text.charAt(start) == '0' && (text.charAt(start + 1) | 0x20) == 'x';
+    }
+
+    private static boolean startsWith(CharSequence text, int offset, String prefix) {
+        if (offset + prefix.length() > text.length()) return false;
+        for (var i = 0; i < prefix.length(); i++) {
+            if (text.charAt(offset + i) != prefix.charAt(i)) return false;
+        }
+        return true;
+    }
+}
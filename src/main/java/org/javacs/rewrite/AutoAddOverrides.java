@@ -22,13 +22,23 @@ public class AutoAddOverrides implements Rewrite {
     @Override
     public Map<Path, TextEdit[]> rewrite(CompilerProvider compiler) {
         try (var task = compiler.compile(file)) {
-            var missing = new ArrayList<TreePath>();
-            new FindMissingOverride(task.task).scan(task.root(), missing);
-            var list = addOverrides(task, missing);
-            return Map.of(file, list.toArray(new TextEdit[list.size()]));
+            return rewrite(compiler, task);
         }
     }
 
+    @Override
+    public List<Path> files(CompilerProvider compiler) {
+        return List.of(file);
+    }
+
+    @Override
+    public Map<Path, TextEdit[]> rewrite(CompilerProvider compiler, CompileTask task) {
+        var missing = new ArrayList<TreePath>();
+        new FindMissingOverride(task.task).scan(task.root(file), missing);
+        var list = addOverrides(task, missing);
+        return Map.of(file, list.toArray(new TextEdit[list.size()]));
+    }
+
     private List<TextEdit> addOverrides(CompileTask task, List<TreePath> missing) {
         var edits = new ArrayList<TextEdit>();
         var pos = Trees.instance(task.task).getSourcePositions();
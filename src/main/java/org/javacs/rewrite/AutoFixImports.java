@@ -25,25 +25,35 @@ public class AutoFixImports implements Rewrite {
 
     @Override
     public Map<Path, TextEdit[]> rewrite(CompilerProvider compiler) {
-        LOG.info("Fix imports in " + file + "...");
         try (var task = compiler.compile(file)) {
-            var used = usedImports(task);
-            var unresolved = unresolvedNames(task);
-            var resolved = resolveNames(compiler, unresolved);
-            var all = new ArrayList<String>();
-            all.addAll(used);
-            all.addAll(resolved.values());
-            all.sort(String::compareTo); // TODO this is not always a good order
-            var edits = new ArrayList<TextEdit>();
-            edits.addAll(deleteImports(task));
-            edits.add(insertImports(task, all));
-            return Map.of(file, edits.toArray(new TextEdit[edits.size()]));
+            return rewrite(compiler, task);
         }
     }
 
+    @Override
+    public List<Path> files(CompilerProvider compiler) {
+        return List.of(file);
+    }
+
+    @Override
+    public Map<Path, TextEdit[]> rewrite(CompilerProvider compiler, CompileTask task) {
+        LOG.info("Fix imports in " + file + "...");
+        var used = usedImports(task);
+        var unresolved = unresolvedNames(task);
+        var resolved = resolveNames(compiler, unresolved);
+        var all = new ArrayList<String>();
+        all.addAll(used);
+        all.addAll(resolved.values());
+        all.sort(String::compareTo); // TODO this is not always a good order
+        var edits = new ArrayList<TextEdit>();
+        edits.addAll(deleteImports(task));
+        edits.add(insertImports(task, all));
+        return Map.of(file, edits.toArray(new TextEdit[edits.size()]));
+    }
+
     private Set<String> usedImports(CompileTask task) {
         var used = new HashSet<String>();
-        new FindUsedImports(task.task).scan(task.root(), used);
+        new FindUsedImports(task.task).scan(task.root(file), used);
         return used;
     }
 
@@ -92,7 +102,7 @@ public class AutoFixImports implements Rewrite {
     private List<TextEdit> deleteImports(CompileTask task) {
         var edits = new ArrayList<TextEdit>();
         var pos = Trees.instance(task.task).getSourcePositions();
-        var root = task.root();
+        var root = task.root(file);
         for (var i : root.getImports()) {
             if (i.isStatic()) continue;
             var start = pos.getStartPosition(root, i);
@@ -114,7 +124,7 @@ public class AutoFixImports implements Rewrite {
 
     private Position insertPosition(CompileTask task) {
         var pos = Trees.instance(task.task).getSourcePositions();
-        var root = task.root();
+        var root = task.root(file);
         // If there are imports, use the start of the first import as the insert position
         for (var i : root.getImports()) {
             if (!i.isStatic()) {
@@ -11,6 +11,7 @@ import com.sun.source.tree.Tree;
 import com.sun.source.util.TreePath;
 import com.sun.source.util.Trees;
 import java.nio.file.Path;
+import java.util.List;
 import java.util.Map;
 import java.util.StringJoiner;
 import javax.lang.model.type.DeclaredType;
@@ -32,21 +33,31 @@ public class CreateMissingMethod implements Rewrite {
     @Override
     public Map<Path, TextEdit[]> rewrite(CompilerProvider compiler) {
         try (var task = compiler.compile(file)) {
-            var trees = Trees.instance(task.task);
-            var call = new FindMethodCallAt(task.task).scan(task.root(), position);
-            if (call == null) return CANCELLED;
-            var path = trees.getPath(task.root(), call);
-            var insertText = "\n" + printMethodHeader(task, call) + " {\n    // TODO\n}";
-            var surroundingClass = surroundingClass(path);
-            var indent = EditHelper.indent(task.task, task.root(), surroundingClass) + 4;
-            insertText = insertText.replaceAll("\n", "\n" + " ".repeat(indent));
-            insertText = insertText + "\n";
-            var insertPoint = EditHelper.insertAfter(task.task, task.root(), surroundingMethod(path));
-            TextEdit[] edits = {new TextEdit(new Range(insertPoint, insertPoint), insertText)};
-            return Map.of(file, edits);
+            return rewrite(compiler, task);
         }
     }
 
+    @Override
+    public List<Path> files(CompilerProvider compiler) {
+        return List.of(file);
+    }
+
+    @Override
+    public Map<Path, TextEdit[]> rewrite(CompilerProvider compiler, CompileTask task) {
+        var trees = Trees.instance(task.task);
+        var call = new FindMethodCallAt(task.task).scan(task.root(file), position);
+        if (call == null) return CANCELLED;
+        var path = trees.getPath(task.root(file), call);
+        var insertText = "\n" + printMethodHeader(task, call) + " {\n    // TODO\n}";
+        var surroundingClass = surroundingClass(path);
+        var indent = EditHelper.indent(task.task, task.root(file), surroundingClass) + 4;
+        insertText = insertText.replaceAll("\n", "\n" + " ".repeat(indent));
+        insertText = insertText + "\n";
+        var insertPoint = EditHelper.insertAfter(task.task, task.root(file), surroundingMethod(path));
+        TextEdit[] edits = {new TextEdit(new Range(insertPoint, insertPoint), insertText)};
+        return Map.of(file, edits);
+    }
+
     private ClassTree surroundingClass(TreePath call) {
         while (call != null) {
             if (call.getLeaf() instanceof ClassTree) {
@@ -81,7 +92,7 @@ public class CreateMissingMethod implements Rewrite {
         var trees = Trees.instance(task.task);
         var join = new StringJoiner(", ");
         for (var i = 0; i < call.getArguments().size(); i++) {
-            var type = trees.getTypeMirror(trees.getPath(task.root(), call.getArguments().get(i)));
+            var type = trees.getTypeMirror(trees.getPath(task.root(file), call.getArguments().get(i)));
             var name = guessParameterName(call.getArguments().get(i), type);
             var printType = EditHelper.printType(type);
             join.add(printType + " " + name);
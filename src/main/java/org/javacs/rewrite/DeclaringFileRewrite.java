@@ -0,0 +1,49 @@
+package org.javacs.rewrite;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import org.javacs.CompilerProvider;
+import org.javacs.lsp.TextEdit;
+
+/** A rewrite that only edits the file that declares `className`, so it can share a compilation in RewritePipeline. */
+abstract class DeclaringFileRewrite implements Rewrite {
+    final String className;
+
+    /**
+     * The file that declares className, found once and shared by files() and rewrite(). It is transient because it
+     * depends on the workspace, and rewrites are sent to the client as code action data.
+     */
+    private transient Path file;
+
+    DeclaringFileRewrite(String className) {
+        this.className = className;
+    }
+
+    Path file(CompilerProvider compiler) {
+        if (file == null) {
+            file = compiler.findTypeDeclaration(className);
+        }
+        return file;
+    }
+
+    @Override
+    public Map<Path, TextEdit[]> rewrite(CompilerProvider compiler) {
+        var file = file(compiler);
+        if (file == CompilerProvider.NOT_FOUND) {
+            return CANCELLED;
+        }
+        try (var task = compiler.compile(file)) {
+            return rewrite(compiler, task);
+        }
+    }
+
+    @Override
+    public List<Path> files(CompilerProvider compiler) {
+        var file = file(compiler);
+        if (file == CompilerProvider.NOT_FOUND) {
+            return List.of();
+        }
+        return List.of(file);
+    }
+}
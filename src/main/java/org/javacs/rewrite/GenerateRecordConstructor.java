@@ -1,6 +1,7 @@
 package org.javacs.rewrite;
 
 import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
 import com.sun.source.tree.MethodTree;
 import com.sun.source.tree.Tree;
 import com.sun.source.tree.VariableTree;
@@ -19,43 +20,40 @@ import org.javacs.lsp.Position;
 import org.javacs.lsp.Range;
 import org.javacs.lsp.TextEdit;
 
-public class GenerateRecordConstructor implements Rewrite {
-    final String className;
-
+public class GenerateRecordConstructor extends DeclaringFileRewrite {
     public GenerateRecordConstructor(String className) {
-        this.className = className;
+        super(className);
     }
 
     @Override
-    public Map<Path, TextEdit[]> rewrite(CompilerProvider compiler) {
+    public Map<Path, TextEdit[]> rewrite(CompilerProvider compiler, CompileTask task) {
         LOG.info("Generate default constructor for " + className + "...");
         // TODO this needs to fall back on looking for inner classes and package-private classes
-        var file = compiler.findTypeDeclaration(className);
-        try (var task = compiler.compile(file)) {
-            var typeElement = task.task.getElements().getTypeElement(className);
-            var typeTree = Trees.instance(task.task).getTree(typeElement);
-            var fields = fieldsNeedingInitialization(typeTree);
-            var parameters = generateParameters(task, fields);
-            var initializers = generateInitializers(task, fields);
-            var buf = new StringBuffer();
-            buf.append("\n");
-            if (typeTree.getModifiers().getFlags().contains(Modifier.PUBLIC)) {
-                buf.append("public ");
-            }
-            buf.append(simpleName(className))
-                    .append("(")
-                    .append(parameters)
-                    .append(") {\n    ")
-                    .append(initializers)
-                    .append("\n}");
-            var string = buf.toString();
-            var indent = EditHelper.indent(task.task, task.root(), typeTree) + 4;
-            string = string.replaceAll("\n", "\n" + " ".repeat(indent));
-            string = string + "\n\n";
-            var insert = insertPoint(task, typeTree);
-            TextEdit[] edits = {new TextEdit(new Range(insert, insert), string)};
-            return Map.of(file, edits);
+        var file = file(compiler);
+        var typeElement = task.task.getElements().getTypeElement(className);
+        var typeTree = Trees.instance(task.task).getTree(typeElement);
+        var fields = fieldsNeedingInitialization(typeTree);
+        var root = task.root(file);
+        var parameters = generateParameters(task, root, fields);
+        var initializers = generateInitializers(task, fields);
+        var buf = new StringBuffer();
+        buf.append("\n");
+        if (typeTree.getModifiers().getFlags().contains(Modifier.PUBLIC)) {
+            buf.append("public ");
         }
+        buf.append(simpleName(className))
+                .append("(")
+                .append(parameters)
+                .append(") {\n    ")
+                .append(initializers)
+                .append("\n}");
+        var string = buf.toString();
+        var indent = EditHelper.indent(task.task, root, typeTree) + 4;
+        string = string.replaceAll("\n", "\n" + " ".repeat(indent));
+        string = string + "\n\n";
+        var insert = insertPoint(task, root, typeTree);
+        TextEdit[] edits = {new TextEdit(new Range(insert, insert), string)};
+        return Map.of(file, edits);
     }
 
     private List<VariableTree> fieldsNeedingInitialization(ClassTree typeTree) {
@@ -72,10 +70,10 @@ public class GenerateRecordConstructor implements Rewrite {
         return fields;
     }
 
-    private String generateParameters(CompileTask task, List<VariableTree> fields) {
+    private String generateParameters(CompileTask task, CompilationUnitTree root, List<VariableTree> fields) {
         var join = new StringJoiner(", ");
         for (var f : fields) {
-            join.add(extract(task, f.getType()) + " " + f.getName());
+            join.add(extract(task, root, f.getType()) + " " + f.getName());
         }
         return join.toString();
     }
@@ -88,12 +86,12 @@ public class GenerateRecordConstructor implements Rewrite {
         return join.toString();
     }
 
-    private CharSequence extract(CompileTask task, Tree typeTree) {
+    private CharSequence extract(CompileTask task, CompilationUnitTree root, Tree typeTree) {
         try {
-            var contents = task.root().getSourceFile().getCharContent(true);
+            var contents = root.getSourceFile().getCharContent(true);
             var pos = Trees.instance(task.task).getSourcePositions();
-            var start = (int) pos.getStartPosition(task.root(), typeTree);
-            var end = (int) pos.getEndPosition(task.root(), typeTree);
+            var start = (int) pos.getStartPosition(root, typeTree);
+            var end = (int) pos.getEndPosition(root, typeTree);
             return contents.subSequence(start, end);
         } catch (IOException e) {
             throw new RuntimeException(e);
@@ -108,17 +106,17 @@ public class GenerateRecordConstructor implements Rewrite {
         return className;
     }
 
-    private Position insertPoint(CompileTask task, ClassTree typeTree) {
+    private Position insertPoint(CompileTask task, CompilationUnitTree root, ClassTree typeTree) {
         for (var member : typeTree.getMembers()) {
             if (member.getKind() == Tree.Kind.METHOD) {
                 var method = (MethodTree) member;
                 if (method.getReturnType() == null) continue;
                 LOG.info("...insert constructor before " + method.getName());
-                return EditHelper.insertBefore(task.task, task.root(), method);
+                return EditHelper.insertBefore(task.task, root, method);
             }
         }
         LOG.info("...insert constructor at end of class");
-        return EditHelper.insertAtEndOfClass(task.task, task.root(), typeTree);
+        return EditHelper.insertAtEndOfClass(task.task, root, typeTree);
     }
 
     private static final Logger LOG = Logger.getLogger("main");
@@ -18,42 +18,38 @@ import org.javacs.FindHelper;
 import org.javacs.lsp.Range;
 import org.javacs.lsp.TextEdit;
 
-public class ImplementAbstractMethods implements Rewrite {
-    final String className;
-
+public class ImplementAbstractMethods extends DeclaringFileRewrite {
     public ImplementAbstractMethods(String className) {
-        this.className = className;
+        super(className);
     }
 
     @Override
-    public Map<Path, TextEdit[]> rewrite(CompilerProvider compiler) {
-        var file = compiler.findTypeDeclaration(className);
+    public Map<Path, TextEdit[]> rewrite(CompilerProvider compiler, CompileTask task) {
+        var file = file(compiler);
         var insertText = new StringJoiner("\n");
-        try (var task = compiler.compile(file)) {
-            var elements = task.task.getElements();
-            var types = task.task.getTypes();
-            var trees = Trees.instance(task.task);
-            var thisClass = elements.getTypeElement(className);
-            var thisType = (DeclaredType) thisClass.asType();
-            var thisTree = trees.getTree(thisClass);
-            var indent = EditHelper.indent(task.task, task.root(), thisTree) + 4;
-            for (var member : elements.getAllMembers(thisClass)) {
-                if (member.getKind() == ElementKind.METHOD && member.getModifiers().contains(Modifier.ABSTRACT)) {
-                    var method = (ExecutableElement) member;
-                    var source = findSource(compiler, task, method);
-                    if (source == null) {
-                        LOG.warning("...couldn't find source for " + method);
-                    }
-                    var parameterizedType = (ExecutableType) types.asMemberOf(thisType, method);
-                    var text = EditHelper.printMethod(method, parameterizedType, source);
-                    text = text.replaceAll("\n", "\n" + " ".repeat(indent));
-                    insertText.add(text);
+        var elements = task.task.getElements();
+        var types = task.task.getTypes();
+        var trees = Trees.instance(task.task);
+        var thisClass = elements.getTypeElement(className);
+        var thisType = (DeclaredType) thisClass.asType();
+        var thisTree = trees.getTree(thisClass);
+        var indent = EditHelper.indent(task.task, task.root(file), thisTree) + 4;
+        for (var member : elements.getAllMembers(thisClass)) {
+            if (member.getKind() == ElementKind.METHOD && member.getModifiers().contains(Modifier.ABSTRACT)) {
+                var method = (ExecutableElement) member;
+                var source = findSource(compiler, task, method);
+                if (source == null) {
+                    LOG.warning("...couldn't find source for " + method);
                 }
+                var parameterizedType = (ExecutableType) types.asMemberOf(thisType, method);
+                var text = EditHelper.printMethod(method, parameterizedType, source);
+                text = text.replaceAll("\n", "\n" + " ".repeat(indent));
+                insertText.add(text);
             }
-            var insert = EditHelper.insertAtEndOfClass(task.task, task.root(), thisTree);
-            TextEdit[] edits = {new TextEdit(new Range(insert, insert), insertText + "\n")};
-            return Map.of(file, edits);
         }
+        var insert = EditHelper.insertAtEndOfClass(task.task, task.root(file), thisTree);
+        TextEdit[] edits = {new TextEdit(new Range(insert, insert), insertText + "\n")};
+        return Map.of(file, edits);
     }
 
     private MethodTree findSource(CompilerProvider compiler, CompileTask task, ExecutableElement method) {
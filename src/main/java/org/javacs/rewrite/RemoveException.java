@@ -9,39 +9,38 @@ import java.util.Map;
 import java.util.regex.Pattern;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.type.DeclaredType;
+import org.javacs.CompileTask;
 import org.javacs.CompilerProvider;
 import org.javacs.FindHelper;
 import org.javacs.lsp.Position;
 import org.javacs.lsp.Range;
 import org.javacs.lsp.TextEdit;
 
-public class RemoveException implements Rewrite {
-    final String className, methodName;
+public class RemoveException extends DeclaringFileRewrite {
+    final String methodName;
     final String[] erasedParameterTypes;
     final String exceptionType;
 
     public RemoveException(String className, String methodName, String[] erasedParameterTypes, String exceptionType) {
-        this.className = className;
+        super(className);
         this.methodName = methodName;
         this.erasedParameterTypes = erasedParameterTypes;
         this.exceptionType = exceptionType;
     }
 
     @Override
-    public Map<Path, TextEdit[]> rewrite(CompilerProvider compiler) {
-        var file = compiler.findTypeDeclaration(className);
-        try (var task = compiler.compile(file)) {
-            var methodElement = FindHelper.findMethod(task, className, methodName, erasedParameterTypes);
-            var methodTree = Trees.instance(task.task).getTree(methodElement);
-            if (methodTree.getThrows().size() == 1) {
-                var delete = removeEntireThrows(task.task, task.root(), methodTree);
-                if (delete == TextEdit.NONE) return CANCELLED;
-                TextEdit[] edits = {delete};
-                return Map.of(file, edits);
-            }
-            TextEdit[] edits = {removeSingleException(task.task, task.root(), methodTree)};
+    public Map<Path, TextEdit[]> rewrite(CompilerProvider compiler, CompileTask task) {
+        var file = file(compiler);
+        var methodElement = FindHelper.findMethod(task, className, methodName, erasedParameterTypes);
+        var methodTree = Trees.instance(task.task).getTree(methodElement);
+        if (methodTree.getThrows().size() == 1) {
+            var delete = removeEntireThrows(task.task, task.root(file), methodTree);
+            if (delete == TextEdit.NONE) return CANCELLED;
+            TextEdit[] edits = {delete};
             return Map.of(file, edits);
         }
+        TextEdit[] edits = {removeSingleException(task.task, task.root(file), methodTree)};
+        return Map.of(file, edits);
     }
 
     private static final Pattern THROWS = Pattern.compile("\\s*\\bthrows\\b");
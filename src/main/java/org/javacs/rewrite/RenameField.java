@@ -1,9 +1,12 @@
 package org.javacs.rewrite;
 
 import java.nio.file.Path;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.logging.Logger;
 import org.javacs.CompilerProvider;
+import org.javacs.Progress;
 import org.javacs.lsp.TextEdit;
 
 public class RenameField implements Rewrite {
@@ -17,6 +20,11 @@ public class RenameField implements Rewrite {
 
     @Override
     public Map<Path, TextEdit[]> rewrite(CompilerProvider compiler) {
+        return rewrite(compiler, Progress.NONE);
+    }
+
+    @Override
+    public Map<Path, TextEdit[]> rewrite(CompilerProvider compiler, Progress progress) {
         LOG.info("Rewrite " + className + "#" + fieldName + " to " + newName + "...");
         var paths = compiler.findMemberReferences(className, fieldName);
         if (paths.length == 0) {
@@ -24,11 +32,20 @@ public class RenameField implements Rewrite {
             return Map.of();
         }
         LOG.info("...check " + paths.length + " files for references");
-        try (var compile = compiler.compile(paths)) {
-            var helper = new RenameHelper(compile);
-            var edits = helper.renameField(compile.roots, className, fieldName, newName);
-            return edits;
+        var edits = new HashMap<Path, TextEdit[]>();
+        var done = 0;
+        for (var batch : CompilerProvider.batches(paths)) {
+            if (progress.isCancelled()) {
+                throw new CancellationException("Rename " + className + "#" + fieldName + " was cancelled");
+            }
+            try (var compile = compiler.compile(progress, batch)) {
+                var helper = new RenameHelper(compile);
+                edits.putAll(helper.renameField(compile.roots, className, fieldName, newName));
+            }
+            done += batch.length;
+            progress.report(done, paths.length);
         }
+        return edits;
     }
 
     private static final Logger LOG = Logger.getLogger("main");
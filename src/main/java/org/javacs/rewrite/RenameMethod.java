@@ -1,9 +1,12 @@
 package org.javacs.rewrite;
 
 import java.nio.file.Path;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.logging.Logger;
 import org.javacs.CompilerProvider;
+import org.javacs.Progress;
 import org.javacs.lsp.TextEdit;
 
 public class RenameMethod implements Rewrite {
@@ -20,6 +23,11 @@ public class RenameMethod implements Rewrite {
 
     @Override
     public Map<Path, TextEdit[]> rewrite(CompilerProvider compiler) {
+        return rewrite(compiler, Progress.NONE);
+    }
+
+    @Override
+    public Map<Path, TextEdit[]> rewrite(CompilerProvider compiler, Progress progress) {
         LOG.info("Rewrite " + className + "#" + methodName + " to " + newName + "...");
         var paths = compiler.findMemberReferences(className, methodName);
         if (paths.length == 0) {
@@ -27,11 +35,20 @@ public class RenameMethod implements Rewrite {
             return Map.of();
         }
         LOG.info("...check " + paths.length + " files for references");
-        try (var compile = compiler.compile(paths)) {
-            var helper = new RenameHelper(compile);
-            var edits = helper.renameMethod(compile.roots, className, methodName, erasedParameterTypes, newName);
-            return edits;
+        var edits = new HashMap<Path, TextEdit[]>();
+        var done = 0;
+        for (var batch : CompilerProvider.batches(paths)) {
+            if (progress.isCancelled()) {
+                throw new CancellationException("Rename " + className + "#" + methodName + " was cancelled");
+            }
+            try (var compile = compiler.compile(progress, batch)) {
+                var helper = new RenameHelper(compile);
+                edits.putAll(helper.renameMethod(compile.roots, className, methodName, erasedParameterTypes, newName));
+            }
+            done += batch.length;
+            progress.report(done, paths.length);
         }
+        return edits;
     }
 
     private static final Logger LOG = Logger.getLogger("main");
@@ -1,13 +1,38 @@
 package org.javacs.rewrite;
 
 import java.nio.file.Path;
+import java.util.List;
 import java.util.Map;
+import org.javacs.CompileTask;
 import org.javacs.CompilerProvider;
+import org.javacs.Progress;
 import org.javacs.lsp.TextEdit;
 
 public interface Rewrite {
     /** Perform a rewrite across the entire codebase. */
     Map<Path, TextEdit[]> rewrite(CompilerProvider compiler);
+
+    /**
+     * Perform a rewrite across the entire codebase, reporting progress as we go. Rewrites that touch many files
+     * override this to work in batches and stop early when cancelled.
+     */
+    default Map<Path, TextEdit[]> rewrite(CompilerProvider compiler, Progress progress) {
+        return rewrite(compiler);
+    }
+
+    /**
+     * The files this rewrite needs compiled. Rewrites that return files here can run against a compilation shared with
+     * other rewrites, see RewritePipeline. Rewrites that return nothing do their own parsing or compiling.
+     */
+    default List<Path> files(CompilerProvider compiler) {
+        return List.of();
+    }
+
+    /** Perform the rewrite using `task`, which contains at least files(compiler). */
+    default Map<Path, TextEdit[]> rewrite(CompilerProvider compiler, CompileTask task) {
+        return rewrite(compiler);
+    }
+
     /** CANCELLED signals that the rewrite couldn't be completed. */
     Map<Path, TextEdit[]> CANCELLED = Map.of();
 
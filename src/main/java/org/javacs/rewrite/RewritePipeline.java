@@ -0,0 +1,214 @@
+package org.javacs.rewrite;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+import org.javacs.CompileTask;
+import org.javacs.CompilerProvider;
+import org.javacs.lsp.Position;
+import org.javacs.lsp.TextEdit;
+
+/**
+ * Runs a batch of rewrites against one compilation of all the files they need, instead of compiling once per rewrite.
+ * As a Rewrite, the pipeline merges the edits of its rewrites; a rewrite whose edits overlap an earlier rewrite's edits
+ * is dropped entirely, from every file it edits.
+ */
+public class RewritePipeline implements Rewrite {
+    private final List<Rewrite> rewrites;
+
+    public RewritePipeline(List<Rewrite> rewrites) {
+        this.rewrites = rewrites;
+    }
+
+    public RewritePipeline(Rewrite... rewrites) {
+        this(List.of(rewrites));
+    }
+
+    @Override
+    public List<Path> files(CompilerProvider compiler) {
+        return new ArrayList<>(union(needs(compiler)));
+    }
+
+    @Override
+    public Map<Path, TextEdit[]> rewrite(CompilerProvider compiler) {
+        return merge(each(compiler));
+    }
+
+    @Override
+    public Map<Path, TextEdit[]> rewrite(CompilerProvider compiler, CompileTask task) {
+        return merge(each(compiler, task));
+    }
+
+    /** The edits of each rewrite, in order, computed using one compilation of all the files they need. */
+    public List<Map<Path, TextEdit[]>> each(CompilerProvider compiler) {
+        var needs = needs(compiler);
+        var shared = 0;
+        for (var files : needs) {
+            if (!files.isEmpty()) shared++;
+        }
+        // If only one rewrite needs a compilation, there is nothing to share
+        if (shared < 2) {
+            return run(compiler, needs, null);
+        }
+        var files = union(needs);
+        try (var task = compiler.compile(files.toArray(new Path[files.size()]))) {
+            return run(compiler, needs, task);
+        }
+    }
+
+    /**
+     * The edits of each rewrite, in order, using `task` for the rewrites that need a compilation. If `task` doesn't
+     * contain all the files they need, we fall back on compiling them.
+     */
+    public List<Map<Path, TextEdit[]>> each(CompilerProvider compiler, CompileTask task) {
+        var needs = needs(compiler);
+        var missing = union(needs);
+        for (var root : task.roots) {
+            missing.remove(Paths.get(root.getSourceFile().toUri()));
+        }
+        if (!missing.isEmpty()) {
+            LOG.info(String.format("...%d files are not in the shared compilation", missing.size()));
+            return each(compiler);
+        }
+        return run(compiler, needs, task);
+    }
+
+    private List<List<Path>> needs(CompilerProvider compiler) {
+        var needs = new ArrayList<List<Path>>();
+        for (var r : rewrites) {
+            needs.add(r.files(compiler));
+        }
+        return needs;
+    }
+
+    private Set<Path> union(List<List<Path>> needs) {
+        var files = new LinkedHashSet<Path>();
+        for (var list : needs) {
+            files.addAll(list);
+        }
+        return files;
+    }
+
+    private List<Map<Path, TextEdit[]>> run(CompilerProvider compiler, List<List<Path>> needs, CompileTask task) {
+        var edits = new ArrayList<Map<Path, TextEdit[]>>();
+        for (var i = 0; i < rewrites.size(); i++) {
+            var r = rewrites.get(i);
+            if (task == null || needs.get(i).isEmpty()) {
+                edits.add(r.rewrite(compiler));
+            } else {
+                edits.add(r.rewrite(compiler, task));
+            }
+        }
+        return edits;
+    }
+
+    /**
+     * Merge the edits of each rewrite into one edit per file. Rewrites are accepted in order, and a rewrite that has an
+     * edit starting inside an edit of an accepted rewrite loses all its edits, in every file, so we never apply half of
+     * a rewrite.
+     */
+    static Map<Path, TextEdit[]> merge(List<Map<Path, TextEdit[]>> each) {
+        var byFile = new LinkedHashMap<Path, List<Owned>>();
+        var cancelled = 0;
+        for (var i = 0; i < each.size(); i++) {
+            var edits = each.get(i);
+            if (edits == CANCELLED) {
+                cancelled++;
+                continue;
+            }
+            var conflict = conflict(byFile, i, edits);
+            if (conflict != null) {
+                LOG.warning(
+                        String.format(
+                                "...rewrite %d conflicts in %s, dropping its edits to %d files",
+                                i, conflict.getFileName(), edits.size()));
+                continue;
+            }
+            for (var file : edits.keySet()) {
+                var list = byFile.computeIfAbsent(file, __ -> new ArrayList<>());
+                for (var e : edits.get(file)) {
+                    list.add(new Owned(i, list.size(), e));
+                }
+            }
+        }
+        if (cancelled == each.size()) {
+            return CANCELLED;
+        }
+        var merged = new HashMap<Path, TextEdit[]>();
+        for (var file : byFile.keySet()) {
+            var list = byFile.get(file);
+            var keep = new TextEdit[list.size()];
+            for (var i = 0; i < keep.length; i++) {
+                keep[i] = list.get(i).edit;
+            }
+            merged.put(file, keep);
+        }
+        return merged;
+    }
+
+    /** The first file where `edits`, made by `rewrite`, conflict with the `accepted` edits, or null. */
+    private static Path conflict(Map<Path, List<Owned>> accepted, int rewrite, Map<Path, TextEdit[]> edits) {
+        for (var file : edits.keySet()) {
+            var list = new ArrayList<Owned>(accepted.getOrDefault(file, List.of()));
+            for (var e : edits.get(file)) {
+                list.add(new Owned(rewrite, list.size(), e));
+            }
+            if (!conflicts(list).isEmpty()) return file;
+        }
+        return null;
+    }
+
+    /** The rewrites in `edits` that lose a conflict with an earlier rewrite. */
+    private static Set<Integer> conflicts(List<Owned> edits) {
+        var sorted = edits.toArray(new Owned[edits.size()]);
+        Arrays.sort(sorted, RewritePipeline::compare);
+        var losers = new HashSet<Integer>();
+        // The edit that reaches furthest into the file so far
+        Owned furthest = null;
+        for (var o : sorted) {
+            if (furthest != null && o.rewrite != furthest.rewrite) {
+                if (compare(o.edit.range.start, furthest.edit.range.end) < 0) {
+                    losers.add(Math.max(o.rewrite, furthest.rewrite));
+                }
+            }
+            if (furthest == null || compare(o.edit.range.end, furthest.edit.range.end) > 0) {
+                furthest = o;
+            }
+        }
+        return losers;
+    }
+
+    private static int compare(Owned a, Owned b) {
+        var start = compare(a.edit.range.start, b.edit.range.start);
+        if (start != 0) return start;
+        return Integer.compare(a.order, b.order);
+    }
+
+    private static int compare(Position a, Position b) {
+        if (a.line != b.line) return Integer.compare(a.line, b.line);
+        return Integer.compare(a.character, b.character);
+    }
+
+    /** An edit, tagged with the index of the rewrite that made it and its position in the original order. */
+    private static class Owned {
+        final int rewrite, order;
+        final TextEdit edit;
+
+        Owned(int rewrite, int order, TextEdit edit) {
+            this.rewrite = rewrite;
+            this.order = order;
+            this.edit = edit;
+        }
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
@@ -1,3 +1,4 @@
+import java.util.AbstractList;
 import java.util.List;
 import java.util.Map;
 
@@ -5,6 +6,32 @@ public class Collections {
     public static void main(String[] args) {
         var xs = List.of(1, 2);
         var ys = Map.of(1, "one", 2, "two");
-        System.out.println(xs + ", " + ys);
+        var broken = new BrokenList();
+        var empty = new NullList();
+        System.out.println(xs + ", " + ys + ", " + broken.size() + ", " + empty.size());
     }
-}
\ No newline at end of file
+
+    static class BrokenList extends AbstractList<Integer> {
+        @Override
+        public Integer get(int index) {
+            return index;
+        }
+
+        @Override
+        public int size() {
+            return 1;
+        }
+
+        @Override
+        public Object[] toArray() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    static class NullList extends BrokenList {
+        @Override
+        public Object[] toArray() {
+            return null;
+        }
+    }
+}
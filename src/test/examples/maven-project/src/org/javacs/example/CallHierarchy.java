@@ -0,0 +1,18 @@
+package org.javacs.example;
+
+class CallHierarchy {
+    void top() {
+        middle();
+    }
+
+    void middle() {
+        bottom();
+        new CallHierarchy();
+    }
+
+    void bottom() {}
+
+    void alsoCallsBottom() {
+        bottom();
+    }
+}
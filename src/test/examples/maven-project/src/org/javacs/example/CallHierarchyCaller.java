@@ -0,0 +1,7 @@
+package org.javacs.example;
+
+class CallHierarchyCaller {
+    void callsTop() {
+        new CallHierarchy().top();
+    }
+}
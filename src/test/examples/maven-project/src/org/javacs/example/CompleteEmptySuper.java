@@ -0,0 +1,4 @@
+package org.javacs.example;
+
+public class CompleteEmptySuper {
+}
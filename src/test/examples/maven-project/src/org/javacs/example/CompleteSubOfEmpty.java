@@ -0,0 +1,7 @@
+package org.javacs.example;
+
+public class CompleteSubOfEmpty extends CompleteEmptySuper {
+    void test() {
+        this.
+    }
+}
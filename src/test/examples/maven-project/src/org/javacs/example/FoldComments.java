@@ -0,0 +1,17 @@
+package org.javacs.example;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A class with comments
+ * that span several lines.
+ */
+class FoldComments {
+    // A run of line comments
+    // on consecutive lines
+    void test() {
+        List.of();
+        Map.of();
+    }
+}
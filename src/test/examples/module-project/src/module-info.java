@@ -0,0 +1,3 @@
+module org.javacs.modular {
+    requires java.logging;
+}
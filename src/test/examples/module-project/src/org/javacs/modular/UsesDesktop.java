@@ -0,0 +1,7 @@
+package org.javacs.modular;
+
+import java.awt.Point;
+
+public class UsesDesktop {
+    Point point;
+}
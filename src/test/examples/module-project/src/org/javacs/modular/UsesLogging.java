@@ -0,0 +1,7 @@
+package org.javacs.modular;
+
+import java.util.logging.Logger;
+
+public class UsesLogging {
+    private static final Logger LOG = Logger.getLogger("main");
+}
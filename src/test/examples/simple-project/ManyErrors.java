@@ -0,0 +1,84 @@
+class ManyErrors {
+    void test() {
+        undefined0();
+        undefined1();
+        undefined2();
+        undefined3();
+        undefined4();
+        undefined5();
+        undefined6();
+        undefined7();
+        undefined8();
+        undefined9();
+        undefined10();
+        undefined11();
+        undefined12();
+        undefined13();
+        undefined14();
+        undefined15();
+        undefined16();
+        undefined17();
+        undefined18();
+        undefined19();
+        undefined20();
+        undefined21();
+        undefined22();
+        undefined23();
+        undefined24();
+        undefined25();
+        undefined26();
+        undefined27();
+        undefined28();
+        undefined29();
+        undefined30();
+        undefined31();
+        undefined32();
+        undefined33();
+        undefined34();
+        undefined35();
+        undefined36();
+        undefined37();
+        undefined38();
+        undefined39();
+        undefined40();
+        undefined41();
+        undefined42();
+        undefined43();
+        undefined44();
+        undefined45();
+        undefined46();
+        undefined47();
+        undefined48();
+        undefined49();
+        undefined50();
+        undefined51();
+        undefined52();
+        undefined53();
+        undefined54();
+        undefined55();
+        undefined56();
+        undefined57();
+        undefined58();
+        undefined59();
+        undefined60();
+        undefined61();
+        undefined62();
+        undefined63();
+        undefined64();
+        undefined65();
+        undefined66();
+        undefined67();
+        undefined68();
+        undefined69();
+        undefined70();
+        undefined71();
+        undefined72();
+        undefined73();
+        undefined74();
+        undefined75();
+        undefined76();
+        undefined77();
+        undefined78();
+        undefined79();
+    }
+}
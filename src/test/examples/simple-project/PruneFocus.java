@@ -0,0 +1,9 @@
+class PruneFocus {
+    void first() {
+        int x = "not an int";
+    }
+
+    void second() {
+        int y = 1;
+    }
+}
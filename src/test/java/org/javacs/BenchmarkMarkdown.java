@@ -0,0 +1,264 @@
+package org.javacs;
+
+import com.sun.source.doctree.DocCommentTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.util.DocTrees;
+import com.sun.source.util.TreePathScanner;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.CharBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class BenchmarkMarkdown {
+
+    @State(Scope.Benchmark)
+    public static class DocsState {
+        /** The doc comments of every declaration in some heavily-documented JDK classes */
+        public List<DocCommentTree> comments = comments();
+
+        private static List<DocCommentTree> comments() {
+            var none = Collections.<Path>emptySet();
+            var compiler = new JavaCompilerService(none, none, Collections.emptySet());
+            var comments = new ArrayList<DocCommentTree>();
+            for (var className : new String[] {"java.lang.String", "java.util.List", "java.util.stream.Stream"}) {
+                var file = compiler.findAnywhere(className).orElseThrow();
+                var parse = compiler.parse(file);
+                var docs = DocTrees.instance(parse.task);
+                new TreePathScanner<Void, Void>() {
+                    void addComment() {
+                        var comment = docs.getDocCommentTree(getCurrentPath());
+                        if (comment != null) comments.add(comment);
+                    }
+
+                    @Override
+                    public Void visitClass(ClassTree t, Void __) {
+                        addComment();
+                        return super.visitClass(t, null);
+                    }
+
+                    @Override
+                    public Void visitMethod(MethodTree t, Void __) {
+                        addComment();
+                        return super.visitMethod(t, null);
+                    }
+
+                    @Override
+                    public Void visitVariable(VariableTree t, Void __) {
+                        addComment();
+                        return super.visitVariable(t, null);
+                    }
+                }.scan(parse.root, null);
+            }
+            // The old converter throws on comments that aren't well-formed XML, so compare on the ones it can handle
+            comments.removeIf(c -> !DomMarkdown.canConvert(c));
+            return comments;
+        }
+    }
+
+    @Benchmark
+    public void streaming(DocsState state, Blackhole hole) {
+        for (var c : state.comments) {
+            hole.consume(MarkdownHelper.asMarkdown(c));
+        }
+    }
+
+    @Benchmark
+    public void dom(DocsState state, Blackhole hole) {
+        for (var c : state.comments) {
+            hole.consume(DomMarkdown.asMarkdown(c));
+        }
+    }
+
+    /** The DOM and XSLT based converter that MarkdownHelper used to use, for comparison */
+    static class DomMarkdown {
+        static String asMarkdown(DocCommentTree comment) {
+            var join = new StringJoiner("\n");
+            for (var l : comment.getFirstSentence()) join.add(l.toString());
+            return asMarkdown(join.toString());
+        }
+
+        static boolean canConvert(DocCommentTree comment) {
+            try {
+                asMarkdown(comment);
+                return true;
+            } catch (RuntimeException e) {
+                return false;
+            }
+        }
+
+        private static Document parse(String html) {
+            try {
+                var xml = "<wrapper>" + html + "</wrapper>";
+                var factory = DocumentBuilderFactory.newInstance();
+                factory.setNamespaceAware(false);
+                var builder = factory.newDocumentBuilder();
+                return builder.parse(new InputSource(new StringReader(xml)));
+            } catch (ParserConfigurationException | SAXException | IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        private static void replaceNodes(Document doc, String tagName, Function<String, String> replace) {
+            var nodes = doc.getElementsByTagName(tagName);
+            while (nodes.getLength() > 0) {
+                var node = nodes.item(0);
+                var parent = node.getParentNode();
+                var text = replace.apply(node.getTextContent().trim());
+                var replacement = doc.createTextNode(text);
+                parent.replaceChild(replacement, node);
+                nodes = doc.getElementsByTagName(tagName);
+            }
+        }
+
+        private static String print(Document doc) {
+            try {
+                var tf = TransformerFactory.newInstance();
+                var transformer = tf.newTransformer();
+                transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+                var writer = new StringWriter();
+                transformer.transform(new DOMSource(doc), new StreamResult(writer));
+                var wrapped = writer.getBuffer().toString();
+                return wrapped.substring("<wrapper>".length(), wrapped.length() - "</wrapper>".length());
+            } catch (TransformerException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        private static void check(CharBuffer in, char expected) {
+            var head = in.get();
+            if (head != expected) {
+                throw new RuntimeException(String.format("want `%s` got `%s`", expected, head));
+            }
+        }
+
+        private static boolean empty(CharBuffer in) {
+            return in.position() == in.limit();
+        }
+
+        private static char peek(CharBuffer in) {
+            return in.get(in.position());
+        }
+
+        private static String parseTag(CharBuffer in) {
+            check(in, '@');
+            var tag = new StringBuilder();
+            while (!empty(in) && Character.isAlphabetic(peek(in))) {
+                tag.append(in.get());
+            }
+            return tag.toString();
+        }
+
+        private static void parseBlock(CharBuffer in, StringBuilder out) {
+            check(in, '{');
+            if (peek(in) == '@') {
+                var tag = parseTag(in);
+                if (peek(in) == ' ') in.get();
+                switch (tag) {
+                    case "code":
+                    case "link":
+                    case "linkplain":
+                        out.append("`");
+                        parseInner(in, out);
+                        out.append("`");
+                        break;
+                    case "literal":
+                        parseInner(in, out);
+                        break;
+                    default:
+                        // Unknown tag
+                        parseInner(in, out);
+                }
+            } else {
+                parseInner(in, out);
+            }
+            check(in, '}');
+        }
+
+        private static void parseInner(CharBuffer in, StringBuilder out) {
+            while (!empty(in)) {
+                switch (peek(in)) {
+                    case '{':
+                        parseBlock(in, out);
+                        break;
+                    case '}':
+                        return;
+                    default:
+                        out.append(in.get());
+                }
+            }
+        }
+
+        private static void parse(CharBuffer in, StringBuilder out) {
+            while (!empty(in)) {
+                parseInner(in, out);
+            }
+        }
+
+        private static String replaceTags(String in) {
+            var out = new StringBuilder();
+            parse(CharBuffer.wrap(in), out);
+            return out.toString();
+        }
+
+        private static String htmlToMarkdown(String html) {
+            html = replaceTags(html);
+
+            var doc = parse(html);
+
+            replaceNodes(doc, "i", contents -> String.format("*%s*", contents));
+            replaceNodes(doc, "b", contents -> String.format("**%s**", contents));
+            replaceNodes(doc, "pre", contents -> String.format("`%s`", contents));
+            replaceNodes(doc, "code", contents -> String.format("`%s`", contents));
+            replaceNodes(doc, "a", contents -> contents);
+
+            return print(doc);
+        }
+
+        private static final Pattern HTML_TAG = Pattern.compile("<(\\w+)[^>]*>");
+
+        private static boolean isHtml(String text) {
+            var tags = HTML_TAG.matcher(text);
+            while (tags.find()) {
+                var tag = tags.group(1);
+                var close = String.format("</%s>", tag);
+                var findClose = text.indexOf(close, tags.end());
+                if (findClose != -1) return true;
+            }
+            return false;
+        }
+
+        /** If `commentText` looks like HTML, convert it to markdown */
+        static String asMarkdown(String commentText) {
+            if (isHtml(commentText)) {
+                commentText = htmlToMarkdown(commentText);
+            }
+            commentText = replaceTags(commentText);
+            return commentText;
+        }
+    }
+}
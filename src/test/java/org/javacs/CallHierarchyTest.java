@@ -0,0 +1,103 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.javacs.lsp.*;
+import org.junit.Test;
+
+public class CallHierarchyTest {
+    private static final JavaLanguageServer server = LanguageServerFixture.getJavaLanguageServer();
+    private static final String file = "/org/javacs/example/CallHierarchy.java";
+
+    private CallHierarchyItem prepare(int row, int column) {
+        var params = new TextDocumentPositionParams();
+        params.textDocument = new TextDocumentIdentifier(FindResource.uri(file));
+        params.position = new Position(row - 1, column - 1);
+        var items = server.prepareCallHierarchy(params);
+        assertThat(items, hasSize(1));
+        return items.get(0);
+    }
+
+    private List<String> incoming(CallHierarchyItem item) {
+        var params = new CallHierarchyParams();
+        params.item = item;
+        var names = new ArrayList<String>();
+        for (var call : server.callHierarchyIncomingCalls(params)) {
+            names.add(call.from.name);
+        }
+        return names;
+    }
+
+    private List<String> outgoing(CallHierarchyItem item) {
+        var params = new CallHierarchyParams();
+        params.item = item;
+        var names = new ArrayList<String>();
+        for (var call : server.callHierarchyOutgoingCalls(params)) {
+            names.add(call.to.name);
+        }
+        return names;
+    }
+
+    @Test
+    public void prepareDeclaration() {
+        var item = prepare(13, 10);
+        assertThat(item.name, equalTo("bottom"));
+        assertThat(item.selectionRange.start.line, equalTo(12));
+    }
+
+    @Test
+    public void prepareCall() {
+        var item = prepare(5, 9);
+        assertThat(item.name, equalTo("middle"));
+        assertThat(item.selectionRange.start.line, equalTo(7));
+    }
+
+    @Test
+    public void incomingCalls() {
+        var bottom = prepare(13, 10);
+        assertThat(incoming(bottom), containsInAnyOrder("middle", "alsoCallsBottom"));
+    }
+
+    @Test
+    public void incomingCallsSeveralLevelsDeep() {
+        var bottom = prepare(13, 10);
+        var params = new CallHierarchyParams();
+        params.item = bottom;
+        for (var call : server.callHierarchyIncomingCalls(params)) {
+            if (call.from.name.equals("middle")) {
+                assertThat(incoming(call.from), contains("top"));
+                return;
+            }
+        }
+        fail("middle doesn't call bottom");
+    }
+
+    @Test
+    public void forgetCallsThatWereEditedAway() {
+        var top = prepare(4, 10);
+        assertThat(incoming(top), contains("callsTop"));
+        // Edit the caller so it no longer mentions top()
+        var caller = FindResource.uri("/org/javacs/example/CallHierarchyCaller.java");
+        var open = new DidOpenTextDocumentParams();
+        open.textDocument.uri = caller;
+        open.textDocument.text =
+                "package org.javacs.example;\n\nclass CallHierarchyCaller {\n    void callsNothing() {}\n}\n";
+        server.didOpenTextDocument(open);
+        try {
+            assertThat(incoming(top), empty());
+        } finally {
+            var close = new DidCloseTextDocumentParams();
+            close.textDocument.uri = caller;
+            server.didCloseTextDocument(close);
+        }
+    }
+
+    @Test
+    public void outgoingCalls() {
+        var middle = prepare(8, 10);
+        assertThat(outgoing(middle), contains("bottom", "CallHierarchy"));
+    }
+}
@@ -0,0 +1,70 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Test;
+
+public class CheckTest {
+
+    @After
+    public void restoreWorkspaceRoot() {
+        FileStore.setWorkspaceRoots(Set.of(LanguageServerFixture.DEFAULT_WORKSPACE_ROOT));
+    }
+
+    @Test
+    public void batchByPackage() {
+        FileStore.setWorkspaceRoots(Set.of(LanguageServerFixture.DEFAULT_WORKSPACE_ROOT));
+        var goto_ = FindResource.path("/org/javacs/example/Goto.java");
+        var hover = FindResource.path("/org/javacs/example/HoverDocs.java");
+        var other = FindResource.path("/org/javacs/other/ImportDirectly.java");
+        var batches = Check.batches(List.of(other, goto_, hover));
+        assertThat(batches, contains(List.of(goto_, hover), List.of(other)));
+    }
+
+    @Test
+    public void rejectBadArguments() {
+        assertThat(Check.main(List.of("--check", "--threads", "0")), equalTo(2));
+        assertThat(Check.main(List.of("--check", "--threads", "-1")), equalTo(2));
+        assertThat(Check.main(List.of("--check", "--threads", "many")), equalTo(2));
+        assertThat(Check.main(List.of("--check", "--threads")), equalTo(2));
+        assertThat(Check.main(List.of("--check", "--root")), equalTo(2));
+        assertThat(Check.main(List.of("--check", "--bogus")), equalTo(2));
+    }
+
+    @Test
+    public void checkWorkspace() throws IOException {
+        var root = Files.createTempDirectory("check").toRealPath();
+        var dir = Files.createDirectories(root.resolve("src/org/javacs/check"));
+        var good = dir.resolve("Good.java");
+        var bad = dir.resolve("Bad.java");
+        Files.writeString(good, "package org.javacs.check;\nclass Good { int x() { return 1; } }");
+        Files.writeString(bad, "package org.javacs.check;\nclass Bad { int x() { return \"1\"; } }");
+        var bytes = new ByteArrayOutputStream();
+        var ok = new Check(root, 2, List.of(), false, new PrintStream(bytes, true)).run();
+        assertFalse(ok);
+        var lines = bytes.toString().lines().sorted().toArray(String[]::new);
+        assertThat(lines, arrayWithSize(2));
+        assertThat(lines[0], allOf(containsString("Bad.java"), containsString("incompatible types")));
+        assertThat(lines[1], allOf(containsString("Good.java"), containsString("\"diagnostics\":[]")));
+        // --quiet leaves out the files that are clean
+        var quiet = new ByteArrayOutputStream();
+        assertFalse(new Check(root, 1, List.of(), true, new PrintStream(quiet, true)).run());
+        assertThat(quiet.toString().lines().toArray(String[]::new), arrayContaining(lines[0]));
+        Files.delete(good);
+        Files.delete(bad);
+        Files.delete(dir);
+        Files.delete(dir.getParent());
+        Files.delete(dir.getParent().getParent());
+        Files.delete(root.resolve("src"));
+        Files.delete(root);
+    }
+}
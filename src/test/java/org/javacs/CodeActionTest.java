@@ -3,6 +3,7 @@ package org.javacs;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
+import com.google.gson.JsonParser;
 import java.util.ArrayList;
 import java.util.List;
 import org.javacs.lsp.*;
@@ -101,6 +102,28 @@ public class CodeActionTest {
         assertThat(quickFix("org/javacs/action/TestCreateMissingMethod.java"), hasItem("Create missing method"));
     }
 
+    @Test
+    public void resolveEditLater() {
+        var codeAction = "{\"dataSupport\": true, \"resolveSupport\": {\"properties\": [\"edit\"]}}";
+        var capabilities = JsonParser.parseString("{\"textDocument\": {\"codeAction\": " + codeAction + "}}");
+        var resolveServer = LanguageServerFixture.getJavaLanguageServer(capabilities);
+        var file = FindResource.path("org/javacs/action/TestOverrideInheritedMethod.java");
+        var cursor = new Position(5, 0);
+        var params = new CodeActionParams();
+        params.textDocument = new TextDocumentIdentifier(file.toUri());
+        params.range = new Range(cursor, cursor);
+        CodeAction override = null;
+        for (var a : resolveServer.codeAction(params)) {
+            if (a.title.equals("Override 'andThen' from java.util.function.Function")) override = a;
+        }
+        assertThat(override, notNullValue());
+        assertThat(override.edit, nullValue());
+        // The client sends the action back to us as JSON
+        var json = JsonHelper.GSON.toJson(override);
+        var resolved = resolveServer.resolveCodeAction(JsonHelper.GSON.fromJson(json, CodeAction.class));
+        assertThat(resolved.edit.changes, hasKey(file.toUri()));
+    }
+
     private List<String> quickFix(String testFile) {
         var file = FindResource.path(testFile);
         server.lint(List.of(file));
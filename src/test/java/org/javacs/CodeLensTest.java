@@ -44,4 +44,14 @@ public class CodeLensTest {
         assertThat(commands, hasItem(containsString("\"org.javacs.example.HasTest\",\"testMethod\"")));
         assertThat(commands, hasItem(containsString("\"org.javacs.example.HasTest\",\"otherTestMethod\"")));
     }
+
+    @Test
+    public void implementations() {
+        var lenses = lenses("/org/javacs/example/GotoImplementation.java");
+        var titles = new ArrayList<String>();
+        for (var lens : lenses) {
+            titles.add(lens.command.title);
+        }
+        assertThat(titles, contains("1 implementation"));
+    }
 }
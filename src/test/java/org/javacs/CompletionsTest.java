@@ -5,7 +5,9 @@ import static org.junit.Assert.*;
 
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 import org.javacs.completion.CompletionProvider;
@@ -752,4 +754,78 @@ public class CompletionsTest extends CompletionsBase {
         var inserts = filterText("/org/javacs/example/MultilineChain.java", 6, 14);
         assertThat(inserts, hasItem("concat"));
     }
+
+    @Test
+    public void membersOfChangedClass() {
+        var file = "/org/javacs/example/CompleteClass.java";
+        var path = FindResource.path(file);
+        assertThat(filterText(file, 5, 23), not(hasItem("addedMethod")));
+        var open = new DidOpenTextDocumentParams();
+        open.textDocument.uri = path.toUri();
+        var contents = FileStore.contents(path);
+        open.textDocument.text = contents.replace("static int staticField;", "static void addedMethod() { }");
+        open.textDocument.version = 1;
+        open.textDocument.languageId = "java";
+        server.didOpenTextDocument(open);
+        try {
+            var suggestions = filterText(file, 5, 23);
+            assertThat(suggestions, hasItem("addedMethod"));
+            assertThat(suggestions, not(hasItem("staticField")));
+        } finally {
+            var close = new DidCloseTextDocumentParams();
+            close.textDocument.uri = path.toUri();
+            server.didCloseTextDocument(close);
+        }
+    }
+
+    private void notifyWatchedFiles(int type, Path... files) {
+        var changes = new DidChangeWatchedFilesParams();
+        changes.changes = new ArrayList<>();
+        for (var f : files) {
+            var event = new FileEvent();
+            event.uri = f.toUri();
+            event.type = type;
+            changes.changes.add(event);
+        }
+        server.didChangeWatchedFiles(changes);
+    }
+
+    @Test
+    public void superclassFileDeleted() throws IOException {
+        var file = "/org/javacs/example/CompleteSubOfEmpty.java";
+        assertThat(filterText(file, 5, 14), hasItem("test"));
+        // Delete the superclass, so the cached member table of the subclass refers to a file that no longer exists
+        var superclass = FindResource.path("/org/javacs/example/CompleteEmptySuper.java");
+        var contents = Files.readString(superclass);
+        Files.delete(superclass);
+        try {
+            notifyWatchedFiles(FileChangeType.Deleted, superclass);
+            assertThat(filterText(file, 5, 14), hasItem("test"));
+        } finally {
+            Files.writeString(superclass, contents);
+            notifyWatchedFiles(FileChangeType.Created, superclass);
+        }
+    }
+
+    @Test
+    public void membersAddedToEmptySuperclass() {
+        var file = "/org/javacs/example/CompleteSubOfEmpty.java";
+        assertThat(filterText(file, 5, 14), not(hasItem("addedMethod")));
+        var superclass = FindResource.path("/org/javacs/example/CompleteEmptySuper.java");
+        var open = new DidOpenTextDocumentParams();
+        open.textDocument.uri = superclass.toUri();
+        open.textDocument.text = FileStore.contents(superclass).replace("{\n}", "{\n    void addedMethod() { }\n}");
+        open.textDocument.version = 1;
+        open.textDocument.languageId = "java";
+        server.didOpenTextDocument(open);
+        // Lint the edited superclass, like the server does when it's idle, so the compiler sees the new member
+        server.doAsyncWork();
+        try {
+            assertThat(filterText(file, 5, 14), hasItem("addedMethod"));
+        } finally {
+            var close = new DidCloseTextDocumentParams();
+            close.textDocument.uri = superclass.toUri();
+            server.didCloseTextDocument(close);
+        }
+    }
 }
@@ -1,8 +1,16 @@
 package org.javacs;
 
 import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.List;
 import java.util.Set;
 import org.junit.Before;
 import org.junit.Test;
@@ -19,4 +27,68 @@ public class FileStoreTest {
         var file = FindResource.path("/org/javacs/example/Goto.java");
         assertThat(FileStore.suggestedPackageName(file), equalTo("org.javacs.example"));
     }
+
+    @Test
+    public void externalChangesInOneBatch() throws IOException {
+        var dir = Files.createTempDirectory("external-changes");
+        var created = dir.resolve("Created.java");
+        var deleted = dir.resolve("Deleted.java");
+        Files.writeString(created, "package org.javacs.created;\nclass Created {}");
+        Files.writeString(deleted, "package org.javacs.deleted;\nclass Deleted {}");
+        FileStore.externalChanges(List.of(created, deleted));
+        assertThat(FileStore.packageName(created), equalTo("org.javacs.created"));
+        assertTrue(FileStore.contains(deleted));
+        // FileStore looks at the disk to decide whether each file was changed or deleted
+        Files.delete(deleted);
+        Files.writeString(created, "package org.javacs.changed;\nclass Created {}");
+        FileStore.externalChanges(List.of(created, deleted));
+        assertThat(FileStore.packageName(created), equalTo("org.javacs.changed"));
+        assertFalse(FileStore.contains(deleted));
+        Files.delete(created);
+        Files.delete(dir);
+        FileStore.externalChanges(List.of(created));
+        assertFalse(FileStore.contains(created));
+    }
+
+    @Test
+    public void warmStartFromSnapshot() throws IOException {
+        var cache = Files.createTempDirectory("snapshots");
+        var root = Files.createTempDirectory("warm-start").toRealPath();
+        var same = root.resolve("Same.java");
+        var changed = root.resolve("Changed.java");
+        var lastWeek = FileTime.from(Instant.now().minusSeconds(7 * 24 * 60 * 60));
+        Files.writeString(same, "package org.javacs.aaa;\nclass Same {}");
+        Files.writeString(changed, "package org.javacs.before;\nclass Changed {}");
+        Files.setLastModifiedTime(same, lastWeek);
+        Files.setLastModifiedTime(changed, lastWeek);
+        FileStore.setCacheDirectory(cache);
+        try {
+            // Saves a snapshot of root when it's removed
+            FileStore.setWorkspaceRoots(Set.of(root));
+            FileStore.setWorkspaceRoots(Set.of());
+            // Same.java keeps its size and modified time, so the warm start trusts the snapshot
+            Files.writeString(same, "package org.javacs.bbb;\nclass Same {}");
+            Files.setLastModifiedTime(same, lastWeek);
+            Files.writeString(changed, "package org.javacs.after;\nclass Changed {}");
+            var created = root.resolve("Created.java");
+            Files.writeString(created, "package org.javacs.created;\nclass Created {}");
+            FileStore.setWorkspaceRoots(Set.of(root));
+            assertThat(FileStore.packageName(same), equalTo("org.javacs.aaa"));
+            assertThat(FileStore.packageName(changed), equalTo("org.javacs.after"));
+            assertThat(FileStore.packageName(created), equalTo("org.javacs.created"));
+            FileStore.setWorkspaceRoots(Set.of());
+            Files.delete(created);
+        } finally {
+            FileStore.setCacheDirectory(null);
+            try (var snapshots = Files.list(cache)) {
+                for (var f : (Iterable<Path>) snapshots::iterator) {
+                    Files.delete(f);
+                }
+            }
+            Files.delete(cache);
+        }
+        Files.delete(same);
+        Files.delete(changed);
+        Files.delete(root);
+    }
 }
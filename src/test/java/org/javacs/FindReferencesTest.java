@@ -3,9 +3,12 @@ package org.javacs;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 import org.javacs.lsp.*;
+import org.javacs.navigation.ReferenceProvider;
 import org.junit.Test;
 
 public class FindReferencesTest {
@@ -56,4 +59,40 @@ public class FindReferencesTest {
         assertThat(items(file, 4, 12), contains("StackedFieldReferences.java(8)"));
         assertThat(items(file, 4, 15), contains("StackedFieldReferences.java(9)"));
     }
+
+    @Test
+    public void streamPartialResults() {
+        var file = Paths.get(FindResource.uri("/org/javacs/example/GotoOther.java"));
+        var partial = new ArrayList<Location>();
+        var found = new ReferenceProvider(server.compiler(), file, 6, 30, partial::addAll, Progress.NONE).find();
+        assertThat(found, not(empty()));
+        assertThat(partial, hasSize(found.size()));
+    }
+
+    @Test(expected = CancellationException.class)
+    public void stopWhenCancelled() {
+        var file = Paths.get(FindResource.uri("/org/javacs/example/GotoOther.java"));
+        var cancelled =
+                new Progress() {
+                    @Override
+                    public void report(int done, int total) {}
+
+                    @Override
+                    public boolean isCancelled() {
+                        return true;
+                    }
+                };
+        new ReferenceProvider(server.compiler(), file, 6, 30, __ -> {}, cancelled).find();
+    }
+
+    @Test
+    public void skipPackagesThatCantReachClass() {
+        var files = new ArrayList<String>();
+        for (var f : server.compiler().findMemberReferences("org.javacs.example.Goto", "test")) {
+            files.add(f.getParent().getFileName() + "/" + f.getFileName());
+        }
+        assertThat(files, hasItem("example/Goto.java"));
+        // Nothing in org.javacs.warn imports org.javacs.example, directly or indirectly
+        assertThat(files, not(hasItem("warn/Unused.java")));
+    }
 }
@@ -135,6 +135,19 @@ public class GotoTest {
         // assertThat(doGoto(file, 5, 18), hasItems("GotoImplementation.java:9", "GotoImplementation.java:14"));
     }
 
+    @Test
+    public void findImplementations() {
+        var file = "/org/javacs/example/GotoImplementation.java";
+        assertThat(doImplementation(file, 8, 15), contains("GotoImplementation.java:12"));
+        assertThat(doImplementation(file, 5, 12), contains("GotoImplementation.java:14"));
+    }
+
+    @Test
+    public void findLibraryInterfaceImplementations() {
+        var file = "/org/javacs/example/GotoOtherPackageMethod.java";
+        assertThat(doImplementation(file, 7, 12), hasItem("ImplementsRunnable.java:5"));
+    }
+
     @Test
     public void gotoImplementsRunnable() {
         var file = "/org/javacs/example/GotoOtherPackageMethod.java";
@@ -192,6 +205,18 @@ public class GotoTest {
 
     private static final JavaLanguageServer server = LanguageServerFixture.getJavaLanguageServer();
 
+    private List<String> doImplementation(String file, int row, int column) {
+        var p = new TextDocumentPositionParams();
+        p.textDocument = new TextDocumentIdentifier(FindResource.uri(file));
+        p.position = new Position(row - 1, column - 1);
+        var locations = server.gotoImplementation(p).orElse(List.of());
+        var strings = new ArrayList<String>();
+        for (var l : locations) {
+            strings.add(String.format("%s:%d", path(l.uri).getFileName(), l.range.start.line + 1));
+        }
+        return strings;
+    }
+
     private List<String> doGoto(String file, int row, int column) {
         return doGoto(file, row, column, false);
     }
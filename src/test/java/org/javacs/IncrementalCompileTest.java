@@ -48,7 +48,7 @@ public class IncrementalCompileTest implements TaskListener, DiagnosticListener<
         for (var i = 0; i < 2; i++) {
             var files = fileManager.getJavaFileObjects(foo);
             LOG.info(String.format("Compile %d...", i));
-            try (var borrow = pool.getTask(fileManager, this, options, null, files)) {
+            try (var borrow = pool.getTask(fileManager, this, options, null, files, Progress.NONE)) {
                 checkInvokeType(borrow.task);
             }
         }
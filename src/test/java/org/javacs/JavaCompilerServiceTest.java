@@ -23,4 +23,148 @@ public class JavaCompilerServiceTest {
     public void setWorkspaceRoot() {
         FileStore.setWorkspaceRoots(Set.of(simpleProjectSrc()));
     }
+
+    static Path moduleProjectSrc() {
+        return Paths.get("src/test/examples/module-project/src").toAbsolutePath().normalize();
+    }
+
+    private List<String> errors(Path file) {
+        var codes = new ArrayList<String>();
+        try (var task = compiler.compile(file)) {
+            for (var d : task.diagnostics) {
+                if (d.getKind() == javax.tools.Diagnostic.Kind.ERROR) codes.add(d.getCode());
+            }
+        }
+        return codes;
+    }
+
+    @Test
+    public void compileInModuleMode() {
+        FileStore.setWorkspaceRoots(Set.of(moduleProjectSrc()));
+        var logging = moduleProjectSrc().resolve("org/javacs/modular/UsesLogging.java");
+        assertThat(errors(logging), empty());
+        var desktop = moduleProjectSrc().resolve("org/javacs/modular/UsesDesktop.java");
+        assertThat(errors(desktop), hasItem("compiler.err.package.not.visible"));
+        // Both compiles ran in the same javac context
+        assertThat(compiler.compiler.contextTasks(), equalTo(2));
+    }
+
+    @Test
+    public void compileWithUnsavedModuleInfo() {
+        FileStore.setWorkspaceRoots(Set.of(moduleProjectSrc()));
+        var moduleInfo = moduleProjectSrc().resolve("module-info.java");
+        var open = new org.javacs.lsp.DidOpenTextDocumentParams();
+        open.textDocument.uri = moduleInfo.toUri();
+        open.textDocument.text =
+                "module org.javacs.modular {\n    requires java.logging;\n    requires java.desktop;\n}\n";
+        FileStore.open(open);
+        try {
+            var desktop = moduleProjectSrc().resolve("org/javacs/modular/UsesDesktop.java");
+            assertThat(errors(desktop), empty());
+        } finally {
+            var close = new org.javacs.lsp.DidCloseTextDocumentParams();
+            close.textDocument.uri = moduleInfo.toUri();
+            FileStore.close(close);
+        }
+    }
+
+    @Test
+    public void keepOneContextPerMode() {
+        FileStore.setWorkspaceRoots(Set.of(moduleProjectSrc(), simpleProjectSrc().toAbsolutePath()));
+        var logging = moduleProjectSrc().resolve("org/javacs/modular/UsesLogging.java");
+        assertThat(errors(logging), empty());
+        // HelloWorld.java is outside the module, so it compiles in class path mode
+        assertThat(errors(simpleProjectSrc().resolve("HelloWorld.java").toAbsolutePath()), empty());
+        assertThat(compiler.compiler.contextTasks(), equalTo(1));
+        // Switching back to module mode picks up the module context where it left off
+        assertThat(errors(logging), empty());
+        assertThat(compiler.compiler.contextTasks(), equalTo(2));
+    }
+
+    @Test
+    public void capErrorsPerFile() {
+        var file = simpleProjectSrc().resolve("ManyErrors.java").toAbsolutePath();
+        assertThat(errors(file), hasSize(CompilerProvider.MAX_ERRORS_PER_FILE));
+    }
+
+    @Test
+    public void cancelCompileAndReuseCompiler() {
+        var file = simpleProjectSrc().resolve("ManyErrors.java").toAbsolutePath();
+        // Cancel part-way through, after javac has started parsing
+        var cancelAfterParse =
+                new Progress() {
+                    int checks = 0;
+
+                    @Override
+                    public void report(int done, int total) {}
+
+                    @Override
+                    public boolean isCancelled() {
+                        return ++checks > 2;
+                    }
+                };
+        try (var task = compiler.compile(cancelAfterParse, file)) {
+            fail("Expected compile to be cancelled");
+        } catch (java.util.concurrent.CancellationException e) {
+            // expected
+        }
+        assertThat(errors(file), hasSize(CompilerProvider.MAX_ERRORS_PER_FILE));
+    }
+
+    @Test
+    public void cachedCompileOutlivesItsProgress() {
+        var file = simpleProjectSrc().resolve("HelloWorld.java").toAbsolutePath();
+        var finished = new boolean[] {false};
+        var progress =
+                new Progress() {
+                    @Override
+                    public void report(int done, int total) {}
+
+                    @Override
+                    public boolean isCancelled() {
+                        return finished[0];
+                    }
+                };
+        try (var task = compiler.compile(progress, file)) {}
+        // The request that compiled the file is over, and its token is cancelled after the fact
+        finished[0] = true;
+        try (var task = compiler.compile(file)) {
+            // Looking up a class on the source path parses and enters it lazily, which fires task events
+            assertThat(task.task.getElements().getTypeElement("ClassDoc"), notNullValue());
+        }
+    }
+
+    @Test
+    public void recycleCompilerWhenHeapIsOverBudget() {
+        var file = simpleProjectSrc().resolve("HelloError.java").toAbsolutePath();
+        var before = errors(file);
+        assertThat(before, not(empty()));
+        assertThat(compiler.compiler.contextTasks(), equalTo(1));
+        // Re-use the context while the heap is under budget
+        errors(simpleProjectSrc().resolve("HelloWorld.java").toAbsolutePath());
+        assertThat(compiler.compiler.contextTasks(), equalTo(2));
+        // Start over with a new context once it goes over budget
+        MemoryBudget.exceeded();
+        assertThat(errors(file), equalTo(before));
+        assertThat(compiler.compiler.contextTasks(), equalTo(1));
+    }
+
+    @Test
+    public void compileAtPrunesOtherMethods() {
+        var file = simpleProjectSrc().resolve("PruneFocus.java").toAbsolutePath();
+        assertThat(errorsAt(file, 3, 26), contains("compiler.err.prob.found.req"));
+        assertThat(errorsAt(file, 7, 17), empty());
+        // Moving back to the first method re-focuses it without a stale pruned copy
+        assertThat(errorsAt(file, 3, 13), contains("compiler.err.prob.found.req"));
+    }
+
+    private List<String> errorsAt(Path file, int line, int column) {
+        var codes = new ArrayList<String>();
+        try (var task = compiler.compileAt(file, line, column, Progress.NONE)) {
+            for (var d : task.diagnostics) {
+                if (d.getKind() == javax.tools.Diagnostic.Kind.ERROR) codes.add(d.getCode());
+            }
+        }
+        return codes;
+    }
 }
@@ -1,8 +1,12 @@
 package org.javacs;
 
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.logging.Logger;
@@ -182,11 +186,50 @@ public class JavaDebugServerTest {
         process.waitFor();
     }
 
+    @Test
+    public void pageStackTrace() throws IOException, InterruptedException {
+        launchProcess("Hello");
+        attach(5005);
+        setBreakpoint("Hello", 4);
+        server.configurationDone();
+        stoppedEvents.take();
+        // Find the main thread
+        var threads = server.threads().threads;
+        for (var t : threads) {
+            if (t.name.equals("main")) {
+                // levels = 0 means all frames
+                var requestAll = new StackTraceArguments();
+                requestAll.threadId = t.id;
+                requestAll.levels = 0;
+                var all = server.stackTrace(requestAll);
+                assertThat(all.stackFrames.length, equalTo(all.totalFrames));
+                assertThat(all.stackFrames[0].name, equalTo("main"));
+                // Asking for the same frame again gives the same id
+                var requestTop = new StackTraceArguments();
+                requestTop.threadId = t.id;
+                requestTop.levels = 1;
+                var top = server.stackTrace(requestTop);
+                assertThat(top.stackFrames.length, equalTo(1));
+                assertThat(top.stackFrames[0].id, equalTo(all.stackFrames[0].id));
+                // Pages past the bottom of the stack are empty
+                var requestPast = new StackTraceArguments();
+                requestPast.threadId = t.id;
+                requestPast.startFrame = all.totalFrames + 1;
+                var past = server.stackTrace(requestPast);
+                assertThat(past.stackFrames, emptyArray());
+                assertThat(past.totalFrames, equalTo(all.totalFrames));
+            }
+        }
+        // Wait for process to exit
+        server.continue_(new ContinueArguments());
+        process.waitFor();
+    }
+
     @Test
     public void printCollections() throws IOException, InterruptedException {
         launchProcess("Collections");
         attach(5005);
-        setBreakpoint("Collections", 8);
+        setBreakpoint("Collections", 11);
         server.configurationDone();
         stoppedEvents.take();
         // Find the main thread
@@ -213,6 +256,25 @@ public class JavaDebugServerTest {
                 for (var v : locals) {
                     System.out.println(String.format("\t%s %s = %s", v.type, v.name, v.value));
                 }
+                // Listing locals doesn't copy collections, so the number of elements isn't known yet
+                var xs = locals[0];
+                assertThat(xs.name, equalTo("xs"));
+                assertThat(xs.indexedVariables, nullValue());
+                // Expanding xs copies its elements, after its fields
+                var requestChildren = new VariablesArguments();
+                requestChildren.variablesReference = xs.variablesReference;
+                var children = server.variables(requestChildren).variables;
+                assertThat(children[children.length - 1].name, equalTo("1"));
+                // Expand the second element of xs
+                var requestElements = new VariablesArguments();
+                requestElements.variablesReference = xs.variablesReference;
+                requestElements.filter = "indexed";
+                requestElements.start = 1;
+                requestElements.count = 1;
+                var elements = server.variables(requestElements).variables;
+                assertThat(elements.length, equalTo(1));
+                assertThat(elements[0].name, equalTo("1"));
+                assertThat(elements[0].value, equalTo("2"));
             }
         }
         // Wait for process to exit
@@ -220,5 +282,35 @@ public class JavaDebugServerTest {
         process.waitFor();
     }
 
+    @Test
+    public void expandBrokenCollections() throws IOException, InterruptedException {
+        launchProcess("Collections");
+        attach(5005);
+        setBreakpoint("Collections", 11);
+        server.configurationDone();
+        stoppedEvents.take();
+        for (var t : server.threads().threads) {
+            if (!t.name.equals("main")) continue;
+            var requestTrace = new StackTraceArguments();
+            requestTrace.threadId = t.id;
+            var requestScopes = new ScopesArguments();
+            requestScopes.frameId = server.stackTrace(requestTrace).stackFrames[0].id;
+            var requestLocals = new VariablesArguments();
+            requestLocals.variablesReference = server.scopes(requestScopes).scopes[0].variablesReference;
+            var locals = server.variables(requestLocals).variables;
+            // toArray() throws in broken and returns null in empty, so expanding them only shows their fields
+            for (var name : List.of("broken", "empty")) {
+                var local = Arrays.stream(locals).filter(v -> v.name.equals(name)).findFirst().get();
+                var requestElements = new VariablesArguments();
+                requestElements.variablesReference = local.variablesReference;
+                requestElements.filter = "indexed";
+                assertThat(server.variables(requestElements).variables, emptyArray());
+            }
+        }
+        // Continuing releases the copies of the collections that worked, and resumes the VM
+        server.continue_(new ContinueArguments());
+        process.waitFor();
+    }
+
     private static final Logger LOG = Logger.getLogger("main");
 }
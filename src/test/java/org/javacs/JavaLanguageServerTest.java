@@ -5,9 +5,12 @@ import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
 import java.util.Collections;
-import org.javacs.lsp.DidOpenTextDocumentParams;
-import org.javacs.lsp.TextDocumentItem;
+import java.util.List;
+import org.javacs.lsp.*;
 import org.junit.Test;
 
 public class JavaLanguageServerTest {
@@ -30,4 +33,41 @@ public class JavaLanguageServerTest {
         // Should not fail
         server.lint(Collections.singleton(Paths.get(textDocument.uri)));
     }
+
+    @Test
+    public void routeFilesToOwningWorkspaceFolder() {
+        var maven = LanguageServerFixture.DEFAULT_WORKSPACE_ROOT.toAbsolutePath();
+        var simple = LanguageServerFixture.SIMPLE_WORKSPACE_ROOT.toAbsolutePath();
+        var server = LanguageServerFixture.getJavaLanguageServer();
+        var init = new InitializeParams();
+        init.workspaceFolders = List.of(folder(maven), folder(simple));
+        server.initialize(init);
+
+        assertThat(server.ownerRoot(FindResource.path("/org/javacs/example/Goto.java")), equalTo(maven));
+        assertThat(server.ownerRoot(simple.resolve("HelloWorld.java")), equalTo(simple));
+        assertThat(server.ownerRoot(Paths.get("/somewhere/else/Foo.java")), equalTo(maven));
+    }
+
+    @Test
+    public void sourcePathIsLimitedToOwningRoot() {
+        var maven = LanguageServerFixture.DEFAULT_WORKSPACE_ROOT.toAbsolutePath();
+        var simple = LanguageServerFixture.SIMPLE_WORKSPACE_ROOT.toAbsolutePath();
+        var server = LanguageServerFixture.getJavaLanguageServer();
+        var init = new InitializeParams();
+        init.workspaceFolders = List.of(folder(maven), folder(simple));
+        server.initialize(init);
+
+        var hello = simple.resolve("HelloWorld.java");
+        var goto_ = FindResource.path("/org/javacs/example/Goto.java");
+        var className = "org.javacs.example.Goto";
+        assertThat(server.compiler(goto_).findTypeDeclaration(className), equalTo(goto_));
+        assertThat(server.compiler(hello).findTypeDeclaration(className), equalTo(CompilerProvider.NOT_FOUND));
+    }
+
+    private WorkspaceFolder folder(Path root) {
+        var folder = new WorkspaceFolder();
+        folder.uri = root.toUri();
+        folder.name = root.getFileName().toString();
+        return folder;
+    }
 }
@@ -29,30 +29,43 @@ public class LanguageServerFixture {
     }
 
     static JavaLanguageServer getJavaLanguageServer(Path workspaceRoot, Consumer<Diagnostic> onError) {
-        return getJavaLanguageServer(
-                workspaceRoot,
-                new LanguageClient() {
-                    @Override
-                    public void publishDiagnostics(PublishDiagnosticsParams params) {
-                        params.diagnostics.forEach(onError);
-                    }
+        return getJavaLanguageServer(workspaceRoot, client(onError));
+    }
+
+    static JavaLanguageServer getJavaLanguageServer(JsonElement capabilities) {
+        var client = client(diagnostic -> LOG.info(diagnostic.message));
+        return getJavaLanguageServer(DEFAULT_WORKSPACE_ROOT, client, capabilities);
+    }
 
-                    @Override
-                    public void showMessage(ShowMessageParams params) {}
+    private static LanguageClient client(Consumer<Diagnostic> onError) {
+        return new LanguageClient() {
+            @Override
+            public void publishDiagnostics(PublishDiagnosticsParams params) {
+                params.diagnostics.forEach(onError);
+            }
 
-                    @Override
-                    public void registerCapability(String method, JsonElement options) {}
+            @Override
+            public void showMessage(ShowMessageParams params) {}
 
-                    @Override
-                    public void customNotification(String method, JsonElement params) {}
-                });
+            @Override
+            public void registerCapability(String method, JsonElement options) {}
+
+            @Override
+            public void customNotification(String method, JsonElement params) {}
+        };
     }
 
     static JavaLanguageServer getJavaLanguageServer(Path workspaceRoot, LanguageClient client) {
+        return getJavaLanguageServer(workspaceRoot, client, null);
+    }
+
+    static JavaLanguageServer getJavaLanguageServer(
+            Path workspaceRoot, LanguageClient client, JsonElement capabilities) {
         var server = new JavaLanguageServer(client);
         var init = new InitializeParams();
 
         init.rootUri = workspaceRoot.toUri();
+        init.capabilities = capabilities;
         server.initialize(init);
         server.initialized();
 
@@ -23,4 +23,27 @@ public class MarkdownHelperTest {
         assertThat(MarkdownHelper.asMarkdown("<code>foo</code> <code>bar</code>"), equalTo("`foo` `bar`"));
         assertThat(MarkdownHelper.asMarkdown("{@code foo} {@code bar}"), equalTo("`foo` `bar`"));
     }
+
+    @Test
+    public void formatNestedTags() {
+        assertThat(MarkdownHelper.asMarkdown("<pre>{@code foo}</pre>"), equalTo("`foo`"));
+        assertThat(MarkdownHelper.asMarkdown("<code><a href=\"#bar\">foo</a></code>"), equalTo("`foo`"));
+        assertThat(MarkdownHelper.asMarkdown("<b> foo <i>bar</i></b>"), equalTo("**foo *bar***"));
+        assertThat(MarkdownHelper.asMarkdown("{@code Map<K, V>} is {@literal {}}"), equalTo("`Map<K, V>` is {}"));
+    }
+
+    @Test
+    public void decodeEntities() {
+        assertThat(MarkdownHelper.asMarkdown("<code>List&lt;String&gt;</code>"), equalTo("`List<String>`"));
+        assertThat(MarkdownHelper.asMarkdown("a &amp; b &#64; c"), equalTo("a & b @ c"));
+        assertThat(MarkdownHelper.asMarkdown("a & b"), equalTo("a & b"));
+    }
+
+    @Test
+    public void keepOtherHtml() {
+        assertThat(MarkdownHelper.asMarkdown("<p>foo</p>"), equalTo("<p>foo</p>"));
+        assertThat(MarkdownHelper.asMarkdown("a < b, List<String>"), equalTo("a < b, List<String>"));
+        assertThat(MarkdownHelper.asMarkdown("<b>unclosed"), equalTo("**unclosed**"));
+        assertThat(MarkdownHelper.asMarkdown("closed</b>"), equalTo("closed"));
+    }
 }
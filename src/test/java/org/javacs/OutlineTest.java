@@ -0,0 +1,86 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.javacs.lsp.*;
+import org.javacs.outline.Outline;
+import org.junit.Test;
+
+public class OutlineTest {
+
+    private static final JavaLanguageServer server = LanguageServerFixture.getJavaLanguageServer();
+
+    private List<String> names(List<Outline.Declaration> declarations) {
+        var names = new ArrayList<String>();
+        for (var d : declarations) {
+            names.add(d.kind + " " + d.name);
+            for (var n : names(d.members)) {
+                names.add(d.name + "." + n);
+            }
+        }
+        return names;
+    }
+
+    private void edit(Path file, int version, String text) {
+        var change = new DidChangeTextDocumentParams();
+        change.textDocument.uri = file.toUri();
+        change.textDocument.version = version;
+        var evt = new TextDocumentContentChangeEvent();
+        evt.text = text;
+        change.contentChanges.add(evt);
+        FileStore.change(change);
+    }
+
+    @Test
+    public void declarations() {
+        var file = FindResource.path("/org/javacs/example/FoldComments.java");
+        var outline = Outline.of(file);
+        assertThat(outline.packageName, equalTo("org.javacs.example"));
+        assertThat(names(outline.declarations), contains("CLASS FoldComments", "FoldComments.METHOD test"));
+    }
+
+    @Test
+    public void reuseBetweenVersions() {
+        var file = FindResource.path("/org/javacs/example/HelloWorld.java");
+        var open = new DidOpenTextDocumentParams();
+        open.textDocument.text = "package org.javacs.example; class HelloWorld { void a() { } }";
+        open.textDocument.uri = file.toUri();
+        FileStore.open(open);
+        try {
+            assertThat(names(Outline.of(file).declarations), contains("CLASS HelloWorld", "HelloWorld.METHOD a"));
+            // Insert a member in the middle
+            edit(file, 1, "package org.javacs.example; class HelloWorld { int x; void a() { } }");
+            assertThat(
+                    names(Outline.of(file).declarations),
+                    contains("CLASS HelloWorld", "HelloWorld.FIELD x", "HelloWorld.METHOD a"));
+            // Open a comment that swallows the rest of the file
+            edit(file, 2, "package org.javacs.example; class HelloWorld { int x; /* void a() { } }");
+            assertThat(
+                    names(Outline.of(file).declarations), contains("CLASS HelloWorld", "HelloWorld.FIELD x"));
+            // Close it again
+            edit(file, 3, "package org.javacs.example; class HelloWorld { int x; /* */ void b() { } }");
+            assertThat(
+                    names(Outline.of(file).declarations),
+                    contains("CLASS HelloWorld", "HelloWorld.FIELD x", "HelloWorld.METHOD b"));
+        } finally {
+            var close = new DidCloseTextDocumentParams();
+            close.textDocument.uri = file.toUri();
+            FileStore.close(close);
+        }
+    }
+
+    @Test
+    public void foldComments() {
+        var params = new FoldingRangeParams();
+        params.textDocument = new TextDocumentIdentifier(FindResource.uri("/org/javacs/example/FoldComments.java"));
+        var kinds = new ArrayList<String>();
+        for (var r : server.foldingRange(params)) {
+            kinds.add(String.format("%s %d-%d", r.kind, r.startLine, r.endLine));
+        }
+        assertThat(kinds, hasItems("imports 2-3", "comment 5-8", "comment 10-11", "region 9-15", "region 12-14"));
+    }
+}
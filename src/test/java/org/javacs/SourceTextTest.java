@@ -0,0 +1,30 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class SourceTextTest {
+    @Test
+    public void findWholeWords() {
+        var text = new SourceText("int foobar = foo + $foo + foo;");
+        assertThat(text.findName("foo", 0), equalTo(13));
+        assertThat(text.findName("foo", 14), equalTo(26));
+        assertThat(text.findName("foo", 0, 13), equalTo(-1));
+        assertThat(text.findName("foo", 26, 28), equalTo(-1));
+        assertThat(text.findName("foobar", 0), equalTo(4));
+        assertThat(text.findName("", 0), equalTo(-1));
+    }
+
+    @Test
+    public void positionsAfterEachKindOfLineEnding() {
+        var text = new SourceText("a\nb\r\nc\rd");
+        assertThat(text.position(0).line, equalTo(0));
+        assertThat(text.position(2).line, equalTo(1));
+        assertThat(text.position(3).character, equalTo(1));
+        assertThat(text.position(5).line, equalTo(2));
+        assertThat(text.position(7).line, equalTo(3));
+        assertThat(text.position(7).character, equalTo(0));
+    }
+}
@@ -3,7 +3,14 @@ package org.javacs;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Optional;
 import org.javacs.lsp.DidChangeTextDocumentParams;
 import org.javacs.lsp.DidCloseTextDocumentParams;
 import org.javacs.lsp.DidOpenTextDocumentParams;
@@ -58,6 +65,10 @@ public class StringSearchTest {
         testNextWord("aa", "aaa", -1);
         testNextWord("aa", "a aa", 2);
         testNextWord("aa", "aa a", 0);
+        testNextWord("abc", "abc[0]", 0);
+        testNextWord("abc", "class abc{", 6);
+        testNextWord("abc", "abc1", -1);
+        testNextWord("abc", "$abc", -1);
     }
 
     @Test
@@ -84,6 +95,90 @@ public class StringSearchTest {
         assertFalse(StringSearch.containsWordMatching(largeFile, "removeMethodBodiez"));
     }
 
+    @Test
+    public void searchPastFirstMegabyte() throws IOException {
+        var file = Files.createTempFile("HugeFile", ".java");
+        try {
+            var text = new StringBuilder("class HugeFile {\n");
+            while (text.length() < 3 * 1024 * 1024) {
+                text.append("    // padding padding padding padding padding padding padding padding\n");
+            }
+            text.append("    void lastMethodInFile() {}\n}\n");
+            Files.writeString(file, text);
+            assertTrue(StringSearch.containsWord(file, "lastMethodInFile"));
+            assertTrue(StringSearch.containsWordMatching(file, "lmif"));
+            assertFalse(StringSearch.containsWordMatching(file, "lastMethodInFilez"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void moduleName() throws IOException {
+        var dir = Files.createTempDirectory("module");
+        var file = dir.resolve("module-info.java");
+        try {
+            Files.writeString(file, "open module org.javacs.opened {\n    requires java.logging;\n}\n");
+            assertThat(StringSearch.moduleName(file), equalTo(Optional.of("org.javacs.opened")));
+            Files.writeString(file, "// Not a module yet\n");
+            Files.setLastModifiedTime(file, FileTime.from(Instant.now().plusSeconds(1)));
+            assertThat(StringSearch.moduleName(file), equalTo(Optional.empty()));
+        } finally {
+            Files.delete(file);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void moduleNameOfOpenFile() throws IOException {
+        var dir = Files.createTempDirectory("module");
+        var file = dir.resolve("module-info.java");
+        Files.writeString(file, "module org.javacs.saved {}\n");
+        var open = new DidOpenTextDocumentParams();
+        open.textDocument.text = "module org.javacs.saved {}\n";
+        open.textDocument.uri = file.toUri();
+        open.textDocument.version = 1;
+        FileStore.open(open);
+        try {
+            assertThat(StringSearch.moduleName(file), equalTo(Optional.of("org.javacs.saved")));
+            // Rename the module without saving
+            var change = new DidChangeTextDocumentParams();
+            change.textDocument.uri = file.toUri();
+            change.textDocument.version = 2;
+            var evt = new TextDocumentContentChangeEvent();
+            evt.text = "module org.javacs.unsaved {}\n";
+            change.contentChanges.add(evt);
+            FileStore.change(change);
+            assertThat(StringSearch.moduleName(file), equalTo(Optional.of("org.javacs.unsaved")));
+            // module-info.java is not an ordinary source, so it is never linted
+            assertThat(FileStore.activeDocuments(), not(hasItem(file)));
+        } finally {
+            var close = new DidCloseTextDocumentParams();
+            close.textDocument.uri = file.toUri();
+            FileStore.close(close);
+            Files.delete(file);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void searchManyFilesInParallel() {
+        var largeFile = Paths.get(FindResource.uri("/org/javacs/example/LargeFile.java"));
+        var smallFile = Paths.get(FindResource.uri("/org/javacs/example/Goto.java"));
+        var files = new ArrayList<Path>();
+        for (var i = 0; i < 500; i++) {
+            files.add(i % 2 == 0 ? largeFile : smallFile);
+        }
+        var found = StringSearch.containsWord(files, "removeMethodBodies");
+        for (var i = 0; i < found.length; i++) {
+            assertThat(found[i], equalTo(i % 2 == 0));
+        }
+        var matching = new ArrayList<Path>();
+        StringSearch.containsWordMatching(files, "nonDefaultConstructor").forEach(matching::add);
+        assertThat(matching, hasSize(250));
+        assertThat(matching, everyItem(equalTo(smallFile)));
+    }
+
     @Test
     public void searchSmallFile() {
         var smallFile = Paths.get(FindResource.uri("/org/javacs/example/Goto.java"));
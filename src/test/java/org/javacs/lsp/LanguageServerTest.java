@@ -22,13 +22,24 @@ public class LanguageServerTest {
     LanguageServer mockServer;
     Thread main;
     CompletableFuture<Void> receivedInitialize = new CompletableFuture<>();
+    CompletableFuture<Void> finishedAsyncWork = new CompletableFuture<>();
 
     class TestLanguageServer extends LanguageServer {
+        int slices = 0;
+
         @Override
         public InitializeResult initialize(InitializeParams params) {
             receivedInitialize.complete(null);
             return new InitializeResult();
         }
+
+        @Override
+        public boolean doAsyncWork() {
+            slices++;
+            if (slices < 3) return true;
+            finishedAsyncWork.complete(null);
+            return false;
+        }
     }
 
     static {
@@ -94,4 +105,31 @@ public class LanguageServerTest {
         main.join(10_000);
         assertThat("Main thread has quit", main.isAlive(), equalTo(false));
     }
+
+    @Test
+    public void continueAsyncWorkWithoutNewMessages()
+            throws IOException, InterruptedException, ExecutionException, TimeoutException {
+        sendToServer(initializeMessage);
+        receivedInitialize.get(10, TimeUnit.SECONDS);
+        // One message is enough to run every slice of the async work
+        finishedAsyncWork.get(10, TimeUnit.SECONDS);
+        sendToServer(exitMessage);
+        main.join(10_000);
+    }
+
+    @Test
+    public void cancelOnlyTheRunningRequest() {
+        var server = new TestLanguageServer();
+        server.startRequest(1);
+        var first = server.cancellation();
+        server.finishRequest();
+        server.startRequest(2);
+        // A late cancel of request 1 doesn't cancel request 2
+        assertFalse(server.cancelRequest(1));
+        assertFalse(server.isCancelled());
+        assertTrue(server.cancelRequest(2));
+        assertTrue(server.isCancelled());
+        assertFalse(first.getAsBoolean());
+        server.finishRequest();
+    }
 }
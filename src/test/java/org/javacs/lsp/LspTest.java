@@ -3,7 +3,6 @@ package org.javacs.lsp;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
-import com.google.gson.JsonObject;
 import java.io.IOException;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
@@ -90,7 +89,42 @@ public class LspTest {
         assertThat(parse.jsonrpc, equalTo("2.0"));
         assertThat(parse.id, equalTo(1));
         assertThat(parse.method, equalTo("initialize"));
-        assertThat(parse.params, equalTo(new JsonObject()));
+        assertThat(parse.params, instanceOf(InitializeParams.class));
+    }
+
+    @Test
+    public void readDidChange() throws IOException {
+        var message =
+                "{\"jsonrpc\":\"2.0\",\"method\":\"textDocument/didChange\",\"params\":{\"textDocument\":{\"uri\":\"file:///Foo.java\",\"version\":2},\"contentChanges\":[{\"range\":{\"start\":{\"line\":1,\"character\":2},\"end\":{\"line\":1,\"character\":3}},\"rangeLength\":1,\"text\":\"🔥\"}]}}";
+        var bytes = message.getBytes(StandardCharsets.UTF_8);
+        writer.write(String.format("Content-Length: %d\r\n\r\n", bytes.length).getBytes());
+        writer.write(bytes);
+
+        var parse = LSP.parseMessage(LSP.nextToken(buffer));
+        var params = (DidChangeTextDocumentParams) parse.params;
+        assertThat(params.textDocument.uri.toString(), equalTo("file:///Foo.java"));
+        assertThat(params.textDocument.version, equalTo(2));
+        var change = params.contentChanges.get(0);
+        assertThat(change.range.toString(), equalTo("1,2-1,3"));
+        assertThat(change.rangeLength, equalTo(1));
+        assertThat(change.text, equalTo("🔥"));
+    }
+
+    @Test
+    public void readParamsBeforeMethod() {
+        var token =
+                "{\"params\":{\"textDocument\":{\"uri\":\"file:///Foo.java\"},\"position\":{\"line\":3,\"character\":4}},\"method\":\"textDocument/hover\",\"id\":7}";
+        var parse = LSP.parseMessage(token);
+        assertThat(parse.id, equalTo(7));
+        var params = (TextDocumentPositionParams) parse.params;
+        assertThat(params.position.toString(), equalTo("3,4"));
+    }
+
+    @Test
+    public void writeSameJsonAsReflection() {
+        var params = new TextDocumentPositionParams();
+        params.position = new Position(1, 2);
+        assertThat(LSP.toJson(params), equalTo("{\"position\":{\"line\":1,\"character\":2}}"));
     }
 
     @Test
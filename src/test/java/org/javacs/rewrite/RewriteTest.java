@@ -3,9 +3,15 @@ package org.javacs.rewrite;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
+import com.google.gson.Gson;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
 import org.javacs.CompilerProvider;
 import org.javacs.LanguageServerFixture;
+import org.javacs.lsp.Position;
+import org.javacs.lsp.Range;
+import org.javacs.lsp.TextEdit;
 import org.junit.Test;
 
 public class RewriteTest {
@@ -116,4 +122,52 @@ public class RewriteTest {
         var edits = new AutoAddOverrides(file).rewrite(compiler);
         assertThat(edits, hasKey(file));
     }
+
+    @Test
+    public void pipelineSharesCompilation() {
+        var file = file("TestAddOverride.java");
+        var pipeline = new RewritePipeline(new AutoFixImports(file), new AutoAddOverrides(file));
+        var each = pipeline.each(compiler);
+        assertThat(each, hasSize(2));
+        var merged = pipeline.rewrite(compiler);
+        var override = each.get(1).get(file);
+        assertThat(merged.get(file), arrayWithSize(each.get(0).get(file).length + override.length));
+        assertThat(merged.get(file)[merged.get(file).length - 1].newText, equalTo(override[0].newText));
+    }
+
+    @Test
+    public void declaringFileIsNotSerialized() {
+        String[] erasedParameterTypes = {};
+        var remove = new RemoveMethod("org.javacs.rewrite.TestRenameMethod", "foo", erasedParameterTypes);
+        assertThat(remove.files(compiler), contains(file("TestRenameMethod.java")));
+        // Rewrites are sent to the client as code action data, which shouldn't depend on where the class was found
+        var json = new Gson().toJsonTree(remove).getAsJsonObject();
+        assertThat(json.keySet(), containsInAnyOrder("className", "methodName", "erasedParameterTypes"));
+    }
+
+    private TextEdit edit(int startLine, int endLine, String text) {
+        return new TextEdit(new Range(new Position(startLine, 0), new Position(endLine, 0)), text);
+    }
+
+    @Test
+    public void pipelineDropsConflictingRewrite() {
+        var file = file("TestAddOverride.java");
+        TextEdit[] first = {edit(1, 3, ""), edit(5, 5, "a")};
+        TextEdit[] second = {edit(2, 2, "b"), edit(8, 8, "c")};
+        TextEdit[] third = {edit(3, 3, "d"), edit(5, 5, "e")};
+        var merged = RewritePipeline.merge(List.of(Map.of(file, first), Map.of(file, second), Map.of(file, third)));
+        assertThat(merged.get(file), arrayContaining(first[0], first[1], third[0], third[1]));
+    }
+
+    @Test
+    public void pipelineDropsConflictingRewriteFromEveryFile() {
+        var file = file("TestAddOverride.java");
+        var other = file("TestFixImports.java");
+        TextEdit[] first = {edit(1, 3, "")};
+        TextEdit[] second = {edit(2, 2, "b")};
+        TextEdit[] elsewhere = {edit(4, 4, "c")};
+        var merged = RewritePipeline.merge(List.of(Map.of(file, first), Map.of(file, second, other, elsewhere)));
+        assertThat(merged.get(file), arrayContaining(first[0]));
+        assertThat(merged, not(hasKey(other)));
+    }
 }